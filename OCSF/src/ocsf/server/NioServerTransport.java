@@ -0,0 +1 @@
+// This file is part of the OCSF server package used by the BPark server.// It adds a non-blocking transport next to the thread-per-client one.package ocsf.server;import java.io.*;import java.net.*;import java.nio.ByteBuffer;import java.nio.channels.*;import java.util.*;import java.util.concurrent.*;/** * Non-blocking transport for <code>AbstractServer</code>, started by * <code>AbstractServer.listenNio()</code>.<p> * * One acceptor thread accepts clients and hands each channel to one of * a small number of I/O threads. Every I/O thread runs a * <code>Selector</code> over many client channels, so an idle client * costs a few buffers instead of a parked thread and its stack.<p> * * The bytes on the wire are exactly those of the thread-per-client * mode, so existing clients connect unchanged: * <ul> * <li>Incoming: the client writes a Java serialization stream and * resets it after every message. The transport accumulates the bytes * of each channel and decodes a message only once all of its bytes * have arrived, without ever blocking the I/O thread.</li> * <li>Outgoing: each channel keeps its own * <code>ObjectOutputStream</code> over an in-memory buffer. The * serialized bytes are written immediately if the socket accepts them, * and queued for the I/O thread otherwise.</li> * </ul> * * Every connection is still represented by a * <code>ConnectionToClient</code> and the server's hook methods are * called the same way as in the thread-per-client mode. */class NioServerTransport{// CONSTANTS ********************************************************  /**   * Largest message accepted from a client. A client that sends a   * bigger one is disconnected.   */  static final int MAX_MESSAGE_BYTES = 16 * 1024 * 1024;  /**   * The header written by ObjectOutputStream when a stream is opened   * (STREAM_MAGIC, STREAM_VERSION).   */  private static final byte[] STREAM_HEADER =    {(byte)0xAC, (byte)0xED, 0x00, 0x05};  /**   * Marker written by ObjectOutputStream.reset() between messages.   */  private static final byte TC_RESET = 0x79;  /**   * Initial size of the per-channel input buffer.   */  private static final int INITIAL_INPUT_BYTES = 1024;// INSTANCE VARIABLES ***********************************************  /**   * The server whose hook methods are called.   */  private final AbstractServer server;  /**   * The thread group given to the ConnectionToClient instances.   */  private final ThreadGroup group;  private final int port;  private final int backlog;  private final int timeout;  /**   * The threads that read and write the client channels.   */  private final IoThread[] ioThreads;  /**   * Index of the I/O thread that gets the next client.   */  private int nextIoThread = 0;  /**   * The listening channel, opened on the first startAccepting().   */  private ServerSocketChannel serverChannel;  /**   * True while the acceptor thread should keep accepting clients.   */  private volatile boolean accepting = false;  /**   * Every connection currently open on this transport.   */  private final Set<ConnectionToClient> connections =    ConcurrentHashMap.newKeySet();// CONSTRUCTORS *****************************************************  /**   * Creates the transport and starts its I/O threads.   *   * @param server the server whose hooks are called.   * @param group the thread group of the client connections.   * @param port the port to listen on.   * @param backlog the maximum number of pending connections.   * @param timeout how often, in ms, the acceptor checks whether it   *        should stop.   * @param ioThreadCount the number of I/O threads.   * @exception IOException if a selector cannot be opened.   */  NioServerTransport(AbstractServer server, ThreadGroup group, int port,    int backlog, int timeout, int ioThreadCount) throws IOException  {    this.server = server;    this.group = group;    this.port = port;    this.backlog = backlog;    this.timeout = timeout;    ioThreads = new IoThread[Math.max(1, ioThreadCount)];    for (int i = 0; i < ioThreads.length; i++)    {      ioThreads[i] = new IoThread(i);      ioThreads[i].start();    }  }// INSTANCE METHODS *************************************************  /**   * Opens the listening channel if needed and starts the acceptor   * thread.   *   * @exception IOException if the port cannot be bound.   */  synchronized void startAccepting() throws IOException  {    if (accepting)      return;    if (serverChannel == null)    {      serverChannel = ServerSocketChannel.open();      serverChannel.bind(new InetSocketAddress(port), backlog);      serverChannel.configureBlocking(false);    }    accepting = true;    Thread acceptor = new Thread(this::acceptLoop, "NIO acceptor");    acceptor.start();  }  /**   * Stops accepting new clients. Connected clients are not affected.   */  void stopAccepting()  {    accepting = false;  }  /**   * @return true while new clients are accepted.   */  boolean isAccepting()  {    return accepting;  }  /**   * Stops accepting, closes the listening channel and stops the I/O   * threads. Channels still open are closed by their I/O thread.   */  synchronized void shutdown()  {    accepting = false;    try    {      if (serverChannel != null)        serverChannel.close();    }    catch (IOException ex) {}    serverChannel = null;    for (int i = 0; i < ioThreads.length; i++)      ioThreads[i].shutdown();  }  /**   * @return the connections currently open on this transport.   */  ConnectionToClient[] getConnections()  {    return connections.toArray(new ConnectionToClient[0]);  }  /**   * @return the number of connections currently open on this transport.   */  int getNumberOfConnections()  {    return connections.size();  }  /**   * Body of the acceptor thread. Mirrors AbstractServer.run().   */  private void acceptLoop()  {    server.serverStarted();    Selector selector = null;    try    {      selector = Selector.open();      serverChannel.register(selector, SelectionKey.OP_ACCEPT);      while (accepting)      {        // Wake up every timeout ms to check whether we should stop        selector.select(timeout);        selector.selectedKeys().clear();        SocketChannel socket;        while (accepting && (socket = serverChannel.accept()) != null)        {          ioThreads[nextIoThread].register(socket);          nextIoThread = (nextIoThread + 1) % ioThreads.length;        }      }      server.serverStopped();    }    catch (IOException exception)    {      if (accepting)      {        accepting = false;        server.listeningException(exception);      }      else      {        server.serverStopped();      }    }    finally    {      accepting = false;      try      {        // Also deregisters the listening channel so it can be reused        if (selector != null)          selector.close();      }      catch (IOException ex) {}    }  }// INNER CLASSES ****************************************************  /**   * A thread running a selector over a share of the client channels.   */  private class IoThread extends Thread  {    private final Selector selector;    /**     * Work handed over by other threads, run by this thread between     * two selects.     */    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();    /**     * Shared by all the channels of this thread; their data is copied     * out before the next read.     */    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);    private volatile boolean running = true;    IoThread(int index) throws IOException    {      super("NIO I/O " + index);      setDaemon(true);      selector = Selector.open();    }    /**     * Hands a newly accepted client to this thread.     */    void register(SocketChannel socket)    {      tasks.add(() -> accept(socket));      selector.wakeup();    }    void shutdown()    {      running = false;      selector.wakeup();    }    public void run()    {      try      {        while (running)        {          selector.select();          Runnable task;          while ((task = tasks.poll()) != null)            task.run();          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();          while (keys.hasNext())          {            SelectionKey key = keys.next();            keys.remove();            Channel channel = (Channel)key.attachment();            if (key.isValid() && key.isReadable())              channel.read(readBuffer);            if (key.isValid() && key.isWritable())              channel.flush();          }        }      }      catch (IOException exception)      {        System.err.println(getName() + " stopped: " + exception);      }      finally      {        for (SelectionKey key : selector.keys())        {          if (key.attachment() instanceof Channel)            ((Channel)key.attachment()).close();        }        try        {          selector.close();        }        catch (IOException ex) {}      }    }    /**     * Registers an accepted client, sends the stream header and calls     * the clientConnected hook, like a new ConnectionToClient thread.     */    private void accept(SocketChannel socket)    {      try      {        socket.configureBlocking(false);        socket.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);        Channel channel = new Channel(socket);        ConnectionToClient client = new ConnectionToClient(group, channel, server);        channel.client = client;        channel.key = socket.register(selector, SelectionKey.OP_READ, channel);        connections.add(client);        channel.start();        server.clientConnected(client);      }      catch (IOException exception)      {        try        {          socket.close();        }        catch (IOException ex) {}      }    }  }  /**   * The non-blocking side of one client connection.   */  final class Channel  {    private final SocketChannel socket;    private final InetAddress address;    private SelectionKey key;    private ConnectionToClient client;    // Output side, guarded by this object    /**     * Receives the bytes serialized by output.     */    private final ByteArrayOutputStream outputBytes = new ByteArrayOutputStream(256);    /**     * The serialization stream the client reads from.     */    private final ObjectOutputStream output;    /**     * Serialized messages not yet accepted by the socket.     */    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();    private volatile boolean closed = false;    // Input side, only used by the I/O thread    /**     * Bytes received and not decoded yet, between inputStart and     * inputEnd.     */    private byte[] input = new byte[INITIAL_INPUT_BYTES];    private int inputStart = 0;    private int inputEnd = 0;    private boolean headerRead = false;    Channel(SocketChannel socket) throws IOException    {      this.socket = socket;      this.address = socket.socket().getInetAddress();      // Writes the stream header into outputBytes      this.output = new ObjectOutputStream(outputBytes);    }    /**     * @return the client's Internet address.     */    InetAddress getInetAddress()    {      return address;    }    /**     * Sends the stream header queued by the constructor.     */    synchronized void start() throws IOException    {      queueOutput();      writePending();    }    /**     * Serializes a message and writes as much of it as the socket     * accepts right away; the rest is written by the I/O thread.     *     * @param msg the message to send.     * @exception IOException if the connection is closed or the     *   message cannot be serialized.     */    synchronized void send(Object msg) throws IOException    {      if (closed)        throw new SocketException("socket does not exist");      output.writeObject(msg);      // Don't keep every message ever sent in the stream's handle table      output.reset();      output.flush();      queueOutput();      writePending();    }    /**     * Called by the I/O thread when the socket can take more bytes.     */    synchronized void flush()    {      try      {        writePending();      }      catch (IOException exception)      {        client.channelException(exception);      }    }    /**     * Closes the channel after a last attempt to write what is     * pending. If the connection is already closed, this call has no     * effect.     */    void close()    {      synchronized (this)      {        if (closed)          return;        try        {          writePending();        }        catch (IOException ex) {}        closed = true;      }      connections.remove(client);      if (key != null)        key.cancel();      try      {        socket.close();      }      catch (IOException ex) {}    }    /**     * Moves the serialized bytes to the pending queue.     */    private void queueOutput()    {      if (outputBytes.size() > 0)      {        pending.add(ByteBuffer.wrap(outputBytes.toByteArray()));        outputBytes.reset();      }    }    /**     * Writes pending buffers until the socket stops accepting bytes,     * and asks for OP_WRITE only while something is left.     */    private void writePending() throws IOException    {      while (!pending.isEmpty())      {        ByteBuffer buffer = pending.peek();        socket.write(buffer);        if (buffer.hasRemaining())          break;        pending.poll();      }      if (closed || key == null || !key.isValid())        return;      int ops = pending.isEmpty() ? SelectionKey.OP_READ        : SelectionKey.OP_READ | SelectionKey.OP_WRITE;      if (key.interestOps() != ops)      {        key.interestOps(ops);        key.selector().wakeup();      }    }    /**     * Called by the I/O thread when the socket has bytes to read.     * Decodes and dispatches every message that is now complete.     */    void read(ByteBuffer buffer)    {      try      {        buffer.clear();        int count = socket.read(buffer);        if (count < 0)        {          client.channelException(new EOFException("Connection closed by client"));          return;        }        buffer.flip();        append(buffer);        decode();      }      catch (Exception exception)      {        client.channelException(exception);      }    }    /**     * Appends the bytes just read to the input buffer.     */    private void append(ByteBuffer buffer)    {      int count = buffer.remaining();      if (inputEnd + count > input.length)      {        int used = inputEnd - inputStart;        byte[] target = input;        if (used + count > input.length)          target = new byte[Math.max(input.length * 2, used + count)];        System.arraycopy(input, inputStart, target, 0, used);        input = target;        inputStart = 0;        inputEnd = used;      }      buffer.get(input, inputEnd, count);      inputEnd += count;    }    /**     * Decodes every complete message in the input buffer.     */    private void decode() throws IOException, ClassNotFoundException    {      if (!headerRead)      {        if (inputEnd - inputStart < STREAM_HEADER.length)          return;        for (int i = 0; i < STREAM_HEADER.length; i++)        {          if (input[inputStart + i] != STREAM_HEADER[i])            throw new StreamCorruptedException("invalid stream header");        }        inputStart += STREAM_HEADER.length;        headerRead = true;      }      while (!closed)      {        // Skip the reset written after each message        while (inputStart < inputEnd && input[inputStart] == TC_RESET)          inputStart++;        if (inputStart == inputEnd)        {          inputStart = inputEnd = 0;          // Give back the memory of an unusually large message          if (input.length > 64 * 1024)            input = new byte[INITIAL_INPUT_BYTES];          return;        }        MessageInput message = new MessageInput(input, inputStart, inputEnd);        Object msg;        try        {          msg = new ObjectInputStream(message).readObject();        }        catch (IOException exception)        {          // Depending on where the bytes stop, ObjectInputStream reports          // a partial message with different exceptions, so ask the          // input whether it ran out of bytes instead          if (!message.isExhausted())            throw exception;          // The rest of the message has not arrived yet          if (inputEnd - inputStart > MAX_MESSAGE_BYTES)            throw new StreamCorruptedException("message too large");          return;        }        inputStart = message.position();        client.messageReceived(msg);      }    }  }  /**   * Reads the bytes of one message, preceded by a stream header so a   * fresh ObjectInputStream can decode it. Every message starts   * with fresh handles (the client resets its stream after each   * message), so one ObjectInputStream per message decodes it the   * same way the long-lived stream of ConnectionToClient does.<p>   *   * Reading past the bytes received so far throws an IOException   * and marks the input as exhausted.   */  private static final class MessageInput extends InputStream  {    private final byte[] buffer;    private final int end;    private int position;    private int headerPosition = 0;    private boolean exhausted = false;    MessageInput(byte[] buffer, int start, int end)    {      this.buffer = buffer;      this.position = start;      this.end = end;    }    /**     * @return the index in the buffer of the next byte not read.     */    int position()    {      return position;    }    /**     * @return true if the decoder asked for more bytes than received.     */    boolean isExhausted()    {      return exhausted;    }    private IOException incomplete()    {      exhausted = true;      return new EOFException("incomplete message");    }    public int read() throws IOException    {      if (headerPosition < STREAM_HEADER.length)        return STREAM_HEADER[headerPosition++] & 0xFF;      if (position >= end)        throw incomplete();      return buffer[position++] & 0xFF;    }    public int read(byte[] b, int off, int len) throws IOException    {      if (len == 0)        return 0;      if (headerPosition < STREAM_HEADER.length)      {        int count = Math.min(len, STREAM_HEADER.length - headerPosition);        System.arraycopy(STREAM_HEADER, headerPosition, b, off, count);        headerPosition += count;        return count;      }      if (position >= end)        throw incomplete();      int count = Math.min(len, end - position);      System.arraycopy(buffer, position, b, off, count);      position += count;      return count;    }    public int available()    {      return (STREAM_HEADER.length - headerPosition) + (end - position);    }  }}// End of NioServerTransport class
\ No newline at end of file
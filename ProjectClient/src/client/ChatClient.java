@@ -7,6 +7,7 @@ package client;
 import ocsf.client.*;
 import common.ChatIF;
 import common.MyFile;
+import common.WireProtocol;
 import guiSignIn.SignInController;
 import javafx.application.Platform;
 import logic.Order;
@@ -16,6 +17,16 @@ import java.io.*;
 import java.sql.Date;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@code ChatClient} class extends {@link AbstractClient} to implement
@@ -52,10 +63,77 @@ public class ChatClient extends AbstractClient {
   public static Subscriber sub = new Subscriber();
 
   /**
-   * A flag indicating whether the client is currently awaiting a server response.
-   * Used to synchronize message sending and receiving.
+   * Last free-spot count pushed by the server, or -1 until the open page has received one.
+   * Only read and written on the JavaFX thread.
    */
-  public static boolean awaitResponse = false;
+  public static int availableSpots = -1;
+
+  /**
+   * Page subscribed to free-spot pushes ("Away" or "Termenal"), subscribed again after a reconnect.
+   */
+  private volatile String availabilityPage = null;
+
+  /**
+   * How long {@link #request(ArrayList)} waits for the server's reply before failing the request.
+   */
+  public static final long DEFAULT_REQUEST_TIMEOUT_MS = Long.getLong("bpark.client.requestTimeoutMs", 15000);
+
+  /**
+   * Source of request IDs; wraps around before reaching 0, which means "no request".
+   */
+  private final AtomicInteger nextRequestId = new AtomicInteger();
+
+  /**
+   * Requests waiting for their reply, by request ID. Ordered so that replies from a legacy server,
+   * which carry no ID, answer the oldest request.
+   */
+  private final ConcurrentSkipListMap<Integer, CompletableFuture<Object>> pending = new ConcurrentSkipListMap<>();
+
+  /**
+   * Connects and sends on its own thread, so a request never blocks the JavaFX thread.
+   */
+  private final ExecutorService sender = Executors.newSingleThreadExecutor(task -> {
+    Thread t = new Thread(task, "client-sender");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /**
+   * How long to wait for the server to answer the {@link WireProtocol} hello before staying on the
+   * legacy format.
+   */
+  private static final long WIRE_HELLO_TIMEOUT_MS = 2000;
+
+  /**
+   * True while the {@link WireProtocol} hello sent on connect has not been answered.
+   */
+  private volatile boolean wireHelloPending = false;
+
+  /**
+   * True once the server accepted the {@link WireProtocol}; commands are then sent as frames.
+   */
+  private volatile boolean wireProtocol = false;
+
+  /**
+   * Report images arriving in chunks, by transfer ID. Kept across reconnects so they can be resumed.
+   */
+  private final Map<Long, ReportDownload> downloads = new ConcurrentHashMap<>();
+
+  /**
+   * Wait before the second attempt to reconnect after the connection was lost; doubled after each
+   * failed attempt, up to {@link #RECONNECT_MAX_DELAY_MS}.
+   */
+  private static final long RECONNECT_DELAY_MS = Long.getLong("bpark.client.reconnectDelayMs", 1000);
+
+  /**
+   * Longest wait between two attempts to reconnect.
+   */
+  private static final long RECONNECT_MAX_DELAY_MS = Long.getLong("bpark.client.reconnectMaxDelayMs", 30000);
+
+  /**
+   * True while a reconnect is scheduled or running, so a lost connection starts only one.
+   */
+  private final AtomicBoolean reconnecting = new AtomicBoolean();
 
   // Constructors ****************************************************
 
@@ -71,21 +149,132 @@ public class ChatClient extends AbstractClient {
   public ChatClient(String host, int port, ChatIF clientUI) throws IOException {
     super(host, port);
     this.clientUI = clientUI;
+    wireHelloPending = true;
     openConnection(); // Open the socket connection
+    awaitWireHello();
   }
 
   // Instance methods ************************************************
 
+  /**
+   * Called by the framework when the connection is open.
+   * Asks the server for the binary {@link WireProtocol}; the answer is handled in
+   * {@link #handleMessageFromServer(Object)}.
+   */
+  @Override
+  protected void connectionEstablished() {
+    wireProtocol = false;
+    wireHelloPending = true;
+    ArrayList<String> hello = new ArrayList<>();
+    hello.add(WireProtocol.HELLO_COMMAND);
+    hello.add(Integer.toString(WireProtocol.VERSION));
+    try {
+      sendToServer(hello);
+    } catch (IOException e) {
+      wireHelloPending = false;
+    }
+  }
+
+  /**
+   * Waits (up to {@link #WIRE_HELLO_TIMEOUT_MS}) for the server to answer the hello, so the
+   * answer is never mistaken for the reply to a real command.
+   */
+  private void awaitWireHello() {
+    long deadline = System.currentTimeMillis() + WIRE_HELLO_TIMEOUT_MS;
+    while (wireHelloPending && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    wireHelloPending = false;
+  }
+
+  /**
+   * Sends a command in the format negotiated with the server.
+   * Synchronized because acks for report chunks are sent from the reader thread.
+   *
+   * @param message the command and its arguments
+   * @throws IOException if the message can't be sent
+   */
+  private synchronized void sendCommand(ArrayList<String> message) throws IOException {
+    sendCommand(0, message);
+  }
+
+  /**
+   * Sends a command in the format negotiated with the server, with a request ID the
+   * server echoes in its replies (the ID is dropped on the legacy format).
+   *
+   * @param requestId the request ID, or 0 for none
+   * @param message   the command and its arguments
+   * @throws IOException if the message can't be sent
+   */
+  private synchronized void sendCommand(int requestId, ArrayList<String> message) throws IOException {
+    if (!wireProtocol) {
+      sendToServer(message);
+    } else if (requestId > 0) {
+      sendToServer(WireProtocol.encodeRequest(requestId, message));
+    } else {
+      sendToServer(WireProtocol.encodeCommand(message));
+    }
+  }
+
   /**
    * Handles a message received from the server. The message can be either a String
    * or a custom object (e.g., {@code MyFile}). This method determines the message
-   * type and dispatches it to the appropriate controller in the UI.
+   * type and dispatches it to the appropriate controller in the UI, then completes the
+   * request it answers.
    *
    * @param msg The message object received from the server.
    */
   public void handleMessageFromServer(Object msg) {
-    awaitResponse = false;
+    // Answer to the hello sent on connect: a HELLO frame from a new server, an error text from an old one
+    if (wireHelloPending) {
+      wireProtocol = msg instanceof byte[] && WireProtocol.opcodeOf((byte[]) msg) == WireProtocol.OP_HELLO;
+      if (wireProtocol) {
+        requestReportStreaming();
+        if (availabilityPage != null) {
+          try {
+            sendCommand(new ArrayList<>(Arrays.asList("SUBSCRIBE_AVAILABILITY", availabilityPage)));
+          } catch (IOException e) {
+            System.out.println("Could not subscribe to available spots: " + e.getMessage());
+          }
+        }
+      }
+      wireHelloPending = false;
+      return;
+    }
+
+    // Piece of a report image: only the first piece of a transfer answers the request
+    if (msg instanceof byte[] && WireProtocol.opcodeOf((byte[]) msg) == WireProtocol.OP_CHUNK) {
+      handleReportChunk((byte[]) msg);
+      return;
+    }
+
+    // Binary reply frame: decode to the same text a legacy server would have sent
+    int requestId = 0;
+    if (msg instanceof byte[]) {
+      requestId = WireProtocol.requestIdOf((byte[]) msg);
+      try {
+        msg = WireProtocol.decodeReply((byte[]) msg);
+      } catch (IOException e) {
+        System.out.println("Received malformed frame from server: " + e.getMessage());
+        return;
+      }
+    }
 
+    dispatchToControllers(msg);
+    completeRequest(requestId, msg);
+  }
+
+  /**
+   * Routes a decoded server message to the controller it is addressed to.
+   *
+   * @param msg a {@link MyFile} report or a reply text
+   */
+  private void dispatchToControllers(Object msg) {
     // File message (MyFile): used to send images for reports
     if (msg instanceof MyFile) {
         MyFile file = (MyFile) msg;
@@ -163,11 +352,17 @@ public class ChatClient extends AbstractClient {
 
                     switch (func) {
                         case "SHOW_ACTIVE_PARKINGSPOT":
-                        case "SUBSCRIBERS_VIEW":
                             if (ClientUI.ManagerFrameController != null) {
                                 ClientUI.ManagerFrameController.displayMsg(data);
                             }
                             break;
+
+                        case "SUBSCRIBERS_PAGE":
+                            if (ClientUI.ManagerFrameController != null && parts.size() >= 4) {
+                                ClientUI.ManagerFrameController.displaySubscribersPage(parts.get(2), parts.get(3),
+                                        String.join(" ", parts.subList(4, parts.size())).trim());
+                            }
+                            break;
                     }
                     break;
                 }
@@ -186,7 +381,7 @@ public class ChatClient extends AbstractClient {
                             }
                             break;
 
-                        case "SUBSCRIBERS_VIEW":
+                        case "SUBSCRIBERS_PAGE":
                         case "SHOW_ACTIVE_PARKINGSPOT":
                         case "ERROR_SUBSCRIBER_ALREADY_HAS_TAG":
                         case "ERROR_NO_SUCH_SUBSCRIBER":
@@ -197,7 +392,7 @@ public class ChatClient extends AbstractClient {
                             }
                             break;
                             
-                        case "ShowHistory":
+                        case "HistoryPage":
                         	 ClientUI.usherFrameController.display(func + " " + data);
                         break;
                         
@@ -251,9 +446,9 @@ public class ChatClient extends AbstractClient {
                             ClientUI.subscriberAwayController.display(status);
                             break;
 
-                        case "SHOW_SUBSCRIBER_HISTORY": {
-                            String history = String.join(" ", parts.subList(2, parts.size())).trim();
-                            ClientUI.subscriberAwayController.displayHistory(history);
+                        case "HISTORY_PAGE": {
+                            String history = String.join(" ", parts.subList(4, parts.size())).trim();
+                            ClientUI.subscriberAwayController.displayHistoryPage(parts.get(2), parts.get(3), history);
                             break;
                         }
 
@@ -276,6 +471,13 @@ public class ChatClient extends AbstractClient {
                         case "NO_ACTIVE_PARKING":
                             ClientUI.subscriberAwayController.display(status.replace('_', ' '));
                             break;
+
+                        case "AVAILABLE_SPOTS":
+                            availableSpots = Integer.parseInt(parts.get(2).trim());
+                            if (ClientUI.subscriberAwayController != null) {
+                                ClientUI.subscriberAwayController.updateAvailableSpots(availableSpots);
+                            }
+                            break;
                     }
                     break;
                 }
@@ -305,9 +507,9 @@ public class ChatClient extends AbstractClient {
                             break;
                         }
 
-                        case "SHOW_SUBSCRIBER_HISTORY":
-                            String history = String.join(" ", parts.subList(2, parts.size()));
-                            ClientUI.SubscriberTermenalPageController.displayHistory(history);
+                        case "HISTORY_PAGE":
+                            String history = String.join(" ", parts.subList(4, parts.size()));
+                            ClientUI.SubscriberTermenalPageController.displayHistoryPage(parts.get(2), parts.get(3), history);
                             break;
 
                         case "GET_PARKING_STATUS_SUCCESS":
@@ -331,6 +533,13 @@ public class ChatClient extends AbstractClient {
                         case "NO_CAR_TO_RETRIEVE":
                             ClientUI.SubscriberTermenalPageController.display("Error NO_CAR_TO_RETRIEVE");
                             break;
+
+                        case "AVAILABLE_SPOTS":
+                            availableSpots = Integer.parseInt(parts.get(2).trim());
+                            if (ClientUI.SubscriberTermenalPageController != null) {
+                                ClientUI.SubscriberTermenalPageController.updateAvailableSpots(availableSpots);
+                            }
+                            break;
                     }
                     break;
                 }
@@ -353,72 +562,273 @@ public class ChatClient extends AbstractClient {
   }
 
   /**
-   * Sends a message from the UI and waits for the server to respond.
+   * Asks the server to send report images in chunks, and to go on with the transfers that were
+   * interrupted by a lost connection.
+   */
+  private void requestReportStreaming() {
+    try {
+      sendCommand(new ArrayList<>(Arrays.asList(WireProtocol.STREAMING_COMMAND)));
+      for (ReportDownload download : downloads.values()) {
+        sendCommand(new ArrayList<>(Arrays.asList(WireProtocol.RESUME_COMMAND,
+            Long.toString(download.getTransferId()), Integer.toString(download.getReceived()))));
+      }
+    } catch (IOException e) {
+      System.out.println("Could not ask for chunked reports: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Adds a chunk to its {@link ReportDownload}, starts decoding on the first chunk and acknowledges
+   * it so the server sends the next ones.
+   *
+   * @param frame the chunk frame
+   */
+  private void handleReportChunk(byte[] frame) {
+    WireProtocol.Chunk chunk;
+    try {
+      chunk = WireProtocol.decodeChunk(frame);
+    } catch (IOException e) {
+      System.out.println("Received malformed report chunk: " + e.getMessage());
+      return;
+    }
+
+    ReportDownload download = downloads.get(chunk.transferId);
+    if (download == null) {
+      if (chunk.offset != 0) {
+        return; // rest of a transfer this client has already given up on
+      }
+      download = new ReportDownload(chunk);
+      downloads.put(chunk.transferId, download);
+      completeRequest(chunk.requestId, chunk.command);
+      final long transferId = chunk.transferId;
+      download.startDecoding(
+          image -> {
+            downloads.remove(transferId);
+            Platform.runLater(() -> {
+              if (ClientUI.ManagerFrameController != null) {
+                ClientUI.ManagerFrameController.displayReportImage(image);
+              }
+            });
+          },
+          () -> {
+            downloads.remove(transferId);
+            Platform.runLater(() -> {
+              if (ClientUI.ManagerFrameController != null) {
+                ClientUI.ManagerFrameController.displayMsg("Failed to display visual report image.");
+              }
+            });
+          });
+    }
+
+    if (download.append(chunk)) {
+      try {
+        sendCommand(new ArrayList<>(Arrays.asList(WireProtocol.CHUNK_ACK_COMMAND,
+            Long.toString(chunk.transferId), Integer.toString(download.getReceived()))));
+      } catch (IOException e) {
+        // Connection lost: the transfer is resumed after the next reconnect
+      }
+    }
+  }
+
+  /**
+   * Completes the request a server message answers.
+   * Messages from a {@link WireProtocol} server without an ID were not asked for and complete nothing;
+   * a legacy server sends no IDs at all, so its messages answer the oldest pending request.
+   *
+   * @param requestId the ID the message carried, or 0
+   * @param reply     the decoded message
+   */
+  private void completeRequest(int requestId, Object reply) {
+    CompletableFuture<Object> future = null;
+    if (requestId > 0) {
+      future = pending.remove(requestId);
+    } else if (!wireProtocol) {
+      Map.Entry<Integer, CompletableFuture<Object>> oldest = pending.pollFirstEntry();
+      future = oldest != null ? oldest.getValue() : null;
+    }
+    if (future != null) {
+      future.complete(reply);
+    }
+  }
+
+  /**
+   * Sends a command without waiting for it, with the default timeout.
+   *
+   * @param message the command and its arguments
+   * @return completed with the reply ({@code String}, {@link MyFile}, or the controller command of a chunked
+   *         report) once the server answers, or exceptionally on timeout or connection failure
+   * @see #request(ArrayList, long)
+   */
+  public CompletableFuture<Object> request(ArrayList<String> message) {
+    return request(message, DEFAULT_REQUEST_TIMEOUT_MS);
+  }
+
+  /**
+   * Sends a command without waiting for it. The command is tagged with a request ID that the server
+   * echoes, so several requests can be in flight and each reply completes its own future. The reply
+   * is also routed to the controllers as before; the future is for callers that need to know when
+   * (or whether) the answer came.
+   *
+   * @param message   the command and its arguments
+   * @param timeoutMs how long to wait for the reply
+   * @return completed with the reply once the server answers, or exceptionally with a
+   *         {@link java.util.concurrent.TimeoutException} or the {@link IOException} that stopped the send
+   */
+  public CompletableFuture<Object> request(ArrayList<String> message, long timeoutMs) {
+    int requestId = nextRequestId.updateAndGet(id -> id == Integer.MAX_VALUE ? 1 : id + 1);
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    pending.put(requestId, future);
+    future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+        .whenComplete((reply, error) -> pending.remove(requestId, future));
+
+    sender.execute(() -> {
+      try {
+        ensureConnected();
+        sendCommand(requestId, message);
+      } catch (IOException e) {
+        future.completeExceptionally(e);
+        sendFailed(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Sends a command the server doesn't answer (e.g. {@code LOGOUT}) without waiting for it.
+   *
+   * @param message the command and its arguments
+   */
+  public void send(ArrayList<String> message) {
+    sender.execute(() -> {
+      try {
+        ensureConnected();
+        sendCommand(message);
+      } catch (IOException e) {
+        sendFailed(e);
+      }
+    });
+  }
+
+  /**
+   * Asks the server to push the free-spot count to a page whenever it changes, so the page can show it
+   * without asking. Only servers that speak the {@link WireProtocol} know the command; with older ones
+   * the page keeps asking with {@code Check_Avilable_Spots}.
+   *
+   * @param page "Away" or "Termenal"
+   */
+  public void subscribeAvailability(String page) {
+    availableSpots = -1;
+    availabilityPage = page;
+    sender.execute(() -> {
+      try {
+        ensureConnected();
+        if (wireProtocol) {
+          request(new ArrayList<>(Arrays.asList("SUBSCRIBE_AVAILABILITY", page)));
+        }
+      } catch (IOException e) {
+        sendFailed(e);
+      }
+    });
+  }
+
+  /**
+   * Opens the connection if it was closed and waits for the hello answer.
+   */
+  private void ensureConnected() throws IOException {
+    if (!isConnected()) {
+      wireHelloPending = true; // set before the reader thread starts, so the hello answer is awaited
+    }
+    openConnection();
+    awaitWireHello();
+  }
+
+  private void sendFailed(IOException e) {
+    clientUI.display("Could not send message to server: " + e.getMessage());
+    if (!isConnected()) {
+      reconnect(null);
+    }
+  }
+
+  /**
+   * Sends a text message from the UI. The server's answer is routed to the controllers like any other.
    *
    * @param message The message string entered by the user.
    */
   public void handleMessageFromClientUI(String message) {
     try {
-      openConnection(); // Ensure connection is open before sending
-      awaitResponse = true;
-      sendToServer(message); // Send message to server
-
-      // Wait for the server to respond before continuing
-      while (awaitResponse) {
-        try {
-          Thread.sleep(100); // Wait loop
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
+      ensureConnected();
+      synchronized (this) {
+        sendToServer(message); // Send message to server
       }
     } catch (IOException e) {
-      e.printStackTrace();
-      clientUI.display("Could not send message to server: Terminating client." + e);
-      quit(); // Close client if sending fails
+      sendFailed(e);
     }
   }
 
   /**
    * Sends a list-based message to the server and waits for a response.
+   * Controllers use {@link #request(ArrayList)}, which doesn't block the calling thread.
    *
    * @param message A list of strings to send to the server.
    */
   public void handleMessageArrayFromClientUI(ArrayList<String> message) {
     try {
-      openConnection(); // Ensure connection is open before sending
-      awaitResponse = true;
-      sendToServer(message); // Send message to server
-
-      // Wait for the server to respond before continuing
-      while (awaitResponse) {
-        try {
-          Thread.sleep(100); // Wait loop
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-      clientUI.display("Could not send array message to server: Terminating client." + e);
-      quit(); // Close client if sending fails
+      request(message).join();
+    } catch (CompletionException e) {
+      System.out.println("No reply from server: " + e.getCause());
     }
   }
 
   /**
    * Called when an exception is thrown while trying to communicate with the server.
-   * Displays an error and terminates the client after 5 seconds.
+   * Fails the requests waiting for a reply and reconnects; report images still downloading are
+   * resumed and the free-spot subscription renewed once the server answers the hello.
    *
    * @param exception The exception encountered.
    */
   @Override
   protected void connectionException(Exception exception) {
-    clientUI.display("Lost connection to the server.");
-    try {
-      Thread.sleep(5000); // Wait 5 seconds before exiting
-    } catch (InterruptedException e) {
-      e.printStackTrace();
+    IOException lost = new IOException("Lost connection to the server.", exception);
+    for (CompletableFuture<Object> future : pending.values()) {
+      future.completeExceptionally(lost);
     }
-    quit();
+    clientUI.display("Lost connection to the server. Reconnecting...");
+    reconnect(Thread.currentThread());
+  }
+
+  /**
+   * Reconnects on the sender thread, retrying with a growing delay until the server is back.
+   * Requests sent meanwhile wait behind the reconnect (or time out).
+   *
+   * @param lostReader the reader thread of the lost connection, or null if there is none; the client
+   *                   counts as connected until it has ended
+   */
+  private void reconnect(Thread lostReader) {
+    if (!reconnecting.compareAndSet(false, true)) {
+      return;
+    }
+    sender.execute(() -> {
+      try {
+        if (lostReader != null) {
+          lostReader.join();
+        }
+        long delay = RECONNECT_DELAY_MS;
+        while (true) {
+          try {
+            ensureConnected();
+            clientUI.display("Reconnected to the server.");
+            return;
+          } catch (IOException e) {
+            Thread.sleep(delay);
+            delay = Math.min(delay * 2, RECONNECT_MAX_DELAY_MS);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        reconnecting.set(false);
+      }
+    });
   }
 
   /**
@@ -6,6 +6,8 @@ package client;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import common.ChatIF;
 
@@ -76,6 +78,54 @@ public class ClientController implements ChatIF
 	    client.handleMessageArrayFromClientUI(str);
 	  }
 
+  /**
+   * Sends a command to the server without blocking the caller.
+   * The reply is routed to the controllers as usual; a request that fails or times out is reported here.
+   *
+   * @param message the command and its arguments
+   * @return completed with the server's reply, see {@link ChatClient#request(ArrayList)}
+   */
+  public CompletableFuture<Object> request(ArrayList<String> message) {
+    return client.request(message).whenComplete((reply, error) -> {
+      if (error != null) {
+        display("Request " + message.get(0) + " failed: " + error);
+      }
+    });
+  }
+
+  /**
+   * Sends several commands at once on the same connection. The server works on them in parallel
+   * and each reply is routed as soon as it arrives, in whatever order they finish.
+   *
+   * @param messages the commands
+   * @return completed when every command was answered (or failed)
+   */
+  public CompletableFuture<Void> requestAll(List<ArrayList<String>> messages) {
+    CompletableFuture<?>[] replies = new CompletableFuture<?>[messages.size()];
+    for (int i = 0; i < replies.length; i++) {
+      replies[i] = request(messages.get(i)).exceptionally(error -> null);
+    }
+    return CompletableFuture.allOf(replies);
+  }
+
+  /**
+   * Subscribes the page that just opened to free-spot pushes, see {@link ChatClient#subscribeAvailability(String)}.
+   *
+   * @param page "Away" or "Termenal"
+   */
+  public void subscribeAvailability(String page) {
+    client.subscribeAvailability(page);
+  }
+
+  /**
+   * Sends a command the server doesn't answer (e.g. LOGOUT) without blocking the caller.
+   *
+   * @param message the command and its arguments
+   */
+  public void send(ArrayList<String> message) {
+    client.send(message);
+  }
+
   /**
    * Implements the display method from ChatIF interface.
    * Displays a message on the client screen.
@@ -0,0 +1,144 @@
+package client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import common.WireProtocol;
+import javafx.scene.image.Image;
+
+/**
+ * A report image arriving in {@link WireProtocol#OP_CHUNK} frames.
+ *
+ * <p>
+ * The chunks are copied into a direct {@link ByteBuffer} sized for the whole image. As soon as the first
+ * chunk is in, a background thread starts decoding the image from an {@link InputStream} that reads the
+ * buffer and waits for the next chunk when it reaches the end of what has arrived, so decoding runs while
+ * the rest of the image is still on the wire. If no chunk arrives for {@link #STALL_TIMEOUT_MS} (e.g. the
+ * transfer could not be resumed after a reconnect), the stream fails and the download is dropped.
+ * </p>
+ */
+class ReportDownload {
+
+    /** How long the decoder waits for the next chunk before giving up. */
+    static final long STALL_TIMEOUT_MS = 60_000;
+
+    private final long transferId;
+    private final String command;
+    private final ByteBuffer buffer;
+
+    /** Bytes received from the start of the image; guarded by {@code this}. */
+    private int received = 0;
+    private long lastProgress = System.currentTimeMillis();
+
+    /**
+     * @param first the first chunk received for the transfer
+     */
+    ReportDownload(WireProtocol.Chunk first) {
+        this.transferId = first.transferId;
+        this.command = first.command;
+        this.buffer = ByteBuffer.allocateDirect(first.totalLength);
+    }
+
+    long getTransferId() {
+        return transferId;
+    }
+
+    String getCommand() {
+        return command;
+    }
+
+    synchronized int getReceived() {
+        return received;
+    }
+
+    synchronized boolean isComplete() {
+        return received == buffer.capacity();
+    }
+
+    /**
+     * Adds a chunk. Chunks must arrive in order; a chunk that doesn't start where the data received so far
+     * ends (e.g. sent again after a resume) is ignored.
+     *
+     * @param chunk the chunk
+     * @return true if the chunk was added
+     */
+    synchronized boolean append(WireProtocol.Chunk chunk) {
+        if (chunk.offset != received || chunk.offset + chunk.data.length > buffer.capacity()) {
+            return false;
+        }
+        buffer.put(received, chunk.data);
+        received += chunk.data.length;
+        lastProgress = System.currentTimeMillis();
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Starts decoding on a background thread.
+     *
+     * @param onDecoded called with the image once it is decoded
+     * @param onFailed  called if the image can't be decoded or the transfer stalls
+     */
+    void startDecoding(Consumer<Image> onDecoded, Runnable onFailed) {
+        Thread decoder = new Thread(() -> {
+            Image image = new Image(new ChunkInputStream());
+            if (image.isError()) {
+                onFailed.run();
+            } else {
+                onDecoded.accept(image);
+            }
+        }, "report-decoder-" + Long.toHexString(transferId));
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    /**
+     * Reads the buffer up to the data received so far, waiting for more when needed.
+     */
+    private class ChunkInputStream extends InputStream {
+        private int position = 0;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            synchronized (ReportDownload.this) {
+                while (position == received) {
+                    if (received == buffer.capacity()) {
+                        return -1;
+                    }
+                    long wait = lastProgress + STALL_TIMEOUT_MS - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new IOException("Report transfer stalled at byte " + received);
+                    }
+                    try {
+                        ReportDownload.this.wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for report data");
+                    }
+                }
+                int n = Math.min(len, received - position);
+                buffer.get(position, b, off, n);
+                position += n;
+                return n;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (ReportDownload.this) {
+                return received - position;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.function.Function;
+
+import javafx.application.Platform;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.TextArea;
+
+/**
+ * Shows a long text list (a parking history, the subscriber listing) in a {@link TextArea}, one page at a time.
+ *
+ * <p>
+ * The server sends the list in pages, each with the token of the next page. The first page is shown as
+ * soon as it arrives; the next one is only asked for when the user scrolls near the bottom of the area
+ * (or if the page doesn't fill it), so opening a long list costs the same as opening a short one.
+ * </p>
+ *
+ * <p>
+ * All methods run on the JavaFX thread.
+ * </p>
+ */
+public class TextAreaPager {
+
+    /** History sessions asked for per page; the server caps it. */
+    public static final int HISTORY_PAGE_SIZE = Integer.getInteger("bpark.client.historyPageSize", 20);
+
+    /** Subscribers asked for per listing page; the server caps it. */
+    public static final int SUBSCRIBERS_PAGE_SIZE = Integer.getInteger("bpark.client.subscribersPageSize", 50);
+
+    /** Token of the first page. */
+    public static final String FIRST_PAGE = "-";
+
+    /** Next-page token sent with the last page. */
+    public static final String NO_MORE = "END";
+
+    /**
+     * Encodes a search typed by the user for a listing request. Base64 (URL alphabet, no padding) keeps
+     * spaces and a literal "-" from being taken for the message separator or the no-search marker.
+     *
+     * @param search the search as typed
+     * @return {@link #FIRST_PAGE} for an empty search, otherwise the encoded search
+     */
+    public static String encodeSearch(String search) {
+        String trimmed = search.trim();
+        return trimmed.isEmpty() ? FIRST_PAGE
+                : Base64.getUrlEncoder().withoutPadding().encodeToString(trimmed.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Share of the scroll range after which the next page is fetched. */
+    private static final double LOAD_AT = 0.9;
+
+    private final TextArea area;
+
+    /** Builds the request for the page after a token; null when no list is shown. */
+    private Function<String, ArrayList<String>> requestFor;
+    /** Token of the next page, or null if the last page is shown. */
+    private String next;
+    private boolean loading;
+
+    /**
+     * @param area the area the list is shown in
+     */
+    public TextAreaPager(TextArea area) {
+        this.area = area;
+        area.scrollTopProperty().addListener((obs, oldTop, newTop) -> loadMoreIfNearBottom());
+    }
+
+    /**
+     * Starts showing a list. The caller sends the returned request.
+     *
+     * @param requestFor builds the request for the page after a token ({@link #FIRST_PAGE} for the first)
+     * @return the request for the first page
+     */
+    public ArrayList<String> start(Function<String, ArrayList<String>> requestFor) {
+        this.requestFor = requestFor;
+        this.next = null;
+        this.loading = true;
+        return requestFor.apply(FIRST_PAGE);
+    }
+
+    /**
+     * Stops fetching pages, e.g. because the area now shows something else.
+     */
+    public void stop() {
+        requestFor = null;
+        next = null;
+        loading = false;
+    }
+
+    /**
+     * Shows a page received from the server.
+     *
+     * @param after token the page was asked for with
+     * @param next  token of the next page, or {@link #NO_MORE}
+     * @param text  the sessions of the page
+     */
+    public void onPage(String after, String next, String text) {
+        if (FIRST_PAGE.equals(after)) {
+            area.setText(text);
+        } else if (requestFor != null && after.equals(this.next)) {
+            if (!text.isEmpty()) {
+                // appendText moves the caret (and the view) to the end; keep the user where they are
+                int caret = area.getCaretPosition();
+                double top = area.getScrollTop();
+                area.appendText("\n" + text);
+                area.positionCaret(caret);
+                area.setScrollTop(top);
+            }
+        } else {
+            return; // a new list was started since
+        }
+        this.next = NO_MORE.equals(next) ? null : next;
+        this.loading = false;
+        // The page may not fill the area; check once it is laid out
+        Platform.runLater(this::loadMoreIfNearBottom);
+    }
+
+    private void loadMoreIfNearBottom() {
+        if (requestFor == null || next == null || loading || !area.isVisible()) {
+            return;
+        }
+        ScrollPane scroll = (ScrollPane) area.lookup(".scroll-pane");
+        if (scroll == null || scroll.getContent() == null) {
+            return; // not shown yet
+        }
+        boolean fills = scroll.getContent().getLayoutBounds().getHeight() > scroll.getViewportBounds().getHeight();
+        if (fills && scroll.getVvalue() < scroll.getVmin() + (scroll.getVmax() - scroll.getVmin()) * LOAD_AT) {
+            return;
+        }
+
+        loading = true;
+        ClientUI.chat.request(requestFor.apply(next)).whenComplete((reply, error) -> {
+            if (error != null) {
+                Platform.runLater(() -> loading = false);
+            }
+        });
+    }
+}
@@ -0,0 +1,550 @@
+package common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Compact binary encoding of the messages exchanged between client and server.
+ * A frame replaces the Java-serialized {@code ArrayList<String>} commands and the space-joined reply strings,
+ * so the message itself costs a few bytes instead of the {@code ArrayList} and {@code String} descriptors.
+ * </p>
+ *
+ * <p>
+ * The frame is still written with {@code ObjectOutputStream.writeObject(byte[])}, and OCSF resets the stream
+ * after every message, so each message also carries 24 bytes of serialization overhead: the reset marker,
+ * the array tag, the {@code [B} class descriptor and the array length (plus the 4-byte stream header once per
+ * connection). For example, {@code Check_Avilable_Spots} is a 3-byte frame and 27 bytes on the wire,
+ * against 78 bytes for the serialized {@code ArrayList}.
+ * </p>
+ *
+ * <p>
+ * Frame layout (all integers big-endian):
+ * </p>
+ * <pre>
+ *   version  : 1 byte  ({@link #VERSION})
+ *   opcode   : 1 byte  (one per command, see {@link #COMMANDS})
+ *   count    : varint  number of fields
+ *   fields   : count x (type tag : 1 byte, value)
+ *
+ *   STRING    : varint byte length + UTF-8 bytes
+ *   INT       : 4 bytes
+ *   TIMESTAMP : 8 bytes, "yyyy-MM-dd HH:mm:ss" as epoch seconds (UTC, no zone conversion)
+ * </pre>
+ *
+ * <p>
+ * The frames are sent as a {@code byte[]} through the existing OCSF connection. A client asks for the
+ * protocol by sending the legacy command {@code [WIRE_HELLO, version]}; a server that supports it answers
+ * with a {@link #OP_HELLO} frame and from then on both sides use frames for commands and text replies.
+ * Old servers answer the hello with an error text and old clients never send it, so both stay on the
+ * legacy format. A client that also sends {@link #STREAMING_COMMAND} gets report images as
+ * {@link #OP_CHUNK} frames instead of one serialized {@code MyFile}. Fields are typed automatically: a field is sent as an INT or TIMESTAMP only when it
+ * converts back to exactly the same text, so decoding always returns the original strings.
+ * </p>
+ *
+ * <p>
+ * A command can carry a request ID ({@link #encodeRequest}); the server then sends its replies as
+ * {@link #OP_RESPONSE} frames with the same ID, and the first chunk of a report with the ID in the chunk
+ * header, so the client can match replies to requests even when several are in flight.
+ * </p>
+ *
+ * <p>
+ * This class exists with the same content in the client and server projects.
+ * </p>
+ */
+public final class WireProtocol {
+
+    /** Current protocol version. */
+    public static final int VERSION = 1;
+
+    /** Legacy command a client sends to ask for the binary protocol. */
+    public static final String HELLO_COMMAND = "WIRE_HELLO";
+
+    /** Opcode of the server's answer to {@link #HELLO_COMMAND}. */
+    public static final int OP_HELLO = 0x01;
+
+    /** Opcode of a text reply from the server. */
+    public static final int OP_REPLY = 0x02;
+
+    /** Opcode of a command that has no opcode of its own; the command text is the first field. */
+    public static final int OP_OTHER = 0x03;
+
+    /** Opcode of one piece of a report image sent in chunks, see {@link #encodeChunk}. */
+    public static final int OP_CHUNK = 0x04;
+
+    /**
+     * Opcode of a command with a request ID:
+     * {@code version, OP_REQUEST, requestId : varint, opcode, count, fields} (the command frame without its version byte).
+     */
+    public static final int OP_REQUEST = 0x05;
+
+    /** Opcode of a text reply to a request: {@code version, OP_RESPONSE, requestId : varint, count, fields}. */
+    public static final int OP_RESPONSE = 0x06;
+
+    /** Command a client sends after the hello to receive report images as {@link #OP_CHUNK} frames. */
+    public static final String STREAMING_COMMAND = "REPORT_STREAMING";
+
+    /** Command acknowledging the chunks received so far: {@code [REPORT_CHUNK_ACK, transferId, receivedBytes]}. */
+    public static final String CHUNK_ACK_COMMAND = "REPORT_CHUNK_ACK";
+
+    /** Command asking, after a reconnect, for the rest of a transfer: {@code [REPORT_RESUME, transferId, receivedBytes]}. */
+    public static final String RESUME_COMMAND = "REPORT_RESUME";
+
+    /** Opcode of the first entry in {@link #COMMANDS}. */
+    private static final int FIRST_COMMAND_OPCODE = 0x10;
+
+    /**
+     * Commands with their own opcode, in opcode order. Only append to this list -
+     * changing the position of an entry changes its opcode.
+     */
+    private static final String[] COMMANDS = {
+        "LOGOUT",
+        "user sign in",
+        "user sign in away",
+        "worker sign in",
+        "tagreader sign in",
+        "SUBSCRIPTION_REPORT",
+        "Check_Avilable_Spots",
+        "Check_Avilable_Spots_Termenal",
+        "Get_ParkingCode_Termenal",
+        "PARKING_REPORT",
+        "GET_ACTIVE_PARKINGSPOT",
+        "GET_ALL_SUBSCRIBERS",
+        "ADD_TAG_READER",
+        "SHOW_SUBSCRIBER_HISTORY",
+        "ADD_SUB",
+        "Reserve",
+        "Forgot_Code",
+        "GET_HISTORY",
+        "Personal_Data",
+        "UPDATE_PERSONAL_DATA",
+        "Get_My_Parking_Status_Termenal",
+        "Check_Reserve",
+        "Retrieve_Car_Termenal",
+        "CHECK_ACTIVE_PARKING",
+        "EXTEND_PARKING",
+        STREAMING_COMMAND,
+        CHUNK_ACK_COMMAND,
+        RESUME_COMMAND,
+        "SUBSCRIBE_AVAILABILITY"
+    };
+
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            OPCODES.put(COMMANDS[i], FIRST_COMMAND_OPCODE + i);
+        }
+    }
+
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_TIMESTAMP = 'T';
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private WireProtocol() {
+    }
+
+    /**
+     * Encodes a command list ({@code [command, arg1, arg2, ...]}) as a frame.
+     *
+     * @param message the command and its arguments
+     * @return the frame bytes
+     */
+    public static byte[] encodeCommand(List<String> message) {
+        Integer opcode = message.isEmpty() ? null : OPCODES.get(message.get(0));
+        List<String> fields = opcode != null ? message.subList(1, message.size()) : message;
+        return encode(opcode != null ? opcode : OP_OTHER, fields);
+    }
+
+    /**
+     * Encodes a command list as a frame carrying a request ID.
+     *
+     * @param requestId the request ID the replies will carry (greater than 0)
+     * @param message   the command and its arguments
+     * @return the frame bytes
+     */
+    public static byte[] encodeRequest(int requestId, List<String> message) {
+        byte[] command = encodeCommand(message);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(command.length + 6);
+        out.write(VERSION);
+        out.write(OP_REQUEST);
+        writeVarInt(out, requestId);
+        out.write(command, 1, command.length - 1);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a command frame, with or without a request ID, back into the list the command handlers expect.
+     *
+     * @param frame the frame bytes
+     * @return {@code [command, arg1, arg2, ...]}
+     * @throws IOException if the frame is malformed or not a command
+     */
+    public static ArrayList<String> decodeCommand(byte[] frame) throws IOException {
+        ByteBuffer in = open(frame);
+        int opcode = in.get() & 0xFF;
+        if (opcode == OP_REQUEST) {
+            readVarInt(in);
+            if (!in.hasRemaining()) {
+                throw new StreamCorruptedException("Truncated frame");
+            }
+            opcode = in.get() & 0xFF;
+        }
+        ArrayList<String> message = new ArrayList<>();
+        if (opcode != OP_OTHER) {
+            int index = opcode - FIRST_COMMAND_OPCODE;
+            if (index < 0 || index >= COMMANDS.length) {
+                throw new StreamCorruptedException("Unknown opcode " + opcode);
+            }
+            message.add(COMMANDS[index]);
+        }
+        readFields(in, message);
+        return message;
+    }
+
+    /**
+     * Encodes a text reply as a frame.
+     *
+     * @param reply the reply text
+     * @return the frame bytes
+     */
+    public static byte[] encodeReply(String reply) {
+        List<String> fields = new ArrayList<>(1);
+        fields.add(reply);
+        return encode(OP_REPLY, fields);
+    }
+
+    /**
+     * Encodes a text reply to a request as a frame.
+     *
+     * @param requestId the ID of the request being answered, or 0 for an uncorrelated {@link #OP_REPLY}
+     * @param reply     the reply text
+     * @return the frame bytes
+     */
+    public static byte[] encodeReply(int requestId, String reply) {
+        if (requestId <= 0) {
+            return encodeReply(reply);
+        }
+        List<String> fields = new ArrayList<>(1);
+        fields.add(reply);
+        byte[] body = encode(OP_RESPONSE, fields);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 5);
+        out.write(body, 0, 2);
+        writeVarInt(out, requestId);
+        out.write(body, 2, body.length - 2);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a reply frame ({@link #OP_REPLY} or {@link #OP_RESPONSE}) back into the reply text.
+     *
+     * @param frame the frame bytes
+     * @return the reply text
+     * @throws IOException if the frame is malformed or not a reply
+     */
+    public static String decodeReply(byte[] frame) throws IOException {
+        ByteBuffer in = open(frame);
+        int opcode = in.get() & 0xFF;
+        if (opcode == OP_RESPONSE) {
+            readVarInt(in);
+        } else if (opcode != OP_REPLY) {
+            throw new StreamCorruptedException("Not a reply frame");
+        }
+        List<String> fields = new ArrayList<>(1);
+        readFields(in, fields);
+        return String.join(" ", fields);
+    }
+
+    /**
+     * @return the server's answer to {@link #HELLO_COMMAND}
+     */
+    public static byte[] encodeHello() {
+        List<String> fields = new ArrayList<>(1);
+        fields.add(Integer.toString(VERSION));
+        return encode(OP_HELLO, fields);
+    }
+
+    /**
+     * One piece of a report image, as decoded by {@link #decodeChunk(byte[])}.
+     */
+    public static final class Chunk {
+        /** Identifies the transfer; the client sends it back in acks and resume requests. */
+        public final long transferId;
+        /** The controller command of the whole file (e.g. "ManagerFrameController SHOW_PARKING_REPORT"). */
+        public final String command;
+        /** Size of the whole file. */
+        public final int totalLength;
+        /** Position of {@link #data} in the file. */
+        public final int offset;
+        /** The request that asked for the file, on the first chunk only; 0 otherwise. */
+        public final int requestId;
+        public final byte[] data;
+
+        Chunk(long transferId, String command, int totalLength, int offset, int requestId, byte[] data) {
+            this.transferId = transferId;
+            this.requestId = requestId;
+            this.command = command;
+            this.totalLength = totalLength;
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Encodes one piece of a file sent in chunks.
+     * <pre>
+     *   version, {@link #OP_CHUNK}, transferId : 8 bytes, totalLength : 4 bytes, offset : 4 bytes,
+     *   requestId : varint, command : varint length + UTF-8, data : varint length + bytes
+     * </pre>
+     *
+     * @param transferId  the transfer
+     * @param requestId   the request that asked for the file, or 0
+     * @param command     the controller command of the whole file
+     * @param file        the whole file
+     * @param offset      position of the piece in the file
+     * @param length      size of the piece
+     * @return the frame bytes
+     */
+    public static byte[] encodeChunk(long transferId, int requestId, String command, byte[] file, int offset, int length) {
+        byte[] commandBytes = command.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + commandBytes.length + length);
+        out.write(VERSION);
+        out.write(OP_CHUNK);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (transferId >>> shift));
+        }
+        for (int value : new int[] { file.length, offset }) {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+        writeVarInt(out, requestId);
+        writeVarInt(out, commandBytes.length);
+        out.write(commandBytes, 0, commandBytes.length);
+        writeVarInt(out, length);
+        out.write(file, offset, length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a chunk frame.
+     *
+     * @param frame the frame bytes
+     * @return the chunk
+     * @throws IOException if the frame is malformed or not a chunk
+     */
+    public static Chunk decodeChunk(byte[] frame) throws IOException {
+        ByteBuffer in = open(frame);
+        if ((in.get() & 0xFF) != OP_CHUNK) {
+            throw new StreamCorruptedException("Not a chunk frame");
+        }
+        try {
+            long transferId = in.getLong();
+            int totalLength = in.getInt();
+            int offset = in.getInt();
+            int requestId = readVarInt(in);
+            int commandLength = readVarInt(in);
+            String command = new String(in.array(), in.position(), commandLength, StandardCharsets.UTF_8);
+            in.position(in.position() + commandLength);
+            int length = readVarInt(in);
+            if (offset < 0 || length > in.remaining() || (long) offset + length > totalLength) {
+                throw new StreamCorruptedException("Chunk outside of its file");
+            }
+            byte[] data = new byte[length];
+            in.get(data);
+            return new Chunk(transferId, command, totalLength, offset, requestId, data);
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Truncated frame");
+        }
+    }
+
+    /**
+     * @param frame a message received from the other side
+     * @return the opcode of the frame, or -1 if it is not a frame of this protocol version
+     */
+    public static int opcodeOf(byte[] frame) {
+        if (frame.length < 2 || frame[0] != VERSION) {
+            return -1;
+        }
+        return frame[1] & 0xFF;
+    }
+
+    /**
+     * @param frame a message received from the other side
+     * @return the request ID of an {@link #OP_REQUEST} or {@link #OP_RESPONSE} frame, 0 for any other message
+     */
+    public static int requestIdOf(byte[] frame) {
+        int opcode = opcodeOf(frame);
+        if (opcode != OP_REQUEST && opcode != OP_RESPONSE) {
+            return 0;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(frame);
+            in.position(2);
+            return readVarInt(in);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param version the version a client asked for
+     * @return true if this side can speak that version
+     */
+    public static boolean isSupported(String version) {
+        return Integer.toString(VERSION).equals(version);
+    }
+
+    private static byte[] encode(int opcode, List<String> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + fields.size() * 8);
+        out.write(VERSION);
+        out.write(opcode);
+        writeVarInt(out, fields.size());
+        for (String field : fields) {
+            writeField(out, field == null ? "" : field);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeField(ByteArrayOutputStream out, String field) {
+        Integer number = asInt(field);
+        if (number != null) {
+            out.write(TYPE_INT);
+            int v = number;
+            out.write(v >>> 24);
+            out.write(v >>> 16);
+            out.write(v >>> 8);
+            out.write(v);
+            return;
+        }
+        Long seconds = asTimestamp(field);
+        if (seconds != null) {
+            out.write(TYPE_TIMESTAMP);
+            long v = seconds;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (v >>> shift));
+            }
+            return;
+        }
+        byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        out.write(TYPE_STRING);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void readFields(ByteBuffer in, List<String> fields) throws IOException {
+        int count = readVarInt(in);
+        try {
+            for (int i = 0; i < count; i++) {
+                byte type = in.get();
+                switch (type) {
+                    case TYPE_INT:
+                        fields.add(Integer.toString(in.getInt()));
+                        break;
+                    case TYPE_TIMESTAMP:
+                        fields.add(LocalDateTime.ofEpochSecond(in.getLong(), 0, ZoneOffset.UTC).format(TIMESTAMP_FORMAT));
+                        break;
+                    case TYPE_STRING: {
+                        int length = readVarInt(in);
+                        if (length > in.remaining()) {
+                            throw new StreamCorruptedException("Field longer than frame");
+                        }
+                        fields.add(new String(in.array(), in.position(), length, StandardCharsets.UTF_8));
+                        in.position(in.position() + length);
+                        break;
+                    }
+                    default:
+                        throw new StreamCorruptedException("Unknown field type " + type);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Truncated frame");
+        }
+    }
+
+    private static ByteBuffer open(byte[] frame) throws IOException {
+        if (frame.length < 3 || frame[0] != VERSION) {
+            throw new StreamCorruptedException("Unsupported frame version");
+        }
+        ByteBuffer in = ByteBuffer.wrap(frame);
+        in.get();
+        return in;
+    }
+
+    /**
+     * @return the value if the text is exactly the canonical form of an int, otherwise null
+     */
+    private static Integer asInt(String field) {
+        int length = field.length();
+        if (length == 0 || length > 11) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = field.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c == '-' && i == 0)) {
+                return null;
+            }
+        }
+        try {
+            int value = Integer.parseInt(field);
+            return Integer.toString(value).equals(field) ? value : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return epoch seconds if the text is exactly a "yyyy-MM-dd HH:mm:ss" timestamp, otherwise null
+     */
+    private static Long asTimestamp(String field) {
+        if (field.length() != 19 || field.charAt(10) != ' ') {
+            return null;
+        }
+        try {
+            LocalDateTime time = LocalDateTime.parse(field, TIMESTAMP_FORMAT);
+            return time.format(TIMESTAMP_FORMAT).equals(field) ? time.toEpochSecond(ZoneOffset.UTC) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new StreamCorruptedException("Truncated frame");
+            }
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new StreamCorruptedException("Negative length");
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+}
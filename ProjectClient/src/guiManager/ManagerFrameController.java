@@ -11,11 +11,14 @@ import javafx.scene.control.Button;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import client.ClientUI;
+import client.TextAreaPager;
 import gui.SceneNavigator;
 import javafx.event.ActionEvent;
 
@@ -47,6 +50,17 @@ public class ManagerFrameController {
     @FXML private TextField txtSubscriptionInput;
     @FXML private javafx.scene.control.TextArea txtReportOutput;
 
+    /** Fetches the subscriber listing into {@link #txtReportOutput} page by page as the manager scrolls. */
+    private TextAreaPager pager;
+
+    /**
+     * Sets up the pager on the output area.
+     */
+    @FXML
+    private void initialize() {
+        pager = new TextAreaPager(txtReportOutput);
+    }
+
     /**
      * Handles user logout from the Manager frame.
      *
@@ -62,18 +76,12 @@ public class ManagerFrameController {
     	  ArrayList<String> msg = new ArrayList<>();
           msg.add("LOGOUT");
 
-          // Run in background thread to avoid freezing UI
-          new Thread(() -> {
-              try {
-                  if (ClientUI.chat != null) {
-                      ClientUI.chat.acceptArray(msg);
-                  } else {
-                      System.out.println("ClientUI.chat is null.");
-                  }
-              } catch (Exception e) {
-                  e.printStackTrace(); // just in case
-              }
-          }).start();
+          // The server doesn't answer LOGOUT; send it without waiting
+          if (ClientUI.chat != null) {
+              ClientUI.chat.send(msg);
+          } else {
+              System.out.println("ClientUI.chat is null.");
+          }
 
           // Continue immediately with scene change
           Stage stage = (Stage) btnLogout.getScene().getWindow();
@@ -104,7 +112,7 @@ public class ManagerFrameController {
         msg.add("PARKING_REPORT");
         msg.add(parkingInput);
 
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(msg);
     }
 
     /**
@@ -137,7 +145,7 @@ public class ManagerFrameController {
         msg.add(subscriptionInput);
         msg.add(dateInput);
 
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(msg);
     }
 
     /**
@@ -155,7 +163,7 @@ public class ManagerFrameController {
         ArrayList<String> msg = new ArrayList<>();
         msg.add("GET_ACTIVE_PARKINGSPOT");
 
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(msg);
     }
 
     /**
@@ -165,24 +173,42 @@ public class ManagerFrameController {
      * @author Amit_Regev
      */
     public void displayMsg(String reportText) {
+        pager.stop(); // the output area shows something else now
         txtReportOutput.setText(reportText);
     }
 
     /**
-     * Sends a request to the server to fetch all subscribers.
+     * Displays a page of the subscriber list in the report output text area.
+     *
+     * @param after token the page was asked for with
+     * @param next  token of the next page
+     * @param rows  the subscribers, one per line
+     */
+    public void displaySubscribersPage(String after, String next, String rows) {
+        pager.onPage(after, next, rows);
+    }
+
+    /**
+     * Sends a request to the server to fetch the subscribers, page by page.
      * 
      * <p>Triggered by a dedicated "Get Parking Subscribers" button in the manager UI.
+     * An optional search (start of an ID, name, phone or email) narrows the list, which is sorted by name.
      *
      * @param event the ActionEvent triggered by the button click
      */
     @FXML
     public void onGetParkingSubcsribersClicked(ActionEvent event) {
-        lblError.setText("Fetching all subscribers...");
-
-        ArrayList<String> msg = new ArrayList<>();
-        msg.add("GET_ALL_SUBSCRIBERS");
-
-        ClientUI.chat.acceptArray(msg);
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Subscribers");
+        dialog.setHeaderText("Search Subscribers");
+        dialog.setContentText("Start of ID, name, phone or email (empty for all):");
+
+        dialog.showAndWait().ifPresent(search -> {
+            String prefix = TextAreaPager.encodeSearch(search);
+            lblError.setText("Fetching subscribers...");
+            ClientUI.chat.request(pager.start(after -> new ArrayList<>(Arrays.asList(
+                    "GET_ALL_SUBSCRIBERS", prefix, "name", after, String.valueOf(TextAreaPager.SUBSCRIBERS_PAGE_SIZE)))));
+        });
     }
 
     /**
@@ -196,8 +222,20 @@ public class ManagerFrameController {
     public void displayReportImage(byte[] imageBytes) {
         try {
             ByteArrayInputStream bis = new ByteArrayInputStream(imageBytes);
-            Image fxImage = new Image(bis);
+            displayReportImage(new Image(bis));
+        } catch (Exception e) {
+            lblError.setText("Failed to display visual report image.");
+        }
+    }
 
+    /**
+     * Displays an already decoded report image in a popup window.
+     * Used for reports received in chunks, which are decoded while they arrive.
+     *
+     * @param fxImage The decoded image.
+     */
+    public void displayReportImage(Image fxImage) {
+        try {
             ImageView imageView = new ImageView(fxImage);
             imageView.setFitWidth(500);
             imageView.setPreserveRatio(true);
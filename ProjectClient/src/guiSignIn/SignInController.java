@@ -111,7 +111,7 @@ public class SignInController {
         ArrayList<String> msg = new ArrayList<>();
         msg.add("tagreader sign in");
         msg.add(tagReaderId);
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(msg);
     }
 
     /** Displays subscriber login section */
@@ -139,7 +139,7 @@ public class SignInController {
         str.add("worker sign in");
         str.add(txtManagerSignIn.getText());
         str.add("1"); // Manager role
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
     }
 
     /** Sends user sign in request (terminal) */
@@ -152,7 +152,7 @@ public class SignInController {
         str.add(userID);
         str.add(userName);
         ClientUI.loggedInUserID = userID;
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
     }
 
     /** Sends away user sign in request (not from terminal) */
@@ -165,7 +165,7 @@ public class SignInController {
         str.add(userID);
         str.add(userName);
         ClientUI.loggedInUserID = userID;
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
     }
 
     /** Sends usher sign in request to server */
@@ -175,7 +175,7 @@ public class SignInController {
         str.add("worker sign in");
         str.add(txtUsherSignIn.getText());
         str.add("0"); // Usher role
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
     }
 
     /**
@@ -242,9 +242,12 @@ public class SignInController {
             try {
                 if (message.equals("SIGN_IN_SUCCESS USERAway")) {
                     loadPage("/guiUser/SubscriberAwayPage.fxml", "/guiUser/SubscriberAwayPage.css", "User Dashboard(Away)", "subscriberAwayController");
+                    ClientUI.subscriberAwayController.preload();
+                    ClientUI.chat.subscribeAvailability("Away");
                     closeCurrentWindow();
                 } else if (message.equals("SIGN_IN_SUCCESS USERTermenal")) {
                     loadPage("/guiUser/SubscriberTermenalPage.fxml", "/guiUser/SubscriberTermenalPage.css", "User Dashboard(Termenal)", "SubscriberTermenalPageController");
+                    ClientUI.chat.subscribeAvailability("Termenal");
                     closeCurrentWindow();
                 } else if (message.startsWith("SIGN_IN_SUCCESS Worker")) {
                     String[] parts = message.split(" ");
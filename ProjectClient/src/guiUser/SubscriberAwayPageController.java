@@ -6,13 +6,16 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import client.ChatClient;
 import client.ClientController;
 import client.ClientUI;
+import client.TextAreaPager;
 import common.ChatIF;
 import gui.NotificationController;
 import gui.SceneNavigator;
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -134,6 +137,12 @@ public class SubscriberAwayPageController {
 
     /** Label to show subscriber name in the personal data section. */
     @FXML private Label lblSubName;
+
+    /** True while {@link #preload()} fills the sections, so their replies don't switch the visible section. */
+    private boolean preloading = false;
+
+    /** Fetches the parking history into {@link #txtHistoryArea} page by page as the subscriber scrolls. */
+    private TextAreaPager historyPager;
     
     
     /**
@@ -141,6 +150,8 @@ public class SubscriberAwayPageController {
      */
     @FXML
     private void initialize() {
+        historyPager = new TextAreaPager(txtHistoryArea);
+
         // Populate hour ComboBox (00-23)
         for (int i = 0; i < 24; i++) {
         
@@ -201,13 +212,18 @@ public class SubscriberAwayPageController {
         //boolean isVisible = historySection.isVisible();
         HideAllSectionExept(this.historySection);
         //btnShowHistory.setText(isVisible ? "Show History" : "Hide History");
-        ArrayList<String> msg = new ArrayList<>();
-        msg.add("GET_HISTORY");
-        msg.add(ClientUI.loggedInUserID);
-        msg.add("Away_Page");
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(historyPager.start(this::historyRequest));
         txtHistoryArea.setVisible(true);
     }
+
+    /**
+     * @param after token of the page to fetch
+     * @return the request for that page of the subscriber's history
+     */
+    private ArrayList<String> historyRequest(String after) {
+        return new ArrayList<>(Arrays.asList("GET_HISTORY", ClientUI.loggedInUserID, "Away_Page",
+                after, String.valueOf(TextAreaPager.HISTORY_PAGE_SIZE)));
+    }
     
     /**
      * Sends request to fetch and display personal data for the subscriber.
@@ -219,7 +235,10 @@ public class SubscriberAwayPageController {
         str.add(ClientUI.loggedInUserID);
         str.add("Away_Page");
         txtHistoryArea.setVisible(false);
-        ClientUI.chat.acceptArray(str);
+        if (!lblSubID.getText().isEmpty()) {
+            HideAllSectionExept(this.vboxUpdatePersonal); // already preloaded, refreshed when the reply arrives
+        }
+        ClientUI.chat.request(str);
     }
     
     /**
@@ -233,16 +252,20 @@ public class SubscriberAwayPageController {
         msg.add("Away_Page");
         msg.add(txtPhone.getText().trim());
         msg.add(txtEmail.getText().trim());
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(msg);
     }
     
     /**
-     * Displays the subscriber's history in the text area.
+     * Displays a page of the subscriber's history in the text area.
+     * @param after       token the page was asked for with
+     * @param next        token of the next page
      * @param historyText The history to be shown
      */
-	public void displayHistory(String historyText) {
-	    txtHistoryArea.setText(historyText);
-	    HideAllSectionExept(this.historySection);
+	public void displayHistoryPage(String after, String next, String historyText) {
+	    historyPager.onPage(after, next, historyText);
+	    if (!preloading && TextAreaPager.FIRST_PAGE.equals(after)) {
+	        HideAllSectionExept(this.historySection);
+	    }
 	}
 	
 	/**
@@ -259,7 +282,9 @@ public class SubscriberAwayPageController {
 	
 	        //vboxUpdatePersonal.setVisible(true);
 	        //vboxUpdatePersonal.setManaged(true);
-	        HideAllSectionExept(this.vboxUpdatePersonal);
+	        if (!preloading) {
+	            HideAllSectionExept(this.vboxUpdatePersonal);
+	        }
 	    } else {
 	        System.out.println("Invalid personal data message received: " + message);
 	    }
@@ -278,17 +303,30 @@ public class SubscriberAwayPageController {
 	}
     
 	/**
-     * Sends request to check available parking spots.
+     * Shows the number of currently available parking spots.
+     * Uses the count pushed by the server when there is one, otherwise asks for it.
      */
     @FXML
     public void checkAvilableSpotsBtn(ActionEvent event) throws Exception
     {
-    	int availableSpots = 0;
+    	if (ChatClient.availableSpots >= 0) {
+    		display("CHECK_SPOTS_SUCCESS " + ChatClient.availableSpots);
+    		return;
+    	}
     	
     	// Concatenate information into a single string command
     	ArrayList< String > str =new ArrayList<>();
         str.add("Check_Avilable_Spots");
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
+    }
+
+    /**
+     * Updates the available spots label with a count pushed by the server.
+     * @param count number of free spots
+     */
+    public void updateAvailableSpots(int count)
+    {
+        lblAvailableSpots.setText("There are " + count + " Available Spots");
     }
     
     /**
@@ -354,7 +392,7 @@ public class SubscriberAwayPageController {
             str.add(Reserve);
             str.add(Timetopark);
 
-            ClientUI.chat.acceptArray(str);
+            ClientUI.chat.request(str);
         }
     }
     
@@ -369,7 +407,7 @@ public class SubscriberAwayPageController {
         msg.add(ClientUI.loggedInUserID);
         msg.add("Away_Page");
 
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(msg);
     }
     
     /**
@@ -403,7 +441,7 @@ public class SubscriberAwayPageController {
         msg.add(String.valueOf(totalMinutes));
         msg.add("Away_Page");
 
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(msg);
     }
     
     /**
@@ -428,6 +466,21 @@ public class SubscriberAwayPageController {
     	}
     }
     
+    /**
+     * Fetches the personal data and the parking history together when the page opens.
+     * Both requests go out on the connection at once and the server answers them in parallel,
+     * so the sections are filled by the time the subscriber opens them.
+     */
+    public void preload()
+    {
+        ArrayList<String> personal = new ArrayList<>(Arrays.asList("Personal_Data", ClientUI.loggedInUserID, "Away_Page"));
+        ArrayList<String> history = historyPager.start(this::historyRequest);
+        preloading = true;
+        // Replies are shown through Platform.runLater before the future completes, so this runs after them
+        ClientUI.chat.requestAll(Arrays.asList(personal, history))
+                .whenComplete((done, error) -> Platform.runLater(() -> preloading = false));
+    }
+
     /**
      * Loads the subscriber ID into the controller.
      * @param id the subscriber's ID
@@ -453,18 +506,12 @@ public class SubscriberAwayPageController {
     	  ArrayList<String> msg = new ArrayList<>();
           msg.add("LOGOUT");
 
-          // Run in background thread to avoid freezing UI
-          new Thread(() -> {
-              try {
-                  if (ClientUI.chat != null) {
-                      ClientUI.chat.acceptArray(msg);
-                  } else {
-                      System.out.println("ClientUI.chat is null.");
-                  }
-              } catch (Exception e) {
-                  e.printStackTrace(); // just in case
-              }
-          }).start();
+          // The server doesn't answer LOGOUT; send it without waiting
+          if (ClientUI.chat != null) {
+              ClientUI.chat.send(msg);
+          } else {
+              System.out.println("ClientUI.chat is null.");
+          }
 
           // Continue immediately with scene change
           Stage stage = (Stage) btnLogout.getScene().getWindow();
@@ -10,6 +10,7 @@ import java.time.Duration;
 import client.ChatClient;
 import client.ClientController;
 import client.ClientUI;
+import client.TextAreaPager;
 import common.ChatIF;
 import gui.NotificationController;
 import gui.SceneNavigator;
@@ -104,6 +105,9 @@ public class SubscriberTermenalPageController {
     /** Text area to show history content. */
     @FXML private TextArea txtHistoryArea;
 
+    /** Fetches the parking history into {@link #txtHistoryArea} page by page as the subscriber scrolls. */
+    private TextAreaPager historyPager;
+
     /** Combo box for selecting minutes to park. */
     @FXML private ComboBox<String> comboMinutesToPark;
 
@@ -130,6 +134,8 @@ public class SubscriberTermenalPageController {
      */
     @FXML
     private void initialize() {
+        historyPager = new TextAreaPager(txtHistoryArea);
+
         // Populate hours (00-04)
     	
         for (int i = 0; i <= 4; i++) {
@@ -177,7 +183,7 @@ public class SubscriberTermenalPageController {
  				NotificationController.NotificationType.INFO);
     	ArrayList< String > str =new ArrayList<>();
         str.add("Forgot_Code");
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
     }
     
     /**
@@ -189,21 +195,30 @@ public class SubscriberTermenalPageController {
         boolean isVisible = historySection.isVisible();
         HideAllSectionExept(this.historySection);
         //btnShowHistory.setText(isVisible ? "Show History" : "Hide History");
-        ArrayList<String> msg = new ArrayList<>();
-        msg.add("GET_HISTORY");
-        msg.add(ClientUI.loggedInUserID);
-        msg.add("Termenal_Page");
-        ClientUI.chat.acceptArray(msg);
+        ClientUI.chat.request(historyPager.start(this::historyRequest));
         HideAllSectionExept(this.historySection);
     }
+
+    /**
+     * @param after token of the page to fetch
+     * @return the request for that page of the subscriber's history
+     */
+    private ArrayList<String> historyRequest(String after) {
+        return new ArrayList<>(Arrays.asList("GET_HISTORY", ClientUI.loggedInUserID, "Termenal_Page",
+                after, String.valueOf(TextAreaPager.HISTORY_PAGE_SIZE)));
+    }
     
     /**
-     * Displays retrieved parking history text.
+     * Displays a retrieved page of the parking history.
+     * @param after       token the page was asked for with
+     * @param next        token of the next page
      * @param historyText the formatted history string
      */
-    public void displayHistory(String historyText) {
-        txtHistoryArea.setText(historyText);
-        HideAllSectionExept(this.historySection);
+    public void displayHistoryPage(String after, String next, String historyText) {
+        historyPager.onPage(after, next, historyText);
+        if (TextAreaPager.FIRST_PAGE.equals(after)) {
+            HideAllSectionExept(this.historySection);
+        }
     }
     
     /**
@@ -223,26 +238,40 @@ public class SubscriberTermenalPageController {
     	ArrayList< String > str =new ArrayList<>();
         str.add("Check_Reserve");
         str.add(this.txtReservationCode.getText());
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
         HideAllSectionExept(vboxReservationCode); 
         }
     }
     
     /**
-     * Requests the number of currently available parking spots.
+     * Shows the number of currently available parking spots.
+     * Uses the count pushed by the server when there is one, otherwise asks for it.
      * @param event click event from "Check Available Spots"
      */
     @FXML
     private void checkAvilableSpotsBtn(ActionEvent event) throws Exception
     {
-    	int availableSpots = 0;
+    	if (ChatClient.availableSpots >= 0) {
+    		display("CHECK_SPOTS_SUCCESS " + ChatClient.availableSpots);
+    		HideAllSectionExept(vboxAvailableSpots);
+    		return;
+    	}
     	
     	// Concatenate information into a single string command
     	ArrayList< String > str =new ArrayList<>();
         str.add("Check_Avilable_Spots_Termenal");
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
         HideAllSectionExept(vboxAvailableSpots); 
     } 
+
+    /**
+     * Updates the available spots label with a count pushed by the server.
+     * @param count number of free spots
+     */
+    public void updateAvailableSpots(int count)
+    {
+        lblAvailableSpots.setText("There are " + count + " Available Spots");
+    }
     
     /**
      * Sends parking code to retrieve a parked car.
@@ -261,7 +290,7 @@ public class SubscriberTermenalPageController {
     		ArrayList< String > str =new ArrayList<>();
             str.add("Retrieve_Car_Termenal");
             str.add(parkingCode);
-            ClientUI.chat.acceptArray(str);
+            ClientUI.chat.request(str);
     	}
     }
     
@@ -282,7 +311,7 @@ public class SubscriberTermenalPageController {
     private void onShowRetrieveInput(ActionEvent event) {
     	ArrayList< String > str =new ArrayList<>();
         str.add("Get_My_Parking_Status_Termenal");
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
     	HideAllSectionExept(this.vboxRetrieveCode);
     }
 
@@ -315,7 +344,7 @@ public class SubscriberTermenalPageController {
         ArrayList< String > str =new ArrayList<>();
         str.add("Get_ParkingCode_Termenal");
         str.add(totalMinutes.toString());
-        ClientUI.chat.acceptArray(str);
+        ClientUI.chat.request(str);
     }
 
     /**
@@ -356,18 +385,12 @@ public class SubscriberTermenalPageController {
         ArrayList<String> msg = new ArrayList<>();
         msg.add("LOGOUT");
 
-        // Run in background thread to avoid freezing UI
-        new Thread(() -> {
-            try {
-                if (ClientUI.chat != null) {
-                    ClientUI.chat.acceptArray(msg);
-                } else {
-                    System.out.println("ClientUI.chat is null.");
-                }
-            } catch (Exception e) {
-                e.printStackTrace(); // just in case
-            }
-        }).start();
+        // The server doesn't answer LOGOUT; send it without waiting
+        if (ClientUI.chat != null) {
+            ClientUI.chat.send(msg);
+        } else {
+            System.out.println("ClientUI.chat is null.");
+        }
 
         // Continue immediately with scene change
         Stage stage = (Stage) btnLogout.getScene().getWindow();
@@ -146,7 +146,7 @@ public class AddSubController {
             msg.add(this.txtPhoneNumber.getText());
             msg.add(this.txtEmail.getText());
 
-            ClientUI.chat.acceptArray(msg);
+            ClientUI.chat.request(msg);
         } catch (Exception e) {
             lblError.setText("Error: " + e.getMessage());
         }
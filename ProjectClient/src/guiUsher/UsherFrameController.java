@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import client.ClientUI;
+import client.TextAreaPager;
 import gui.SceneNavigator;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
@@ -52,6 +53,17 @@ public class UsherFrameController {
     /** Output area to display reports from server responses */
     @FXML private TextArea txtReportOutput;
 
+    /** Fetches a subscriber's history or the subscriber listing into {@link #txtReportOutput} page by page as the usher scrolls. */
+    private TextAreaPager pager;
+
+    /**
+     * Sets up the pager on the output area.
+     */
+    @FXML
+    private void initialize() {
+        pager = new TextAreaPager(txtReportOutput);
+    }
+
     /**
      * Constructor that sets a reference to this controller in the ClientUI
      */
@@ -69,18 +81,12 @@ public class UsherFrameController {
     	  ArrayList<String> msg = new ArrayList<>();
           msg.add("LOGOUT");
 
-          // Run in background thread to avoid freezing UI
-          new Thread(() -> {
-              try {
-                  if (ClientUI.chat != null) {
-                      ClientUI.chat.acceptArray(msg);
-                  } else {
-                      System.out.println("ClientUI.chat is null.");
-                  }
-              } catch (Exception e) {
-                  e.printStackTrace(); // just in case
-              }
-          }).start();
+          // The server doesn't answer LOGOUT; send it without waiting
+          if (ClientUI.chat != null) {
+              ClientUI.chat.send(msg);
+          } else {
+              System.out.println("ClientUI.chat is null.");
+          }
 
           // Continue immediately with scene change
           Stage stage = (Stage) btnLogout.getScene().getWindow();
@@ -95,23 +101,15 @@ public class UsherFrameController {
     public void display(String message) {
         ArrayList<String> response = new ArrayList<>(Arrays.asList(message.split(" ")));
         String func = response.get(0).trim();
+        if (!func.equals("HistoryPage") && !func.equals("SUBSCRIBERS_PAGE")) {
+            pager.stop(); // the output area shows something else now
+        }
         
         try {
-            if (func.equals("SUBSCRIBERS_VIEW")) {
-                // Display list of subscribers
-                StringBuilder subView = new StringBuilder();
-                String m = String.join(" ", response.subList(2, response.size())).trim();
-                if(m.equals("There is no active parking spots found!"))
-                {
-                    txtReportOutput.setText(m);
-                }
-                else
-                {
-                	for (int i = 1; i < response.size(); i++) {
-                		subView.append(response.get(i)).append(" ");
-                	}
-                	txtReportOutput.setText(subView.toString().trim());
-                }
+            if (func.equals("SUBSCRIBERS_PAGE") && response.size() >= 3) {
+                // Display a page of the subscriber list
+                pager.onPage(response.get(1), response.get(2),
+                        String.join(" ", response.subList(3, response.size())).trim());
 
             } else if (func.equals("SHOW_ACTIVE_PARKINGSPOT")) {
                 // Display list of active parking spots
@@ -151,14 +149,10 @@ public class UsherFrameController {
                
 
             }
-            else if(func.equals("ShowHistory"))
+            else if(func.equals("HistoryPage") && response.size() >= 3)
             {
-            	response.remove(0);
-            	StringBuilder output = new StringBuilder();
-            	for (String part : response) {
-            	    output.append(part).append(" ");
-            	}
-            	txtReportOutput.setText(output.toString().trim());
+            	pager.onPage(response.get(1), response.get(2),
+            	        String.join(" ", response.subList(3, response.size())).trim());
             }
             else if (func.equals("ERROR_NO_SUCH_SUBSCRIBER")) {
                 txtReportOutput.setText(" Error: Subscriber does not exist.");
@@ -182,21 +176,29 @@ public class UsherFrameController {
     }
 
     /**
-     * Handles button click for viewing all subscribers.
-     * Sends a message to the server to retrieve subscriber list.
+     * Handles button click for viewing subscribers.
+     * Asks for an optional search (start of an ID, name, phone or email) and fetches the
+     * matching subscribers page by page, sorted by ID.
      * 
      * @param event The action event triggered by the button
      */
     @FXML
     public void onSeeSubscribers(ActionEvent event) throws Exception {
-        lblError.setText("Fetching all subscribers...");
-        try {
-            ArrayList<String> msg = new ArrayList<>();
-            msg.add("GET_ALL_SUBSCRIBERS");
-            ClientUI.chat.acceptArray(msg);
-        } catch (Exception e) {
-            lblError.setText("Error: " + e.getMessage());
-        }
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Subscribers");
+        dialog.setHeaderText("Search Subscribers");
+        dialog.setContentText("Start of ID, name, phone or email (empty for all):");
+
+        dialog.showAndWait().ifPresent(search -> {
+            String prefix = TextAreaPager.encodeSearch(search);
+            lblError.setText("Fetching subscribers...");
+            try {
+                ClientUI.chat.request(pager.start(after -> new ArrayList<>(Arrays.asList(
+                        "GET_ALL_SUBSCRIBERS", prefix, "id", after, String.valueOf(TextAreaPager.SUBSCRIBERS_PAGE_SIZE)))));
+            } catch (Exception e) {
+                lblError.setText("Error: " + e.getMessage());
+            }
+        });
     }
     
 
@@ -227,12 +229,11 @@ public class UsherFrameController {
                   return;
               }
 
-              ArrayList<String> msg = new ArrayList<>();
-              msg.add("SHOW_SUBSCRIBER_HISTORY");
-              msg.add(subscriberId);
+              ArrayList<String> msg = pager.start(after -> new ArrayList<>(Arrays.asList(
+                      "SHOW_SUBSCRIBER_HISTORY", subscriberId, after, String.valueOf(TextAreaPager.HISTORY_PAGE_SIZE))));
 
               try {
-                  ClientUI.chat.acceptArray(msg);  // שליחה לשרת
+                  ClientUI.chat.request(msg);  // שליחה לשרת
                   lblError.setText("Show history for subscriber: " + subscriberId);
               } catch (Exception e) {
                   lblError.setText("Failed to send request for show history: " + e.getMessage());
@@ -258,7 +259,7 @@ public class UsherFrameController {
             msg.add(subscriberId);
 
             try {
-                ClientUI.chat.acceptArray(msg);  // שליחה לשרת
+                ClientUI.chat.request(msg);  // שליחה לשרת
                 lblError.setText("Tag Reader request sent for subscriber: " + subscriberId);
             } catch (Exception e) {
                 lblError.setText("Failed to send add tag request: " + e.getMessage());
@@ -279,7 +280,7 @@ public class UsherFrameController {
         try {
             ArrayList<String> msg = new ArrayList<>();
             msg.add("GET_ACTIVE_PARKINGSPOT");
-            ClientUI.chat.acceptArray(msg);
+            ClientUI.chat.request(msg);
         } catch (Exception e) {
             lblError.setText("Error: " + e.getMessage());
         }
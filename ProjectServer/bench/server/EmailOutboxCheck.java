@@ -0,0 +1,253 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import gui.ServerMessageFrameController;
+
+/**
+ * Runs {@link EmailOutbox} against a local fake SMTP server, with an in-memory spool instead of the
+ * {@code emailoutbox} table.
+ *
+ * <p>
+ * Not part of the server build (needs the JavaFX jars and {@code ProjectServer/lib} on the class path for the
+ * log controller and JavaMail). It checks three things:
+ * </p>
+ * <ul>
+ *   <li>retry: the fake server rejects the first mails with a 451; every mail is still delivered once and the
+ *       spool ends up empty;</li>
+ *   <li>give up: a mail with an invalid address is dropped without being retried and leaves the spool;</li>
+ *   <li>spool recovery: mails queued while the SMTP server is down stay in the spool; a new outbox started
+ *       over the same spool (a restart) queues them again and delivers them.</li>
+ * </ul>
+ *
+ * <p>
+ * Run with {@code java -cp <classes>:<fx jars>:ProjectServer/lib/* server.EmailOutboxCheck}. Exits with
+ * status 1 at the first failed check.
+ * </p>
+ */
+public class EmailOutboxCheck {
+
+    private static final long TIMEOUT_MS = 30_000;
+
+    /** Spool kept in memory; copying it is what surviving a restart looks like. */
+    private static final class MemorySpool implements EmailOutbox.Spool {
+        private final TreeMap<Integer, String[]> rows = new TreeMap<>();
+        private final Map<Integer, Integer> attempts = new TreeMap<>();
+        private int nextId = 1;
+
+        @Override
+        public synchronized List<EmailOutbox.OutboxMail> load() {
+            List<EmailOutbox.OutboxMail> mails = new ArrayList<>();
+            for (Map.Entry<Integer, String[]> row : rows.entrySet()) {
+                String[] mail = row.getValue();
+                mails.add(new EmailOutbox.OutboxMail(row.getKey(), mail[0], mail[1], mail[2], attempts.get(row.getKey())));
+            }
+            return mails;
+        }
+
+        @Override
+        public synchronized int add(String to, String subject, String html) {
+            rows.put(nextId, new String[] { to, subject, html });
+            attempts.put(nextId, 0);
+            return nextId++;
+        }
+
+        @Override
+        public synchronized void updateAttempts(int spoolId, int attempts) {
+            if (rows.containsKey(spoolId)) {
+                this.attempts.put(spoolId, attempts);
+            }
+        }
+
+        @Override
+        public synchronized void remove(int spoolId) {
+            rows.remove(spoolId);
+            attempts.remove(spoolId);
+        }
+
+        synchronized int size() {
+            return rows.size();
+        }
+
+        synchronized boolean allAttempted() {
+            return attempts.values().stream().allMatch(n -> n > 0);
+        }
+
+        synchronized MemorySpool copy() {
+            MemorySpool copy = new MemorySpool();
+            copy.rows.putAll(rows);
+            copy.attempts.putAll(attempts);
+            copy.nextId = nextId;
+            return copy;
+        }
+    }
+
+    /** Accepts any sender and recipient; rejects the next {@link #rejectNext} mails with a 451. */
+    private static final class FakeSmtpServer implements Runnable {
+        private final ServerSocket socket;
+        private final AtomicInteger rejectNext = new AtomicInteger();
+        private final AtomicInteger rejected = new AtomicInteger();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final Map<String, Integer> delivered = new ConcurrentHashMap<>();
+
+        FakeSmtpServer() throws IOException {
+            socket = new ServerSocket(0);
+            Thread thread = new Thread(this, "fake-smtp");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int port() {
+            return socket.getLocalPort();
+        }
+
+        int deliveredCount() {
+            return delivered.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Socket client = socket.accept();
+                    connections.incrementAndGet();
+                    Thread session = new Thread(() -> serve(client), "fake-smtp-session");
+                    session.setDaemon(true);
+                    session.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket client) {
+            try (client;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.ISO_8859_1));
+                 Writer out = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.ISO_8859_1)) {
+                reply(out, "220 fake ESMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String verb = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                    switch (verb) {
+                        case "EHLO" -> reply(out, "250-fake\r\n250 8BITMIME");
+                        case "MAIL" -> {
+                            if (rejectNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                                rejected.incrementAndGet();
+                                reply(out, "451 Try again later");
+                            } else {
+                                reply(out, "250 OK");
+                            }
+                        }
+                        case "DATA" -> {
+                            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                            String subject = null;
+                            while ((line = in.readLine()) != null && !line.equals(".")) {
+                                if (subject == null && line.startsWith("Subject: ")) {
+                                    subject = line.substring("Subject: ".length());
+                                }
+                            }
+                            delivered.merge(String.valueOf(subject), 1, Integer::sum);
+                            reply(out, "250 OK");
+                        }
+                        case "QUIT" -> {
+                            reply(out, "221 Bye");
+                            return;
+                        }
+                        default -> reply(out, "250 OK"); // HELO, RCPT, RSET, NOOP
+                    }
+                }
+            } catch (IOException e) {
+                // Client went away
+            }
+        }
+
+        private static void reply(Writer out, String text) throws IOException {
+            out.write(text + "\r\n");
+            out.flush();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("bpark.mail.starttls", "false");
+        System.setProperty("bpark.mail.retryDelayMs", "50");
+        System.setProperty("bpark.mail.idleCloseMs", "500");
+        EchoServer.messageController = new ServerMessageFrameController();
+
+        FakeSmtpServer smtp = new FakeSmtpServer();
+
+        // Retry and give up
+        MemorySpool spool = new MemorySpool();
+        EmailOutbox outbox = new EmailOutbox(EmailSender.createSession("localhost", smtp.port()), spool);
+        outbox.start();
+        smtp.rejectNext.set(5);
+        for (int i = 0; i < 20; i++) {
+            outbox.enqueue("user" + i + "@example.com", "retry-" + i, "<p>" + i + "</p>");
+        }
+        outbox.enqueue("not an address", "bad-address", "<p>never sent</p>");
+        await("20 mails delivered and the spool emptied", () -> smtp.deliveredCount() == 20 && spool.size() == 0);
+        check(smtp.rejected.get() == 5, "5 sends rejected, got " + smtp.rejected.get());
+        for (int i = 0; i < 20; i++) {
+            check(smtp.delivered.getOrDefault("retry-" + i, 0) == 1, "retry-" + i + " delivered once: " + smtp.delivered);
+        }
+        check(!smtp.delivered.containsKey("bad-address"), "mail with an invalid address not sent");
+        System.out.println("retry:    " + outbox.formatStats() + ", SMTP connections=" + smtp.connections.get());
+
+        // Spool recovery: queue while the server is down, then restart over the same spool
+        ServerSocket closed = new ServerSocket(0);
+        int deadPort = closed.getLocalPort();
+        closed.close();
+        MemorySpool downSpool = new MemorySpool();
+        EmailOutbox down = new EmailOutbox(EmailSender.createSession("localhost", deadPort), downSpool);
+        down.start();
+        for (int i = 0; i < 10; i++) {
+            down.enqueue("user" + i + "@example.com", "recovery-" + i, "<p>" + i + "</p>");
+        }
+        await("10 mails failed once and kept in the spool", () -> downSpool.size() == 10 && downSpool.allAttempted());
+        System.out.println("down:     " + down.formatStats());
+
+        MemorySpool restartSpool = downSpool.copy();
+        EmailOutbox restarted = new EmailOutbox(EmailSender.createSession("localhost", smtp.port()), restartSpool);
+        restarted.start();
+        await("the 10 spooled mails delivered after the restart", () -> smtp.deliveredCount() == 30 && restartSpool.size() == 0);
+        for (int i = 0; i < 10; i++) {
+            check(smtp.delivered.getOrDefault("recovery-" + i, 0) == 1, "recovery-" + i + " delivered once: " + smtp.delivered);
+        }
+        System.out.println("recovery: " + restarted.formatStats());
+        System.out.println("OK: retry, give-up and spool recovery work against the fake SMTP server.");
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for: " + what);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            fail(what);
+        }
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,142 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two command executors of {@link EchoServer} on a mix of fast and slow commands.
+ *
+ * <p>
+ * Not part of the server build. Each command borrows one of {@code poolSize} simulated database
+ * connections (a fair semaphore, like the connection pool) for {@code fastMs} or {@code slowMs}; one
+ * command in {@code slowEvery} is slow, as a monthly report or an SMTP call would be. Every command also
+ * blocks outside the database for {@code outsideMs} (sending the reply to a slow client), which is where the
+ * fixed pool holds a thread and the virtual executor doesn't. Both modes are set up as the server does it:
+ * </p>
+ * <ul>
+ *   <li>fixed: a pool of {@code poolSize + 2} platform threads;</li>
+ *   <li>virtual: a virtual thread per command; only the connection borrow waits for one of {@code poolSize}
+ *       fair permits, as in {@code mysqlConnection.getConnection} (needs JDK 21; skipped otherwise).</li>
+ * </ul>
+ *
+ * <p>
+ * Prints the wall time and the p50/p99/max latency (submit to finish) of the fast and slow commands.
+ * Run with {@code java -cp <classes> server.ExecutorBenchmark [commands] [poolSize] [slowEvery] [fastMs] [slowMs] [outsideMs]};
+ * the defaults are 2000 commands, 10 connections, 1 slow in 10, 2 ms, 200 ms and 20 ms.
+ * </p>
+ */
+public class ExecutorBenchmark {
+
+    private final int commands;
+    private final int poolSize;
+    private final int slowEvery;
+    private final long fastMs;
+    private final long slowMs;
+    private final long outsideMs;
+
+    private ExecutorBenchmark(int commands, int poolSize, int slowEvery, long fastMs, long slowMs, long outsideMs) {
+        this.commands = commands;
+        this.poolSize = poolSize;
+        this.slowEvery = slowEvery;
+        this.fastMs = fastMs;
+        this.slowMs = slowMs;
+        this.outsideMs = outsideMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] values = { 2000, 10, 10, 2, 200, 20 };
+        for (int i = 0; i < Math.min(args.length, values.length); i++) {
+            values[i] = Integer.parseInt(args[i]);
+        }
+        ExecutorBenchmark bench = new ExecutorBenchmark(values[0], values[1], values[2], values[3], values[4], values[5]);
+
+        // Warm up both paths once, then measure
+        bench.run("fixed", Executors.newFixedThreadPool(bench.poolSize + 2), null, false);
+        bench.run("fixed", Executors.newFixedThreadPool(bench.poolSize + 2), null, true);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual == null) {
+            System.out.println("virtual: skipped, this JVM has no virtual threads");
+            return;
+        }
+        bench.run("virtual", virtual, new Semaphore(bench.poolSize, true), false);
+        bench.run("virtual", newVirtualThreadExecutor(), new Semaphore(bench.poolSize, true), true);
+    }
+
+    private void run(String name, ExecutorService executor, Semaphore permits, boolean print) throws InterruptedException {
+        Semaphore connections = new Semaphore(poolSize, true);
+        long[] latency = new long[commands];
+        CountDownLatch done = new CountDownLatch(commands);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < commands; i++) {
+            int index = i;
+            boolean slow = i % slowEvery == 0;
+            long submitted = System.nanoTime();
+            executor.submit(() -> {
+                try {
+                    if (permits != null) {
+                        permits.acquire();
+                    }
+                    try {
+                        connections.acquire();
+                        try {
+                            Thread.sleep(slow ? slowMs : fastMs);
+                        } finally {
+                            connections.release();
+                        }
+                    } finally {
+                        if (permits != null) {
+                            permits.release();
+                        }
+                    }
+                    Thread.sleep(outsideMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latency[index] = System.nanoTime() - submitted;
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        if (print) {
+            List<Long> fast = new ArrayList<>();
+            List<Long> slow = new ArrayList<>();
+            for (int i = 0; i < commands; i++) {
+                (i % slowEvery == 0 ? slow : fast).add(latency[i]);
+            }
+            System.out.printf("%-8s wall=%dms  fast %s  slow %s%n", name, wallMs, summary(fast), summary(slow));
+        }
+    }
+
+    private static String summary(List<Long> nanos) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        if (sorted.length == 0) {
+            return "-";
+        }
+        return String.format("p50=%dms p99=%dms max=%dms",
+                TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length / 2]),
+                TimeUnit.NANOSECONDS.toMillis(sorted[(int) (sorted.length * 0.99)]),
+                TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]));
+    }
+
+    /** Same lookup as the server: the project compiles for Java 17. */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.WireProtocol;
+import ocsf.client.AbstractClient;
+import ocsf.server.AbstractServer;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Measures how long the subscriber away page takes to load with and without request pipelining.
+ *
+ * <p>
+ * Not part of the server build. The page sends {@code Personal_Data}, {@code GET_HISTORY} and
+ * {@code CHECK_ACTIVE_PARKING}. A local OCSF server answers them as {@link EchoServer} does: request frames
+ * with IDs, a {@link ClientCommandQueue} per client in front of a pool of {@code poolSize + 2} threads, and
+ * replies sent as each command finishes; each command sleeps for its simulated database time instead of
+ * running its query. {@code clients} OCSF clients load the page {@code loads} times each, in three modes:
+ * </p>
+ * <ul>
+ *   <li>sequential: the next command is sent when the previous one was answered (before pipelining);</li>
+ *   <li>pipelined, {@code bpark.maxInFlightPerClient=1}: all three sent at once, run one after the other;</li>
+ *   <li>pipelined, {@code bpark.maxInFlightPerClient=8} (the default): all three sent at once, run in parallel.</li>
+ * </ul>
+ *
+ * <p>
+ * Prints the mean, p50 and p99 page-load time of each mode.
+ * Run with {@code java -cp <classes> server.PipeliningBenchmark [loads] [clients] [personalMs] [historyMs] [activeMs] [poolSize] [port]};
+ * the defaults are 200 loads, 1 client, 15 ms, 40 ms, 10 ms, 5 connections and ports 5599 to 5601.
+ * </p>
+ */
+public class PipeliningBenchmark {
+
+    /** Answers page commands after their simulated database time. */
+    private static final class PageServer extends AbstractServer {
+        private final Map<String, Long> workMs;
+        private final int maxInFlight;
+        private final ExecutorService executor;
+        private final Map<ConnectionToClient, ClientCommandQueue> queues = new ConcurrentHashMap<>();
+
+        PageServer(int port, Map<String, Long> workMs, int maxInFlight, int poolSize) {
+            super(port);
+            this.workMs = workMs;
+            this.maxInFlight = maxInFlight;
+            this.executor = Executors.newFixedThreadPool(poolSize + 2);
+        }
+
+        @Override
+        protected void handleMessageFromClient(Object msg, ConnectionToClient client) {
+            byte[] frame = (byte[]) msg;
+            int requestId = WireProtocol.requestIdOf(frame);
+            queues.computeIfAbsent(client, c -> new ClientCommandQueue(maxInFlight)).submit(() -> {
+                try {
+                    String command = WireProtocol.decodeCommand(frame).get(0);
+                    Thread.sleep(workMs.get(command));
+                    client.sendToClient(WireProtocol.encodeReply(requestId, command + " done"));
+                } catch (IOException | InterruptedException e) {
+                    System.err.println("Request " + requestId + " failed: " + e);
+                }
+            }, executor);
+        }
+
+        @Override
+        protected synchronized void clientDisconnected(ConnectionToClient client) {
+            queues.remove(client);
+        }
+
+        void shutdown() throws IOException {
+            close();
+            executor.shutdownNow();
+        }
+    }
+
+    /** Sends request frames and completes the matching future when the reply comes back. */
+    private static final class PageClient extends AbstractClient {
+        private final AtomicInteger nextId = new AtomicInteger();
+        private final Map<Integer, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+        PageClient(int port) throws IOException {
+            super("localhost", port);
+            openConnection();
+        }
+
+        CompletableFuture<String> request(List<String> command) throws IOException {
+            int id = nextId.incrementAndGet();
+            CompletableFuture<String> reply = new CompletableFuture<>();
+            pending.put(id, reply);
+            sendToServer(WireProtocol.encodeRequest(id, command));
+            return reply;
+        }
+
+        @Override
+        protected void handleMessageFromServer(Object msg) {
+            try {
+                byte[] frame = (byte[]) msg;
+                pending.remove(WireProtocol.requestIdOf(frame)).complete(WireProtocol.decodeReply(frame));
+            } catch (IOException e) {
+                System.err.println("Bad reply: " + e);
+            }
+        }
+    }
+
+    private static final List<List<String>> PAGE = List.of(
+            List.of("Personal_Data", "1001", "Away_Page"),
+            List.of("GET_HISTORY", "1001", "Away_Page", "-"),
+            List.of("CHECK_ACTIVE_PARKING", "1001"));
+
+    public static void main(String[] args) throws Exception {
+        int[] values = { 200, 1, 15, 40, 10, 5, 5599 };
+        for (int i = 0; i < Math.min(args.length, values.length); i++) {
+            values[i] = Integer.parseInt(args[i]);
+        }
+        int loads = values[0];
+        int clients = values[1];
+        Map<String, Long> workMs = Map.of("Personal_Data", (long) values[2], "GET_HISTORY", (long) values[3],
+                "CHECK_ACTIVE_PARKING", (long) values[4]);
+        int poolSize = values[5];
+        int port = values[6];
+
+        // One port per mode: the closed listening socket of the previous mode may not be released yet
+        run("sequential", false, 8, loads, clients, workMs, poolSize, port);
+        run("pipelined, 1 in flight", true, 1, loads, clients, workMs, poolSize, port + 1);
+        run("pipelined, 8 in flight", true, 8, loads, clients, workMs, poolSize, port + 2);
+    }
+
+    private static void run(String name, boolean pipelined, int maxInFlight, int loads, int clients,
+            Map<String, Long> workMs, int poolSize, int port) throws Exception {
+        PageServer server = new PageServer(port, workMs, maxInFlight, poolSize);
+        server.listen();
+        List<Long> times = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        try {
+            for (int c = 0; c < clients; c++) {
+                PageClient client = new PageClient(port);
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < loads + 20; i++) {
+                            long start = System.nanoTime();
+                            loadPage(client, pipelined);
+                            if (i >= 20) { // the first loads warm up
+                                synchronized (times) {
+                                    times.add(System.nanoTime() - start);
+                                }
+                            }
+                        }
+                        client.closeConnection();
+                    } catch (Exception e) {
+                        System.err.println(name + ": " + e);
+                    }
+                }, "page-client-" + c);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            server.shutdown();
+        }
+        System.out.printf("%-24s %s%n", name, summary(times));
+    }
+
+    private static void loadPage(PageClient client, boolean pipelined) throws Exception {
+        if (!pipelined) {
+            for (List<String> command : PAGE) {
+                client.request(command).get(10, TimeUnit.SECONDS);
+            }
+            return;
+        }
+        List<CompletableFuture<String>> replies = new ArrayList<>();
+        for (List<String> command : PAGE) {
+            replies.add(client.request(command));
+        }
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+    }
+
+    private static String summary(List<Long> nanos) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        if (sorted.length == 0) {
+            return "-";
+        }
+        return String.format("page load mean=%.1fms p50=%.1fms p99=%.1fms (%d loads)",
+                Arrays.stream(sorted).average().orElse(0) / 1e6,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6,
+                sorted.length);
+    }
+}
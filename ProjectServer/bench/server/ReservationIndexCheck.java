@@ -0,0 +1,256 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * Checks that {@link ReservationIndex} gives the same answers as the SQL it replaced in
+ * {@code mysqlConnection.reserve}: the same-day duplicate check, the overlap test behind the free-spot count,
+ * the 40% rule, and the spot pick.
+ *
+ * <p>
+ * Not part of the server build. Two modes:
+ * </p>
+ * <ul>
+ *   <li>{@code java -cp <classes> server.ReservationIndexCheck [seed]}: random spots and reservations; the SQL
+ *       statements are evaluated row by row over the same data with their exact predicates, and the index is
+ *       checked against them for random windows, while random reservations are booked and cancelled.</li>
+ *   <li>{@code java -cp <classes>:mysql-connector.jar server.ReservationIndexCheck <jdbcUrl> <user> <password>}:
+ *       loads the index from a real database as the server does and, for windows over the next seven days,
+ *       compares it with the real queries. Nothing is written.</li>
+ * </ul>
+ *
+ * <p>
+ * Exits with status 1 at the first disagreement.
+ * </p>
+ */
+public class ReservationIndexCheck {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static final String DUPLICATE_QUERY = "SELECT COUNT(*) FROM reservation WHERE SubscriberID = ? AND DATE(StartTime) = ?";
+    private static final String FREE_SPOTS_QUERY = """
+        SELECT ps.SpotID
+        FROM parkingspot ps
+        WHERE ps.SpotID NOT IN (
+            SELECT r.SpotID FROM reservation r
+            WHERE NOT (r.EndTime <= ? OR r.StartTime >= ?)
+        )
+        ORDER BY ps.SpotID
+    """;
+
+    /** A reservation row as the SQL sees it. */
+    private static final class Row {
+        final int id;
+        final String subscriber;
+        final int spot;
+        final long start;
+        final long end;
+
+        Row(int id, String subscriber, int spot, long start, long end) {
+            this.id = id;
+            this.subscriber = subscriber;
+            this.spot = spot;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private int checked = 0;
+
+    public static void main(String[] args) throws Exception {
+        // DATE(StartTime) and the index's day must use the server's zone
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Jerusalem"));
+        ReservationIndexCheck check = new ReservationIndexCheck();
+        if (args.length >= 3) {
+            check.againstDatabase(args[0], args[1], args[2]);
+        } else {
+            check.againstModel(args.length > 0 ? Long.parseLong(args[0]) : 17);
+        }
+        System.out.println("OK: index and SQL agree on " + check.checked + " windows.");
+    }
+
+    /**
+     * Random data, SQL predicates evaluated in Java.
+     */
+    private void againstModel(long seed) {
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+        for (int round = 0; round < 50; round++) {
+            int spotCount = 1 + random.nextInt(30);
+            List<Integer> spots = new ArrayList<>();
+            for (int i = 0; i < spotCount; i++) {
+                spots.add(i * 3 + random.nextInt(3)); // not contiguous, not in table order
+            }
+            List<Row> rows = new ArrayList<>();
+            int maxId = 0;
+            for (int spot : spots) {
+                long cursor = now + HOUR * random.nextInt(48);
+                for (int n = random.nextInt(6); n > 0; n--) {
+                    long start = cursor + HOUR * random.nextInt(12);
+                    long end = start + HOUR * (1 + random.nextInt(4));
+                    rows.add(new Row(++maxId, "SUB" + random.nextInt(20), spot, start, end));
+                    cursor = end + (random.nextBoolean() ? 0 : HOUR);
+                }
+            }
+            ReservationIndex index = new ReservationIndex();
+            List<ReservationIndex.Interval> intervals = new ArrayList<>();
+            for (Row row : rows) {
+                intervals.add(new ReservationIndex.Interval(row.id, row.subscriber, row.spot, row.start, row.end));
+            }
+            index.rebuild(spots, intervals, maxId);
+
+            for (int w = 0; w < 400; w++) {
+                long start = now + 24 * HOUR + (HOUR / 4) * random.nextInt(6 * 24 * 4);
+                long end = start + (HOUR / 4) * (1 + random.nextInt(16));
+                String subscriber = "SUB" + random.nextInt(400);
+
+                boolean duplicate = rows.stream().anyMatch(r -> r.subscriber.equals(subscriber) && day(r.start).equals(day(start)));
+                TreeSet<Integer> free = new TreeSet<>();
+                for (int spot : spots) {
+                    if (rows.stream().noneMatch(r -> r.spot == spot && !(r.end <= start || r.start >= end))) {
+                        free.add(spot);
+                    }
+                }
+                ReservationIndex.Interval booked = compare(index, subscriber, start, end, duplicate, free, spots.size());
+
+                // Keep some bookings (as an insert would) and cancel others, so the incremental paths are covered
+                if (booked != null) {
+                    if (random.nextInt(3) == 0) {
+                        index.cancel(booked.getReservationId());
+                    } else {
+                        rows.add(new Row(booked.getReservationId(), subscriber, booked.getSpotId(), start, end));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Real tables, real queries; every booking made in the index is cancelled again.
+     */
+    private void againstDatabase(String url, String user, String password) throws SQLException {
+        try (Connection con = DriverManager.getConnection(url, user, password)) {
+            List<Integer> spots = new ArrayList<>();
+            List<ReservationIndex.Interval> intervals = new ArrayList<>();
+            List<String> subscribers = new ArrayList<>();
+            int maxId = 0;
+            try (Statement stmt = con.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT SpotID FROM parkingspot")) {
+                    while (rs.next()) {
+                        spots.add(rs.getInt(1));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT ReservationID, SubscriberID, SpotID, StartTime, EndTime FROM reservation WHERE EndTime > NOW()")) {
+                    while (rs.next()) {
+                        intervals.add(new ReservationIndex.Interval(rs.getInt(1), rs.getString(2), rs.getInt(3),
+                                rs.getTimestamp(4).getTime(), rs.getTimestamp(5).getTime()));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(ReservationID), 0) FROM reservation")) {
+                    rs.next();
+                    maxId = rs.getInt(1);
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT SubscriberID FROM subscriber LIMIT 50")) {
+                    while (rs.next()) {
+                        subscribers.add(rs.getString(1));
+                    }
+                }
+            }
+            subscribers.add("NO_SUCH_SUBSCRIBER");
+            ReservationIndex index = new ReservationIndex();
+            index.rebuild(spots, intervals, maxId);
+
+            long first = (System.currentTimeMillis() / HOUR + 24) * HOUR;
+            try (PreparedStatement dup = con.prepareStatement(DUPLICATE_QUERY);
+                 PreparedStatement freeQuery = con.prepareStatement(FREE_SPOTS_QUERY)) {
+                int s = 0;
+                for (long start = first; start < first + 7 * 24 * HOUR; start += HOUR / 2) {
+                    for (long length = HOUR / 2; length <= 4 * HOUR; length += HOUR / 2) {
+                        String subscriber = subscribers.get(s++ % subscribers.size());
+                        dup.setString(1, subscriber);
+                        dup.setDate(2, new java.sql.Date(start));
+                        boolean duplicate;
+                        try (ResultSet rs = dup.executeQuery()) {
+                            rs.next();
+                            duplicate = rs.getInt(1) > 0;
+                        }
+                        freeQuery.setTimestamp(1, new Timestamp(start));
+                        freeQuery.setTimestamp(2, new Timestamp(start + length));
+                        TreeSet<Integer> free = new TreeSet<>();
+                        try (ResultSet rs = freeQuery.executeQuery()) {
+                            while (rs.next()) {
+                                free.add(rs.getInt(1));
+                            }
+                        }
+                        ReservationIndex.Interval booked = compare(index, subscriber, start, start + length, duplicate, free, spots.size());
+                        if (booked != null) {
+                            index.cancel(booked.getReservationId());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Asks the index for the window and fails if it disagrees with the SQL answers.
+     *
+     * @return the interval the index booked, or null
+     */
+    private ReservationIndex.Interval compare(ReservationIndex index, String subscriber, long start, long end,
+            boolean sqlDuplicate, TreeSet<Integer> sqlFree, int totalSpots) {
+        checked++;
+        String window = subscriber + " " + Instant.ofEpochMilli(start) + " - " + Instant.ofEpochMilli(end);
+
+        List<Integer> indexFree = index.freeSpots(start, end);
+        if (!new TreeSet<>(indexFree).equals(sqlFree)) {
+            fail("free spots differ for " + window + ": index " + indexFree + ", SQL " + sqlFree);
+        }
+
+        int expected;
+        if (sqlDuplicate) {
+            expected = ReservationIndex.DUPLICATE_DATE;
+        } else if (totalSpots == 0 || (double) sqlFree.size() / totalSpots < 0.4) {
+            expected = ReservationIndex.NOT_ENOUGH_AVAILABILITY;
+        } else if (sqlFree.isEmpty()) {
+            expected = ReservationIndex.NO_SPOT;
+        } else {
+            expected = 1;
+        }
+
+        int[] reason = new int[1];
+        ReservationIndex.Interval booked = index.tryReserve(subscriber, start, end, reason);
+        int actual = booked != null ? 1 : reason[0];
+        if (actual != expected) {
+            fail("outcome differs for " + window + ": index " + actual + ", SQL " + expected);
+        }
+        if (booked != null && !sqlFree.contains(booked.getSpotId())) {
+            fail("index booked spot " + booked.getSpotId() + " which SQL sees as taken for " + window);
+        }
+        return booked;
+    }
+
+    private static LocalDate day(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static void fail(String message) {
+        System.err.println("MISMATCH: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,20 @@
+package gui;
+
+/**
+ * Severity of a server log message. Messages below the level selected in the server window are dropped
+ * before they are queued, so per-request chatter costs nothing when it is turned off.
+ */
+public enum LogLevel {
+
+    /** Per-request details (received messages, query results). */
+    DEBUG,
+
+    /** Normal server activity. */
+    INFO,
+
+    /** Something unexpected that the server recovered from. */
+    WARN,
+
+    /** A request or background task failed. */
+    ERROR
+}
@@ -0,0 +1,103 @@
+package gui;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer for many producers and a single consumer.
+ *
+ * <p>
+ * Every slot carries a sequence number (the classic Vyukov bounded queue). A producer claims a slot with one
+ * CAS on the tail counter and publishes it by advancing the slot's sequence; the consumer takes slots in
+ * order as long as they are published. Producers never block or wait for the consumer: when the buffer is
+ * full the element is dropped and counted, which is the right trade for log lines.
+ * </p>
+ *
+ * @param <E> element type
+ */
+public class LogRingBuffer<E> {
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    /** Next position producers claim. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Next position the consumer reads; only touched by the consumer thread. */
+    private long head = 0;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        elements = new Object[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element without blocking. Safe to call from any thread.
+     *
+     * @param element the element
+     * @return false if the buffer was full and the element was dropped
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    sequences.set(index, position + 1); // publish
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code max} published elements into {@code out}. Must only be called from one thread.
+     *
+     * @param out the list to add to
+     * @param max maximum number of elements to take
+     * @return number of elements taken
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<E> out, int max) {
+        int taken = 0;
+        while (taken < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            out.add((E) elements[index]);
+            elements[index] = null;
+            sequences.set(index, head + elements.length); // free the slot for the next lap
+            head++;
+            taken++;
+        }
+        return taken;
+    }
+
+    /**
+     * @return number of elements dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -1,7 +1,14 @@
 package gui;
 
 import java.io.IOException;
-import javafx.application.Platform;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -9,11 +16,17 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import server.EchoServer;
+import server.EmailOutbox;
+import server.mysqlConnection;
 
 /**
  * <p>
@@ -64,9 +77,49 @@ public class ServerMessageFrameController {
     /** Observable list (not used currently) */
     ObservableList<String> list;
 
-    /** Main TextArea for displaying server logs */
+    /** Main log view; a virtualized list that only renders the visible lines */
     @FXML
-    private TextArea logArea;
+    private ListView<String> logArea;
+
+    /** Selects the lowest level that is logged */
+    @FXML
+    private ComboBox<LogLevel> levelBox;
+
+    /** Lines kept in {@link #logArea}; older lines are removed ({@code bpark.log.maxLines}) */
+    private static final int MAX_LOG_LINES = Integer.getInteger("bpark.log.maxLines", 5000);
+
+    /** How often queued messages are flushed to {@link #logArea} ({@code bpark.log.flushMs}) */
+    private static final int FLUSH_INTERVAL_MS = Integer.getInteger("bpark.log.flushMs", 100);
+
+    /** Most lines moved to the view in one flush; the rest wait for the next one */
+    private static final int MAX_BATCH = 2000;
+
+    /** Messages waiting for the next flush; written by any thread, drained on the JavaFX thread */
+    private final LogRingBuffer<String> pending = new LogRingBuffer<>(Integer.getInteger("bpark.log.bufferSize", 16384));
+
+    /** Reused batch list for {@link #flush()} */
+    private final List<String> batch = new ArrayList<>();
+
+    /** Lowest level that is logged ({@code bpark.log.level}, default INFO) */
+    private volatile LogLevel minLevel = configuredLevel();
+
+    /** Dropped count already reported in the log */
+    private long reportedDropped = 0;
+
+    /**
+     * Reads {@code bpark.log.level}. An unknown level is reported in the log and INFO is used.
+     *
+     * @return the configured level
+     */
+    private LogLevel configuredLevel() {
+        String value = System.getProperty("bpark.log.level", "INFO");
+        try {
+            return LogLevel.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            pending.offer(LogLevel.WARN + " Unknown log level bpark.log.level=" + value + ", using INFO.");
+            return LogLevel.INFO;
+        }
+    }
 
     /**
      * Sets the {@link EchoServer} instance used by this controller.
@@ -78,14 +131,105 @@ public class ServerMessageFrameController {
     }
 
     /**
-     * Appends a log message to the server log area (thread-safe).
+     * Called by the FXML loader. Sets up the level selector and starts the timer that flushes queued
+     * messages to the log view.
+     */
+    @FXML
+    public void initialize() {
+        if (levelBox != null) {
+            levelBox.getItems().setAll(LogLevel.values());
+            levelBox.setValue(minLevel);
+        }
+        Timeline flusher = new Timeline(new KeyFrame(Duration.millis(FLUSH_INTERVAL_MS), e -> flush()));
+        flusher.setCycleCount(Animation.INDEFINITE);
+        flusher.play();
+    }
+
+    /**
+     * Appends an INFO message to the server log (thread-safe, never blocks).
      *
      * @param msg the message to append
      */
     public void appendMessage(String msg) {
-        Platform.runLater(() -> {
-            logArea.appendText(msg + "\n");
-        });
+        appendMessage(LogLevel.INFO, msg);
+    }
+
+    /**
+     * Appends a message to the server log if its level is enabled (thread-safe, never blocks).
+     * The message is queued and shown with the next batch.
+     *
+     * @param level the message level
+     * @param msg   the message to append
+     */
+    public void appendMessage(LogLevel level, String msg) {
+        if (level.compareTo(minLevel) >= 0) {
+            pending.offer(level.compareTo(LogLevel.WARN) >= 0 ? level + " " + msg : msg);
+        }
+    }
+
+    /**
+     * @param level a log level
+     * @return true if messages of that level are logged; use it to skip building expensive messages
+     */
+    public boolean isLoggable(LogLevel level) {
+        return level.compareTo(minLevel) >= 0;
+    }
+
+    /**
+     * Handles the level selector: changes the lowest level that is logged.
+     *
+     * @param event the ActionEvent triggered by the level selector
+     */
+    @FXML
+    public void getLevelBox(ActionEvent event) {
+        if (levelBox.getValue() != null) {
+            minLevel = levelBox.getValue();
+        }
+    }
+
+    /**
+     * Moves the queued messages to the log view in one update and trims the view to {@link #MAX_LOG_LINES}.
+     * Runs on the JavaFX thread.
+     */
+    private void flush() {
+        batch.clear();
+        if (pending.drainTo(batch, MAX_BATCH) == 0) {
+            return;
+        }
+        long dropped = pending.getDropped();
+        if (dropped != reportedDropped) {
+            batch.add("WARN " + (dropped - reportedDropped) + " log messages dropped (log buffer full)");
+            reportedDropped = dropped;
+        }
+
+        List<String> lines = new ArrayList<>(batch.size());
+        for (String msg : batch) {
+            for (String line : msg.split("\n")) {
+                lines.add(line);
+            }
+        }
+
+        ObservableList<String> items = logArea.getItems();
+        boolean atBottom = items.isEmpty() || isLastLineVisible();
+        items.addAll(lines);
+        int excess = items.size() - MAX_LOG_LINES;
+        if (excess > 0) {
+            items.remove(0, excess);
+        }
+        if (atBottom) {
+            logArea.scrollTo(items.size() - 1);
+        }
+    }
+
+    /**
+     * @return true unless the user scrolled up to read older lines
+     */
+    private boolean isLastLineVisible() {
+        VirtualFlow<?> flow = (VirtualFlow<?>) logArea.lookup(".virtual-flow");
+        if (flow == null || flow.getLastVisibleCell() == null) {
+            return true;
+        }
+        return flow.getLastVisibleCell().getIndex() >= logArea.getItems().size() - 1;
     }
 
     /**
@@ -112,7 +256,7 @@ public class ServerMessageFrameController {
 
         EchoServer server = new EchoServer(5555);
         EchoServer.messageController = controller;
-        server.listen();
+        server.startListening();
 
         controller.setServer(server);
 
@@ -122,6 +266,41 @@ public class ServerMessageFrameController {
         primaryStage.show();
     }
 
+    /**
+     * Shows the per-command counters and latency percentiles, the mail outbox counters and the report image cache hit ratio, in the log area.
+     *
+     * @param event the ActionEvent triggered by clicking the Command Stats button
+     */
+    @FXML
+    public void getCommandStatsBtn(ActionEvent event) {
+        if (server != null) {
+            appendMessage(server.getCommandRegistry().formatStats());
+            appendMessage(EmailOutbox.getInstance().formatStats());
+            appendMessage(mysqlConnection.getInstance().getReportImageCache().formatStats());
+            appendMessage(mysqlConnection.getInstance().getSubscriberCache().formatStats());
+            appendMessage(mysqlConnection.getInstance().getWorkerCache().formatStats());
+        }
+    }
+
+    /**
+     * Writes the per-command counters and latency percentiles to a file in the working directory.
+     *
+     * @param event the ActionEvent triggered by clicking the Dump Stats button
+     */
+    @FXML
+    public void getDumpStatsBtn(ActionEvent event) {
+        if (server == null) {
+            return;
+        }
+        Path file = Paths.get("command-stats-" + System.currentTimeMillis() + ".txt");
+        try {
+            server.getCommandRegistry().dumpStats(file);
+            appendMessage("Command stats written to " + file.toAbsolutePath());
+        } catch (IOException e) {
+            appendMessage("Failed to write command stats: " + e.getMessage());
+        }
+    }
+
     /**
      * Handles the exit button action.
      * Attempts to shut down the server and terminate the application.
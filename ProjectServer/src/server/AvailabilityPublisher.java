@@ -0,0 +1,176 @@
+package server;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import common.WireProtocol;
+import gui.LogLevel;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Pushes the number of free parking spots to the terminals and away pages that subscribed to it.
+ *
+ * <p>
+ * Clients used to learn the count only by sending {@code Check_Avilable_Spots} and asking again whenever
+ * they wanted a fresh number. A client now subscribes once ({@code SUBSCRIBE_AVAILABILITY}) and gets an
+ * {@code AVAILABLE_SPOTS} reply whenever the count changes. Every park, exit, forced exit and reservation
+ * marks the {@link SpotOccupancyEngine} as changed; the publisher checks at most once every
+ * {@code bpark.availability.pushMs} (default one second), so a burst of changes results in one push.
+ * Reservation holds begin and end without any command, so each tick first lets the engine replay its due
+ * wake-ups, which mark it as changed too. The count is only read after a change, and a subscriber only gets
+ * it when it differs from the last count it was sent. The message is encoded once for all subscribers.
+ * </p>
+ *
+ * <p>
+ * Pushes go out through each client's command queue, like replies, so a slow client delays only its own
+ * push and never the publisher thread or the other subscribers.
+ * </p>
+ */
+public class AvailabilityPublisher {
+
+    private static final long PUSH_INTERVAL_MS = Long.getLong("bpark.availability.pushMs", 1000);
+
+    /**
+     * A subscribed client.
+     */
+    private static final class Subscription {
+        /** Controller the count is addressed to ("Away" or "Termenal"). */
+        private final String page;
+        /** True if the client negotiated the {@link WireProtocol}. */
+        private final boolean wire;
+        /** Last count the client was sent or queued for; -1 if it has none yet. */
+        private volatile int lastSent;
+
+        Subscription(String page, boolean wire, int lastSent) {
+            this.page = page;
+            this.wire = wire;
+            this.lastSent = lastSent;
+        }
+    }
+
+    private final mysqlConnection db;
+    private final BiConsumer<ConnectionToClient, Runnable> clientQueue;
+    private final Map<ConnectionToClient, Subscription> subscribers = new ConcurrentHashMap<>();
+    private final AtomicBoolean changed = new AtomicBoolean(true);
+    private final ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread t = new Thread(task, "availability-push");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param db          the database, whose {@link SpotOccupancyEngine} reports the changes
+     * @param clientQueue runs a task on the command queue of a client; the pushes are sent from there
+     */
+    public AvailabilityPublisher(mysqlConnection db, BiConsumer<ConnectionToClient, Runnable> clientQueue) {
+        this.db = db;
+        this.clientQueue = clientQueue;
+        db.getOccupancy().setChangeListener(() -> changed.set(true));
+    }
+
+    /**
+     * Starts checking for changes every {@code bpark.availability.pushMs}.
+     */
+    public void start() {
+        pusher.scheduleWithFixedDelay(this::pushIfChanged, PUSH_INTERVAL_MS, PUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes a client. The caller sends it the returned count as the answer to its request;
+     * later changes are pushed. The next tick checks the count for the new subscriber even without a change,
+     * in case it changed while the answer was being counted, or could not be counted.
+     *
+     * @param client the client
+     * @param page   "Away" or "Termenal"
+     * @param wire   true if the client negotiated the {@link WireProtocol}
+     * @return the message with the current count, or null if it can't be counted
+     * @throws InterruptedException if counting in the database is interrupted
+     */
+    public String subscribe(ConnectionToClient client, String page, boolean wire) throws InterruptedException {
+        String count = db.COUNTEmptySpot();
+        subscribers.put(client, new Subscription(page, wire, count == null ? -1 : Integer.parseInt(count.trim())));
+        changed.set(true);
+        return count == null ? null : message(page, count);
+    }
+
+    /**
+     * @param client a client that logged out or disconnected
+     */
+    public void unsubscribe(ConnectionToClient client) {
+        subscribers.remove(client);
+    }
+
+    /**
+     * @return number of subscribed clients
+     */
+    public int size() {
+        return subscribers.size();
+    }
+
+    /**
+     * @param page  "Away" or "Termenal"
+     * @param count number of free spots
+     * @return the reply text the client routes to that page
+     */
+    private static String message(String page, String count) {
+        return ("Away".equals(page) ? "SubscriberAwayController" : "SubscriberTermenalController")
+                + " AVAILABLE_SPOTS " + count;
+    }
+
+    private void pushIfChanged() {
+        try {
+            if (db.getOccupancy().isLoaded()) {
+                db.getOccupancy().advanceToNow();
+            }
+            boolean due = changed.getAndSet(false);
+            if (subscribers.isEmpty() || !due) {
+                return;
+            }
+            String count = db.COUNTEmptySpot();
+            if (count == null) {
+                return;
+            }
+            int current = Integer.parseInt(count.trim());
+
+            // Encode each variant once, then hand the same object to every subscriber
+            String away = message("Away", count);
+            String terminal = message("Termenal", count);
+            byte[] awayFrame = WireProtocol.encodeReply(away);
+            byte[] terminalFrame = WireProtocol.encodeReply(terminal);
+            int queued = 0;
+            for (Map.Entry<ConnectionToClient, Subscription> entry : subscribers.entrySet()) {
+                ConnectionToClient client = entry.getKey();
+                Subscription subscription = entry.getValue();
+                if (subscription.lastSent == current) {
+                    continue;
+                }
+                subscription.lastSent = current;
+                boolean isAway = "Away".equals(subscription.page);
+                Object push = subscription.wire ? (isAway ? awayFrame : terminalFrame) : (isAway ? away : terminal);
+                clientQueue.accept(client, () -> {
+                    try {
+                        client.sendToClient(push);
+                    } catch (IOException e) {
+                        subscribers.remove(client, subscription);
+                    }
+                });
+                queued++;
+            }
+            if (queued > 0) {
+                EchoServer.messageController.appendMessage(LogLevel.DEBUG,
+                        "Pushing " + count + " available spots to " + queued + " clients.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Keep the schedule running whatever happened in this round
+            EchoServer.messageController.appendMessage(LogLevel.WARN, "Availability push failed: " + e);
+        }
+    }
+}
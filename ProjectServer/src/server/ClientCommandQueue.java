@@ -0,0 +1,78 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Commands of one client waiting for one of its in-flight slots.
+ *
+ * <p>
+ * A client can pipeline many requests on its connection; they run in parallel on the executor and are
+ * answered in the order they finish, but one client never has more than {@code maxInFlight} of them
+ * running, so it can't take more than its share of the executor. A command that finds every slot taken
+ * waits here and runs when one of the client's commands finishes.
+ * </p>
+ */
+class ClientCommandQueue {
+
+    private final int maxInFlight;
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    private int running = 0;
+
+    /**
+     * @param maxInFlight number of commands of the client that run at the same time
+     */
+    ClientCommandQueue(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Runs a command on the executor as soon as the client has a free slot.
+     *
+     * @param command  the command
+     * @param executor the executor that runs the commands
+     */
+    void submit(Runnable command, ExecutorService executor) {
+        if (offer(command)) {
+            run(command, executor);
+        }
+    }
+
+    private void run(Runnable command, ExecutorService executor) {
+        executor.submit(() -> {
+            try {
+                command.run();
+            } finally {
+                Runnable next = next();
+                if (next != null) {
+                    run(next, executor);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if the command can run now, false if it was queued
+     */
+    private synchronized boolean offer(Runnable command) {
+        if (running < maxInFlight) {
+            running++;
+            return true;
+        }
+        waiting.add(command);
+        return false;
+    }
+
+    /**
+     * Called when a command finished.
+     *
+     * @return the next queued command, which takes over the slot, or null if none is waiting
+     */
+    private synchronized Runnable next() {
+        Runnable command = waiting.poll();
+        if (command == null) {
+            running--;
+        }
+        return command;
+    }
+}
@@ -0,0 +1,237 @@
+package server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Table of the commands a client can send, looked up by name in a {@link HashMap}.
+ *
+ * <p>
+ * Each command declares its name, the expected message size (or a range when trailing arguments are optional),
+ * the roles allowed to run it and its handler.
+ * {@link #dispatch(ConnectionToClient, ArrayList)} checks the role and the message size before calling the
+ * handler, and times every call into a per-command {@link LatencyHistogram} together with success, error
+ * and role-rejection counters. {@link #formatStats()} and {@link #dumpStats(Path)} show which commands
+ * dominate the tail latency.
+ * </p>
+ */
+public class CommandRegistry {
+
+    /** Message size value for commands that check their own arguments, or maximum size meaning no limit. */
+    public static final int ANY_SIZE = -1;
+
+    /**
+     * Handles one client command.
+     */
+    @FunctionalInterface
+    public interface CommandHandler {
+        /**
+         * @param client  the client that sent the command
+         * @param message the whole message; index 0 is the command name
+         */
+        void handle(ConnectionToClient client, ArrayList<String> message) throws IOException, InterruptedException;
+    }
+
+    /**
+     * A registered command with its statistics.
+     */
+    public static class Command {
+        private final String name;
+        private final int minSize;
+        private final int maxSize;
+        private final String sizeError;
+        private final CommandHandler handler;
+        private List<String> roles;
+        private String roleError;
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rejections = new AtomicLong();
+
+        Command(String name, int minSize, int maxSize, String sizeError, CommandHandler handler) {
+            this.name = name;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.sizeError = sizeError;
+            this.handler = handler;
+        }
+
+        /**
+         * Restricts the command to clients signed in with one of the given roles.
+         *
+         * @param roleError message sent to other clients, or {@code null} to ignore them silently
+         * @param roles     allowed roles, as returned by {@link EchoServer#isClientOfType(ConnectionToClient)}
+         * @return this command
+         */
+        public Command requireRole(String roleError, String... roles) {
+            this.roles = Arrays.asList(roles);
+            this.roleError = roleError;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getSuccesses() {
+            return successes.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getRejections() {
+            return rejections.get();
+        }
+    }
+
+    private final Map<String, Command> commands = new HashMap<>();
+
+    /** Returns the role of a client ({@code null} if not signed in as a worker). */
+    private final Function<ConnectionToClient, String> roleOf;
+
+    /** Sends an error text to a client. */
+    private final BiConsumer<ConnectionToClient, String> reject;
+
+    /**
+     * @param roleOf returns the role of a client
+     * @param reject sends an error text to a client
+     */
+    public CommandRegistry(Function<ConnectionToClient, String> roleOf, BiConsumer<ConnectionToClient, String> reject) {
+        this.roleOf = roleOf;
+        this.reject = reject;
+    }
+
+    /**
+     * Registers a command. Must be called before the server starts listening.
+     *
+     * @param name      the command name (index 0 of the message)
+     * @param size      exact message size including the name, or {@link #ANY_SIZE}
+     * @param sizeError message sent when the size doesn't match
+     * @param handler   the handler
+     * @return the command, to add a role requirement
+     */
+    public Command register(String name, int size, String sizeError, CommandHandler handler) {
+        return size == ANY_SIZE ? register(name, 1, ANY_SIZE, sizeError, handler) : register(name, size, size, sizeError, handler);
+    }
+
+    /**
+     * Registers a command whose trailing arguments are optional. Must be called before the server starts listening.
+     *
+     * @param name      the command name (index 0 of the message)
+     * @param minSize   smallest message size including the name
+     * @param maxSize   largest message size including the name, or {@link #ANY_SIZE} for no limit
+     * @param sizeError message sent when the size is out of range
+     * @param handler   the handler
+     * @return the command, to add a role requirement
+     */
+    public Command register(String name, int minSize, int maxSize, String sizeError, CommandHandler handler) {
+        Command command = new Command(name, minSize, maxSize, sizeError, handler);
+        if (commands.put(name, command) != null) {
+            throw new IllegalStateException("Command registered twice: " + name);
+        }
+        return command;
+    }
+
+    /**
+     * Runs the handler of a command after checking role and message size.
+     *
+     * @param client  the client that sent the command
+     * @param message the message; index 0 is the command name
+     * @return false if the command is not registered
+     */
+    public boolean dispatch(ConnectionToClient client, ArrayList<String> message) throws IOException, InterruptedException {
+        Command command = commands.get(message.get(0));
+        if (command == null) {
+            return false;
+        }
+
+        if (command.roles != null && !command.roles.contains(roleOf.apply(client))) {
+            command.rejections.incrementAndGet();
+            if (command.roleError != null) {
+                reject.accept(client, command.roleError);
+            }
+            return true;
+        }
+
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            if (message.size() < command.minSize || (command.maxSize != ANY_SIZE && message.size() > command.maxSize)) {
+                reject.accept(client, command.sizeError);
+                return true;
+            }
+            command.handler.handle(client, message);
+            ok = true;
+        } finally {
+            command.latency.record(System.nanoTime() - start);
+            (ok ? command.successes : command.errors).incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * @return the registered commands, sorted by name
+     */
+    public List<Command> getCommands() {
+        List<Command> list = new ArrayList<>(commands.values());
+        list.sort((a, b) -> a.name.compareTo(b.name));
+        return list;
+    }
+
+    /**
+     * @return a table with the counters and latency percentiles (in milliseconds) of every command that ran
+     */
+    public String formatStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-32s %8s %6s %6s %8s %8s %8s %8s %8s%n",
+                "command", "ok", "error", "denied", "mean", "p50", "p99", "p99.9", "max"));
+        for (Command c : getCommands()) {
+            LatencyHistogram h = c.latency;
+            if (h.getCount() == 0 && c.getRejections() == 0) {
+                continue;
+            }
+            sb.append(String.format("%-32s %8d %6d %6d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    c.name, c.getSuccesses(), c.getErrors(), c.getRejections(),
+                    h.getMeanMicros() / 1000.0,
+                    h.getValueAtPercentile(50) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0,
+                    h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMaxMicros() / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes {@link #formatStats()} to a file.
+     *
+     * @param file the file to write (replaced if it exists)
+     * @throws IOException if the file can't be written
+     */
+    public void dumpStats(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("Command latency (ms) at " + LocalDateTime.now());
+            out.print(formatStats());
+        }
+    }
+}
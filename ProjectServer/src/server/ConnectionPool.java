@@ -0,0 +1,473 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool used by {@link mysqlConnection}.
+ *
+ * <p>
+ * A fair {@link Semaphore} with {@code maxSize} permits bounds the number of connections that exist at
+ * the same time, so racing borrowers can never open more than the cap. Idle connections sit in a LIFO
+ * deque (the most recently used connection is the one most likely to still be alive).
+ * </p>
+ *
+ * <p>
+ * Connections are not validated on borrow. Instead a background housekeeper:
+ * </p>
+ * <ul>
+ *     <li>validates idle connections that were not used for {@code validationInterval}</li>
+ *     <li>evicts idle connections above {@code minIdle} after {@code idleTimeout}</li>
+ *     <li>retires connections older than {@code maxLifetime}</li>
+ *     <li>tops the pool back up to {@code minIdle}</li>
+ *     <li>reports connections borrowed for longer than {@code leakThreshold}, with the borrower's stack trace</li>
+ * </ul>
+ *
+ * <p>
+ * Each connection carries a {@link StatementCache}, so helpers that run fixed SQL strings can reuse
+ * their prepared statements through {@link #prepare(Connection, String, boolean)}.
+ * </p>
+ *
+ * <p>
+ * All sizes and timeouts can be set with system properties (see {@link #fromSystemProperties}),
+ * and the pool keeps counters for active, idle and waiting requests and for wait time,
+ * so it can be sized from measurements instead of guesses.
+ * </p>
+ */
+public class ConnectionPool {
+
+    /**
+     * A physical connection and its bookkeeping.
+     */
+    private static class PooledConnection {
+        final Connection connection;
+        final StatementCache statements;
+        final long createdAt;
+        volatile long lastUsedAt;
+        volatile long borrowedAt;
+        volatile Throwable borrowedBy;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = createdAt;
+        }
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int minIdle;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long validationIntervalMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    /** One permit per connection that may exist (idle or borrowed). */
+    private final Semaphore permits;
+
+    /** Idle connections, most recently used first. */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    /** Connections currently handed out, keyed by the connection object. */
+    private final Map<Connection, PooledConnection> borrowed = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService housekeeper;
+
+    // Counters
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    /**
+     * Creates the pool, opens {@code minIdle} connections and starts the housekeeper.
+     *
+     * @param url                      JDBC URL
+     * @param user                     database user
+     * @param password                 database password
+     * @param minIdle                  connections kept open even when idle
+     * @param maxSize                  maximum number of open connections
+     * @param borrowTimeoutMillis      how long a borrower waits before giving up
+     * @param idleTimeoutMillis        idle time after which connections above {@code minIdle} are closed
+     * @param maxLifetimeMillis        age after which a connection is retired
+     * @param validationIntervalMillis how often idle connections are checked
+     * @param leakThresholdMillis      borrow time after which a connection is reported as leaked (0 disables)
+     * @param statementCacheSize       prepared statements cached per connection (at least 1)
+     */
+    public ConnectionPool(String url, String user, String password,
+                          int minIdle, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis,
+                          long validationIntervalMillis, long leakThresholdMillis, int statementCacheSize) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxSize));
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = Math.max(1, statementCacheSize);
+        this.permits = new Semaphore(this.maxSize, true);
+
+        fillToMinimum();
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(validationIntervalMillis, leakThresholdMillis > 0 ? leakThresholdMillis : Long.MAX_VALUE));
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a pool whose settings come from system properties, with the given defaults:
+     * <ul>
+     *     <li>{@code bpark.pool.minIdle}</li>
+     *     <li>{@code bpark.pool.maxSize}</li>
+     *     <li>{@code bpark.pool.borrowTimeoutMs} (default 5000)</li>
+     *     <li>{@code bpark.pool.idleTimeoutMs} (default 10 minutes)</li>
+     *     <li>{@code bpark.pool.maxLifetimeMs} (default 30 minutes)</li>
+     *     <li>{@code bpark.pool.validationIntervalMs} (default 30 seconds)</li>
+     *     <li>{@code bpark.pool.leakThresholdMs} (default 60 seconds, 0 disables)</li>
+     *     <li>{@code bpark.pool.statementCacheSize} (default 32 per connection)</li>
+     * </ul>
+     */
+    public static ConnectionPool fromSystemProperties(String url, String user, String password,
+                                                      int defaultMinIdle, int defaultMaxSize) {
+        return new ConnectionPool(url, user, password,
+                Integer.getInteger("bpark.pool.minIdle", defaultMinIdle),
+                Integer.getInteger("bpark.pool.maxSize", defaultMaxSize),
+                Long.getLong("bpark.pool.borrowTimeoutMs", 5_000L),
+                Long.getLong("bpark.pool.idleTimeoutMs", 10 * 60_000L),
+                Long.getLong("bpark.pool.maxLifetimeMs", 30 * 60_000L),
+                Long.getLong("bpark.pool.validationIntervalMs", 30_000L),
+                Long.getLong("bpark.pool.leakThresholdMs", 60_000L),
+                Integer.getInteger("bpark.pool.statementCacheSize", 32));
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout for one to become free.
+     *
+     * @return an open connection; must be given back with {@link #release(Connection)}
+     * @throws SQLException if no connection became free in time or a new one could not be opened
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Connection borrow() throws SQLException, InterruptedException {
+        long waitStart = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long waited = System.nanoTime() - waitStart;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection. " + getStats());
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowedBy = leakThresholdMillis > 0 ? new Throwable("Connection borrowed by " + Thread.currentThread().getName()) : null;
+            pooled.leakReported = false;
+            borrowed.put(pooled.connection, pooled);
+            borrowCount.incrementAndGet();
+            return pooled.connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool. Closed or expired connections are discarded.
+     * Connections that were not borrowed from this pool are closed.
+     *
+     * @param connection the connection to return, may be {@code null}
+     */
+    public void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        PooledConnection pooled = borrowed.remove(connection);
+        if (pooled == null) {
+            System.err.println(" < Connection was not borrowed from the pool. Closing.");
+            closeQuietly(connection);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (pooled.leakReported) {
+            System.out.println(" < Previously reported connection returned after " + (now - pooled.borrowedAt) + " ms.");
+        }
+        pooled.borrowedBy = null;
+        pooled.lastUsedAt = now;
+
+        boolean reusable;
+        try {
+            reusable = !connection.isClosed() && now - pooled.createdAt < maxLifetimeMillis;
+            if (reusable && !connection.getAutoCommit()) {
+                // Don't hand an open transaction to the next borrower
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (reusable) {
+            idle.offerFirst(pooled);
+        } else {
+            evictedCount.incrementAndGet();
+            closeQuietly(pooled);
+        }
+        permits.release();
+    }
+
+    /**
+     * Stops the housekeeper and closes every idle connection.
+     * Borrowed connections are closed when they are released.
+     */
+    public void shutdown() {
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled);
+        }
+    }
+
+    /**
+     * Returns a prepared statement for {@code sql} from the cache of a borrowed connection.
+     * The statement stays owned by the cache: close its result sets, not the statement.
+     * Connections that were not borrowed from this pool get a plain new statement, which the caller must close.
+     *
+     * @param connection    a connection borrowed from this pool
+     * @param sql           the SQL text
+     * @param generatedKeys true to prepare with {@code RETURN_GENERATED_KEYS}
+     * @return a prepared statement with cleared parameters
+     * @throws SQLException if the statement can't be prepared
+     */
+    public PreparedStatement prepare(Connection connection, String sql, boolean generatedKeys) throws SQLException {
+        PooledConnection pooled = borrowed.get(connection);
+        if (pooled == null) {
+            statementMisses.incrementAndGet();
+            return generatedKeys
+                    ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : connection.prepareStatement(sql);
+        }
+        return pooled.statements.prepare(sql, generatedKeys);
+    }
+
+    /** @return number of connections currently borrowed */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /** @return number of open connections waiting in the pool */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /** @return number of threads currently waiting for a connection */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /** @return maximum number of open connections */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return number of successful borrows since startup */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /** @return number of borrows that timed out */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /** @return number of connections reported as leaked */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /** @return average time spent waiting for a connection, in milliseconds */
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get() + timeoutCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    /** @return longest time spent waiting for a connection, in milliseconds */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /** @return share of {@link #prepare(Connection, String, boolean)} calls served from the cache */
+    public double getStatementHitRatio() {
+        long hits = statementHits.get();
+        long total = hits + statementMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return a one line summary of the pool counters
+     */
+    public String getStats() {
+        return String.format("Pool[active=%d, idle=%d, waiting=%d, max=%d, borrows=%d, avgWait=%.2fms, maxWait=%.2fms, "
+                        + "timeouts=%d, created=%d, evicted=%d, leaks=%d, stmtHits=%d, stmtMisses=%d, stmtHitRatio=%.1f%%]",
+                getActiveCount(), getIdleCount(), getWaitingCount(), maxSize, borrowCount.get(),
+                getAverageWaitMillis(), getMaxWaitMillis(), timeoutCount.get(), createdCount.get(),
+                evictedCount.get(), leakCount.get(), statementHits.get(), statementMisses.get(),
+                getStatementHitRatio() * 100);
+    }
+
+    /**
+     * Takes the most recently used idle connection, discarding any that have reached their max lifetime.
+     */
+    private PooledConnection takeIdle() {
+        long now = System.currentTimeMillis();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (now - pooled.createdAt < maxLifetimeMillis) {
+                return pooled;
+            }
+            evictedCount.incrementAndGet();
+            closeQuietly(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        createdCount.incrementAndGet();
+        return new PooledConnection(connection, new StatementCache(connection, statementCacheSize, statementHits, statementMisses));
+    }
+
+    /**
+     * Opens idle connections until {@code minIdle} is reached, without going over {@code maxSize}.
+     */
+    private void fillToMinimum() {
+        // Every idle connection stands for one free permit, so this keeps idle + borrowed <= maxSize
+        while (idle.size() < minIdle && idle.size() < permits.availablePermits()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                System.err.println("Error opening pooled connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Background pass: validation, idle eviction, max lifetime, refill and leak detection.
+     */
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Snapshot so borrowers can keep working while we check
+            List<PooledConnection> snapshot = new ArrayList<>(idle);
+            int idleCount = snapshot.size();
+            for (PooledConnection pooled : snapshot) {
+                boolean expired = now - pooled.createdAt >= maxLifetimeMillis;
+                boolean surplus = idleCount > minIdle && now - pooled.lastUsedAt >= idleTimeoutMillis;
+                boolean needsCheck = now - pooled.lastUsedAt >= validationIntervalMillis;
+                if (!expired && !surplus && !needsCheck) {
+                    continue;
+                }
+                // Only touch it if no borrower took it in the meantime
+                if (!idle.remove(pooled)) {
+                    continue;
+                }
+                if (expired || surplus || !isValid(pooled.connection)) {
+                    evictedCount.incrementAndGet();
+                    idleCount--;
+                    closeQuietly(pooled);
+                } else {
+                    pooled.lastUsedAt = now;
+                    idle.offerLast(pooled);
+                }
+            }
+
+            fillToMinimum();
+
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pooled : borrowed.values()) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt >= leakThresholdMillis) {
+                        pooled.leakReported = true;
+                        leakCount.incrementAndGet();
+                        System.err.println("Possible connection leak: connection borrowed " + (now - pooled.borrowedAt)
+                                + " ms ago and not returned.");
+                        Throwable borrower = pooled.borrowedBy;
+                        if (borrower != null) {
+                            borrower.printStackTrace();
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error in connection pool housekeeping: " + e.getMessage());
+        }
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(PooledConnection pooled) {
+        pooled.statements.close();
+        closeQuietly(pooled.connection);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+}
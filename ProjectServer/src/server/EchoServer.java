@@ -1,6 +1,7 @@
 package server;
 import java.net.InetAddress;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
@@ -17,38 +18,32 @@ import java.time.format.DateTimeParseException;
 import java.time.temporal.Temporal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 import com.mysql.cj.xdevapi.Client;
 
 import common.MyFile;
+import common.WireProtocol;
+import gui.LogLevel;
 import gui.ServerMessageFrameController;
 import javafx.application.Platform;
 import ocsf.server.AbstractServer;
 import ocsf.server.ConnectionToClient;
-import common.MyFile;
-import javafx.scene.Scene;
-import javafx.scene.chart.*;
-import javafx.scene.control.Label;
-import javafx.scene.layout.StackPane;
-import javafx.scene.layout.VBox;
-import javafx.stage.Stage;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.SnapshotParameters;
-import javafx.scene.chart.*;
-import javafx.scene.image.WritableImage;
-import javafx.scene.layout.VBox;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 
 /**
  * <p>
@@ -64,10 +59,71 @@ import java.io.IOException;
  * 
  * @author Amit_Regev
  */
-public class EchoServer extends AbstractServer {
+public final class EchoServer extends AbstractServer {
+
+    /** Disconnects clients that stay idle longer than the limit for their role */
+    private final IdleReaper idleReaper = new IdleReaper(this::idleClassOf,
+            client -> sendToClientLabelUpdate(client, "Disconnected due to inactivity "));
+
+    /** {@code ConnectionToClient} info key holding the negotiated {@link WireProtocol} version */
+    private static final String WIRE_VERSION_INFO = "wireVersion";
+
+    /** Client info key set while a subscriber is signed in with a tag reader */
+    private static final String TAG_READER_INFO = "tagReader";
+
+    /** Client info key set when the client asked for report images in chunks */
+    private static final String REPORT_STREAMING_INFO = "reportStreaming";
+
+    /**
+     * The client and {@link WireProtocol} request ID of the command running on this thread,
+     * so {@link #sendReply} can echo the ID without every handler passing it along.
+     */
+    private static final class RequestContext {
+        private final ConnectionToClient client;
+        private final int requestId;
+
+        RequestContext(ConnectionToClient client, int requestId) {
+            this.client = client;
+            this.requestId = requestId;
+        }
+    }
+
+    /** Request being handled by the current thread, if it carried an ID */
+    private final ThreadLocal<RequestContext> currentRequest = new ThreadLocal<>();
+
+    /** Maximum number of commands of one client that run at the same time; the rest wait in its queue */
+    private static final int MAX_IN_FLIGHT_PER_CLIENT = Integer.getInteger("bpark.maxInFlightPerClient", 8);
+
+    /** Sessions per history page when the client doesn't ask for a size, and the most it can ask for */
+    private static final int HISTORY_PAGE_SIZE = Integer.getInteger("bpark.history.pageSize", 20);
+    private static final int HISTORY_MAX_PAGE_SIZE = Integer.getInteger("bpark.history.maxPageSize", 100);
+
+    /** History page token of the first page, and next-page token sent with the last page */
+    private static final String HISTORY_FIRST_PAGE = "-";
+    private static final String HISTORY_NO_MORE = "END";
+
+    /** Subscribers per listing page when the client doesn't ask for a size, and the most it can ask for */
+    private static final int SUBSCRIBERS_PAGE_SIZE = Integer.getInteger("bpark.subscribers.pageSize", 50);
+    private static final int SUBSCRIBERS_MAX_PAGE_SIZE = Integer.getInteger("bpark.subscribers.maxPageSize", 200);
+
+    /** Subscriber listing token of the first page (also "no search prefix"), and next-page token sent with the last page */
+    private static final String SUBSCRIBERS_FIRST_PAGE = "-";
+    private static final String SUBSCRIBERS_NO_MORE = "END";
+
+    /** Command queue of every client that sent a command */
+    private final ConcurrentHashMap<ConnectionToClient, ClientCommandQueue> clientQueues = new ConcurrentHashMap<>();
+
+    /** Report images being sent to clients in chunks */
+    private final ReportTransfers reportTransfers = new ReportTransfers();
+
+    /** Number of subscriber reports rendered and saved per batch */
+    private static final int REPORT_CHUNK_SIZE = Integer.getInteger("bpark.reports.chunkSize", 200);
+
+    /** Renders report charts in parallel, one thread per core */
+    private final ForkJoinPool reportPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
-    /** Tracks the last activity timestamp for each connected client */
-    private final HashMap<ConnectionToClient, Long> lastActivity = new HashMap<>();
+    /** Maximum number of expired reservations removed per sweep transaction */
+    private static final int SWEEP_CHUNK_SIZE = Integer.getInteger("bpark.sweep.chunkSize", 500);
 
     /** Default server port if none is specified */
     public static final int DEFAULT_PORT = 5555;
@@ -75,12 +131,24 @@ public class EchoServer extends AbstractServer {
     /** Singleton instance for database access */
     private mysqlConnection db;
 
+    /** Pushes the free-spot count to subscribed terminals and away pages */
+    private AvailabilityPublisher availability;
+
     /** Dedicated background connection used for scheduled queries */
     private Connection serverBackgroundConnection;
 
     /** Thread pool for executing database queries asynchronously */
     private final ExecutorService queryExecutor;
 
+    /** Logs virtual threads pinned to their carrier; only started in virtual-thread mode */
+    private PinningMonitor pinningMonitor;
+
+    /** Guards the per-client state cleaned up by {@code clientException} and {@code clientDisconnected} */
+    private final ReentrantLock clientStateLock = new ReentrantLock();
+
+    /** Client commands by name, with per-command latency statistics */
+    private final CommandRegistry commands = new CommandRegistry(this::isClientOfType, this::sendToClientLabelUpdate);
+
     /** Reference to the JavaFX controller for UI logging and interaction */
     public static ServerMessageFrameController messageController;
 
@@ -90,8 +158,8 @@ public class EchoServer extends AbstractServer {
     /** Number of currently connected clients */
     private int numOfClients = 0;
 
-    /** Holds security-related session data per client */
-    private HashMap<ConnectionToClient, String[]> securityArray = new HashMap<>();
+    /** Role and ID signed in on each client, indexed for duplicate-login checks */
+    private final SessionRegistry sessions = new SessionRegistry();
 
     /** Tracks the date on which the last monthly report was generated */
     private LocalDate lastMonthlyReportDate = null;
@@ -113,10 +181,22 @@ public class EchoServer extends AbstractServer {
 
         // Initialize DB pool and print current size
         db = mysqlConnection.getInstance();
-        EchoServer.messageController.appendMessage("Server Initialized! Current pool size: " + db.getCurrentPoolSize());
+        EchoServer.messageController.appendMessage("Server Initialized! " + db.getConnectionPool().getStats());
      
-        // Prepare query thread pool
-        queryExecutor = Executors.newFixedThreadPool(db.getMaxPoolSize() + 2);
+        registerCommands();
+
+        // Prepare query thread pool: -Dbpark.executor=virtual runs each command on its own virtual thread (JDK 21+)
+        ExecutorService virtualExecutor = "virtual".equalsIgnoreCase(System.getProperty("bpark.executor"))
+                ? newVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            queryExecutor = virtualExecutor;
+            db.setBorrowPermits(new Semaphore(db.getMaxPoolSize(), true));
+            pinningMonitor = new PinningMonitor(Duration.ofMillis(Long.getLong("bpark.executor.pinThresholdMs", 20)));
+            pinningMonitor.start();
+            EchoServer.messageController.appendMessage("Commands run on virtual threads, " + db.getMaxPoolSize() + " database connections at a time.");
+        } else {
+            queryExecutor = Executors.newFixedThreadPool(db.getMaxPoolSize() + 2);
+        }
 
         // Create a persistent background DB connection for tasks like report generation
         try {
@@ -142,8 +222,48 @@ public class EchoServer extends AbstractServer {
         {
         	EchoServer.messageController.appendMessage("Error Creating database or inserting informations! "+e.getMessage());
         }
-        	
-        
+
+        // Load spot occupancy into memory so availability checks don't hit the database
+        if (db.loadOccupancy(serverBackgroundConnection)) {
+            EchoServer.messageController.appendMessage("Spot occupancy loaded: " + db.getOccupancy().countAvailable() + " spots available.");
+        } else {
+            EchoServer.messageController.appendMessage("Failed to load spot occupancy, availability will be checked in the database.");
+        }
+
+        // Free-spot count is pushed to subscribed clients when it changes, at most once per interval
+        availability = new AvailabilityPublisher(db, this::submitClientCommand);
+        availability.start();
+
+        // Load upcoming reservations so reserve() can check conflicts without scanning the reservation table
+        if (!db.loadReservationIndex(serverBackgroundConnection)) {
+            EchoServer.messageController.appendMessage("Failed to load reservation index, reservations will be checked in the database.");
+        }
+
+        // Subscriber listing pages are searched and sorted in memory
+        if (!db.loadSubscriberDirectory(serverBackgroundConnection)) {
+            EchoServer.messageController.appendMessage("Failed to load subscriber directory, it will be loaded on the first search.");
+        }
+
+        // Late-pickup emails and forced exits fire at each session's own deadline instead of a periodic scan
+        db.getParkingDeadlines().start(this::handleLateDeadline, this::handleForcedExitDeadline);
+        if (db.loadParkingDeadlines(serverBackgroundConnection)) {
+            EchoServer.messageController.appendMessage("Parking deadlines loaded: " + db.getParkingDeadlines().size() + " open sessions.");
+        } else {
+            EchoServer.messageController.appendMessage("Failed to load parking deadlines, late parkings will be checked every 30 seconds.");
+        }
+
+
+        // Monthly report statistics are kept up to date as sessions close; fill them once from the history
+        try {
+            if (db.rebuildMonthlyStatsIfEmpty()) {
+                EchoServer.messageController.appendMessage("Monthly report statistics rebuilt from parking history.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Emails go through a spooled queue with persistent SMTP connections
+        EmailOutbox.getInstance().start();
 
         // Setup recurring background tasks
         ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
@@ -152,9 +272,12 @@ public class EchoServer extends AbstractServer {
             try {
                 // Step 1: late parking & expired reservations
                 if (messageController != null) {
-                    checkForLateParkings(serverBackgroundConnection);
-                    checkExpiredReservations(serverBackgroundConnection);
-                    ExitParkingCarsAfter4HOURS(serverBackgroundConnection);
+                    if (!db.getParkingDeadlines().isLoaded()) {
+                        checkForLateParkings(serverBackgroundConnection);
+                        ExitParkingCarsAfter4HOURS(serverBackgroundConnection);
+                    }
+                    checkExpiredReservations();
+                    reportTransfers.expire();
                 } else {
                 	 EchoServer.messageController.appendMessage("Waiting for messageController to be ready...");
                 }
@@ -185,34 +308,37 @@ public class EchoServer extends AbstractServer {
                 ex.printStackTrace();
             }
         }, 0, 30, TimeUnit.SECONDS); // Run scheduler every 30 seconds
+
+        // Log the pool counters (active, idle, waiting, wait time) so the pool can be sized from real numbers
+        scheduler.scheduleAtFixedRate(() ->
+                EchoServer.messageController.appendMessage(db.getConnectionPool().getStats()),
+                5, 5, TimeUnit.MINUTES);
     }
 
     /**
      * Checks the database for any expired reservations and removes them.
      * A reservation is considered expired if the subscriber has not arrived within 15 minutes.
      * Deleted reservation IDs are then displayed in the server UI.
-     *
-     * @param con the database connection to use for querying expired reservations
+     * The sweep removes at most {@code bpark.sweep.chunkSize} (default 500) reservations per transaction.
      */
-    public void checkExpiredReservations(Connection con) {
+    public void checkExpiredReservations() {
         new Thread(() -> {
-            List<String> deletedReservations = db.cleanExpiredReservationsAndReturnIds(con);
-
-            if (!deletedReservations.isEmpty() && EchoServer.messageController != null) {
-                Platform.runLater(() -> {
-                    for (String id : deletedReservations) {
-                        EchoServer.messageController.appendMessage(
-                            "Reservation " + id + " was deleted (no arrival within 15 minutes)."
-                        );
-                    }
-                });
+            try {
+                List<String> deletedReservations = db.sweepExpiredReservations(SWEEP_CHUNK_SIZE);
+                for (String id : deletedReservations) {
+                    EchoServer.messageController.appendMessage(
+                        "Reservation " + id + " was deleted (no arrival within 15 minutes)."
+                    );
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }).start();
     }
 
     /**
      * Invoked when a new client connects to the server.
-     * Adds the client's IP to the disconnected list (for tracking), initializes its security array,
+     * Adds the client's IP to the disconnected list (for tracking), registers it as not signed in yet,
      * and updates the connected clients count.
      *
      * @param client the newly connected client
@@ -220,8 +346,8 @@ public class EchoServer extends AbstractServer {
     @Override
     protected void clientConnected(ConnectionToClient client) {
         String ip = client.getInetAddress().getHostAddress();
-        String[] u = {"", ""};
-        securityArray.put(client, u);
+        sessions.connect(client);
+        idleReaper.register(client);
         DisconnectedIPs.add(ip);
         numOfClients++;
         updateClientStatus("Client connected: " + ip);
@@ -249,6 +375,161 @@ public class EchoServer extends AbstractServer {
     }
 
 
+    /**
+     * Registers every client command with its message size, required role and handler.
+     * The message size includes the command name; a size range is given when trailing arguments are optional, and
+     * {@link CommandRegistry#ANY_SIZE} only for handlers that read no argument without checking the size first.
+     */
+    private void registerCommands() {
+        // protocol negotiation
+        commands.register(WireProtocol.HELLO_COMMAND, 2, "Unsupported wire protocol version.", (client, msg) -> {
+            if (WireProtocol.isSupported(msg.get(1))) {
+                client.setInfo(WIRE_VERSION_INFO, msg.get(1));
+                client.sendToClient(WireProtocol.encodeHello());
+            } else {
+                sendToClientLabelUpdate(client, "Unsupported wire protocol version.");
+            }
+        });
+
+        // chunked report images, see ReportTransfers
+        commands.register(WireProtocol.STREAMING_COMMAND, CommandRegistry.ANY_SIZE, null, (client, msg) -> {
+            if (client.getInfo(WIRE_VERSION_INFO) != null) {
+                client.setInfo(REPORT_STREAMING_INFO, Boolean.TRUE);
+            }
+        });
+        commands.register(WireProtocol.CHUNK_ACK_COMMAND, 3, "Invalid report chunk ack.",
+                (client, msg) -> reportTransfers.ack(client, Long.parseLong(msg.get(1)), Integer.parseInt(msg.get(2))));
+        commands.register(WireProtocol.RESUME_COMMAND, 3, "Invalid report resume request.", (client, msg) -> {
+            if (!reportTransfers.resume(client, Long.parseLong(msg.get(1)), Integer.parseInt(msg.get(2)))) {
+                messageController.appendMessage(LogLevel.DEBUG, "Report transfer " + msg.get(1) + " can no longer be resumed.");
+            }
+        });
+
+        // user login commands
+        commands.register("LOGOUT", CommandRegistry.ANY_SIZE, null, (client, msg) -> {
+            messageController.appendMessage(LogLevel.DEBUG, "Client requested logout: " + client);
+            sessions.logout(client);
+            client.setInfo(TAG_READER_INFO, null);
+            availability.unsubscribe(client);
+        });
+        commands.register("user sign in", 3, "Invalid data for user sign in.",
+                (client, msg) -> handleUserSignIn(msg.get(1), msg.get(2), client, "Termenal"));
+        commands.register("user sign in away", 3, "Invalid data for user sign in.",
+                (client, msg) -> handleUserSignIn(msg.get(1), msg.get(2), client, "Away"));
+        commands.register("worker sign in", 3, "Invalid data for worker sign in.",
+                (client, msg) -> handleWorkerSignIn(msg.get(1), msg.get(2), client));
+        commands.register("tagreader sign in", 2, "Invalid data for tagreader sign in.",
+                (client, msg) -> handleTagReaderSignIn(msg.get(1), client));
+
+        // reports and worker views
+        commands.register("SUBSCRIPTION_REPORT", 3, "Invalid data for subscription report.",
+                (client, msg) -> handleSubscriptionReport(msg.get(1), msg.get(2), client))
+                .requireRole("Invalid type of user for this report.", "Manager");
+        commands.register("PARKING_REPORT", 2, "Invalid data for parking report.",
+                (client, msg) -> handleParkingReport(msg.get(1), client));
+        commands.register("GET_ACTIVE_PARKINGSPOT", 1, "Invalid data for active parking spot.",
+                (client, msg) -> handleActivParkingspot(client))
+                .requireRole(null, "Manager", "Usher");
+        commands.register("GET_ALL_SUBSCRIBERS", CommandRegistry.ANY_SIZE, null,
+                (client, msg) -> handleGetAllSubscribers(client,
+                        msg.size() > 1 ? msg.get(1) : SUBSCRIBERS_FIRST_PAGE, msg.size() > 2 ? msg.get(2) : "id",
+                        msg.size() > 3 ? msg.get(3) : SUBSCRIBERS_FIRST_PAGE, msg.size() > 4 ? msg.get(4) : null))
+                .requireRole(null, "Manager", "Usher");
+        commands.register("ADD_TAG_READER", 2, "Invalid data for adding a tag reader.", (client, msg) -> {
+            msg.remove(0);
+            try {
+                AddTagToSubscriber(client, msg);
+            } catch (Exception ex) {
+                sendToClientLabelUpdate(client, ex.getMessage());
+            }
+        });
+        commands.register("SHOW_SUBSCRIBER_HISTORY", 2, 4, "Invalid data for subscriber history.", (client, msg) -> {
+            msg.remove(0);
+            try {
+                ShowSubscriberHistory(client, msg);
+            } catch (Exception ex) {
+                sendToClientLabelUpdate(client, ex.getMessage());
+            }
+        });
+        commands.register("ADD_SUB", 4, "Invalid data for adding a subscriber.", (client, msg) -> {
+            msg.remove(0);
+            try {
+                handleAddNewSubscriber(client, msg);
+            } catch (Exception ex) {
+                sendToClientLabelUpdate(client, ex.getMessage());
+            }
+        });
+
+        // other major functionalities (check, reserve, retrieve, extend, etc.)
+        commands.register("Check_Avilable_Spots", 1, "Invalid data for checking available spots.",
+                (client, msg) -> handleCheckAvilableSpots(client, "Away"));
+        commands.register("Check_Avilable_Spots_Termenal", 1, "Invalid data for available spots.",
+                (client, msg) -> handleCheckAvilableSpots(client, "Termenal"));
+        commands.register("SUBSCRIBE_AVAILABILITY", 2, "Invalid availability subscription.", (client, msg) -> {
+            String current = availability.subscribe(client, msg.get(1), client.getInfo(WIRE_VERSION_INFO) != null);
+            if (current != null) {
+                sendReply(client, current);
+            } else {
+                sendReply(client, ("Away".equals(msg.get(1)) ? "SubscriberAwayController" : "SubscriberTermenalController")
+                        + " CHECK_SPOTS_FAIL");
+            }
+        });
+        commands.register("Get_ParkingCode_Termenal", 2, "Invalid data for parking code.",
+                (client, msg) -> handleGetNewParkingCode(client, msg.get(1)));
+        commands.register("Reserve", 3, "Invalid data for reservation.",
+                (client, msg) -> Reserve(client, msg.get(1), msg.get(2)));
+        commands.register("Forgot_Code", CommandRegistry.ANY_SIZE, null,
+                (client, msg) -> ForgotCode(client));
+        commands.register("GET_HISTORY", 3, 5, "Invalid data for history.", (client, msg) -> {
+            try {
+                handleGetHistoryBySpecificSubscriber(client, msg.get(1), msg.get(2),
+                        msg.size() > 3 ? msg.get(3) : HISTORY_FIRST_PAGE, msg.size() > 4 ? msg.get(4) : null);
+            } catch (Exception ex) {
+                sendToClientLabelUpdate(client, ex.getMessage());
+            }
+        });
+        commands.register("Personal_Data", 3, "Invalid data for personal data.", (client, msg) -> {
+            try {
+                handleGetPersonalData(client, msg.get(1), msg.get(2));
+            } catch (Exception ex) {
+                sendToClientLabelUpdate(client, ex.getMessage());
+            }
+        });
+        commands.register("UPDATE_PERSONAL_DATA", 5, "Invalid data for updating personal data.", (client, msg) -> {
+            try {
+                handleUpdatePersonalData(client, msg.get(1), msg.get(2), msg.get(3), msg.get(4));
+            } catch (Exception ex) {
+                sendToClientLabelUpdate(client, ex.getMessage());
+            }
+        });
+        commands.register("Get_My_Parking_Status_Termenal", 1, "Invalid data for parking Status.",
+                (client, msg) -> handleGetMyParkingStatus(client));
+        commands.register("Check_Reserve", 2, "Invalid format for reservation check.",
+                (client, msg) -> CheckReservation(client, msg.get(1).trim()));
+        commands.register("Retrieve_Car_Termenal", 2, "Invalid data for retrieve car.",
+                (client, msg) -> handleRetrieveCar(client, msg.get(1)));
+        commands.register("CHECK_ACTIVE_PARKING", 3, "Invalid data for active parking check.",
+                (client, msg) -> handleCheckActiveParking(client, msg.get(1), msg.get(2)));
+        commands.register("EXTEND_PARKING", 4, "Invalid data for parking time extension.", (client, msg) -> {
+            try {
+                String subscriberID = msg.get(1);
+                String sourcePage = "SubscriberAwayController";
+                int totalMinutes = Integer.parseInt(msg.get(2));
+                messageController.appendMessage(LogLevel.DEBUG, "Parsed values: subscriberID=" + subscriberID + ", totalMinutes=" + totalMinutes + ", sourcePage=" + sourcePage);
+                handleExtendParkingTime(client, subscriberID, totalMinutes, sourcePage);
+            } catch (Exception ex) {
+                sendToClientLabelUpdate(client, "Error during parking time extension: " + ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @return the command registry, for the per-command statistics shown in the server UI
+     */
+    public CommandRegistry getCommandRegistry() {
+        return commands;
+    }
+
     /**
      * Handles unexpected exceptions from a client.
      * Cleans up internal maps, updates the disconnected IP list, and refreshes the status view.
@@ -257,24 +538,32 @@ public class EchoServer extends AbstractServer {
      * @param exception the exception thrown
      */
     @Override
-    protected synchronized void clientException(ConnectionToClient client, Throwable exception) {
+    protected void clientException(ConnectionToClient client, Throwable exception) {
     	 EchoServer.messageController.appendMessage("Client exception: " + exception.getMessage());
-        lastActivity.remove(client);
-        securityArray.remove(client);
-
-        ArrayList<String> Copy = new ArrayList<>(DisconnectedIPs);
-        String[] existingIPs = getConnectedIPs().split(" ");
-
-        for (int i = 0; i < existingIPs.length; i++) {
-            if (Copy.contains(existingIPs[i])) {
-                Copy.remove(existingIPs[i]);
+        clientStateLock.lock();
+        try {
+            idleReaper.remove(client);
+            sessions.disconnect(client);
+            clientQueues.remove(client);
+            availability.unsubscribe(client);
+            reportTransfers.detach(client);
+
+            ArrayList<String> Copy = new ArrayList<>(DisconnectedIPs);
+            String[] existingIPs = getConnectedIPs().split(" ");
+
+            for (int i = 0; i < existingIPs.length; i++) {
+                if (Copy.contains(existingIPs[i])) {
+                    Copy.remove(existingIPs[i]);
+                }
             }
-        }
 
-        messageController.appendMessage("Disconnected IP:" + Copy.toString());
+            messageController.appendMessage("Disconnected IP:" + Copy.toString());
 
-        if (!Copy.isEmpty()) {
-            DisconnectedIPs.remove(Copy.get(0));
+            if (!Copy.isEmpty()) {
+                DisconnectedIPs.remove(Copy.get(0));
+            }
+        } finally {
+            clientStateLock.unlock();
         }
 
         updateClientStatus(null);
@@ -288,20 +577,76 @@ public class EchoServer extends AbstractServer {
      * @param client the client that disconnected
      */
     @Override
-    protected synchronized void clientDisconnected(ConnectionToClient client) {
-        lastActivity.remove(client);
-        securityArray.remove(client);
+    protected void clientDisconnected(ConnectionToClient client) {
+        clientStateLock.lock();
+        try {
+            idleReaper.remove(client);
+            sessions.disconnect(client);
+            clientQueues.remove(client);
+            availability.unsubscribe(client);
+            reportTransfers.detach(client);
+        } finally {
+            clientStateLock.unlock();
+        }
         updateClientStatus(null);
     }
 
+    /**
+     * Creates a virtual-thread-per-task executor. The project compiles for Java 17, where the factory
+     * doesn't exist, so it is looked up at run time.
+     *
+     * @return the executor, or {@code null} if the JVM has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            messageController.appendMessage(LogLevel.WARN,
+                    "Virtual threads need JDK 21 or later, using the fixed thread pool instead.");
+            return null;
+        }
+    }
+
+    /**
+     * Runs a command of a client on {@link #queryExecutor} as soon as the client has a free slot.
+     *
+     * @param client  the client that sent the command
+     * @param command the command to run
+     */
+    private void submitClientCommand(ConnectionToClient client, Runnable command) {
+        clientQueues.computeIfAbsent(client, c -> new ClientCommandQueue(MAX_IN_FLIGHT_PER_CLIENT)).submit(command, queryExecutor);
+    }
+
+    /**
+     * Starts accepting clients with the transport selected by the {@code bpark.transport} system property:
+     * <ul>
+     *     <li>{@code thread} (default) - the OCSF thread-per-client transport</li>
+     *     <li>{@code nio} - a few selector threads ({@code bpark.nio.ioThreads}, default 2) serve every client,
+     *         so idle terminals and tag readers don't each hold a thread</li>
+     * </ul>
+     * Both call the same {@code clientConnected}, {@code handleMessageFromClient} and
+     * {@code clientDisconnected} hooks, and clients work with either.
+     *
+     * @throws IOException if the port can't be opened
+     */
+    public void startListening() throws IOException {
+        if ("nio".equalsIgnoreCase(System.getProperty("bpark.transport"))) {
+            int ioThreads = Integer.getInteger("bpark.nio.ioThreads", 2);
+            messageController.appendMessage("Using NIO transport with " + ioThreads + " I/O threads.");
+            listenNio(ioThreads);
+        } else {
+            listen();
+        }
+    }
+
     /**
      * Called when the server starts listening for connections.
-     * Updates the UI and starts the inactivity monitoring thread.
+     * Updates the UI and starts the idle reaper.
      */
     @Override
     protected void serverStarted() {
         updateClientStatus("Server is now listening on port " + getPort());
-        startInactivityMonitor(); 
+        idleReaper.start();
     }
 
     /**
@@ -366,7 +711,9 @@ public class EchoServer extends AbstractServer {
 
     /**
      * Handles messages received from a connected client. 
-     * Parses the message, checks command type, and delegates to the appropriate handler.
+     * Parses the message and dispatches it through the {@link CommandRegistry} on the query executor.
+     * Commands of the same client run in parallel (up to {@code bpark.maxInFlightPerClient}), so their replies
+     * can go out in a different order than the commands came in; the request ID tells the client which is which.
      * Each command is expected to be in a List<String> format with a recognized command keyword at index 0.
      *
      * @param msg The message object received from the client (expected to be ArrayList<String>).
@@ -374,244 +721,35 @@ public class EchoServer extends AbstractServer {
      */
     @Override
     public void handleMessageFromClient(Object msg, ConnectionToClient client) {
-        lastActivity.put(client, System.currentTimeMillis());
+        idleReaper.touch(client);
 
-        String clientIP = client.getInetAddress().getHostAddress();
-        messageController.appendMessage("Client IP: " + clientIP);
-        messageController.appendMessage("Message received: " + msg.toString() + " from " + client);
+        if (messageController.isLoggable(LogLevel.DEBUG)) {
+            messageController.appendMessage(LogLevel.DEBUG, "Message received: "
+                    + (msg instanceof byte[] ? "frame of " + ((byte[]) msg).length + " bytes" : msg.toString()) + " from " + client);
+        }
 
-        queryExecutor.submit(() -> {
-            ArrayList<String> messageList = safeCastToStringList(msg);
-            if (messageList == null || messageList.isEmpty()) {
-                sendToClientLabelUpdate(client, "Oops, Something Went Wrong\nInvalid message format!");
-                return;
+        int requestId = msg instanceof byte[] ? WireProtocol.requestIdOf((byte[]) msg) : 0;
+        submitClientCommand(client, () -> {
+            if (requestId > 0) {
+                currentRequest.set(new RequestContext(client, requestId));
             }
-
-            String command = messageList.get(0);
-
             try {
-                switch (command) {
-                    // user login commands
-                   case "LOGOUT":
-                	   messageController.appendMessage("Client requested logout: " + client);
-                    	securityArray.remove(client); 
-                 
-                    break;
-                   case "user sign in":
-                        if (messageList.size() == 3)
-                        {
-                            handleUserSignIn(messageList.get(1), messageList.get(2), client, "Termenal");
-                        }
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for user sign in.");
-                        break;
-
-                    case "user sign in away":
-                        if (messageList.size() == 3)
-                        {
-                            handleUserSignIn(messageList.get(1), messageList.get(2), client, "Away");
-                        }
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for user sign in.");
-                        break;
-
-                    case "worker sign in":
-                        if (messageList.size() == 3)
-                        {
-                            handleWorkerSignIn(messageList.get(1), messageList.get(2), client);
-                        }
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for worker sign in.");
-                        break;
-
-                    case "tagreader sign in":
-                        if (messageList.size() == 2)
-                        {
-                            handleTagReaderSignIn(messageList.get(1), client);
-                        }
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for tagreader sign in.");
-                        break;
-
-                    // report generation
-                    case "SUBSCRIPTION_REPORT":
-                        if ("Manager".equals(isClientOfType(client))) {
-                            if (messageList.size() == 3)
-                                handleSubscriptionReport(messageList.get(1), messageList.get(2), client);
-                            else
-                                sendToClientLabelUpdate(client, "Invalid data for subscription report.");
-                        } else {
-                            sendToClientLabelUpdate(client, "Invalid type of user for this report.");
-                        }
-                        break;
-
-                    // other major functionalities (check, reserve, retrieve, extend, etc.)
-                    case "Check_Avilable_Spots":
-                        if (messageList.size() == 1)
-                            handleCheckAvilableSpots(client, "Away");
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for checking available spots.");
-                        break;
-
-                    case "Check_Avilable_Spots_Termenal":
-                        if (messageList.size() == 1)
-                            handleCheckAvilableSpots(client, "Termenal");
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for available spots.");
-                        break;
-
-                    case "Get_ParkingCode_Termenal":
-                        if (messageList.size() == 2)
-                            handleGetNewParkingCode(client, messageList.get(1));
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for parking code. " + messageList.toString());
-                        break;
-
-                    case "PARKING_REPORT":
-                        if (messageList.size() == 2)
-                            handleParkingReport(messageList.get(1), client);
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for parking report.");
-                        break;
-
-                    case "GET_ACTIVE_PARKINGSPOT":
-                        if ("Manager".equals(isClientOfType(client)) || "Usher".equals(isClientOfType(client))) {
-                            if (messageList.size() == 1)
-                                handleActivParkingspot(client);
-                            else
-                                sendToClientLabelUpdate(client, "Invalid data for active parking spot.");
-                        }
-                        break;
-
-                    case "GET_ALL_SUBSCRIBERS":
-                        if ("Manager".equals(isClientOfType(client)) || "Usher".equals(isClientOfType(client))) {
-                            if (messageList.size() == 1)
-                                handleGetAllSubscribers(client);
-                            else
-                                sendToClientLabelUpdate(client, "Invalid data for getting all subscribers.");
-                        }
-                        break;
-
-                    case "ADD_TAG_READER":
-                    	 messageList.remove(0);
-                         try {
-                             AddTagToSubscriber(client, messageList);
-                         } catch (Exception ex) {
-                             sendToClientLabelUpdate(client, ex.getMessage());
-                         }
-                         break;
-                         
-                    case "SHOW_SUBSCRIBER_HISTORY":
-                   	 messageList.remove(0);
-                        try {
-                            ShowSubscriberHistory(client, messageList);
-                        } catch (Exception ex) {
-                            sendToClientLabelUpdate(client, ex.getMessage());
-                        }
-                        break;
-                    
-                    case "ADD_SUB":
-                        messageList.remove(0);
-                        try {
-                            handleAddNewSubscriber(client, messageList);
-                        } catch (Exception ex) {
-                            sendToClientLabelUpdate(client, ex.getMessage());
-                        }
-                        break;
-
-                    case "Reserve":
-                        if (messageList.size() == 3) {
-                            String dateTime = messageList.get(1);
-                            String TimeToPark = messageList.get(2);
-                            Reserve(client, dateTime, TimeToPark);
-                        } else {
-                            sendToClientLabelUpdate(client, "Invalid data for reservation.");
-                        }
-                        break;
-
-                    case "Forgot_Code":
-                        ForgotCode(client);
-                        break;
-
-                    case "GET_HISTORY":
-                        try {
-                            handleGetHistoryBySpecificSubscriber(client, messageList.get(1), messageList.get(2));
-                        } catch (Exception ex) {
-                            sendToClientLabelUpdate(client, ex.getMessage());
-                        }
-                        break;
-
-                    case "Personal_Data":
-                        try {
-                            handleGetPersonalData(client, messageList.get(1), messageList.get(2));
-                        } catch (Exception ex) {
-                            sendToClientLabelUpdate(client, ex.getMessage());
-                        }
-                        break;
-
-                    case "UPDATE_PERSONAL_DATA":
-                        try {
-                            handleUpdatePersonalData(client, messageList.get(1), messageList.get(2), messageList.get(3), messageList.get(4));
-                        } catch (Exception ex) {
-                            sendToClientLabelUpdate(client, ex.getMessage());
-                        }
-                        break;
-
-                    case "Get_My_Parking_Status_Termenal":
-                        if (messageList.size() == 1)
-                            handleGetMyParkingStatus(client);
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for parking Status. " + messageList.toString());
-                        break;
-
-                    case "Check_Reserve":
-                        if (messageList.size() == 2)
-                            CheckReservation(client, messageList.get(1).trim());
-                        else
-                            sendToClientLabelUpdate(client, "Invalid format for reservation check. " + messageList.toString());
-                        break;
-
-                    case "Retrieve_Car_Termenal":
-                        if (messageList.size() == 2)
-                            handleRetrieveCar(client, messageList.get(1));
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for retrieve car. " + messageList.toString());
-                        break;
-
-                    case "CHECK_ACTIVE_PARKING":
-                        if (messageList.size() == 3)
-                            handleCheckActiveParking(client, messageList.get(1), messageList.get(2));
-                        else
-                            sendToClientLabelUpdate(client, "Invalid data for active parking check.");
-                        break;
-
-                    case "EXTEND_PARKING":
-                        try {
-                            messageController.appendMessage("Entered case EXTEND_PARKING.");
-                            if (messageList.size() == 4) {
-                                String subscriberID = messageList.get(1);
-                                String totalMinutesStr = messageList.get(2);
-                                String sourcePage = "SubscriberAwayController";
-                                int totalMinutes = Integer.parseInt(totalMinutesStr);
-                                messageController.appendMessage("Parsed values: subscriberID=" + subscriberID + ", totalMinutes=" + totalMinutes + ", sourcePage=" + sourcePage);
-                                handleExtendParkingTime(client, subscriberID, totalMinutes, sourcePage);
-                            } else {
-                                sendToClientLabelUpdate(client, "Invalid data for parking time extension.");
-                            }
-                        } catch (Exception ex) {
-                            sendToClientLabelUpdate(client, "Error during parking time extension: " + ex.getMessage());
-                        }
-                        break;
+                ArrayList<String> messageList = safeCastToStringList(msg);
+                if (messageList == null || messageList.isEmpty()) {
+                    sendToClientLabelUpdate(client, "Oops, Something Went Wrong\nInvalid message format!");
+                    return;
+                }
 
-                    default:
-                        sendToClientLabelUpdate(client, "Oops, something went wrong. Unrecognized message format.");
-                        break;
+                if (!commands.dispatch(client, messageList)) {
+                    sendToClientLabelUpdate(client, "Oops, something went wrong. Unrecognized message format.");
                 }
             } catch (InterruptedException e) {
                 e.printStackTrace();
                 sendToClientLabelUpdate(client, "Internal server error: " + e.getMessage());
             } catch (IOException e) {
                 e.printStackTrace();
+            } finally {
+                currentRequest.remove();
             }
         });
     }
@@ -626,7 +764,7 @@ public class EchoServer extends AbstractServer {
      * @throws IOException if sending data to the client fails
      */
     public void CheckReservation(ConnectionToClient client, String reservationID) throws InterruptedException, IOException {
-        String subscriberId = this.securityArray.get(client)[1];
+        String subscriberId = sessions.idOf(client);
         String result = db.parkWithReservation(subscriberId, reservationID);
 
         // Split the result string: first part is status, second part is additional info (e.g., history ID)
@@ -637,33 +775,33 @@ public class EchoServer extends AbstractServer {
         switch (status) {
             case "PARKING_RESERVATION_SUCCESS":
                 // Send only success + historyID to client
-                client.sendToClient("SubscriberTermenalController ParkWithReservation Success Parking code: " + extraInfo);
+                sendReply(client, "SubscriberTermenalController ParkWithReservation Success Parking code: " + extraInfo);
                 EchoServer.messageController.appendMessage("Reservation success for subscriber: " + subscriberId + ", HistoryID: " + extraInfo);
                 break;
 
             case "PARKING_RESERVATION_FAILED":
-                client.sendToClient("SubscriberTermenalController ParkWithReservation Failed Reservation not found");
+                sendReply(client, "SubscriberTermenalController ParkWithReservation Failed Reservation not found");
                 break;
 
             case "PARKING_RESERVATION_FAILED_TIME_PARSE":
-                client.sendToClient("SubscriberTermenalController ParkWithReservation Failed Invalid reservation time format");
+                sendReply(client, "SubscriberTermenalController ParkWithReservation Failed Invalid reservation time format");
                 break;
 
             case "PARKING_RESERVATION_FAILED_UPDATE_SPOTID":
-                client.sendToClient("SubscriberTermenalController ParkWithReservation Failed Could not mark spot as occupied");
+                sendReply(client, "SubscriberTermenalController ParkWithReservation Failed Could not mark spot as occupied");
                 break;
 
             case "PARKING_RESERVATION_FAILED_INSERT_HISTORY":
-                client.sendToClient("SubscriberTermenalController ParkWithReservation Failed Could not insert parking history");
+                sendReply(client, "SubscriberTermenalController ParkWithReservation Failed Could not insert parking history");
                 break;
 
             case "PARKING_RESERVATION_ALREADY_USED":
-                client.sendToClient("SubscriberTermenalController ParkWithReservation Failed Reservation already used");
+                sendReply(client, "SubscriberTermenalController ParkWithReservation Failed Reservation already used");
                 EchoServer.messageController.appendMessage("Reservation already used for subscriber: " + subscriberId);
                 break;
 
             case "PARKING_RESERVATION_FAILED_EARLY_ARRIVE":
-                client.sendToClient("SubscriberTermenalController ParkWithReservation Failed Early arrival! Please wait.");
+                sendReply(client, "SubscriberTermenalController ParkWithReservation Failed Early arrival! Please wait.");
                 EchoServer.messageController.appendMessage("Early arrival attempt by subscriber: " + subscriberId);
                 break;
 
@@ -699,6 +837,7 @@ public class EchoServer extends AbstractServer {
     /**
      * Checks the parking duration for all currently parked subscribers.
      * If the parking time has exceeded the allowed duration, sends an email notification to the subscriber.
+     * Only used while the {@link ParkingDeadlines} could not be loaded.
      * 
      * @param con the database connection used for the background query
      * @throws InterruptedException if the background operation is interrupted
@@ -749,6 +888,78 @@ public class EchoServer extends AbstractServer {
         });
     }
 
+    /**
+     * Called by {@link ParkingDeadlines} when a session's parking time has ended.
+     * Re-reads the session, and if it is still open and really overdue, marks it and sends the late pickup email.
+     *
+     * @param historyId the session's HistoryID
+     */
+    private void handleLateDeadline(int historyId) {
+        try {
+            Map<String, String> session = db.getOpenParkingSession(historyId);
+            if (session == null || "true".equals(session.get("LateEmailSent"))) {
+                return; // car already retrieved, or already notified
+            }
+
+            LocalDateTime entryTime = LocalDateTime.parse(session.get("EntryTime"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            int timeToPark = Integer.parseInt(session.get("TimeToPark"));
+            if (entryTime.plusMinutes(timeToPark).isAfter(LocalDateTime.now())) {
+                // Extended in the meantime (or DB clock ahead of ours): wait for the real deadline
+                db.getParkingDeadlines().schedule(historyId, entryTime, timeToPark, false);
+                return;
+            }
+
+            if (db.markLateEmailSent(historyId)) {
+                String email = session.get("Email");
+                EchoServer.messageController.appendMessage("Late parking detected for: " + session.get("SubscriberID") + " - sending email to: " + email);
+                EmailSender.sendLatePickupEmail(email, session.get("UserName"));
+            }
+        } catch (Exception e) {
+            EchoServer.messageController.appendMessage(LogLevel.ERROR, "Error handling late parking " + historyId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called by {@link ParkingDeadlines} four hours after a session's parking time has ended.
+     * Re-reads the session, and if it is still open, moves the car out and emails the subscriber.
+     *
+     * @param historyId the session's HistoryID
+     */
+    private void handleForcedExitDeadline(int historyId) {
+        try {
+            Map<String, String> session = db.getOpenParkingSession(historyId);
+            if (session == null) {
+                return; // car already retrieved
+            }
+            if (!"true".equals(session.get("LateEmailSent"))) {
+                // Both deadlines passed while the server was down: send the late email first
+                handleLateDeadline(historyId);
+                session = db.getOpenParkingSession(historyId);
+                if (session == null || !"true".equals(session.get("LateEmailSent"))) {
+                    return;
+                }
+            }
+
+            LocalDateTime entryTime = LocalDateTime.parse(session.get("EntryTime"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            int timeToPark = Integer.parseInt(session.get("TimeToPark"));
+            LocalDateTime now = LocalDateTime.now();
+            if (now.minusMinutes(1).isBefore(entryTime.plusMinutes(timeToPark + ParkingDeadlines.FORCED_EXIT_AFTER_MINUTES))) {
+                db.getParkingDeadlines().schedule(historyId, entryTime, timeToPark, true);
+                return;
+            }
+
+            if (db.forceExitParking(historyId, session.get("SpotID"), timeToPark + ParkingDeadlines.FORCED_EXIT_AFTER_MINUTES, now)) {
+                String subscriberId = session.get("SubscriberID");
+                String exitTime = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                EchoServer.messageController.appendMessage("Moving user (" + subscriberId + ") car out of parking spot");
+                EchoServer.messageController.appendMessage("Notifying subscriber " + subscriberId + " that their car was removed at " + exitTime);
+                EmailSender.sendForcedExitEmail(session.get("Email"), session.get("UserName"), exitTime);
+            }
+        } catch (Exception e) {
+            EchoServer.messageController.appendMessage(LogLevel.ERROR, "Error handling forced exit " + historyId + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Handles the update of a subscribers personal information (email and phone number).
      * Notifies the appropriate controller on the client side with success or failure.
@@ -761,17 +972,17 @@ public class EchoServer extends AbstractServer {
      * @throws InterruptedException if the update operation is interrupted
      */
     private void handleUpdatePersonalData(ConnectionToClient client, String SubscriberID, String destinationPage, String email, String phoneNumber) throws InterruptedException {
-        messageController.appendMessage("Updating personal data of: " + SubscriberID);
+        messageController.appendMessage(LogLevel.DEBUG, "Updating personal data of: " + SubscriberID);
         boolean success = db.updateSubscriberPersonalData(SubscriberID, email, phoneNumber);
 
         try {
             if (success) {
                 if ("Away_Page".equals(destinationPage)) {
-                    client.sendToClient("SubscriberAwayController UPDATE_SUCCESS");
+                    sendReply(client, "SubscriberAwayController UPDATE_SUCCESS");
                 }
             } else {
                 if ("Away_Page".equals(destinationPage)) {
-                    client.sendToClient("SubscriberAwayController UPDATE_FAIL");
+                    sendReply(client, "SubscriberAwayController UPDATE_FAIL");
                 }
             }
         } catch (IOException e) {
@@ -788,7 +999,7 @@ public class EchoServer extends AbstractServer {
      * @throws InterruptedException if the fetch operation is interrupted
      */
     private void handleGetPersonalData(ConnectionToClient client, String SubscriberID, String destinationPage) throws InterruptedException {
-        messageController.appendMessage("Getting personal data of: " + SubscriberID);
+        messageController.appendMessage(LogLevel.DEBUG, "Getting personal data of: " + SubscriberID);
         String sendPersonalData = "";
         String PersonalData = db.getSubscriberPersonalData(SubscriberID);
 
@@ -797,33 +1008,38 @@ public class EchoServer extends AbstractServer {
         }
 
         try {
-            client.sendToClient(sendPersonalData);
+            sendReply(client, sendPersonalData);
         } catch (IOException e) {
             messageController.appendMessage("Failed to send personal data: " + e.getMessage());
         }
     }
 
     /**
-     * Retrieves the parking history for a specific subscriber and sends it to the client.
+     * Retrieves one page of the parking history for a specific subscriber and sends it to the client
+     * as {@code HISTORY_PAGE <after> <next> <sessions>}, where {@code next} is the token of the following
+     * page or {@code END}.
      *
      * @param client          the client requesting the history
      * @param SubscriberID    the ID of the subscriber
      * @param destinationPage the destination page/controller requesting the history
+     * @param after           token of the page to send ("-" for the first page)
+     * @param pageSize        number of sessions requested, or null for the default
      * @throws InterruptedException if the operation is interrupted
      */
-    private void handleGetHistoryBySpecificSubscriber(ConnectionToClient client, String SubscriberID, String destinationPage) throws InterruptedException {
-        messageController.appendMessage("Getting history for subscriber: " + SubscriberID);
+    private void handleGetHistoryBySpecificSubscriber(ConnectionToClient client, String SubscriberID, String destinationPage,
+            String after, String pageSize) throws InterruptedException {
+        messageController.appendMessage(LogLevel.DEBUG, "Getting history for subscriber: " + SubscriberID + " after " + after);
         String sendHistory;
-        String history = db.getHistoryBySubscriberID(SubscriberID);
+        String history = formatHistoryPage(SubscriberID, after, pageSize);
 
         if ("Termenal_Page".equals(destinationPage)) {
-            sendHistory = "SubscriberTermenalController SHOW_SUBSCRIBER_HISTORY " + history;
+            sendHistory = "SubscriberTermenalController HISTORY_PAGE " + history;
         } else {
-            sendHistory = "SubscriberAwayController SHOW_SUBSCRIBER_HISTORY " + history;
+            sendHistory = "SubscriberAwayController HISTORY_PAGE " + history;
         }
 
         try {
-            client.sendToClient(sendHistory);
+            sendReply(client, sendHistory);
         } catch (IOException e) {
             messageController.appendMessage("Failed to send history: " + e.getMessage());
         }
@@ -840,7 +1056,7 @@ public class EchoServer extends AbstractServer {
     private void Reserve(ConnectionToClient client, String dateTimeStr, String duration) {
         try {
             String response;
-            messageController.appendMessage("Date and Time input: " + dateTimeStr);
+            messageController.appendMessage(LogLevel.DEBUG, "Date and Time input: " + dateTimeStr);
 
             DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH mm");
             LocalDateTime localDateTime = LocalDateTime.parse(dateTimeStr, inputFormatter);
@@ -852,14 +1068,14 @@ public class EchoServer extends AbstractServer {
             {
             	messageController.appendMessage("Reservation must be at least 24 hours from now and within 7 days.");
             	response = "SubscriberAwayController RESERVE_TIME_ERROR";
-            	client.sendToClient(response);
+            	sendReply(client, response);
             	return;
             }
-            messageController.appendMessage("Making DB reservation...");
+            messageController.appendMessage(LogLevel.DEBUG, "Making DB reservation...");
            
-            String subscriberId = this.securityArray.get(client)[1];
+            String subscriberId = sessions.idOf(client);
             String result = db.reserve(subscriberId, requestedStartTime, requestedEndTime);
-            messageController.appendMessage("Reserve result: " + result);
+            messageController.appendMessage(LogLevel.DEBUG, "Reserve result: " + result);
 
      
             if (result.startsWith("1 ")) {
@@ -879,19 +1095,19 @@ public class EchoServer extends AbstractServer {
                 }
             }
 
-            client.sendToClient(response);
+            sendReply(client, response);
 
         } catch (DateTimeParseException e) {
             messageController.appendMessage("Invalid date format: " + dateTimeStr);
             try {
-                client.sendToClient("SubscriberAwayController RESERVE_FAIL");
+                sendReply(client, "SubscriberAwayController RESERVE_FAIL");
             } catch (IOException ioException) {
                 ioException.printStackTrace();
             }
         } catch (Exception e) {
             messageController.appendMessage("Error in Reserve: " + e.getMessage());
             try {
-                client.sendToClient("SubscriberAwayController RESERVE_FAIL");
+                sendReply(client, "SubscriberAwayController RESERVE_FAIL");
             } catch (IOException ioException) {
                 ioException.printStackTrace();
             }
@@ -907,7 +1123,7 @@ public class EchoServer extends AbstractServer {
      */
     private void ForgotCode(ConnectionToClient client) {
         try {
-            String subscriberId = this.securityArray.get(client)[1];
+            String subscriberId = sessions.idOf(client);
             String result = db.SendCode(subscriberId);
 
             String response;
@@ -928,12 +1144,12 @@ public class EchoServer extends AbstractServer {
                 response = "SubscriberTermenalController GET_PARKING_CODE_WARNING You/have/no/active/parking/session";
             }
 
-            client.sendToClient(response);
+            sendReply(client, response);
 
         } catch (Exception e) {
             messageController.appendMessage("Error in ForgotCode: " + e.getMessage());
             try {
-                client.sendToClient("SubscriberTermenalController Error InternalError");
+                sendReply(client, "SubscriberTermenalController Error InternalError");
             } catch (IOException ioException) {
                 messageController.appendMessage("Failed to send fallback error to client.");
             }
@@ -950,23 +1166,23 @@ public class EchoServer extends AbstractServer {
      */
     private void handleAddNewSubscriber(ConnectionToClient client, ArrayList<String> message) throws InterruptedException {
         try {
-            messageController.appendMessage("Trying to add subscriber...");
+            messageController.appendMessage(LogLevel.DEBUG, "Trying to add subscriber...");
             String addSubflag = db.addNewSubscriber(message);
 
             switch (addSubflag) {
                 case "ERROR_EXISTS":
-                    client.sendToClient("UsherFrameController ADD_SUB_FAILED_EXISTS " + message.get(0));
+                    sendReply(client, "UsherFrameController ADD_SUB_FAILED_EXISTS " + message.get(0));
                     messageController.appendMessage("Subscriber already exists: " + message.get(0));
                     break;
 
                 case "ERROR_INSERT":
-                    client.sendToClient("UsherFrameController ADD_SUB_FAILED_INSERT " + message.get(0));
+                    sendReply(client, "UsherFrameController ADD_SUB_FAILED_INSERT " + message.get(0));
                     messageController.appendMessage("Insert failed for subscriber: " + message);
                     break;
 
                 default:
                     // Success - result is the new subscriber ID (e.g., "SUB123")
-                    client.sendToClient("UsherFrameController ADD_SUB_SUCCESSFULLY " + addSubflag);
+                    sendReply(client, "UsherFrameController ADD_SUB_SUCCESSFULLY " + addSubflag);
                     messageController.appendMessage("Subscriber added successfully with ID: " + addSubflag);
                     break;
             }
@@ -986,32 +1202,32 @@ public class EchoServer extends AbstractServer {
      */
     private void AddTagToSubscriber(ConnectionToClient client, ArrayList<String> message) throws InterruptedException {
         try {
-            messageController.appendMessage("Trying to add tag to subscriber "+message.toString());
+            messageController.appendMessage(LogLevel.DEBUG, "Trying to add tag to subscriber "+message.toString());
             String addSubflag = db.addTagToSubscriber(message);
            
             switch (addSubflag) {
                 case "ERROR_NO_SUCH_SUBSCRIBER":
-                    client.sendToClient("UsherFrameController ERROR_NO_SUCH_SUBSCRIBER " + message.get(0));
+                    sendReply(client, "UsherFrameController ERROR_NO_SUCH_SUBSCRIBER " + message.get(0));
                     
                     break;
 
                 case "ERROR_INSERT_TAGREADER":
-                    client.sendToClient("UsherFrameController ERROR_NO_SUCH_SUBSCRIBER " + message.get(0));
+                    sendReply(client, "UsherFrameController ERROR_NO_SUCH_SUBSCRIBER " + message.get(0));
                     
                     break;
 
                 case "ERROR_SQL":
-                    client.sendToClient("UsherFrameController ADD_SUB_FAILED_INSERT " + message.get(0));
+                    sendReply(client, "UsherFrameController ADD_SUB_FAILED_INSERT " + message.get(0));
             
                     break;
                     
                 case "ERROR_SUBSCRIBER_ALREADY_HAS_TAG":
-                    client.sendToClient("UsherFrameController ERROR_SUBSCRIBER_ALREADY_HAS_TAG " + message.get(0));
+                    sendReply(client, "UsherFrameController ERROR_SUBSCRIBER_ALREADY_HAS_TAG " + message.get(0));
                     break;
 
                 default:
                     // Success 
-                    client.sendToClient("UsherFrameController " + addSubflag);
+                    sendReply(client, "UsherFrameController " + addSubflag);
                     messageController.appendMessage(addSubflag);
                     break;
             }
@@ -1026,14 +1242,17 @@ public class EchoServer extends AbstractServer {
      * Handles the request to Show history To usher for specific subscriber by ID. Validates and gets the data from the database,
      * then responds to the client with success or failure message.
      *
+     * The history is sent one page at a time, like {@link #handleGetHistoryBySpecificSubscriber}.
+     *
      * @param client  the client (usher) that requested to see history for subscriber
-     * @param message the subscriber details as a list of string fields
+     * @param message the subscriber ID, then optionally the page token and the page size
      * @throws InterruptedException if the operation is interrupted
      */
     private void ShowSubscriberHistory(ConnectionToClient client, ArrayList<String> message) throws InterruptedException {
         try {
-                    String addSubflag = db.getHistoryBySubscriberID(message.get(0));
-                    client.sendToClient("UsherFrameController "+ "ShowHistory "+ addSubflag);
+                    String addSubflag = formatHistoryPage(message.get(0),
+                            message.size() > 1 ? message.get(1) : HISTORY_FIRST_PAGE, message.size() > 2 ? message.get(2) : null);
+                    sendReply(client, "UsherFrameController "+ "HistoryPage "+ addSubflag);
                     messageController.appendMessage("Showing History Activity for User:"+message.get(0));
         } catch (IllegalArgumentException e) {
             sendToClientLabelUpdate(client, e.getMessage());
@@ -1042,42 +1261,61 @@ public class EchoServer extends AbstractServer {
         }
     }
     /**
-     * Handles the request to retrieve all subscribers. Checks user type and responds with appropriate
-     * controller tag (Manager or Usher) and subscriber data.
+     * Reads a history page and formats it as {@code <after> <next> <sessions>}.
      *
-     * @param client the client requesting the list of all subscribers
+     * @param subscriberId the subscriber
+     * @param after        token of the page ("-" for the first page)
+     * @param pageSize     number of sessions requested, or null for the default
+     * @return the formatted page
      * @throws InterruptedException if the operation is interrupted
      */
-    private void handleGetAllSubscribers(ConnectionToClient client) throws InterruptedException {
-        try {
-            messageController.appendMessage("Getting All Subscribers: ");
-            ArrayList<String> allSubscribersInfo = db.getAllSubscribers();
+    private String formatHistoryPage(String subscriberId, String after, String pageSize) throws InterruptedException {
+        mysqlConnection.HistoryPage page = db.getHistoryPage(subscriberId,
+                HISTORY_FIRST_PAGE.equals(after) ? null : after, pageSize(pageSize, HISTORY_PAGE_SIZE, HISTORY_MAX_PAGE_SIZE));
+        return after + " " + (page.next != null ? page.next : HISTORY_NO_MORE) + " " + page.text;
+    }
 
-            if (allSubscribersInfo == null || allSubscribersInfo.isEmpty()) {
-            	if ("Usher".equals(isClientOfType(client))) {
-            		client.sendToClient("UsherFrameController SUBSCRIBERS_VIEW There is no subscribers found!");
-            	}
-                if ("Manager".equals(isClientOfType(client))) {
-                	sendToClientLabelUpdate(client, "There is no subscribers found!");
-                }
-                messageController.appendMessage("There is no subscribers found!");
+    /**
+     * Handles the request to list subscribers. Sends one page of the subscribers matching the search,
+     * as {@code SUBSCRIBERS_PAGE <after> <next> <rows>} (one subscriber per line), addressed to the
+     * Manager or Usher controller depending on who asked.
+     *
+     * @param client   the client requesting the list of subscribers
+     * @param prefix   prefix of the ID, name, phone or email to search for, Base64-encoded ("-" for all subscribers)
+     * @param sortKey  field to sort by: id, name, phone or email
+     * @param after    token of the page ("-" for the first page)
+     * @param pageSize number of subscribers requested, or null for the default
+     * @throws InterruptedException if the operation is interrupted
+     */
+    private void handleGetAllSubscribers(ConnectionToClient client, String prefix, String sortKey, String after,
+            String pageSize) throws InterruptedException {
+        String controller = "Manager".equals(isClientOfType(client)) ? "ManagerFrameController" : "UsherFrameController";
+        try {
+            String search = decodeSubscriberSearch(prefix);
+            messageController.appendMessage(LogLevel.DEBUG, "Getting subscribers: '" + search + "' by " + sortKey + " after " + after);
+            SubscriberDirectory.Page page = db.searchSubscribers(search, sortKey,
+                    SUBSCRIBERS_FIRST_PAGE.equals(after) ? null : after,
+                    pageSize(pageSize, SUBSCRIBERS_PAGE_SIZE, SUBSCRIBERS_MAX_PAGE_SIZE));
+            if (page == null) {
+                messageController.appendMessage(LogLevel.ERROR, "Subscriber directory could not be loaded.");
+                sendToClientLabelUpdate(client, "Could not load the subscribers, please try again later.");
                 return;
-            } else {
-                messageController.appendMessage(allSubscribersInfo.toString());
-                ArrayList<String> response = new ArrayList<>();
+            }
 
-                if ("Manager".equals(isClientOfType(client))) {
-                    response.add("ManagerFrameController");
-                    response.add("SUBSCRIBERS_VIEW");
-                } else if ("Usher".equals(isClientOfType(client))) {
-                    response.add("UsherFrameController");
-                    response.add("SUBSCRIBERS_VIEW");
+            String rows;
+            if (page.rows.isEmpty()) {
+                rows = SUBSCRIBERS_FIRST_PAGE.equals(after) ? "There is no subscribers found!" : "";
+            } else {
+                // One subscriber per line
+                StringBuilder lines = new StringBuilder();
+                for (SubscriberDirectory.Subscriber subscriber : page.rows) {
+                    lines.append(subscriber).append('\n');
                 }
-
-                response.addAll(allSubscribersInfo);
-                String result = String.join(" ", response);
-                client.sendToClient(result);
+                lines.setLength(lines.length() - 1);
+                rows = lines.toString();
             }
+            String next = page.next != null ? page.next : SUBSCRIBERS_NO_MORE;
+            sendReply(client, controller + " SUBSCRIBERS_PAGE " + after + " " + next + " " + rows);
         } catch (IllegalArgumentException e) {
             sendToClientLabelUpdate(client, e.getMessage());
         } catch (IOException e) {
@@ -1085,6 +1323,42 @@ public class EchoServer extends AbstractServer {
         }
     }
 
+    /**
+     * Decodes the search of a subscriber listing request. The search is typed by the user and may hold spaces
+     * or be "-" itself, so the client sends it Base64-encoded (URL alphabet, no padding), like the page tokens.
+     *
+     * @param prefix the search as sent, or {@link #SUBSCRIBERS_FIRST_PAGE} for no search
+     * @return the search, empty for all subscribers
+     * @throws IllegalArgumentException if the search is not valid Base64
+     */
+    private static String decodeSubscriberSearch(String prefix) {
+        if (SUBSCRIBERS_FIRST_PAGE.equals(prefix)) {
+            return "";
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(prefix), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid subscriber search, please try again.");
+        }
+    }
+
+    /**
+     * @param requested page size sent by the client, or null
+     * @param fallback  size used when the client didn't send a valid one
+     * @param max       largest size a client can ask for
+     * @return the page size to use
+     */
+    private static int pageSize(String requested, int fallback, int max) {
+        if (requested != null) {
+            try {
+                return Math.max(1, Math.min(max, Integer.parseInt(requested)));
+            } catch (NumberFormatException e) {
+                // Keep the default
+            }
+        }
+        return fallback;
+    }
+
     /**
      * Handles a request to retrieve all active parking spots currently in use.
      * Sends the result back to the client based on their user type (Manager or Usher).
@@ -1094,12 +1368,12 @@ public class EchoServer extends AbstractServer {
      */
     private void handleActivParkingspot(ConnectionToClient client) throws InterruptedException {
         try {
-            messageController.appendMessage("Generating GET_ACTIVE_PARKINGSPOT");
+            messageController.appendMessage(LogLevel.DEBUG, "Generating GET_ACTIVE_PARKINGSPOT");
             String activeParkingData = db.getActiveParkingSpots();
 
             if (activeParkingData == null || activeParkingData.trim().isEmpty()) {
             	if ("Usher".equals(isClientOfType(client))) {
-            		client.sendToClient("UsherFrameController SHOW_ACTIVE_PARKINGSPOT There is no active parking spots found! ");
+            		sendReply(client, "UsherFrameController SHOW_ACTIVE_PARKINGSPOT There is no active parking spots found! ");
             	}
             	if ("Manager".equals(isClientOfType(client))) {
             		sendToClientLabelUpdate(client, "No active parking spots found.");
@@ -1116,7 +1390,7 @@ public class EchoServer extends AbstractServer {
                 response.add("SHOW_ACTIVE_PARKINGSPOT");
                 response.add(activeParkingData);
                 String result = String.join(" ", response);
-                client.sendToClient(result);
+                sendReply(client, result);
             }
         } catch (IllegalArgumentException e) {
             sendToClientLabelUpdate(client, e.getMessage());
@@ -1135,20 +1409,20 @@ public class EchoServer extends AbstractServer {
      */
     private void handleCheckAvilableSpots(ConnectionToClient client, String controllerName) throws InterruptedException {
         try {
-            messageController.appendMessage("Checking available spots for Subscriber: " + client.toString());
+            messageController.appendMessage(LogLevel.DEBUG, "Checking available spots for Subscriber: " + client.toString());
             String abilableSpots = db.COUNTEmptySpot();
 
             if (abilableSpots == null || abilableSpots.isEmpty()) {
                 if (controllerName.equals("Away"))
-                    client.sendToClient("SubscriberAwayController CHECK_SPOTS_FAIL");
+                    sendReply(client, "SubscriberAwayController CHECK_SPOTS_FAIL");
                 else
-                    client.sendToClient("SubscriberTermenalController CHECK_SPOTS_FAIL");
+                    sendReply(client, "SubscriberTermenalController CHECK_SPOTS_FAIL");
             } else {
-                messageController.appendMessage("Checking available spots succeeded.\n");
+                messageController.appendMessage(LogLevel.DEBUG, "Checking available spots succeeded.\n");
                 if (controllerName.equals("Away"))
-                    client.sendToClient("SubscriberAwayController CHECK_SPOTS_SUCCESS " + abilableSpots);
+                    sendReply(client, "SubscriberAwayController CHECK_SPOTS_SUCCESS " + abilableSpots);
                 else
-                    client.sendToClient("SubscriberTermenalController CHECK_SPOTS_SUCCESS " + abilableSpots);
+                    sendReply(client, "SubscriberTermenalController CHECK_SPOTS_SUCCESS " + abilableSpots);
             }
         } catch (IllegalArgumentException e) {
             sendToClientLabelUpdate(client, e.getMessage());
@@ -1167,24 +1441,24 @@ public class EchoServer extends AbstractServer {
      */
     private void handleGetNewParkingCode(ConnectionToClient client, String timeToPark) throws InterruptedException {
         try {
-            messageController.appendMessage("Generating parking code for Subscriber: " + client.toString());
+            messageController.appendMessage(LogLevel.DEBUG, "Generating parking code for Subscriber: " + client.toString());
             int intTimeToPark = Integer.parseInt(timeToPark);
 
             if (intTimeToPark > 240) {
                 intTimeToPark = 240; // Cap the max time to 4 hours
             }
 
-            String subID = this.securityArray.get(client)[1];
+            String subID = sessions.idOf(client);
             String newParkingCode = db.getParkingCode(intTimeToPark, subID);
 
             if (newParkingCode == null || newParkingCode.isEmpty()) {
                 messageController.appendMessage("Parking code generation FAILED");
-                client.sendToClient("SubscriberTermenalController GET_PARKING_CODE_FAIL");
+                sendReply(client, "SubscriberTermenalController GET_PARKING_CODE_FAIL");
             } else if (newParkingCode.equals("You/already/parked/your/car.")) {
                 messageController.appendMessage("Parking code generation FAILED");
-                client.sendToClient("SubscriberTermenalController GET_PARKING_CODE_WARNING " + newParkingCode);
+                sendReply(client, "SubscriberTermenalController GET_PARKING_CODE_WARNING " + newParkingCode);
             } else {
-                client.sendToClient("SubscriberTermenalController GET_PARKING_CODE_SUCCESS " + newParkingCode);
+                sendReply(client, "SubscriberTermenalController GET_PARKING_CODE_SUCCESS " + newParkingCode);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -1204,21 +1478,17 @@ public class EchoServer extends AbstractServer {
             String subscriberId = db.getSubscriberIdByTagReader(tagReaderId);
             if (subscriberId != null && !subscriberId.isEmpty()) {
 
-                // Check if this subscriber is already connected
-                boolean alreadyConnected = securityArray.values().stream()
-                    .anyMatch(userInfo -> userInfo[0].equals("User") && userInfo[1].equals(subscriberId));
-
-                if (alreadyConnected) {
+                // Claims the subscriber's terminal session, unless it is already connected
+                if (!sessions.signInTerminalUser(client, subscriberId)) {
                     messageController.appendMessage(subscriberId + " is already connected!\nTrying to connect from another device is disallowed!");
-                    client.sendToClient("SignInController SIGN_IN_TWICE_LOGOUT");
+                    sendReply(client, "SignInController SIGN_IN_TWICE_LOGOUT");
                 } else {
-                    client.sendToClient("SignInController SIGN_IN_SUCCESS USERTermenal");
-                    String[] u = {"User", subscriberId};
-                    securityArray.put(client, u);
+                    client.setInfo(TAG_READER_INFO, Boolean.TRUE);
+                    sendReply(client, "SignInController SIGN_IN_SUCCESS USERTermenal");
                 }
 
             } else {
-                client.sendToClient("SignInController SIGN_IN_Fail USERTermenal");
+                sendReply(client, "SignInController SIGN_IN_Fail USERTermenal");
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -1235,19 +1505,71 @@ public class EchoServer extends AbstractServer {
      */
     private void sendToClientLabelUpdate(ConnectionToClient client, String message) {
         try {
-            client.sendToClient(" " + message);
+            sendReply(client, " " + message);
         } catch (IOException e) {
             messageController.appendMessage("Failed to send error message to client: " + e.getMessage());
         }
     }
 
+    /**
+     * Sends a reply to a client in the format it negotiated.
+     * Text replies go out as {@link WireProtocol} frames to clients that sent {@code WIRE_HELLO}, carrying the
+     * request ID when the reply answers a request of that client; everything else (legacy clients,
+     * {@link MyFile} reports) is sent as a serialized object.
+     *
+     * @param client the client to send the reply to
+     * @param reply  the reply
+     * @throws IOException if the reply can't be sent
+     */
+    private void sendReply(ConnectionToClient client, Object reply) throws IOException {
+        if (reply instanceof String && client.getInfo(WIRE_VERSION_INFO) != null) {
+            client.sendToClient(WireProtocol.encodeReply(requestIdFor(client), (String) reply));
+        } else {
+            client.sendToClient(reply);
+        }
+    }
+
+    /**
+     * @param client the client a reply goes to
+     * @return the ID of the request this thread is answering if it came from that client, otherwise 0
+     */
+    private int requestIdFor(ConnectionToClient client) {
+        RequestContext request = currentRequest.get();
+        return request != null && request.client == client ? request.requestId : 0;
+    }
+
+    /**
+     * Sends a report image: in chunks through {@link ReportTransfers} to clients that asked for it,
+     * as one {@link MyFile} to the others.
+     *
+     * @param client  the client to send the image to
+     * @param command the controller command the client routes the image with
+     * @param image   the PNG bytes
+     * @throws IOException if the image can't be sent
+     */
+    private void sendReportImage(ConnectionToClient client, String command, byte[] image) throws IOException {
+        if (client.getInfo(REPORT_STREAMING_INFO) != null && image.length > 0) {
+            reportTransfers.start(client, requestIdFor(client), command, image);
+        } else {
+            sendReply(client, new MyFile(command, image));
+        }
+    }
+
     /**
      * Safely casts an object to an ArrayList of Strings, verifying all elements are Strings.
+     * A {@link WireProtocol} frame ({@code byte[]}) is decoded into the same list.
      *
      * @param obj the object to cast
      * @return a valid ArrayList&lt;String&gt; if successful, otherwise null
      */
     public static ArrayList<String> safeCastToStringList(Object obj) {
+        if (obj instanceof byte[]) {
+            try {
+                return WireProtocol.decodeCommand((byte[]) obj);
+            } catch (IOException e) {
+                return null;
+            }
+        }
         if (obj instanceof ArrayList<?>) {
             ArrayList<?> temp = (ArrayList<?>) obj;
             for (Object o : temp) {
@@ -1280,56 +1602,28 @@ public class EchoServer extends AbstractServer {
 
         EchoServer server = new EchoServer(port);
         try {
-            server.listen();
+            server.startListening();
         } catch (Exception ex) {
             messageController.appendMessage("ERROR - Could not listen for clients!");
         }
     }
 
     /**
-     * Starts a background thread that monitors client inactivity.
-     * If a client has been inactive for over 1 hour, they are notified and disconnected.
-     * The thread runs continuously and checks for inactivity every 60 seconds.
+     * Gives the idle class {@link IdleReaper} picks the timeout of a client with:
+     * its session role, "TagReader" for a terminal signed in with a tag reader, or "anonymous".
+     *
+     * @param client the client
+     * @return the idle class
      */
-    private void startInactivityMonitor() {
-        Thread inactivityThread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (true) {
-                    try {
-                        Thread.sleep(60000); // Check every 60 seconds
-                        long now = System.currentTimeMillis();
-                        List<ConnectionToClient> toRemove = new ArrayList<>();
-
-                        for (Map.Entry<ConnectionToClient, Long> entry : lastActivity.entrySet()) {
-                            if (now - entry.getValue() > 3600000) { // Inactive for over 1 hour
-                                ConnectionToClient client = entry.getKey();
-
-                                sendToClientLabelUpdate(client, "Disconnected due to inactivity ");
-                                messageController.appendMessage("Disconnecting inactive client: " + client.getInetAddress());
-
-                                Thread.sleep(3000); // Give client 3 seconds to read the message
-
-                                client.close(); // Disconnect
-                                toRemove.add(client);
-                            }
-                        }
-
-                        for (ConnectionToClient client : toRemove) {
-                            lastActivity.remove(client);
-                            updateClientStatus(null); // Optional UI refresh
-                        }
-
-                    } catch (InterruptedException e) {
-                        break; // Thread interrupted, exit safely
-                    } catch (IOException ex) {
-                        ex.printStackTrace();
-                    }
-                }
-            }
-        });
-
-        inactivityThread.start(); // Start the thread
+    private String idleClassOf(ConnectionToClient client) {
+        String role = sessions.roleOf(client);
+        if (role == null || role.isEmpty()) {
+            return "anonymous";
+        }
+        if (SessionRegistry.ROLE_USER.equals(role) && client.getInfo(TAG_READER_INFO) != null) {
+            return "TagReader";
+        }
+        return role;
     }
    
     /**
@@ -1345,39 +1639,31 @@ public class EchoServer extends AbstractServer {
      */
     private void handleUserSignIn(String subscriberId, String subscriberName, ConnectionToClient client, String TypeUser) throws InterruptedException {
         try {
-            messageController.appendMessage("Getting Subscriber: " + subscriberId);
+            messageController.appendMessage(LogLevel.DEBUG, "Getting Subscriber: " + subscriberId);
             String subscriberInfo = db.getSubscriberID(subscriberId, subscriberName);
 
             if (subscriberInfo == null || subscriberInfo.isEmpty()) {
-                client.sendToClient("SignInController SIGN_IN_Fail USER");
+                sendReply(client, "SignInController SIGN_IN_Fail USER");
                 return;
             }
 
-            // If it's a terminal user, check if already connected
+            // If it's a terminal user, claim its terminal session unless it is already connected
             if (TypeUser.equals("Termenal")) {
-                boolean alreadyConnected = securityArray.values().stream()
-                    .anyMatch(userInfo -> userInfo[0].equals("User") && userInfo[1].equals(subscriberId));
-
-                if (alreadyConnected) {
+                if (!sessions.signInTerminalUser(client, subscriberId)) {
                     messageController.appendMessage(subscriberId + " is already connected!\nTrying to connect from another device is disallowed!");
-                    client.sendToClient("SignInController SIGN_IN_TWICE_LOGOUT");
+                    sendReply(client, "SignInController SIGN_IN_TWICE_LOGOUT");
                     return;
                 }
                 
+            }
+            else
+            {
+                sessions.signInAwayUser(client, subscriberId);
             }
             
 	            // Sign-in success
-	            messageController.appendMessage(subscriberInfo);
-	            if (TypeUser.equals("Termenal")) {
-	            	String[] u = {"User", subscriberId};
-	            	securityArray.put(client, u);
-	            }
-	            else
-	            {
-	            	String[] u = {"UserAway", subscriberId};
-	            	securityArray.put(client, u);
-	            }
-	            client.sendToClient("SignInController SIGN_IN_SUCCESS USER" + TypeUser);
+	            messageController.appendMessage(LogLevel.DEBUG, subscriberInfo);
+	            sendReply(client, "SignInController SIGN_IN_SUCCESS USER" + TypeUser);
             
         } catch (IllegalArgumentException e) {
             sendToClientLabelUpdate(client, e.getMessage());
@@ -1398,27 +1684,22 @@ public class EchoServer extends AbstractServer {
      */
     private void handleWorkerSignIn(String workerId, String type, ConnectionToClient client) throws InterruptedException {
         try {
-            messageController.appendMessage("Getting Worker: " + workerId);
+            messageController.appendMessage(LogLevel.DEBUG, "Getting Worker: " + workerId);
             String workerInfo = db.getWorkerID(workerId, type);
 
             if (workerInfo == null || workerInfo.isEmpty()) {
-                client.sendToClient("SignInController SIGN_IN_Fail Worker " + type);
+                sendReply(client, "SignInController SIGN_IN_Fail Worker " + type);
                 return;
             }
 
-            // Check if this workerId is already logged in
-            boolean alreadyConnected = securityArray.values().stream()
-                .anyMatch(userInfo -> userInfo[1].equals(workerId));
-
-            if (alreadyConnected) {
+            // Claims the worker's session, unless this workerId is already logged in
+            String role = "0".equals(type) ? SessionRegistry.ROLE_USHER : SessionRegistry.ROLE_MANAGER;
+            if (!sessions.signInWorker(client, workerId, role)) {
                 messageController.appendMessage(workerId + " is already connected!\nTrying to connect from another device is disallowed!");
-                client.sendToClient("SignInController SIGN_IN_TWICE");
+                sendReply(client, "SignInController SIGN_IN_TWICE");
             } else {
-                String role = "0".equals(type) ? "Usher" : "Manager";
-                String[] u = {role, workerId};
-                securityArray.put(client, u);
-                messageController.appendMessage(workerInfo);
-                client.sendToClient("SignInController SIGN_IN_SUCCESS Worker " + type);
+                messageController.appendMessage(LogLevel.DEBUG, workerInfo);
+                sendReply(client, "SignInController SIGN_IN_SUCCESS Worker " + type);
             }
 
         } catch (IllegalArgumentException e) {
@@ -1446,8 +1727,7 @@ public class EchoServer extends AbstractServer {
             byte[] reportImage = db.getSubscriptionReport(subscriberId, reportDate);
 
             if (reportImage != null) {
-                MyFile reportFile = new MyFile("ManagerFrameController SHOW_SUBSCRIPTION_REPORT", reportImage);
-                client.sendToClient(reportFile);
+                sendReportImage(client, "ManagerFrameController SHOW_SUBSCRIPTION_REPORT", reportImage);
                 messageController.appendMessage("Subscription report image sent to client.");
             } else {
                 sendToClientLabelUpdate(client, "No subscription report image found for this subscriber and date.");
@@ -1467,11 +1747,7 @@ public class EchoServer extends AbstractServer {
      * @return the role string associated with the client ("User", "Usher", "Manager"), or null if not found
      */
     public String isClientOfType(ConnectionToClient client) {
-        if (!securityArray.containsKey(client)) {
-            return null;
-        }
-        String[] role = securityArray.get(client);
-        return role[0];
+        return sessions.roleOf(client);
     }
 
     /**
@@ -1482,16 +1758,16 @@ public class EchoServer extends AbstractServer {
      */
     public void handleGetMyParkingStatus(ConnectionToClient client) {
         try {
-            messageController.appendMessage("Checking Parking status for Subscriber : " + client.toString());
+            messageController.appendMessage(LogLevel.DEBUG, "Checking Parking status for Subscriber : " + client.toString());
 
-            String subscriberId = this.securityArray.get(client)[1];
+            String subscriberId = sessions.idOf(client);
             String ParkingStatus = db.GetSubscriberCurrentParkingStatus(subscriberId);
 
             if (ParkingStatus == null || ParkingStatus.isEmpty()) {
-                client.sendToClient("SubscriberTermenalController GOT_EMPTY_STATUS");
+                sendReply(client, "SubscriberTermenalController GOT_EMPTY_STATUS");
             } else {
-                messageController.appendMessage("Checking Parking status succeeded.\n");
-                client.sendToClient("SubscriberTermenalController GET_PARKING_STATUS_SUCCESS " + ParkingStatus);
+                messageController.appendMessage(LogLevel.DEBUG, "Checking Parking status succeeded.\n");
+                sendReply(client, "SubscriberTermenalController GET_PARKING_STATUS_SUCCESS " + ParkingStatus);
             }
         } catch (IllegalArgumentException e) {
             sendToClientLabelUpdate(client, e.getMessage());
@@ -1510,14 +1786,14 @@ public class EchoServer extends AbstractServer {
      */
     public void handleRetrieveCar(ConnectionToClient client, String parkingID) {
         try {
-            messageController.appendMessage("Retrieving car for Subscriber : " + client.toString());
+            messageController.appendMessage(LogLevel.DEBUG, "Retrieving car for Subscriber : " + client.toString());
 
-            String subscriberId = this.securityArray.get(client)[1];
+            String subscriberId = sessions.idOf(client);
             String ParkingStatus = db.GetSubscriberCurrentParkingStatus(subscriberId);
 
             if (ParkingStatus == null || ParkingStatus.isEmpty()) {
                 messageController.appendMessage("The subscriber does not have a car to retrieve");
-                client.sendToClient("SubscriberTermenalController NO_CAR_TO_RETRIEVE");
+                sendReply(client, "SubscriberTermenalController NO_CAR_TO_RETRIEVE");
             } else {
                 String[] stats = ParkingStatus.split(" ");
                 String StartTime = stats[1] + " " + stats[2];
@@ -1535,12 +1811,12 @@ public class EchoServer extends AbstractServer {
                 boolean res = db.retriveCarForSubscriber(subscriberId, stats[0], isLate, String.valueOf(totalParkingTime), parkingID);
 
                 if (res) {
-                    messageController.appendMessage("Retrieving car succeeded.\n");
-                    client.sendToClient("SubscriberTermenalController RETRIEVING_CAR_SUCCESS");
+                    messageController.appendMessage(LogLevel.DEBUG, "Retrieving car succeeded.\n");
+                    sendReply(client, "SubscriberTermenalController RETRIEVING_CAR_SUCCESS");
                     handleGetMyParkingStatus(client);
                 } else {
                     messageController.appendMessage("Retrieving car failed.\n");
-                    client.sendToClient("SubscriberTermenalController RETRIEVING_CAR_FIALED");
+                    sendReply(client, "SubscriberTermenalController RETRIEVING_CAR_FIALED");
                 }
             }
         } catch (IllegalArgumentException e) {
@@ -1592,21 +1868,18 @@ public class EchoServer extends AbstractServer {
             	    minutes, lateExits, ext, reservationCount, cancelledReservations, lateReservationArrivals, peak
             	);
             	messageController.appendMessage(log);
-            final String peakHour = peak;
-            // Step 4: create and save chart image
-            Platform.runLater(() -> {
-            	byte[] chartImageBytes = createMonthlyParkingChartImage(minutes, lateExits, ext, reservationCount, cancelledReservations, lateReservationArrivals, peakHour);
-                if (chartImageBytes != null) {
-                    LocalDate reportDate = previousMonth.plusMonths(1).atDay(1); // e.g. 2025-07-01
-                    try {
-                        db.saveParkingReportImage(reportDate, chartImageBytes,con);
-                        messageController.appendMessage("Chart image saved to database for " + previousMonth);
-                    } catch (InterruptedException e) {
-                        messageController.appendMessage("Thread was interrupted while saving chart image: " + e.getMessage());
-                        Thread.currentThread().interrupt();
-                    }
+            // Step 4: create and save chart image (rendered with Java2D, off the JavaFX thread)
+            byte[] chartImageBytes = createMonthlyParkingChartImage(minutes, lateExits, ext, reservationCount, cancelledReservations, lateReservationArrivals, peak);
+            if (chartImageBytes != null) {
+                LocalDate reportDate = previousMonth.plusMonths(1).atDay(1); // e.g. 2025-07-01
+                try {
+                    db.saveParkingReportImage(reportDate, chartImageBytes,con);
+                    messageController.appendMessage("Chart image saved to database for " + previousMonth);
+                } catch (InterruptedException e) {
+                    messageController.appendMessage("Thread was interrupted while saving chart image: " + e.getMessage());
+                    Thread.currentThread().interrupt();
                 }
-            });
+            }
 
         }
 
@@ -1616,9 +1889,15 @@ public class EchoServer extends AbstractServer {
     
     /**
      * Generates and stores a visual monthly report image for all subscribers.
-     * Fetches all parking history for the previous month in a single query,
-     * groups it by SubscriberID, and creates a chart image for each subscriber.
+     * Reads one pre-aggregated row per subscriber for the previous month from the monthly
+     * statistics tables, and creates a chart image for each subscriber.
      * The image is stored in the 'subscriberreport' table as a BLOB.
+     * <p>
+     * Charts are drawn by {@link ReportChartRenderer} on {@link #reportPool}, in chunks of
+     * {@code bpark.reports.chunkSize} subscribers: while one chunk is saved with
+     * {@link mysqlConnection#saveSubscriberReportsBatch}, the next one is rendered, so only two chunks of
+     * images are held in memory and the JavaFX thread is never used.
+     * </p>
      */
     public void generateAllSubscriberReportsAutomatically(Connection con) {
         YearMonth previousMonth = YearMonth.now().minusMonths(1);
@@ -1627,96 +1906,76 @@ public class EchoServer extends AbstractServer {
         LocalDate reportDate = to;
 
         messageController.appendMessage("Generating all subscriber reports for " + previousMonth);
+        long start = System.nanoTime();
 
         try {
-            List<Map<String, String>> rawHistory = db.getFullHistoryForMonth(from, to,con);
-            Map<String, List<Map<String, String>>> groupedBySubscriber = new HashMap<>();
-
-            for (Map<String, String> row : rawHistory) {
-                String subscriberId = row.get("SubscriberID");
-                messageController.appendMessage("Generated report for subscriber: " + subscriberId);
-
-                groupedBySubscriber.computeIfAbsent(subscriberId, k -> new ArrayList<>()).add(row);
+            List<Map<String, String>> subscribers = db.getSubscriberMonthlyStats(from, to, con);
+            List<List<Map<String, String>>> chunks = new ArrayList<>();
+            for (int i = 0; i < subscribers.size(); i += REPORT_CHUNK_SIZE) {
+                chunks.add(subscribers.subList(i, Math.min(i + REPORT_CHUNK_SIZE, subscribers.size())));
             }
 
-            // Execute GUI and chart generation safely in JavaFX thread
-            Platform.runLater(() -> {
-                try {
-                    List<Map<String, Object>> batchData = new ArrayList<>();
-
-                    for (Map.Entry<String, List<Map<String, String>>> entry : groupedBySubscriber.entrySet()) {
-                        String subscriberId = entry.getKey();
-                        List<Map<String, String>> records = entry.getValue();
-                        int totalParkings = records.size();
-                        int lateArrivals = 0;
-                        int lateLeaves = 0;
-                        int lateExits = 0;
-                        int extensions = 0;
-                        int reservationCount = 0;
-                        int cancelledReservations = 0;
-                        int lateFromReservation = 0;
-                        int totalMinutes = 0;
-
-
-                        for (Map<String, String> rec : records) {
-                            if ("1".equals(rec.get("Late"))) {
-                                lateArrivals++;
-                            }
-
-                            if ("1".equals(rec.get("LateEmailSent"))) {
-                                lateExits++;  
-                            }
-
-                            if ("1".equals(rec.get("Extensions"))) {
-                                extensions++;
-                            }
-
-                            String resId = rec.get("resID");
-                            if (resId != null && !resId.equalsIgnoreCase("null")) {
-                                reservationCount++;
-                                if ("0".equals(rec.get("ShowedUp"))) {
-                                    cancelledReservations++;
-                                }
-                                if ("1".equals(rec.get("Late"))) {
-                                    lateFromReservation++;
-                                }
-                            }
-
-                            LocalDateTime entryTime = LocalDateTime.parse(rec.get("EntryTime"));
-                            LocalDateTime exitTime = LocalDateTime.parse(rec.get("ExitTime"));
-                            int duration = (int) java.time.Duration.between(entryTime, exitTime).toMinutes();
-                            totalMinutes += duration;
-                        }
-
-
-                        byte[] imageBytes = createSubscriberChartImage(lateFromReservation, lateExits, totalMinutes, extensions, reservationCount, cancelledReservations);
-
-
-                        Map<String, Object> reportEntry = new HashMap<>();
-                        reportEntry.put("SubscriberID", subscriberId);
-                        reportEntry.put("ImageBytes", imageBytes);
-                        batchData.add(reportEntry);
-                    }
-
-                    boolean success = db.saveSubscriberReportsBatch(reportDate, batchData,con);
-                    if (success) {
-                        messageController.appendMessage("All subscriber reports saved for: " + previousMonth);
-                    } else {
-                        messageController.appendMessage("Failed to save some subscriber reports.");
-                    }
-                } catch (Exception e) {
-                    messageController.appendMessage("Batch save error: " + e.getMessage());
+            boolean allSaved = true;
+            Future<List<Map<String, Object>>> next = chunks.isEmpty() ? null : reportPool.submit(renderTask(chunks.get(0)));
+            for (int i = 0; i < chunks.size(); i++) {
+                List<Map<String, Object>> batchData = next.get();
+                next = i + 1 < chunks.size() ? reportPool.submit(renderTask(chunks.get(i + 1))) : null;
+                if (!db.saveSubscriberReportsBatch(reportDate, batchData, con)) {
+                    allSaved = false;
                 }
-            });
+            }
 
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            if (allSaved) {
+                messageController.appendMessage("All subscriber reports saved for: " + previousMonth + " ("
+                        + subscribers.size() + " subscribers, " + elapsedMs + " ms)");
+            } else {
+                messageController.appendMessage("Failed to save some subscriber reports.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            messageController.appendMessage("Subscriber report generation was interrupted.");
         } catch (Exception e) {
             messageController.appendMessage("Failed generating all subscriber reports: " + e.getMessage());
         }
     }
+
+    /**
+     * @return a task rendering one chunk of subscriber reports
+     */
+    private Callable<List<Map<String, Object>>> renderTask(List<Map<String, String>> chunk) {
+        return () -> renderSubscriberReports(chunk);
+    }
+
+    /**
+     * Renders the chart of every subscriber in a chunk, in parallel.
+     * Must run inside {@link #reportPool} so the parallel stream uses its threads.
+     *
+     * @param chunk monthly statistics rows from {@link mysqlConnection#getSubscriberMonthlyStats}
+     * @return batch entries for {@link mysqlConnection#saveSubscriberReportsBatch}
+     */
+    private List<Map<String, Object>> renderSubscriberReports(List<Map<String, String>> chunk) {
+        return chunk.parallelStream().map(stats -> {
+            byte[] imageBytes = createSubscriberChartImage(
+                    Integer.parseInt(stats.get("LateFromReservation")),
+                    Integer.parseInt(stats.get("LateExits")),
+                    Integer.parseInt(stats.get("TotalMinutes")),
+                    Integer.parseInt(stats.get("Extensions")),
+                    Integer.parseInt(stats.get("ReservationCount")),
+                    Integer.parseInt(stats.get("CancelledReservations")));
+
+            Map<String, Object> reportEntry = new HashMap<>();
+            reportEntry.put("SubscriberID", stats.get("SubscriberID"));
+            reportEntry.put("ImageBytes", imageBytes);
+            return reportEntry;
+        }).collect(Collectors.toList());
+    }
+
     /**
      * After Customer is late 4 hours! the car must be out for other reservations!
      * We force the car to exit 
      * We check that EntryTime+TimeToPark>=EntryTime+TimeToPark+240(minutes)
+     * Only used while the {@link ParkingDeadlines} could not be loaded.
      */
     public void ExitParkingCarsAfter4HOURS(Connection con) {
         db.ExitLateParkingsAfter4HOURS(con, parkings -> {
@@ -1748,8 +2007,9 @@ public class EchoServer extends AbstractServer {
     /**
      * Generates a bar chart image representing the monthly parking stats.
      * Includes total hours, late exits, extensions, reservation metrics, and peak hour.
+     * Drawn with {@link ReportChartRenderer}, so it can run on any thread.
      * @author Amit_Regev
-     * @param totalHours  Total hours parked
+     * @param totalMinutes Total minutes parked
      * @param lateExits   Number of late exits
      * @param extensions  Number of extensions
      * @param reservations Number of reservation-based parkings
@@ -1761,114 +2021,21 @@ public class EchoServer extends AbstractServer {
     public byte[] createMonthlyParkingChartImage(int totalMinutes, int lateExits, int extensions,
                                                  int reservations, int cancellations,
                                                  int lateArrivalsFromReservations, String peakHour) {
-        CategoryAxis xAxis = new CategoryAxis();
-        NumberAxis yAxis = new NumberAxis();
-        BarChart<String, Number> barChart = new BarChart<>(xAxis, yAxis);
-        barChart.setTitle("Monthly Parking Report - Peak Hour: " + peakHour);
-        xAxis.setLabel("Category");
-        yAxis.setLabel("Count");
-
-        XYChart.Series<String, Number> series = new XYChart.Series<>();
-        series.getData().add(createLabeledData("Total Minutes", totalMinutes));
-        series.getData().add(createLabeledData("Late Exits", lateExits));
-        series.getData().add(createLabeledData("Extensions", extensions));
-        series.getData().add(createLabeledData("Reservations", reservations));
-        series.getData().add(createLabeledData("Cancellations", cancellations));
-        series.getData().add(createLabeledData("Late Entries w/ Reservation", lateArrivalsFromReservations));
-        barChart.getData().add(series);
-
-
-        // Render chart to image
-        VBox box = new VBox(barChart);
-        Scene scene = new Scene(box);
-        barChart.applyCss(); // force rendering
-        barChart.layout();
-
-        WritableImage fxImage = scene.snapshot(null);
-        BufferedImage img = SwingFXUtils.fromFXImage(fxImage, null);
-
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            ImageIO.write(img, "png", out);
-            return out.toByteArray();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+        return ReportChartRenderer.renderMonthlyParkingReport(totalMinutes, lateExits, extensions,
+                reservations, cancellations, lateArrivalsFromReservations, peakHour);
     }
 
-    
-    /**
-     * Creates a chart data point with a label shown below the bar.
-     * 
-     * @param category the x-axis label
-     * @param value    the numeric value for the bar
-     * @return a Data object with custom node including the value label
-     */
-    private XYChart.Data<String, Number> createLabeledData(String category, int value) {
-        XYChart.Data<String, Number> data = new XYChart.Data<>(category, value);
-
-        Label valueLabel = new Label(String.valueOf(value));
-        valueLabel.setStyle("-fx-font-size: 12; -fx-text-fill: black;");
-
-        VBox box = new VBox();
-        box.setSpacing(2);
-        box.setAlignment(javafx.geometry.Pos.BOTTOM_CENTER);
-        box.getChildren().addAll(new javafx.scene.shape.Rectangle(0, 0), valueLabel); // Transparent spacer
-        data.setNode(box);
-
-        return data;
-    }
-    
 	/**
 	 * Generates a bar chart image showing a subscriber's monthly parking statistics.
-	 * The chart includes:
-	 * - Number of late arrivals
-	 * - Number of late departures (overstayed)
-	 * - Total parking duration in minutes
-	 * 
-	 * Each bar is labeled with its exact numeric value for clarity, even when values differ significantly.
+	 * The chart includes total minutes, late exits, extensions, reservations, cancellations
+	 * and late arrivals from reservations, each bar labeled with its exact value.
+	 * Drawn with {@link ReportChartRenderer}, so it can run on any thread.
 	 * 
-	 * @param lateArrivals    Number of late entries by the subscriber
-	 * @param lateLeaves      Number of overstayed exits by the subscriber
-	 * @param totalDuration   Total parking duration in minutes
 	 * @return PNG image (as byte array) representing the chart for storing in the database
 	 */
     public byte[] createSubscriberChartImage(int lateFromReservation, int lateExits, int totalMinutes , int extensions, int reservationCount, int cancelledReservations ) {
-    	CategoryAxis xAxis = new CategoryAxis();
-    	NumberAxis yAxis = new NumberAxis();
-    	BarChart<String, Number> chart = new BarChart<>(xAxis, yAxis);
-    	chart.setTitle("Subscriber Monthly Report");
-
-    	xAxis.setLabel("Category");
-    	yAxis.setLabel("Value");
-
-    	XYChart.Series<String, Number> series = new XYChart.Series<>();
-
-    	// Add data with custom nodes (label below)
-    	series.getData().add(createLabeledData("Total Minutes", totalMinutes));
-    	series.getData().add(createLabeledData("Late Exits", lateExits));
-    	series.getData().add(createLabeledData("Extensions", extensions));
-    	series.getData().add(createLabeledData("Reservations", reservationCount));
-    	series.getData().add(createLabeledData("Cancellations", cancelledReservations));
-    	series.getData().add(createLabeledData("Late from Reservation", lateFromReservation));
-
-    	chart.getData().add(series);
-
-    	VBox box = new VBox(chart);
-    	Scene scene = new Scene(box);
-    	chart.applyCss();
-    	chart.layout();
-
-    	WritableImage image = scene.snapshot(null);
-    	BufferedImage buf = SwingFXUtils.fromFXImage(image, null);
-
-    	try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-    		ImageIO.write(buf, "png", out);
-    		return out.toByteArray();
-    	} catch (IOException e) {
-    		e.printStackTrace();
-    		return null;
-    	}
+        return ReportChartRenderer.renderSubscriberReport(lateFromReservation, lateExits, totalMinutes,
+                extensions, reservationCount, cancelledReservations);
     }
     
     /**
@@ -1888,8 +2055,7 @@ public class EchoServer extends AbstractServer {
             byte[] reportImage = db.getParkingReportByDate(reportDate);
 
             if (reportImage != null) {
-                MyFile reportFile = new MyFile("ManagerFrameController SHOW_PARKING_REPORT", reportImage);
-                client.sendToClient(reportFile);
+                sendReportImage(client, "ManagerFrameController SHOW_PARKING_REPORT", reportImage);
                 messageController.appendMessage("Report image sent to client.");
             } else {
                 sendToClientLabelUpdate(client, "No report image found for date: " + reportDate);
@@ -1935,13 +2101,13 @@ public class EchoServer extends AbstractServer {
      */
     private void handleExtendParkingTime(ConnectionToClient client, String subscriberID, int totalMinutes, String sourcePage) {
         try {
-            messageController.appendMessage("handleExtendParkingTime called with subscriberID=" + subscriberID + ", totalMinutes=" + totalMinutes + ", sourcePage=" + sourcePage);
+            messageController.appendMessage(LogLevel.DEBUG, "handleExtendParkingTime called with subscriberID=" + subscriberID + ", totalMinutes=" + totalMinutes + ", sourcePage=" + sourcePage);
 
             String resultMessage = db.extendParkingDurationInDB(subscriberID, totalMinutes);
-            messageController.appendMessage("DB returned: " + resultMessage);
+            messageController.appendMessage(LogLevel.DEBUG, "DB returned: " + resultMessage);
 
             String fullMessage = sourcePage + " EXTEND_PARKING_RESULT " + resultMessage;
-            messageController.appendMessage("Sending to client: " + fullMessage);
+            messageController.appendMessage(LogLevel.DEBUG, "Sending to client: " + fullMessage);
 
             sendToClientLabelUpdate(client, fullMessage);
 
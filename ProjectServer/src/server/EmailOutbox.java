@@ -0,0 +1,355 @@
+package server;
+
+import java.io.UnsupportedEncodingException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.MimeMessage;
+
+import gui.LogLevel;
+
+/**
+ * Outgoing mail queue used by {@link EmailSender}.
+ *
+ * <p>
+ * Every mail is first written to the {@code emailoutbox} table and then put in a bounded in-memory queue.
+ * A few worker threads take mail from the queue and send it over an SMTP connection they keep open between
+ * mails, instead of opening a new thread and a new connection per mail; when several mails are waiting a
+ * worker drains up to {@code bpark.mail.batchSize} of them and sends them back to back on the same
+ * connection. A mail that fails is retried with exponential backoff; its spool row is deleted once it was
+ * sent or given up on, so whatever is still in the table at startup is queued again.
+ * </p>
+ *
+ * <p>
+ * Queue depth, sent/retried/failed counters and the send latency are shown by {@link #formatStats()}.
+ * The SMTP server is set with {@code bpark.mail.host} and {@code bpark.mail.port} (see
+ * {@link EmailSender#createSession()}); {@code bench/server/EmailOutboxCheck} runs an outbox against a local
+ * fake SMTP server and an in-memory {@link Spool}.
+ * </p>
+ */
+public class EmailOutbox {
+
+    private static final int QUEUE_SIZE = Integer.getInteger("bpark.mail.queueSize", 1000);
+    private static final int WORKERS = Integer.getInteger("bpark.mail.workers", 2);
+    private static final int BATCH_SIZE = Integer.getInteger("bpark.mail.batchSize", 20);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("bpark.mail.maxAttempts", 6);
+
+    /** First retry delay; doubled on every further attempt up to {@link #MAX_RETRY_DELAY_MS}. */
+    private static final long BASE_RETRY_DELAY_MS = Long.getLong("bpark.mail.retryDelayMs", 5000);
+    private static final long MAX_RETRY_DELAY_MS = 10 * 60 * 1000;
+
+    /** An idle worker closes its SMTP connection after this long without mail. */
+    private static final long IDLE_CLOSE_MS = Long.getLong("bpark.mail.idleCloseMs", 60000);
+
+    private static EmailOutbox instance;
+
+    /**
+     * A queued mail.
+     */
+    static final class OutboxMail {
+        private final int spoolId;
+        private final String to;
+        private final String subject;
+        private final String html;
+        private int attempts;
+
+        OutboxMail(int spoolId, String to, String subject, String html, int attempts) {
+            this.spoolId = spoolId;
+            this.to = to;
+            this.subject = subject;
+            this.html = html;
+            this.attempts = attempts;
+        }
+    }
+
+    /**
+     * Where mail is kept from {@link #enqueue} until it was sent or given up on, so it survives a restart.
+     * The server uses the {@code emailoutbox} table.
+     */
+    interface Spool {
+        /**
+         * @return the mails left by the previous run, oldest first
+         * @throws InterruptedException if interrupted while waiting for a connection
+         */
+        List<OutboxMail> load() throws InterruptedException;
+
+        /**
+         * @return the spool ID of the new mail, or -1 if it could not be spooled
+         * @throws InterruptedException if interrupted while waiting for a connection
+         */
+        int add(String to, String subject, String html) throws InterruptedException;
+
+        /**
+         * @throws InterruptedException if interrupted while waiting for a connection
+         */
+        void updateAttempts(int spoolId, int attempts) throws InterruptedException;
+
+        /**
+         * @throws InterruptedException if interrupted while waiting for a connection
+         */
+        void remove(int spoolId) throws InterruptedException;
+    }
+
+    /**
+     * The {@code emailoutbox} table.
+     */
+    private static final class DatabaseSpool implements Spool {
+        private final mysqlConnection db = mysqlConnection.getInstance();
+
+        @Override
+        public List<OutboxMail> load() throws InterruptedException {
+            return db.queryForList(
+                    "SELECT MailID, Recipient, Subject, Body, Attempts FROM emailoutbox ORDER BY MailID",
+                    (rs, rowNum) -> new OutboxMail(rs.getInt("MailID"), rs.getString("Recipient"),
+                            rs.getString("Subject"), rs.getString("Body"), rs.getInt("Attempts")));
+        }
+
+        @Override
+        public int add(String to, String subject, String html) throws InterruptedException {
+            return db.executeInsertReturningID(
+                    "INSERT INTO emailoutbox (Recipient, Subject, Body, Attempts, CreatedAt) VALUES (?, ?, ?, 0, ?)",
+                    to, subject, html, LocalDateTime.now());
+        }
+
+        @Override
+        public void updateAttempts(int spoolId, int attempts) throws InterruptedException {
+            db.executeUpdate("UPDATE emailoutbox SET Attempts = ? WHERE MailID = ?", attempts, spoolId);
+        }
+
+        @Override
+        public void remove(int spoolId) throws InterruptedException {
+            db.executeUpdate("DELETE FROM emailoutbox WHERE MailID = ?", spoolId);
+        }
+    }
+
+    private final BlockingQueue<OutboxMail> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread t = new Thread(task, "mail-retry");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Session session;
+    private final Spool spool;
+
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicInteger waitingRetry = new AtomicInteger();
+
+    private volatile boolean started = false;
+
+    private EmailOutbox() {
+        this(EmailSender.createSession(), new DatabaseSpool());
+    }
+
+    /**
+     * @param session the SMTP session the workers send with
+     * @param spool   where queued mail is kept
+     */
+    EmailOutbox(Session session, Spool spool) {
+        this.session = session;
+        this.spool = spool;
+    }
+
+    /**
+     * @return the single outbox of the server
+     */
+    public static synchronized EmailOutbox getInstance() {
+        if (instance == null) {
+            instance = new EmailOutbox();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the mails left in the spool by the previous run and starts the workers.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        try {
+            List<OutboxMail> spooled = spool.load();
+            if (spooled != null && !spooled.isEmpty()) {
+                for (OutboxMail mail : spooled) {
+                    offer(mail);
+                }
+                EchoServer.messageController.appendMessage("Mail outbox: " + spooled.size() + " spooled mails queued again.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int i = 0; i < WORKERS; i++) {
+            Thread worker = new Thread(this::runWorker, "mail-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Spools and queues a mail. Returns right away; the mail is sent by a worker thread.
+     *
+     * @param to      recipient address
+     * @param subject subject line
+     * @param html    HTML body
+     */
+    public void enqueue(String to, String subject, String html) {
+        int spoolId = -1;
+        try {
+            spoolId = spool.add(to, subject, html);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        offer(new OutboxMail(spoolId, to, subject, html, 0));
+    }
+
+    /**
+     * @return number of mails waiting in the queue
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the send latency of the mails sent so far
+     */
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    /**
+     * @return a one-line summary of the queue and the send latency (in milliseconds)
+     */
+    public String formatStats() {
+        return String.format("Mail outbox: queued=%d waitingRetry=%d sent=%d retried=%d failed=%d overflowed=%d "
+                        + "latency mean=%.1f p50=%.1f p99=%.1f max=%.1f",
+                queue.size(), waitingRetry.get(), sent.get(), retried.get(), failed.get(), overflowed.get(),
+                sendLatency.getMeanMicros() / 1000.0,
+                sendLatency.getValueAtPercentile(50) / 1000.0,
+                sendLatency.getValueAtPercentile(99) / 1000.0,
+                sendLatency.getMaxMicros() / 1000.0);
+    }
+
+    private void offer(OutboxMail mail) {
+        if (!queue.offer(mail)) {
+            // The mail stays in the spool and is sent after the next restart
+            overflowed.incrementAndGet();
+            EchoServer.messageController.appendMessage(LogLevel.WARN,
+                    "Mail outbox full (" + QUEUE_SIZE + "), mail to " + mail.to + " left in the spool.");
+        }
+    }
+
+    private void runWorker() {
+        Transport transport = null;
+        List<OutboxMail> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                OutboxMail first = queue.poll(IDLE_CLOSE_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    transport = close(transport);
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+
+                for (OutboxMail mail : batch) {
+                    long start = System.nanoTime();
+                    try {
+                        if (transport == null || !transport.isConnected()) {
+                            transport = session.getTransport("smtp");
+                            transport.connect();
+                        }
+                        MimeMessage message = EmailSender.createMessage(session, mail.to, mail.subject, mail.html);
+                        transport.sendMessage(message, message.getAllRecipients());
+                        sendLatency.record(System.nanoTime() - start);
+                        sent.incrementAndGet();
+                        removeFromSpool(mail);
+                    } catch (AddressException e) {
+                        // A bad address never gets better, don't retry it
+                        giveUp(mail, e);
+                    } catch (MessagingException | UnsupportedEncodingException | RuntimeException e) {
+                        transport = close(transport);
+                        retry(mail, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                close(transport);
+                return;
+            } catch (RuntimeException e) {
+                // Keeps the worker alive. The unsent mails of the batch are not queued again in this run;
+                // their spool rows are retried on next startup
+                transport = close(transport);
+                EchoServer.messageController.appendMessage(LogLevel.ERROR, "Mail worker " + Thread.currentThread().getName()
+                        + " dropped a batch of " + batch.size() + " mails, retried on next startup: " + e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void retry(OutboxMail mail, Exception cause) throws InterruptedException {
+        mail.attempts++;
+        if (mail.attempts >= MAX_ATTEMPTS) {
+            giveUp(mail, cause);
+            return;
+        }
+        if (mail.spoolId > 0) {
+            spool.updateAttempts(mail.spoolId, mail.attempts);
+        }
+        long delay = Math.min(BASE_RETRY_DELAY_MS << (mail.attempts - 1), MAX_RETRY_DELAY_MS);
+        retried.incrementAndGet();
+        waitingRetry.incrementAndGet();
+        EchoServer.messageController.appendMessage(LogLevel.WARN, "Mail to " + mail.to + " failed (attempt "
+                + mail.attempts + "), retrying in " + delay / 1000 + " s: " + cause.getMessage());
+        try {
+            retryScheduler.schedule(() -> {
+                waitingRetry.decrementAndGet();
+                offer(mail);
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the mail stays in the spool and is sent after the next restart
+            waitingRetry.decrementAndGet();
+        }
+    }
+
+    private void giveUp(OutboxMail mail, Exception cause) throws InterruptedException {
+        failed.incrementAndGet();
+        EchoServer.messageController.appendMessage(LogLevel.ERROR, "Mail to " + mail.to + " dropped after "
+                + mail.attempts + " attempts: " + cause.getMessage());
+        removeFromSpool(mail);
+    }
+
+    private void removeFromSpool(OutboxMail mail) throws InterruptedException {
+        if (mail.spoolId > 0) {
+            spool.remove(mail.spoolId);
+        }
+    }
+
+    private static Transport close(Transport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // The connection is dropped either way
+            }
+        }
+        return null;
+    }
+}
@@ -11,6 +11,7 @@
  */
 package server;
 
+import java.io.UnsupportedEncodingException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -26,11 +27,11 @@ public class EmailSender {
     private static final String SUPPORT_EMAIL = "bparkserviceg17@gmail.com";
 
     /**
-     * Sends an HTML-formatted email asynchronously using a background thread.
+     * Sends an HTML-formatted email asynchronously through the {@link EmailOutbox}.
      * <p>
      * This method allows the main application to continue executing without waiting
-     * for the email to be sent. It is useful in UI or server environments where responsiveness
-     * is critical, and blocking calls to the SMTP server should be avoided.
+     * for the email to be sent. The mail is spooled in the database and sent by one of the
+     * outbox workers over a kept-open SMTP connection, with retries if the send fails.
      * </p>
      *
      * @param to      The recipient's email address.
@@ -38,7 +39,7 @@ public class EmailSender {
      * @param html    The HTML-formatted content of the email body.
      */
     public static void sendEmailAsync(String to, String subject, String html) {
-        new Thread(() -> sendEmail(to, subject, html)).start();
+        EmailOutbox.getInstance().enqueue(to, subject, html);
     }
     
     /**
@@ -153,41 +154,63 @@ public class EmailSender {
     }
 
     /**
-     * Generic method for sending an HTML email using Gmail SMTP.
-     * 
-     * @param toEmail   Recipient email
-     * @param subject   Subject line
-     * @param htmlBody  HTML-formatted body content
+     * Creates the SMTP session shared by the outbox workers. The server is Gmail unless {@code bpark.mail.host}
+     * and {@code bpark.mail.port} point somewhere else, e.g. a local test server.
+     *
+     * @return the mail session
      */
-    private static void sendEmail(String toEmail, String subject, String htmlBody) {
+    static Session createSession() {
+        return createSession(System.getProperty("bpark.mail.host", "smtp.gmail.com"), Integer.getInteger("bpark.mail.port", 587));
+    }
+
+    /**
+     * Creates an SMTP session for the given server. STARTTLS is required unless {@code bpark.mail.starttls}
+     * is {@code false} (for a local test server without TLS).
+     *
+     * @param host the SMTP server
+     * @param port its port
+     * @return the mail session
+     */
+    static Session createSession(String host, int port) {
+        String startTls = String.valueOf(Boolean.parseBoolean(System.getProperty("bpark.mail.starttls", "true")));
         Properties properties = new Properties();
-        properties.put("mail.smtp.host", "smtp.gmail.com");
-        properties.put("mail.smtp.port", "587");
+        properties.put("mail.smtp.host", host);
+        properties.put("mail.smtp.port", String.valueOf(port));
         properties.put("mail.smtp.auth", "true");
-        properties.put("mail.smtp.starttls.enable", "true");
-        properties.put("mail.smtp.starttls.required", "true");
+        properties.put("mail.smtp.starttls.enable", startTls);
+        properties.put("mail.smtp.starttls.required", startTls);
         properties.put("mail.smtp.ssl.protocols", "TLSv1.2");
         properties.put("mail.smtp.connectiontimeout", "15000"); // 15 seconds connection timeout
         properties.put("mail.smtp.timeout", "15000");           // 15 seconds I/O timeout
         properties.put("mail.smtp.writetimeout", "15000");      // 15 seconds write timeout
 
-        Session session = Session.getInstance(properties, new Authenticator() {
+        return Session.getInstance(properties, new Authenticator() {
             @Override
             protected PasswordAuthentication getPasswordAuthentication() {
                 return new PasswordAuthentication(GMAIL_USERNAME, GMAIL_APP_PASSWORD);
             }
         });
+    }
 
-        try {
-            MimeMessage message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(GMAIL_USERNAME, "BPARK System"));
-            message.addRecipient(Message.RecipientType.TO, new InternetAddress(toEmail));
-            message.setSubject(subject);
-            message.setContent(htmlBody, "text/html; charset=UTF-8");
-            Transport.send(message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Builds an HTML email.
+     * 
+     * @param session   the mail session
+     * @param toEmail   Recipient email
+     * @param subject   Subject line
+     * @param htmlBody  HTML-formatted body content
+     * @return the message, ready to send
+     * @throws MessagingException           if the recipient address is invalid
+     * @throws UnsupportedEncodingException if the sender name can't be encoded
+     */
+    static MimeMessage createMessage(Session session, String toEmail, String subject, String htmlBody)
+            throws MessagingException, UnsupportedEncodingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(GMAIL_USERNAME, "BPARK System"));
+        message.addRecipient(Message.RecipientType.TO, new InternetAddress(toEmail));
+        message.setSubject(subject);
+        message.setContent(htmlBody, "text/html; charset=UTF-8");
+        return message;
     }
 
     /**
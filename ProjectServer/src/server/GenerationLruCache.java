@@ -0,0 +1,180 @@
+package server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * LRU cache bounded by the total weight of its values, whose puts are ignored if an invalidation happened since
+ * the value was read.
+ *
+ * <p>
+ * Entries are kept in access order in a {@link LinkedHashMap}; when the total weight goes over the budget the
+ * least recently used ones are evicted. Weighing every value as 1 bounds the number of entries instead. A value
+ * heavier than the whole budget is never cached. Entries can also expire after a fixed time.
+ * </p>
+ *
+ * <p>
+ * A read that started before a write must not put the old value back after the write invalidated it, so
+ * callers take {@link #generation()} before reading the database and pass it to {@link #put}; the put is
+ * ignored if {@link #invalidate} was called in between. {@link ReportImageCache} and {@link ProfileCache} are
+ * built on it.
+ * </p>
+ *
+ * @param <V> the cached value
+ */
+public class GenerationLruCache<V> {
+
+    /**
+     * A cached value and the time it stops being used.
+     */
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final long ttlMillis;
+
+    /** Guarded by {@code this}. */
+    private final LinkedHashMap<String, Entry<V>> entries;
+    private long currentWeight = 0;
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param initialCapacity initial capacity of the map
+     * @param maxWeight       total weight of the cached values
+     * @param weigher         weight of a value
+     * @param ttlMillis       how long a value is used before it expires, or 0 to keep it until it is evicted
+     */
+    public GenerationLruCache(int initialCapacity, long maxWeight, ToLongFunction<V> weigher, long ttlMillis) {
+        this.entries = new LinkedHashMap<>(initialCapacity, 0.75f, true);
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param key the cache key
+     * @return the cached value, or {@code null} on a miss (an expired value is dropped and counts as a miss)
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && ttlMillis > 0 && entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key);
+            expirations.incrementAndGet();
+            entry = null;
+        }
+        (entry != null ? hits : misses).incrementAndGet();
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * @return the current generation, to pass to {@link #put} after reading the database
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a value read from the database, unless it was invalidated since {@code loadedAt}.
+     *
+     * @param key      the cache key
+     * @param value    the value
+     * @param loadedAt value of {@link #generation()} taken before the read
+     */
+    public synchronized void put(String key, V value, long loadedAt) {
+        if (value == null || loadedAt != generation) {
+            return;
+        }
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry<>(value, weight, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0));
+        currentWeight += weight;
+
+        Iterator<Map.Entry<String, Entry<V>>> it = entries.entrySet().iterator();
+        while (currentWeight > maxWeight && it.hasNext()) {
+            currentWeight -= it.next().getValue().weight;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops an entry because its value was written.
+     *
+     * @param key the cache key
+     */
+    public synchronized void invalidate(String key) {
+        generation++;
+        remove(key);
+    }
+
+    /**
+     * @return number of cached values
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total weight of the cached values
+     */
+    public synchronized long weight() {
+        return currentWeight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return share of lookups that were hits, between 0 and 1
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private void remove(String key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) {
+            currentWeight -= removed.weight;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Disconnects clients that have been idle for too long, using a {@link TimerWheel}.
+ *
+ * <p>
+ * The inactivity monitor used to wake every minute, scan every connection and, for each idle one, sleep three
+ * seconds between the notice and the close, so reaping many idle kiosks took minutes and held up the rest of
+ * the scan. Here every connection has one timeout in the wheel. A message from the client only writes its
+ * last-activity timestamp; when the timeout fires, the reaper looks at that timestamp and either schedules
+ * the timeout again for the real deadline or sends the notice and schedules the close
+ * {@code bpark.idle.noticeMs} later (default three seconds), without waiting in between.
+ * </p>
+ *
+ * <p>
+ * The idle limit depends on who is signed in, set with {@code bpark.idle.<class>Ms}:
+ * {@code anonymous} (not signed in, default one hour), {@code User} and {@code UserAway} (subscribers, one
+ * hour), {@code TagReader} (terminal signed in with a tag reader, 0 = never) and {@code Usher} /
+ * {@code Manager} (eight hours). The limit is looked up when the timeout fires, so a sign-in or logout
+ * applies on the next check.
+ * </p>
+ */
+public class IdleReaper {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    /** How long the client has to show the notice before the connection is closed. */
+    private static final long NOTICE_MS = Long.getLong("bpark.idle.noticeMs", 3000);
+
+    /** When a class is never reaped, how often its connections are looked at again (in case the role changed). */
+    private static final long RECHECK_MS = 10 * 60 * 1000L;
+
+    /**
+     * A watched connection.
+     */
+    private static final class Entry {
+        private volatile long lastActivity = System.currentTimeMillis();
+        private volatile TimerWheel.Timeout timeout;
+    }
+
+    private final Map<String, Long> timeouts = new HashMap<>();
+    private final Map<ConnectionToClient, Entry> entries = new ConcurrentHashMap<>();
+    private final TimerWheel wheel;
+    private final Function<ConnectionToClient, String> idleClassOf;
+    private final Consumer<ConnectionToClient> notifier;
+
+    /**
+     * @param idleClassOf gives the idle class of a connection ("anonymous", "User", "TagReader", ...)
+     * @param notifier    tells a client it is about to be disconnected
+     */
+    public IdleReaper(Function<ConnectionToClient, String> idleClassOf, Consumer<ConnectionToClient> notifier) {
+        this.idleClassOf = idleClassOf;
+        this.notifier = notifier;
+        timeouts.put("anonymous", Long.getLong("bpark.idle.anonymousMs", HOUR_MS));
+        timeouts.put("User", Long.getLong("bpark.idle.UserMs", HOUR_MS));
+        timeouts.put("UserAway", Long.getLong("bpark.idle.UserAwayMs", HOUR_MS));
+        timeouts.put("TagReader", Long.getLong("bpark.idle.TagReaderMs", 0));
+        timeouts.put("Usher", Long.getLong("bpark.idle.UsherMs", 8 * HOUR_MS));
+        timeouts.put("Manager", Long.getLong("bpark.idle.ManagerMs", 8 * HOUR_MS));
+
+        Executor handlers = Executors.newFixedThreadPool(2, task -> {
+            Thread t = new Thread(task, "idle-reaper-handler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.wheel = new TimerWheel("idle-reaper", Long.getLong("bpark.idle.tickMs", 1000), handlers);
+    }
+
+    /**
+     * Starts the wheel. Connections can be registered before.
+     */
+    public void start() {
+        wheel.start();
+    }
+
+    /**
+     * Starts watching a new connection.
+     *
+     * @param client the connection
+     */
+    public void register(ConnectionToClient client) {
+        Entry entry = new Entry();
+        Entry previous = entries.put(client, entry);
+        cancel(previous);
+        schedule(client, entry, entry.lastActivity + timeoutFor(client));
+    }
+
+    /**
+     * Records activity on a connection. Only writes the timestamp; the timeout is moved when it fires.
+     *
+     * @param client the connection
+     */
+    public void touch(ConnectionToClient client) {
+        Entry entry = entries.get(client);
+        if (entry != null) {
+            entry.lastActivity = System.currentTimeMillis();
+        } else {
+            register(client);
+        }
+    }
+
+    /**
+     * Stops watching a connection that was closed.
+     *
+     * @param client the connection
+     */
+    public void remove(ConnectionToClient client) {
+        cancel(entries.remove(client));
+    }
+
+    /**
+     * @return number of watched connections
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private long timeoutFor(ConnectionToClient client) {
+        Long timeout = timeouts.get(idleClassOf.apply(client));
+        return timeout != null ? timeout : timeouts.get("anonymous");
+    }
+
+    private void schedule(ConnectionToClient client, Entry entry, long deadline) {
+        entry.timeout = wheel.schedule(deadline, () -> check(client, entry));
+    }
+
+    private static void cancel(Entry entry) {
+        TimerWheel.Timeout timeout = entry != null ? entry.timeout : null;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Runs when the timeout of a connection fires.
+     */
+    private void check(ConnectionToClient client, Entry entry) {
+        if (entries.get(client) != entry) {
+            return; // removed or registered again since
+        }
+        long now = System.currentTimeMillis();
+        long timeout = timeoutFor(client);
+        if (timeout <= 0) {
+            schedule(client, entry, now + RECHECK_MS);
+            return;
+        }
+        long deadline = entry.lastActivity + timeout;
+        if (deadline > now) {
+            schedule(client, entry, deadline);
+            return;
+        }
+
+        if (!entries.remove(client, entry)) {
+            return;
+        }
+        EchoServer.messageController.appendMessage("Disconnecting inactive client: " + client.getInetAddress());
+        notifier.accept(client);
+        wheel.schedule(now + NOTICE_MS, () -> {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Already closed by the client
+            }
+        });
+    }
+}
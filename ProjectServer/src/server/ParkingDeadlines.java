@@ -0,0 +1,150 @@
+package server;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+/**
+ * Deadlines of the open parking sessions, kept in a {@link TimerWheel}.
+ *
+ * <p>
+ * Every session has two deadlines: the end of the parking time ({@code EntryTime + TimeToPark}), when the
+ * subscriber gets the late pickup email, and four hours later ({@code + 240} minutes, plus the one-minute
+ * grace the old scan used), when the car is moved out. {@link mysqlConnection} registers them when a
+ * session starts or is extended and loads them for the open sessions at startup; the handlers re-read the
+ * session from the database before acting, so a stale deadline (car already retrieved) is harmless.
+ * </p>
+ */
+public class ParkingDeadlines {
+
+    /** Minutes after the parking time ends before the car is moved out. */
+    public static final int FORCED_EXIT_AFTER_MINUTES = 240;
+
+    /** Grace period before the forced exit, same as the old 30-second scan. */
+    private static final int FORCED_EXIT_GRACE_MINUTES = 1;
+
+    private final TimerWheel wheel;
+
+    /** Pending timeouts per HistoryID: [late, forced exit]. */
+    private final Map<Integer, TimerWheel.Timeout[]> pending = new HashMap<>();
+
+    private IntConsumer onLate;
+    private IntConsumer onForcedExit;
+
+    /** True once the open sessions have been loaded from the database. */
+    private volatile boolean loaded = false;
+
+    /**
+     * Creates the wheel; the handlers run on two daemon threads so a slow email never holds up other deadlines.
+     */
+    public ParkingDeadlines() {
+        Executor handlers = Executors.newFixedThreadPool(2, task -> {
+            Thread t = new Thread(task, "parking-deadline-handler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.wheel = new TimerWheel("parking-deadlines", Long.getLong("bpark.deadlines.tickMs", 1000), handlers);
+    }
+
+    /**
+     * Sets the handlers and starts the wheel.
+     *
+     * @param onLate       called with the HistoryID when the parking time has ended
+     * @param onForcedExit called with the HistoryID when the car must be moved out
+     */
+    public synchronized void start(IntConsumer onLate, IntConsumer onForcedExit) {
+        this.onLate = onLate;
+        this.onForcedExit = onForcedExit;
+        wheel.start();
+    }
+
+    /**
+     * Stops the wheel.
+     */
+    public void stop() {
+        wheel.stop();
+    }
+
+    /**
+     * @return true once {@link #markLoaded()} has been called
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Marks the open sessions as loaded; from then on the periodic scans are no longer needed.
+     */
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * Registers (or replaces) the deadlines of a parking session.
+     *
+     * @param historyId  the session's HistoryID
+     * @param entryTime  the session's EntryTime
+     * @param timeToPark the session's TimeToPark in minutes
+     * @param lateSent   true if the late email was already sent (only the forced exit is left)
+     */
+    public synchronized void schedule(int historyId, LocalDateTime entryTime, int timeToPark, boolean lateSent) {
+        cancel(historyId);
+        LocalDateTime lateAt = entryTime.plusMinutes(timeToPark);
+        LocalDateTime exitAt = lateAt.plusMinutes(FORCED_EXIT_AFTER_MINUTES + FORCED_EXIT_GRACE_MINUTES);
+
+        TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[2];
+        if (!lateSent) {
+            timeouts[0] = wheel.schedule(toMillis(lateAt), () -> fire(historyId, 0));
+        }
+        timeouts[1] = wheel.schedule(toMillis(exitAt), () -> fire(historyId, 1));
+        pending.put(historyId, timeouts);
+    }
+
+    /**
+     * Drops the deadlines of a session (e.g. the car was retrieved).
+     *
+     * @param historyId the session's HistoryID
+     */
+    public synchronized void cancel(int historyId) {
+        TimerWheel.Timeout[] timeouts = pending.remove(historyId);
+        if (timeouts != null) {
+            for (TimerWheel.Timeout timeout : timeouts) {
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of sessions with pending deadlines
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    private void fire(int historyId, int which) {
+        IntConsumer handler;
+        synchronized (this) {
+            TimerWheel.Timeout[] timeouts = pending.get(historyId);
+            if (timeouts != null) {
+                timeouts[which] = null;
+                if (timeouts[0] == null && timeouts[1] == null) {
+                    pending.remove(historyId);
+                }
+            }
+            handler = which == 0 ? onLate : onForcedExit;
+        }
+        if (handler != null) {
+            handler.accept(historyId);
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,93 @@
+package server;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gui.LogLevel;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread.
+ *
+ * <p>
+ * A virtual thread that blocks while pinned (inside a {@code synchronized} block on older JDKs, in native
+ * code, or in the MySQL driver's own locking) holds one of the few carrier threads for the whole wait,
+ * which brings back exactly the starvation the virtual-thread executor is meant to remove.
+ * The monitor listens to the JFR {@code jdk.VirtualThreadPinned} event in-process and writes every
+ * pin longer than the threshold, with the frames that caused it, to the server log.
+ * </p>
+ */
+public class PinningMonitor {
+
+    /** Number of stack frames written per pinned event. */
+    private static final int MAX_FRAMES = 12;
+
+    private final Duration threshold;
+    private final AtomicLong pinnedEvents = new AtomicLong();
+    private RecordingStream stream;
+
+    /**
+     * @param threshold shortest pin that is reported
+     */
+    public PinningMonitor(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Starts listening in the background. Failing to start (e.g. JFR not available) only logs a message.
+     */
+    public synchronized void start() {
+        if (stream != null) {
+            return;
+        }
+        try {
+            RecordingStream rs = new RecordingStream();
+            rs.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+            rs.onEvent("jdk.VirtualThreadPinned", this::report);
+            rs.startAsync();
+            stream = rs;
+            EchoServer.messageController.appendMessage("Virtual thread pinning monitor started (threshold " + threshold.toMillis() + " ms).");
+        } catch (Exception | Error e) {
+            EchoServer.messageController.appendMessage("Could not start virtual thread pinning monitor: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops listening.
+     */
+    public synchronized void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    /**
+     * @return number of pinned events reported since start
+     */
+    public long getPinnedEvents() {
+        return pinnedEvents.get();
+    }
+
+    private void report(RecordedEvent event) {
+        long count = pinnedEvents.incrementAndGet();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Virtual thread pinned for ").append(event.getDuration().toMillis()).append(" ms (#").append(count).append(")");
+
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace != null) {
+            List<RecordedFrame> frames = stackTrace.getFrames();
+            for (int i = 0; i < frames.size() && i < MAX_FRAMES; i++) {
+                RecordedFrame frame = frames.get(i);
+                sb.append("\n    at ").append(frame.getMethod().getType().getName())
+                  .append('.').append(frame.getMethod().getName())
+                  .append(':').append(frame.getLineNumber());
+            }
+        }
+        EchoServer.messageController.appendMessage(LogLevel.WARN, sb.toString());
+    }
+}
@@ -0,0 +1,97 @@
+package server;
+
+/**
+ * Read-through LRU cache of subscriber and worker records, bounded by entry count and age.
+ *
+ * <p>
+ * Sign-in, the personal data page, the forgotten-code email and the late pickup emails all read the same
+ * subscriber row, and most of those reads come from subscribers who were here a few minutes ago.
+ * {@link mysqlConnection} reads the records through {@link #get}, which only calls the loader on a miss.
+ * Entries live for {@code bpark.profileCache.ttlMs} (default ten minutes), so a change made to the database
+ * by hand shows up after that at the latest; past {@code bpark.profileCache.maxEntries} (default 10000) the
+ * least recently used entries are evicted. Missing records are not cached.
+ * </p>
+ *
+ * <p>
+ * Writes to a record call {@link #invalidate}. The records are kept in a {@link GenerationLruCache}, as the
+ * report images are, so a load that started before an invalidation does not put its (possibly old) value in
+ * the cache.
+ * </p>
+ *
+ * @param <V> the cached record
+ */
+public class ProfileCache<V> {
+
+    /**
+     * Reads a record from the database on a miss.
+     *
+     * @param <V> the record
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        /**
+         * @return the record, or {@code null} if there is none
+         * @throws InterruptedException if interrupted while waiting for a connection
+         */
+        V load() throws InterruptedException;
+    }
+
+    private final String name;
+    private final int maxEntries;
+    private final GenerationLruCache<V> records;
+
+    /**
+     * @param name       name shown in {@link #formatStats()}
+     * @param maxEntries number of records kept
+     * @param ttlMillis  how long a record is used before it is read again
+     */
+    public ProfileCache(String name, int maxEntries, long ttlMillis) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.records = new GenerationLruCache<>(256, maxEntries, record -> 1, ttlMillis);
+    }
+
+    /**
+     * Returns the cached record, or loads it and caches it.
+     *
+     * @param key    the record key
+     * @param loader reads the record from the database
+     * @return the record, or {@code null} if the loader found none
+     * @throws InterruptedException if the loader is interrupted
+     */
+    public V get(String key, Loader<V> loader) throws InterruptedException {
+        V value = records.get(key);
+        if (value != null) {
+            return value;
+        }
+        long loadedAt = records.generation();
+        value = loader.load();
+        records.put(key, value, loadedAt);
+        return value;
+    }
+
+    /**
+     * Drops a record because it was written.
+     *
+     * @param key the record key
+     */
+    public void invalidate(String key) {
+        records.invalidate(key);
+    }
+
+    /**
+     * @return share of lookups that were hits, between 0 and 1
+     */
+    public double getHitRatio() {
+        return records.getHitRatio();
+    }
+
+    /**
+     * @return a one-line summary of the cache size and hit ratio
+     */
+    public String formatStats() {
+        return String.format("%s cache: entries=%d/%d hits=%d misses=%d hitRatio=%.1f%% evictions=%d expired=%d",
+                name, records.size(), maxEntries, records.getHits(), records.getMisses(), getHitRatio() * 100,
+                records.getEvictions(), records.getExpirations());
+    }
+}
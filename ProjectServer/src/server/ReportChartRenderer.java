@@ -0,0 +1,232 @@
+package server;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Draws the report bar charts straight into a {@link BufferedImage} with Java2D.
+ *
+ * <p>
+ * The JavaFX charts had to be built as a {@code Scene} and snapshotted on the JavaFX application thread,
+ * so month-end report generation froze the server window for as long as it ran. This renderer draws the
+ * same chart (title, axis labels, grid, one bar per category with its value) without touching JavaFX,
+ * needs no display and keeps no state, so it can be called from any number of threads at once.
+ * </p>
+ */
+public final class ReportChartRenderer {
+
+    /** Size of the rendered images. */
+    public static final int WIDTH = 600;
+    public static final int HEIGHT = 420;
+
+    private static final int MARGIN_LEFT = 70;
+    private static final int MARGIN_RIGHT = 20;
+    private static final int MARGIN_TOP = 50;
+    private static final int MARGIN_BOTTOM = 80;
+
+    /** Approximate number of horizontal grid lines. */
+    private static final int TARGET_TICKS = 8;
+
+    /** Default colour of the first JavaFX chart series, so the charts look the same as before. */
+    private static final Color BAR_COLOR = new Color(0xF3, 0x62, 0x2D);
+    private static final Color GRID_COLOR = new Color(0xE0, 0xE0, 0xE0);
+    private static final Color AXIS_COLOR = new Color(0x80, 0x80, 0x80);
+
+    private static final Font TITLE_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 16);
+    private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+    private static final Font AXIS_TITLE_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 13);
+
+    private ReportChartRenderer() {
+    }
+
+    /**
+     * Renders the monthly parking report chart.
+     *
+     * @param totalMinutes                 total minutes parked
+     * @param lateExits                    number of late exits
+     * @param extensions                   number of extensions
+     * @param reservations                 number of reservation-based parkings
+     * @param cancellations                number of reservations the subscriber didn't show up for
+     * @param lateArrivalsFromReservations number of late entries with a reservation
+     * @param peakHour                     peak entry hour (e.g. "08:00")
+     * @return PNG image bytes, or {@code null} if encoding fails
+     */
+    public static byte[] renderMonthlyParkingReport(int totalMinutes, int lateExits, int extensions,
+                                                    int reservations, int cancellations,
+                                                    int lateArrivalsFromReservations, String peakHour) {
+        return renderBarChart("Monthly Parking Report - Peak Hour: " + peakHour, "Category", "Count",
+                new String[] { "Total Minutes", "Late Exits", "Extensions", "Reservations", "Cancellations",
+                        "Late Entries w/ Reservation" },
+                new int[] { totalMinutes, lateExits, extensions, reservations, cancellations,
+                        lateArrivalsFromReservations });
+    }
+
+    /**
+     * Renders the monthly report chart of one subscriber.
+     *
+     * @param lateFromReservation   number of late entries with a reservation
+     * @param lateExits             number of late exits
+     * @param totalMinutes          total minutes parked
+     * @param extensions            number of extensions
+     * @param reservationCount      number of reservation-based parkings
+     * @param cancelledReservations number of reservations the subscriber didn't show up for
+     * @return PNG image bytes, or {@code null} if encoding fails
+     */
+    public static byte[] renderSubscriberReport(int lateFromReservation, int lateExits, int totalMinutes,
+                                                int extensions, int reservationCount, int cancelledReservations) {
+        return renderBarChart("Subscriber Monthly Report", "Category", "Value",
+                new String[] { "Total Minutes", "Late Exits", "Extensions", "Reservations", "Cancellations",
+                        "Late from Reservation" },
+                new int[] { totalMinutes, lateExits, extensions, reservationCount, cancelledReservations,
+                        lateFromReservation });
+    }
+
+    /**
+     * Renders a bar chart with one bar per category and encodes it as PNG.
+     *
+     * @param title      chart title
+     * @param xLabel     x-axis title
+     * @param yLabel     y-axis title
+     * @param categories bar labels
+     * @param values     bar values, same order as {@code categories}
+     * @return PNG image bytes, or {@code null} if encoding fails
+     */
+    public static byte[] renderBarChart(String title, String xLabel, String yLabel, String[] categories, int[] values) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            draw(g, title, xLabel, yLabel, categories, values);
+        } finally {
+            g.dispose();
+        }
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void draw(Graphics2D g, String title, String xLabel, String yLabel, String[] categories, int[] values) {
+        int plotLeft = MARGIN_LEFT;
+        int plotRight = WIDTH - MARGIN_RIGHT;
+        int plotTop = MARGIN_TOP;
+        int plotBottom = HEIGHT - MARGIN_BOTTOM;
+        int plotHeight = plotBottom - plotTop;
+
+        // Title
+        g.setFont(TITLE_FONT);
+        g.setColor(Color.BLACK);
+        drawCentered(g, title, WIDTH / 2, 28);
+
+        // Y axis scale and grid
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        long step = niceStep(max);
+        long top = Math.max(step, ((max + step - 1) / step) * step);
+
+        g.setFont(LABEL_FONT);
+        FontMetrics fm = g.getFontMetrics();
+        g.setStroke(new BasicStroke(1f));
+        for (long tick = 0; tick <= top; tick += step) {
+            int y = plotBottom - (int) Math.round((double) tick / top * plotHeight);
+            g.setColor(GRID_COLOR);
+            g.drawLine(plotLeft, y, plotRight, y);
+            g.setColor(Color.BLACK);
+            String text = String.valueOf(tick);
+            g.drawString(text, plotLeft - 6 - fm.stringWidth(text), y + fm.getAscent() / 2 - 1);
+        }
+
+        // Bars with their values and category labels
+        double slot = (double) (plotRight - plotLeft) / categories.length;
+        int barWidth = (int) (slot * 0.6);
+        for (int i = 0; i < categories.length; i++) {
+            int centerX = plotLeft + (int) (slot * i + slot / 2);
+            int barHeight = (int) Math.round((double) values[i] / top * plotHeight);
+
+            g.setColor(BAR_COLOR);
+            g.fillRect(centerX - barWidth / 2, plotBottom - barHeight, barWidth, barHeight);
+
+            g.setColor(Color.BLACK);
+            drawCentered(g, String.valueOf(values[i]), centerX, plotBottom - barHeight - 4);
+
+            int lineY = plotBottom + fm.getAscent() + 6;
+            for (String line : wrap(categories[i], fm, (int) slot - 4)) {
+                drawCentered(g, line, centerX, lineY);
+                lineY += fm.getHeight();
+            }
+        }
+
+        // Axes
+        g.setColor(AXIS_COLOR);
+        g.drawLine(plotLeft, plotTop, plotLeft, plotBottom);
+        g.drawLine(plotLeft, plotBottom, plotRight, plotBottom);
+
+        // Axis titles
+        g.setFont(AXIS_TITLE_FONT);
+        g.setColor(Color.BLACK);
+        drawCentered(g, xLabel, (plotLeft + plotRight) / 2, HEIGHT - 12);
+        AffineTransform saved = g.getTransform();
+        g.rotate(-Math.PI / 2);
+        drawCentered(g, yLabel, -(plotTop + plotBottom) / 2, 18);
+        g.setTransform(saved);
+    }
+
+    /**
+     * Grid step of 1, 2 or 5 times a power of ten giving about {@link #TARGET_TICKS} lines.
+     */
+    private static long niceStep(int max) {
+        if (max <= TARGET_TICKS) {
+            return 1;
+        }
+        double raw = (double) max / TARGET_TICKS;
+        long magnitude = (long) Math.pow(10, Math.floor(Math.log10(raw)));
+        double fraction = raw / magnitude;
+        long nice = fraction <= 1 ? 1 : fraction <= 2 ? 2 : fraction <= 5 ? 5 : 10;
+        return nice * magnitude;
+    }
+
+    /**
+     * Splits a label on spaces so every line fits in {@code width} pixels (a single long word is kept whole).
+     */
+    private static List<String> wrap(String text, FontMetrics fm, int width) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        for (String word : text.split(" ")) {
+            if (line.length() > 0 && fm.stringWidth(line + " " + word) > width) {
+                lines.add(line.toString());
+                line.setLength(0);
+            }
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(word);
+        }
+        lines.add(line.toString());
+        return lines;
+    }
+
+    private static void drawCentered(Graphics2D g, String text, int centerX, int baselineY) {
+        g.drawString(text, centerX - g.getFontMetrics().stringWidth(text) / 2, baselineY);
+    }
+}
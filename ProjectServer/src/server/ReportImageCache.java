@@ -0,0 +1,100 @@
+package server;
+
+import java.sql.Date;
+
+/**
+ * LRU cache of report images (PNG bytes), bounded by the total size of the images it holds.
+ *
+ * <p>
+ * Managers open the same parking and subscription reports again and again, mostly at the start of a month,
+ * and every open used to read the BLOB from MySQL. {@link mysqlConnection} looks the image up here first
+ * and drops the affected entries whenever a report is written. The images are kept in a
+ * {@link GenerationLruCache} weighed by their size; when they go over {@code bpark.reportCache.maxBytes}
+ * (default 32 MB) the least recently used ones are evicted. An image larger than the whole budget is never cached.
+ * </p>
+ *
+ * <p>
+ * A read that started before a write must not put the old image back after the write invalidated it, so
+ * callers take {@link #generation()} before reading the database and pass it to {@link #put}; the put is
+ * ignored if an invalidation happened in between.
+ * </p>
+ */
+public class ReportImageCache {
+
+    private final GenerationLruCache<byte[]> images;
+
+    /**
+     * @param maxBytes total size of the cached images
+     */
+    public ReportImageCache(long maxBytes) {
+        this.images = new GenerationLruCache<>(64, maxBytes, image -> image.length, 0);
+    }
+
+    /**
+     * @param reportDate the report date
+     * @return cache key of the parking report of that date
+     */
+    public static String parkingKey(Date reportDate) {
+        return "PARKING|" + reportDate;
+    }
+
+    /**
+     * @param subscriberId the subscriber's ID
+     * @param reportDate   the report date
+     * @return cache key of the subscription report of that subscriber and date
+     */
+    public static String subscriptionKey(String subscriberId, Date reportDate) {
+        return "SUBSCRIPTION|" + subscriberId + "|" + reportDate;
+    }
+
+    /**
+     * @param key the cache key
+     * @return the cached image, or {@code null} on a miss
+     */
+    public byte[] get(String key) {
+        return images.get(key);
+    }
+
+    /**
+     * @return the current generation, to pass to {@link #put} after reading the database
+     */
+    public long generation() {
+        return images.generation();
+    }
+
+    /**
+     * Caches an image read from the database, unless a report was written since {@code loadedAt}.
+     *
+     * @param key      the cache key
+     * @param image    the image bytes
+     * @param loadedAt value of {@link #generation()} taken before the read
+     */
+    public void put(String key, byte[] image, long loadedAt) {
+        images.put(key, image, loadedAt);
+    }
+
+    /**
+     * Drops an entry because its report was written.
+     *
+     * @param key the cache key
+     */
+    public void invalidate(String key) {
+        images.invalidate(key);
+    }
+
+    /**
+     * @return share of lookups that were hits, between 0 and 1
+     */
+    public double getHitRatio() {
+        return images.getHitRatio();
+    }
+
+    /**
+     * @return a one-line summary of the cache size and hit ratio
+     */
+    public String formatStats() {
+        return String.format("Report image cache: entries=%d size=%dKB/%dKB hits=%d misses=%d hitRatio=%.1f%% evictions=%d",
+                images.size(), images.weight() / 1024, images.getMaxWeight() / 1024, images.getHits(), images.getMisses(),
+                getHitRatio() * 100, images.getEvictions());
+    }
+}
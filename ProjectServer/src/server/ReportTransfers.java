@@ -0,0 +1,196 @@
+package server;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import common.WireProtocol;
+import gui.LogLevel;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Sends report images to clients as a stream of {@link WireProtocol#OP_CHUNK} frames.
+ *
+ * <p>
+ * A report used to go out as one serialized {@code MyFile}, which holds the connection for the whole
+ * image and makes the client wait for the last byte before it can start decoding. Here the image is cut
+ * into {@code bpark.transfer.chunkSize} pieces (default 32 KB) and at most {@code bpark.transfer.window}
+ * pieces (default 4) are in flight: the next ones are only sent when the client acknowledges what it has
+ * received. Other replies to the same client go out between the pieces, and a slow client never has more
+ * than one window queued.
+ * </p>
+ *
+ * <p>
+ * A transfer outlives its connection for {@code bpark.transfer.resumeMs} (default two minutes), so a client
+ * that reconnects can ask for the rest with {@link WireProtocol#RESUME_COMMAND}. Transfer IDs are random,
+ * which keeps one client from resuming another client's report.
+ * </p>
+ */
+public class ReportTransfers {
+
+    private static final int CHUNK_SIZE = Integer.getInteger("bpark.transfer.chunkSize", 32 * 1024);
+    private static final int WINDOW_CHUNKS = Integer.getInteger("bpark.transfer.window", 4);
+    private static final long RESUME_MS = Long.getLong("bpark.transfer.resumeMs", 120_000);
+
+    /**
+     * One report being sent.
+     */
+    private static final class Transfer {
+        private final long id;
+        private final int requestId;
+        private final String command;
+        private final byte[] data;
+        /** Guarded by the transfer. */
+        private ConnectionToClient client;
+        private int sent;
+        private int acked;
+        private long lastActivity = System.currentTimeMillis();
+
+        Transfer(long id, int requestId, String command, byte[] data, ConnectionToClient client) {
+            this.id = id;
+            this.requestId = requestId;
+            this.command = command;
+            this.data = data;
+            this.client = client;
+        }
+    }
+
+    private final Map<Long, Transfer> transfers = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Starts sending a file and sends the first window of chunks. An empty file is sent as one empty chunk
+     * and needs no acknowledgement.
+     *
+     * @param client    the client
+     * @param requestId the request that asked for the file, echoed in the first chunk; 0 if none
+     * @param command   the controller command the client routes the file with
+     * @param data      the file
+     * @throws IOException if the first chunks can't be sent
+     */
+    public void start(ConnectionToClient client, int requestId, String command, byte[] data) throws IOException {
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == 0 || transfers.containsKey(id));
+        if (data.length == 0) {
+            // No data chunk would ever be sent: one empty chunk completes the file on the client
+            client.sendToClient(WireProtocol.encodeChunk(id, requestId, command, data, 0, 0));
+            return;
+        }
+        Transfer transfer = new Transfer(id, requestId, command, data, client);
+        transfers.put(id, transfer);
+        pump(transfer);
+    }
+
+    /**
+     * Records what the client has received and sends the next chunks.
+     *
+     * @param client   the client
+     * @param id       the transfer
+     * @param received number of bytes the client has, from the start of the file
+     * @throws IOException if a chunk can't be sent
+     */
+    public void ack(ConnectionToClient client, long id, int received) throws IOException {
+        Transfer transfer = transfers.get(id);
+        if (transfer == null) {
+            return;
+        }
+        synchronized (transfer) {
+            if (transfer.client != client) {
+                return;
+            }
+            transfer.acked = Math.max(transfer.acked, Math.min(received, transfer.sent));
+            transfer.lastActivity = System.currentTimeMillis();
+            if (transfer.acked >= transfer.data.length) {
+                transfers.remove(id);
+                EchoServer.messageController.appendMessage(LogLevel.DEBUG,
+                        "Report transfer " + Long.toHexString(id) + " done (" + transfer.data.length + " bytes).");
+                return;
+            }
+        }
+        pump(transfer);
+    }
+
+    /**
+     * Continues a transfer on a new connection, from what the client already has.
+     *
+     * @param client   the reconnected client
+     * @param id       the transfer
+     * @param received number of bytes the client has, from the start of the file
+     * @return false if the transfer is unknown (finished or expired)
+     * @throws IOException if a chunk can't be sent
+     */
+    public boolean resume(ConnectionToClient client, long id, int received) throws IOException {
+        Transfer transfer = transfers.get(id);
+        if (transfer == null) {
+            return false;
+        }
+        synchronized (transfer) {
+            transfer.client = client;
+            transfer.acked = Math.max(0, Math.min(received, transfer.data.length));
+            transfer.sent = transfer.acked;
+            transfer.lastActivity = System.currentTimeMillis();
+        }
+        EchoServer.messageController.appendMessage(LogLevel.DEBUG,
+                "Report transfer " + Long.toHexString(id) + " resumed at byte " + received + ".");
+        pump(transfer);
+        return true;
+    }
+
+    /**
+     * Stops sending to a client that disconnected; its transfers wait for a resume.
+     *
+     * @param client the client
+     */
+    public void detach(ConnectionToClient client) {
+        for (Transfer transfer : transfers.values()) {
+            synchronized (transfer) {
+                if (transfer.client == client) {
+                    transfer.client = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the transfers nobody resumed or acknowledged within {@code bpark.transfer.resumeMs}.
+     */
+    public void expire() {
+        long cutoff = System.currentTimeMillis() - RESUME_MS;
+        Iterator<Transfer> it = transfers.values().iterator();
+        while (it.hasNext()) {
+            Transfer transfer = it.next();
+            synchronized (transfer) {
+                if (transfer.lastActivity < cutoff) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of transfers in progress or waiting for a resume
+     */
+    public int size() {
+        return transfers.size();
+    }
+
+    /**
+     * Sends chunks until the window is full or the file is sent.
+     */
+    private void pump(Transfer transfer) throws IOException {
+        synchronized (transfer) {
+            while (transfer.client != null && transfer.sent < transfer.data.length
+                    && transfer.sent - transfer.acked < WINDOW_CHUNKS * CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, transfer.data.length - transfer.sent);
+                int requestId = transfer.sent == 0 ? transfer.requestId : 0;
+                transfer.client.sendToClient(WireProtocol.encodeChunk(
+                        transfer.id, requestId, transfer.command, transfer.data, transfer.sent, length));
+                transfer.sent += length;
+            }
+        }
+    }
+}
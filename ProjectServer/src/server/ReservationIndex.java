@@ -0,0 +1,240 @@
+package server;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of the reservations that can still conflict with a new reservation request.
+ *
+ * <p>
+ * For every SpotID the index keeps a {@link TreeMap} of reservation intervals ordered by StartTime.
+ * Reservations on one spot never overlap, so the interval with the latest start before the end of a
+ * requested interval is the only one that can overlap it - an overlap test is a single
+ * {@code lowerEntry} lookup.
+ * </p>
+ *
+ * <p>
+ * With this index, {@link mysqlConnection#reserve} answers the same-day duplicate check, the 40%
+ * availability rule and the free spot pick from memory, and only goes to the database for the insert.
+ * The index covers the reservations that have not ended yet (new requests are always 24 hours to
+ * 7 days ahead, so older rows can never conflict) and is rebuilt from the database at startup.
+ * </p>
+ */
+public class ReservationIndex {
+
+    /** Result code: the subscriber already has a reservation on that day. */
+    public static final int DUPLICATE_DATE = -2;
+
+    /** Result code: less than 40% of the spots would be free during the requested interval. */
+    public static final int NOT_ENOUGH_AVAILABILITY = -1;
+
+    /** Result code: every spot is reserved during the requested interval. */
+    public static final int NO_SPOT = 0;
+
+    /** Minimum share of spots that must remain free during a requested interval. */
+    private static final double MIN_FREE_RATIO = 0.4;
+
+    /**
+     * A single reservation row.
+     */
+    public static class Interval {
+        final int reservationId;
+        final String subscriberId;
+        final int spotId;
+        final long start;
+        final long end;
+
+        Interval(int reservationId, String subscriberId, int spotId, long start, long end) {
+            this.reservationId = reservationId;
+            this.subscriberId = subscriberId;
+            this.spotId = spotId;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getReservationId() {
+            return reservationId;
+        }
+
+        public int getSpotId() {
+            return spotId;
+        }
+    }
+
+    /** All SpotIDs, in ascending order (the order the old {@code LIMIT 1} query returned them). */
+    private int[] spotIds = new int[0];
+
+    /** Reservation intervals per SpotID, keyed by StartTime. */
+    private final Map<Integer, TreeMap<Long, Interval>> bySpot = new HashMap<>();
+
+    /** Reservation intervals by ReservationID. */
+    private final Map<Integer, Interval> byId = new HashMap<>();
+
+    /** Number of reservations per subscriber and day, for the one-reservation-per-day rule. */
+    private final Map<String, Map<LocalDate, Integer>> daysBySubscriber = new HashMap<>();
+
+    /** Next ReservationID to hand out (replaces {@code SELECT MAX(ReservationID)}). */
+    private int nextReservationId = 1;
+
+    /** True once the index has been loaded from the database. */
+    private volatile boolean loaded = false;
+
+    /**
+     * Replaces the content of the index with a fresh snapshot from the database.
+     *
+     * @param allSpotIds       every SpotID in the parkingspot table
+     * @param reservations     reservations that have not ended yet
+     * @param maxReservationId the highest ReservationID ever used (0 if the table is empty)
+     */
+    public synchronized void rebuild(List<Integer> allSpotIds, List<Interval> reservations, int maxReservationId) {
+        spotIds = allSpotIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+        bySpot.clear();
+        byId.clear();
+        daysBySubscriber.clear();
+        for (Interval interval : reservations) {
+            add(interval);
+        }
+        nextReservationId = maxReservationId + 1;
+        loaded = true;
+    }
+
+    /**
+     * @return true once {@link #rebuild(List, List, int)} has completed at least once
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Checks all reservation rules and, if they pass, books a spot in the index.
+     * The booking is made under the index lock, so concurrent requests can't be given the same spot.
+     * The caller must insert the row and call {@link #cancel(int)} if the insert fails.
+     *
+     * @param subscriberId the subscriber requesting the reservation
+     * @param start        requested StartTime in epoch millis
+     * @param end          requested EndTime in epoch millis
+     * @return the booked interval, or {@code null} with the reason in {@code reason[0]}
+     *         ({@link #DUPLICATE_DATE}, {@link #NOT_ENOUGH_AVAILABILITY} or {@link #NO_SPOT})
+     */
+    public synchronized Interval tryReserve(String subscriberId, long start, long end, int[] reason) {
+        pruneEnded(System.currentTimeMillis());
+
+        // Step 0: one reservation per subscriber per day
+        Map<LocalDate, Integer> days = daysBySubscriber.get(subscriberId);
+        if (days != null && days.containsKey(dayOf(start))) {
+            reason[0] = DUPLICATE_DATE;
+            return null;
+        }
+
+        // Step 1: spots free during the whole interval
+        List<Integer> free = freeSpots(start, end);
+        int freeSpots = free.size();
+        int firstFreeSpot = free.isEmpty() ? -1 : free.get(0);
+
+        // Same order as the SQL version: the 40% rule is checked before looking for a spot
+        if (spotIds.length == 0 || ((double) freeSpots / spotIds.length) < MIN_FREE_RATIO) {
+            reason[0] = NOT_ENOUGH_AVAILABILITY;
+            return null;
+        }
+        if (firstFreeSpot < 0) {
+            reason[0] = NO_SPOT;
+            return null;
+        }
+
+        // Step 2: book it
+        Interval interval = new Interval(nextReservationId++, subscriberId, firstFreeSpot, start, end);
+        add(interval);
+        return interval;
+    }
+
+    /**
+     * Same answer as the {@code SpotID NOT IN (... NOT (r.EndTime <= ? OR r.StartTime >= ?))} queries.
+     *
+     * @param start interval start in epoch millis
+     * @param end   interval end in epoch millis
+     * @return the SpotIDs with no reservation overlapping the interval, in ascending order
+     */
+    synchronized List<Integer> freeSpots(long start, long end) {
+        List<Integer> free = new ArrayList<>();
+        for (int spotId : spotIds) {
+            if (!overlaps(spotId, start, end)) {
+                free.add(spotId);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Removes a reservation from the index (failed insert or deleted row).
+     *
+     * @param reservationId the ReservationID
+     * @return the removed interval, or {@code null} if it was not indexed
+     */
+    public synchronized Interval cancel(int reservationId) {
+        Interval interval = byId.remove(reservationId);
+        if (interval == null) {
+            return null;
+        }
+        TreeMap<Long, Interval> intervals = bySpot.get(interval.spotId);
+        if (intervals != null) {
+            intervals.remove(interval.start);
+        }
+        Map<LocalDate, Integer> days = daysBySubscriber.get(interval.subscriberId);
+        if (days != null) {
+            days.computeIfPresent(dayOf(interval.start), (day, count) -> count > 1 ? count - 1 : null);
+            if (days.isEmpty()) {
+                daysBySubscriber.remove(interval.subscriberId);
+            }
+        }
+        return interval;
+    }
+
+    /**
+     * Same test as {@code NOT (r.EndTime <= start OR r.StartTime >= end)} for one spot.
+     */
+    private boolean overlaps(int spotId, long start, long end) {
+        TreeMap<Long, Interval> intervals = bySpot.get(spotId);
+        if (intervals == null) {
+            return false;
+        }
+        Map.Entry<Long, Interval> candidate = intervals.lowerEntry(end);
+        return candidate != null && candidate.getValue().end > start;
+    }
+
+    private void add(Interval interval) {
+        bySpot.computeIfAbsent(interval.spotId, k -> new TreeMap<>()).put(interval.start, interval);
+        byId.put(interval.reservationId, interval);
+        daysBySubscriber.computeIfAbsent(interval.subscriberId, k -> new HashMap<>())
+                        .merge(dayOf(interval.start), 1, Integer::sum);
+    }
+
+    /**
+     * Drops reservations that have already ended; they can't conflict with new requests.
+     */
+    private void pruneEnded(long now) {
+        List<Integer> ended = new ArrayList<>();
+        for (TreeMap<Long, Interval> intervals : bySpot.values()) {
+            for (Interval interval : intervals.values()) {
+                if (interval.start >= now) {
+                    break;
+                }
+                if (interval.end <= now) {
+                    ended.add(interval.reservationId);
+                }
+            }
+        }
+        for (Integer reservationId : ended) {
+            cancel(reservationId);
+        }
+    }
+
+    private static LocalDate dayOf(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
@@ -0,0 +1,20 @@
+package server;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Handles rows one by one while {@link mysqlConnection#queryForEach} streams a result set,
+ * so large results don't have to be collected in memory first.
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+    /**
+     * Processes the current row. Implementations must not call {@code rs.next()}.
+     *
+     * @param rs the result set, positioned on the row to process
+     * @throws SQLException if a column can't be read
+     */
+    void processRow(ResultSet rs) throws SQLException;
+}
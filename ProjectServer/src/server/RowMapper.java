@@ -0,0 +1,24 @@
+package server;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a {@link ResultSet} to an object.
+ * Used by the typed query helpers in {@link mysqlConnection} instead of joining every column into a string.
+ *
+ * @param <T> the type of object built from a row
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Builds an object from the current row. Implementations must not call {@code rs.next()}.
+     *
+     * @param rs     the result set, positioned on the row to map
+     * @param rowNum zero-based number of the row
+     * @return the mapped object
+     * @throws SQLException if a column can't be read
+     */
+    T mapRow(ResultSet rs, int rowNum) throws SQLException;
+}
@@ -88,7 +88,7 @@ public class ServerUI extends Application {
                 new Thread(() -> {
                     try {
                         EchoServer server = new EchoServer(finalPort);
-                        server.listen();
+                        server.startListening();
                     } catch (Exception e) {
                         // Exception silently ignored (can be logged if needed)
                     	
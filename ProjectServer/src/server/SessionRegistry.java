@@ -0,0 +1,181 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Who is signed in on which connection.
+ *
+ * <p>
+ * The server used to keep a {@code {role, id}} array per connection and, on every sign-in, stream over all
+ * of them to find out whether the subscriber or worker was already connected somewhere else; the check and
+ * the following put were not atomic, so two terminals signing in with the same ID at the same moment could
+ * both get in. This registry keeps the sessions in a {@link ConcurrentHashMap} by connection, plus one
+ * index by subscriber ID (terminal sessions) and one by worker ID. A sign-in claims its ID with
+ * {@code putIfAbsent} on the index, so the duplicate check is O(1) and can't race; role and ID lookups
+ * read the primary map without locking.
+ * </p>
+ *
+ * <p>
+ * Sign-in, logout and disconnect hold the registry lock only for the few map operations they do, which
+ * keeps the primary map and the indexes consistent with each other.
+ * </p>
+ */
+public class SessionRegistry {
+
+    /** Role of a subscriber signed in at a terminal; one terminal session per subscriber. */
+    public static final String ROLE_USER = "User";
+    /** Role of a subscriber signed in away from the parking lot; any number of sessions. */
+    public static final String ROLE_USER_AWAY = "UserAway";
+    public static final String ROLE_USHER = "Usher";
+    public static final String ROLE_MANAGER = "Manager";
+
+    /**
+     * A signed-in (or anonymous) connection.
+     */
+    private static final class Session {
+        private final String role;
+        private final String id;
+
+        Session(String role, String id) {
+            this.role = role;
+            this.id = id;
+        }
+    }
+
+    /** Session of a connection that hasn't signed in yet. */
+    private static final Session ANONYMOUS = new Session("", "");
+
+    private final ConcurrentHashMap<ConnectionToClient, Session> byConnection = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConnectionToClient> terminalBySubscriber = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConnectionToClient> byWorker = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a new connection that hasn't signed in yet.
+     *
+     * @param client the connection
+     */
+    public void connect(ConnectionToClient client) {
+        byConnection.put(client, ANONYMOUS);
+    }
+
+    /**
+     * Signs a subscriber in at a terminal, unless the subscriber already has a terminal session on another connection.
+     *
+     * @param client       the connection
+     * @param subscriberId the subscriber
+     * @return false if the subscriber is already signed in at another terminal
+     */
+    public synchronized boolean signInTerminalUser(ConnectionToClient client, String subscriberId) {
+        ConnectionToClient holder = terminalBySubscriber.putIfAbsent(subscriberId, client);
+        if (holder != null && holder != client) {
+            return false;
+        }
+        replace(client, new Session(ROLE_USER, subscriberId));
+        return true;
+    }
+
+    /**
+     * Signs a subscriber in away from the parking lot. There is no limit on these sessions.
+     *
+     * @param client       the connection
+     * @param subscriberId the subscriber
+     */
+    public synchronized void signInAwayUser(ConnectionToClient client, String subscriberId) {
+        replace(client, new Session(ROLE_USER_AWAY, subscriberId));
+    }
+
+    /**
+     * Signs a worker in, unless the worker is already signed in on another connection.
+     *
+     * @param client   the connection
+     * @param workerId the worker
+     * @param role     {@link #ROLE_USHER} or {@link #ROLE_MANAGER}
+     * @return false if the worker is already signed in elsewhere
+     */
+    public synchronized boolean signInWorker(ConnectionToClient client, String workerId, String role) {
+        ConnectionToClient holder = byWorker.putIfAbsent(workerId, client);
+        if (holder != null && holder != client) {
+            return false;
+        }
+        replace(client, new Session(role, workerId));
+        return true;
+    }
+
+    /**
+     * Ends the session of a connection that stays connected.
+     *
+     * @param client the connection
+     */
+    public synchronized void logout(ConnectionToClient client) {
+        Session old = byConnection.remove(client);
+        unindex(client, old);
+    }
+
+    /**
+     * Forgets a connection that was closed.
+     *
+     * @param client the connection
+     */
+    public synchronized void disconnect(ConnectionToClient client) {
+        logout(client);
+    }
+
+    /**
+     * @param client the connection
+     * @return the role of the connection ("User", "UserAway", "Usher", "Manager", "" before sign-in),
+     *         or null after logout
+     */
+    public String roleOf(ConnectionToClient client) {
+        Session session = byConnection.get(client);
+        return session != null ? session.role : null;
+    }
+
+    /**
+     * @param client the connection
+     * @return the subscriber or worker ID signed in on the connection ("" before sign-in), or null after logout
+     */
+    public String idOf(ConnectionToClient client) {
+        Session session = byConnection.get(client);
+        return session != null ? session.id : null;
+    }
+
+    /**
+     * @return number of connections with a session
+     */
+    public int size() {
+        return byConnection.size();
+    }
+
+    /**
+     * Sets the session of a connection after its new ID was claimed in its index,
+     * and releases the ID of the session it replaces.
+     */
+    private void replace(ConnectionToClient client, Session session) {
+        Session old = byConnection.put(client, session);
+        if (old != null && !(index(old) == index(session) && old.id.equals(session.id))) {
+            unindex(client, old);
+        }
+    }
+
+    private void unindex(ConnectionToClient client, Session session) {
+        ConcurrentHashMap<String, ConnectionToClient> index = session != null ? index(session) : null;
+        if (index != null) {
+            index.remove(session.id, client);
+        }
+    }
+
+    /**
+     * @return the index that holds sessions with the role of {@code session}, or null if the role isn't indexed
+     */
+    private ConcurrentHashMap<String, ConnectionToClient> index(Session session) {
+        if (ROLE_USER.equals(session.role)) {
+            return terminalBySubscriber;
+        }
+        if (ROLE_USHER.equals(session.role) || ROLE_MANAGER.equals(session.role)) {
+            return byWorker;
+        }
+        return null;
+    }
+}
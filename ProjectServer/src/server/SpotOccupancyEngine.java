@@ -0,0 +1,332 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * In-memory view of parking spot occupancy, used to answer availability questions
+ * without running the {@code NOT EXISTS} scans over {@code reservation} for every spot.
+ *
+ * <p>
+ * The engine keeps two bitmaps, one bit per SpotID:
+ * </p>
+ * <ul>
+ *     <li>{@code freeBits} - the spot exists and {@code InUse = 0}</li>
+ *     <li>{@code heldBits} - a reservation currently holds the spot
+ *         ({@code NOW() BETWEEN StartTime AND StartTime + 15 MINUTE})</li>
+ * </ul>
+ * <p>
+ * plus a per-spot "next reservation start" array (the earliest reservation that starts after now).
+ * Counting available spots is a popcount over {@code freeBits & ~heldBits}, so it costs O(words).
+ * </p>
+ *
+ * <p>
+ * Holds begin and end as time passes, so every reservation registers two wake-up events
+ * (its start and the end of its 15 minute hold). Before answering a query, {@link #advance(long)}
+ * replays the events that are due and recomputes only the spots they belong to.
+ * </p>
+ *
+ * <p>
+ * The engine is loaded once from the database at server startup ({@link #rebuild(Map, Map)})
+ * and then updated by {@link mysqlConnection} on every park, exit, reservation and forced exit.
+ * The database is still written for every change - the engine only removes the reads.
+ * A change listener ({@link #setChangeListener(Runnable)}) is told about every change, so the count can
+ * be pushed to clients instead of being asked for.
+ * </p>
+ */
+public class SpotOccupancyEngine {
+
+    /** How long a reservation holds its spot after StartTime (matches the 15 minute rule in SQL). */
+    public static final long HOLD_MILLIS = 15 * 60 * 1000L;
+
+    /** Value of {@link #nextReservationStart} when a spot has no upcoming reservation. */
+    public static final long NO_RESERVATION = Long.MAX_VALUE;
+
+    /** Bit set means the spot exists in the parkingspot table and is not in use. */
+    private long[] freeBits = new long[0];
+
+    /** Bit set means the spot is held by a reservation right now. */
+    private long[] heldBits = new long[0];
+
+    /** Earliest reservation StartTime (epoch millis) strictly after "now", per spot. */
+    private long[] nextReservationStart = new long[0];
+
+    /** Reservation start times per spot, pruned once their hold is over. */
+    private List<TreeSet<Long>> reservationStarts = new ArrayList<>();
+
+    /** Pending wake-ups: {time, spotId}. A stale wake-up only causes a harmless recompute. */
+    private final PriorityQueue<long[]> events = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+
+    /** Number of spots that exist in the database. */
+    private int totalSpots = 0;
+
+    /** True once the engine has been loaded from the database. */
+    private volatile boolean loaded = false;
+
+    /** Called after every change; runs under the engine lock, so it must return quickly. */
+    private volatile Runnable changeListener = () -> { };
+
+    /**
+     * @param listener called after every change that can affect the available count
+     */
+    public void setChangeListener(Runnable listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * Replaces the whole state of the engine with a fresh snapshot from the database.
+     *
+     * @param spotsInUse        map of SpotID to its InUse flag
+     * @param reservationsBySpot map of SpotID to the StartTime (epoch millis) of its reservations
+     */
+    public synchronized void rebuild(Map<Integer, Boolean> spotsInUse, Map<Integer, List<Long>> reservationsBySpot) {
+        int maxSpot = -1;
+        for (Integer spotId : spotsInUse.keySet()) {
+            maxSpot = Math.max(maxSpot, spotId);
+        }
+        for (Integer spotId : reservationsBySpot.keySet()) {
+            maxSpot = Math.max(maxSpot, spotId);
+        }
+
+        int words = (maxSpot + 64) / 64;
+        freeBits = new long[words];
+        heldBits = new long[words];
+        nextReservationStart = new long[words * 64];
+        Arrays.fill(nextReservationStart, NO_RESERVATION);
+        reservationStarts = new ArrayList<>(words * 64);
+        for (int i = 0; i < words * 64; i++) {
+            reservationStarts.add(null);
+        }
+        events.clear();
+        totalSpots = 0;
+
+        for (Map.Entry<Integer, Boolean> spot : spotsInUse.entrySet()) {
+            if (spot.getKey() < 0) {
+                continue;
+            }
+            totalSpots++;
+            if (!Boolean.TRUE.equals(spot.getValue())) {
+                setBit(freeBits, spot.getKey());
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, List<Long>> entry : reservationsBySpot.entrySet()) {
+            for (Long start : entry.getValue()) {
+                registerReservation(entry.getKey(), start);
+            }
+            recompute(entry.getKey(), now);
+        }
+        loaded = true;
+        changeListener.run();
+    }
+
+    /**
+     * @return true once {@link #rebuild(Map, Map)} has completed at least once
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the number of spots known to the engine (same as {@code SELECT COUNT(*) FROM parkingspot})
+     */
+    public synchronized int getTotalSpots() {
+        return totalSpots;
+    }
+
+    /**
+     * Counts spots that are not in use and not held by a reservation right now.
+     *
+     * @return number of currently available spots
+     */
+    public synchronized int countAvailable() {
+        advance(System.currentTimeMillis());
+        int count = 0;
+        for (int w = 0; w < freeBits.length; w++) {
+            count += Long.bitCount(freeBits[w] & ~heldBits[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the lowest available SpotID without claiming it.
+     *
+     * @return a SpotID, or -1 if no spot is available
+     */
+    public synchronized int peekAvailableSpot() {
+        advance(System.currentTimeMillis());
+        for (int w = 0; w < freeBits.length; w++) {
+            long bits = freeBits[w] & ~heldBits[w];
+            if (bits != 0) {
+                return w * 64 + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Picks an available spot whose next reservation starts at least
+     * {@code minimumMinutesBeforeNextReservation} minutes from now, and marks it as in use.
+     * Picking and marking happen under one lock, so two terminals can never receive the same spot.
+     *
+     * @param minimumMinutesBeforeNextReservation minutes the subscriber intends to park
+     * @return the claimed SpotID, or -1 if none fits
+     */
+    public synchronized int claimSpot(int minimumMinutesBeforeNextReservation) {
+        long now = System.currentTimeMillis();
+        advance(now);
+        for (int w = 0; w < freeBits.length; w++) {
+            long bits = freeBits[w] & ~heldBits[w];
+            while (bits != 0) {
+                int spotId = w * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                long next = nextReservationStart[spotId];
+                // Same rule as TIMESTAMPDIFF(MINUTE, NOW(), StartTime) < ? in the original query
+                if (next == NO_RESERVATION || (next - now) / 60000L >= minimumMinutesBeforeNextReservation) {
+                    clearBit(freeBits, spotId);
+                    changeListener.run();
+                    return spotId;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks a spot as in use (InUse = 1).
+     *
+     * @param spotId the SpotID
+     */
+    public synchronized void occupy(int spotId) {
+        if (spotId >= 0 && spotId < freeBits.length * 64) {
+            clearBit(freeBits, spotId);
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Marks a spot as free (InUse = 0).
+     *
+     * @param spotId the SpotID
+     */
+    public synchronized void release(int spotId) {
+        if (spotId >= 0 && spotId < freeBits.length * 64) {
+            setBit(freeBits, spotId);
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Registers a new reservation for a spot.
+     *
+     * @param spotId    the reserved SpotID
+     * @param startTime the reservation StartTime in epoch millis
+     */
+    public synchronized void addReservation(int spotId, long startTime) {
+        if (spotId < 0 || spotId >= reservationStarts.size()) {
+            return;
+        }
+        registerReservation(spotId, startTime);
+        recompute(spotId, System.currentTimeMillis());
+        changeListener.run();
+    }
+
+    /**
+     * Removes a reservation (for example, one deleted by the expired reservation cleanup).
+     *
+     * @param spotId    the reserved SpotID
+     * @param startTime the reservation StartTime in epoch millis
+     */
+    public synchronized void removeReservation(int spotId, long startTime) {
+        if (spotId < 0 || spotId >= reservationStarts.size()) {
+            return;
+        }
+        TreeSet<Long> starts = reservationStarts.get(spotId);
+        if (starts != null && starts.remove(startTime)) {
+            recompute(spotId, System.currentTimeMillis());
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Replays the wake-up events that are due now, so the change listener hears about holds that began or
+     * ended since the last query even when no query comes.
+     */
+    public synchronized void advanceToNow() {
+        advance(System.currentTimeMillis());
+    }
+
+    /**
+     * Replays all wake-up events that are due at {@code now} and tells the change listener if there were any.
+     *
+     * @param now current time in epoch millis
+     */
+    private void advance(long now) {
+        boolean replayed = false;
+        while (!events.isEmpty() && events.peek()[0] <= now) {
+            long[] event = events.poll();
+            recompute((int) event[1], now);
+            replayed = true;
+        }
+        if (replayed) {
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Adds a reservation start and its wake-up events (hold begins, hold ends).
+     */
+    private void registerReservation(int spotId, long startTime) {
+        TreeSet<Long> starts = reservationStarts.get(spotId);
+        if (starts == null) {
+            starts = new TreeSet<>();
+            reservationStarts.set(spotId, starts);
+        }
+        starts.add(startTime);
+        events.add(new long[] {startTime, spotId});
+        events.add(new long[] {startTime + HOLD_MILLIS + 1, spotId});
+    }
+
+    /**
+     * Recomputes the hold bit and next reservation start of a single spot.
+     * Reservations on the same spot never overlap, so the latest start at or before
+     * {@code now} is the only one whose hold can still be active.
+     */
+    private void recompute(int spotId, long now) {
+        TreeSet<Long> starts = reservationStarts.get(spotId);
+        if (starts == null || starts.isEmpty()) {
+            clearBit(heldBits, spotId);
+            nextReservationStart[spotId] = NO_RESERVATION;
+            return;
+        }
+
+        // Drop reservations whose hold is already over
+        while (!starts.isEmpty() && starts.first() + HOLD_MILLIS < now) {
+            starts.pollFirst();
+        }
+
+        Long current = starts.floor(now);
+        if (current != null && now <= current + HOLD_MILLIS) {
+            setBit(heldBits, spotId);
+        } else {
+            clearBit(heldBits, spotId);
+        }
+
+        Long next = starts.higher(now);
+        nextReservationStart[spotId] = next == null ? NO_RESERVATION : next;
+    }
+
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void clearBit(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+}
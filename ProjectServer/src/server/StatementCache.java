@@ -0,0 +1,100 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of {@link PreparedStatement}s for a single pooled connection.
+ *
+ * <p>
+ * The {@link mysqlConnection} helpers run the same few dozen SQL strings over and over.
+ * Keeping the prepared statements open per connection means each SQL text is parsed (and, with
+ * {@code useServerPrepStmts}, planned by MySQL) once per connection instead of once per call.
+ * </p>
+ *
+ * <p>
+ * A connection is only used by the thread that borrowed it, so the cache itself is not synchronized.
+ * Statements handed out by {@link #prepare(String, boolean)} belong to the cache and must not be closed
+ * by the caller; result sets still have to be closed as usual.
+ * </p>
+ */
+public class StatementCache {
+
+    private final Connection connection;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /** Key is the SQL text, prefixed with "K:" when generated keys are requested. Access ordered for LRU. */
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * @param connection the connection the statements belong to
+     * @param capacity   maximum number of statements kept open
+     * @param hits       shared hit counter (owned by the pool)
+     * @param misses     shared miss counter (owned by the pool)
+     */
+    public StatementCache(Connection connection, int capacity, AtomicLong hits, AtomicLong misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > capacity) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a cached statement for the SQL text, preparing it on a miss.
+     * Parameters left over from the previous use are cleared.
+     *
+     * @param sql           the SQL text
+     * @param generatedKeys true to prepare with {@link Statement#RETURN_GENERATED_KEYS}
+     * @return an open prepared statement; do not close it
+     * @throws SQLException if the statement can't be prepared
+     */
+    public PreparedStatement prepare(String sql, boolean generatedKeys) throws SQLException {
+        String key = generatedKeys ? "K:" + sql : sql;
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null && !stmt.isClosed()) {
+            hits.incrementAndGet();
+            stmt.clearParameters();
+            return stmt;
+        }
+
+        misses.incrementAndGet();
+        stmt = generatedKeys
+                ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql);
+        statements.put(key, stmt);
+        return stmt;
+    }
+
+    /**
+     * Closes every cached statement. Called before the connection itself is closed.
+     */
+    public void close() {
+        for (PreparedStatement stmt : statements.values()) {
+            closeQuietly(stmt);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+}
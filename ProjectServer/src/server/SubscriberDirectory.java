@@ -0,0 +1,264 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory, sorted index of the subscribers for the usher and manager subscriber listing.
+ *
+ * <p>
+ * The listing used to read the whole subscriber table and send it as one message every time it was opened.
+ * The directory keeps every subscriber in four {@link TreeMap}s, one per field (ID, name, phone, email),
+ * keyed by the lower-cased field value followed by the ID. A prefix search is then a range of each map, and
+ * a page sorted by a field continues from the key of the last row of the previous page (the continuation
+ * token), so a page costs O(log n + page size) without a filter. With a filter, the rows matching the prefix
+ * in any field are run through a top-k selection, so only a page plus one row is ever sorted.
+ * </p>
+ *
+ * <p>
+ * The directory is loaded from the database at startup and kept current by
+ * {@link mysqlConnection#addNewSubscriber} and {@link mysqlConnection#updateSubscriberPersonalData}.
+ * </p>
+ */
+public class SubscriberDirectory {
+
+    /** Sort keys, in field order. */
+    public static final List<String> SORT_KEYS = List.of("id", "name", "phone", "email");
+
+    private static final int FIELDS = 4;
+
+    /**
+     * A subscriber row.
+     */
+    public static final class Subscriber {
+        private final String[] fields;
+
+        /**
+         * @param id    SubscriberID
+         * @param name  UserName
+         * @param phone PhoneNumber
+         * @param email Email
+         */
+        public Subscriber(String id, String name, String phone, String email) {
+            this.fields = new String[] { id, name, phone, email };
+        }
+
+        String id() {
+            return fields[0];
+        }
+
+        /**
+         * @return the row as the listing shows it ("SubscriberID UserName PhoneNumber Email")
+         */
+        @Override
+        public String toString() {
+            return fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3];
+        }
+    }
+
+    /**
+     * One page of the listing.
+     */
+    public static final class Page {
+        /** The subscribers on the page, in order. */
+        public final List<Subscriber> rows;
+        /** Token of the next page, or {@code null} if this is the last one. */
+        public final String next;
+
+        Page(List<Subscriber> rows, String next) {
+            this.rows = rows;
+            this.next = next;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Guarded by {@link #lock}. */
+    private final Map<String, Subscriber> byId = new HashMap<>();
+    private final List<TreeMap<String, Subscriber>> sorted = new ArrayList<>();
+    private volatile boolean loaded = false;
+
+    public SubscriberDirectory() {
+        for (int field = 0; field < FIELDS; field++) {
+            sorted.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * @return true once {@link #rebuild} was called
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Replaces the content of the directory.
+     *
+     * @param subscribers every subscriber
+     */
+    public void rebuild(List<Subscriber> subscribers) {
+        lock.writeLock().lock();
+        try {
+            byId.clear();
+            for (TreeMap<String, Subscriber> index : sorted) {
+                index.clear();
+            }
+            for (Subscriber subscriber : subscribers) {
+                add(subscriber);
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a subscriber, or replaces the one with the same ID.
+     *
+     * @param subscriber the subscriber
+     */
+    public void put(Subscriber subscriber) {
+        lock.writeLock().lock();
+        try {
+            remove(byId.get(subscriber.id()));
+            add(subscriber);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the phone and email of a subscriber, as written to the database.
+     *
+     * @param subscriberId the subscriber
+     * @param phone        the new PhoneNumber
+     * @param email        the new Email
+     */
+    public void updateContact(String subscriberId, String phone, String email) {
+        lock.writeLock().lock();
+        try {
+            Subscriber old = byId.get(subscriberId);
+            if (old != null) {
+                remove(old);
+                add(new Subscriber(subscriberId, old.fields[1], phone, email));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of subscribers
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads one page of the subscribers whose ID, name, phone or email starts with {@code prefix}
+     * (ignoring case), sorted by {@code sortKey} and then by ID.
+     *
+     * @param prefix   the prefix, or empty for every subscriber
+     * @param sortKey  one of {@link #SORT_KEYS}
+     * @param after    token returned with the previous page, or {@code null} for the first page
+     * @param pageSize number of subscribers on the page
+     * @return the page
+     * @throws IllegalArgumentException if the sort key or the token is invalid
+     */
+    public Page search(String prefix, String sortKey, String after, int pageSize) {
+        int sort = SORT_KEYS.indexOf(sortKey);
+        if (sort < 0) {
+            throw new IllegalArgumentException("Invalid sort key: " + sortKey);
+        }
+        String from = after != null ? decodeToken(after) : null;
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+
+        lock.readLock().lock();
+        try {
+            NavigableMap<String, Subscriber> order = sorted.get(sort);
+            if (!lowerPrefix.isEmpty()) {
+                // Keep the first pageSize + 1 matches in sort order
+                TreeMap<String, Subscriber> top = new TreeMap<>();
+                for (TreeMap<String, Subscriber> index : sorted) {
+                    for (Subscriber subscriber : index.subMap(lowerPrefix, true, lowerPrefix + Character.MAX_VALUE, false).values()) {
+                        String key = key(subscriber, sort);
+                        if (from == null || key.compareTo(from) > 0) {
+                            top.put(key, subscriber);
+                            if (top.size() > pageSize + 1) {
+                                top.pollLastEntry();
+                            }
+                        }
+                    }
+                }
+                order = top;
+            } else if (from != null) {
+                order = order.tailMap(from, false);
+            }
+
+            List<Subscriber> rows = new ArrayList<>(pageSize);
+            String next = null;
+            for (Map.Entry<String, Subscriber> entry : order.entrySet()) {
+                if (rows.size() == pageSize) {
+                    next = encodeToken(key(rows.get(rows.size() - 1), sort));
+                    break;
+                }
+                rows.add(entry.getValue());
+            }
+            return new Page(rows, next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(Subscriber subscriber) {
+        byId.put(subscriber.id(), subscriber);
+        for (int field = 0; field < FIELDS; field++) {
+            sorted.get(field).put(key(subscriber, field), subscriber);
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscriber == null) {
+            return;
+        }
+        byId.remove(subscriber.id());
+        for (int field = 0; field < FIELDS; field++) {
+            sorted.get(field).remove(key(subscriber, field));
+        }
+    }
+
+    /**
+     * @return the key of a subscriber in the index of a field: the lower-cased value, a NUL, then the ID
+     */
+    private static String key(Subscriber subscriber, int field) {
+        String value = subscriber.fields[field];
+        return (value == null ? "" : value.toLowerCase(Locale.ROOT)) + '\0' + subscriber.id();
+    }
+
+    /** Tokens are sent in space-separated messages, so the key (which may hold spaces) is Base64-encoded. */
+    private static String encodeToken(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeToken(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid subscriber page token: " + token);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Hierarchical timer wheel for deadlines that are minutes to days away.
+ *
+ * <p>
+ * Time is cut into ticks. Level 0 has one slot per tick for the next 64 ticks, level 1 one slot per
+ * 64 ticks, level 2 one slot per 4096 ticks and so on. A deadline is put in the level of the highest
+ * tick digit (base 64) in which it differs from the current tick; when the wheel reaches the start of
+ * that slot, its entries cascade one level down, until they reach level 0 and fire. Scheduling and
+ * firing are O(1) and the wheel thread only wakes once per tick, no matter how many deadlines are
+ * pending - unlike a periodic task that re-scans every open parking session.
+ * </p>
+ *
+ * <p>
+ * Expired tasks are handed to an {@link Executor}, so a slow task (e.g. sending an email) never delays
+ * the wheel. Cancelled entries are dropped lazily when their slot is reached.
+ * </p>
+ */
+public class TimerWheel {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /** Five levels of 64 slots cover 64^5 ticks (over 30 years with one-second ticks). */
+    private static final int LEVELS = 5;
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+        private final long tick;
+        private final Runnable task;
+        private volatile boolean cancelled = false;
+
+        Timeout(long tick, Runnable task) {
+            this.tick = tick;
+            this.task = task;
+        }
+
+        /**
+         * Cancels the task if it has not fired yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final String name;
+    private final long tickMillis;
+    private final Executor executor;
+
+    /** Wall-clock time of tick 0. */
+    private final long startMillis;
+
+    /** Last tick that was processed; guarded by {@code this}. */
+    private long currentTick = 0;
+
+    /** Slots per level; guarded by {@code this}. */
+    private final List<List<Timeout>> slots = new ArrayList<>(LEVELS * WHEEL_SIZE);
+
+    private volatile Thread worker;
+
+    /**
+     * @param name       name of the wheel thread
+     * @param tickMillis length of one tick; deadlines fire at most one tick late
+     * @param executor   runs the expired tasks
+     */
+    public TimerWheel(String name, long tickMillis, Executor executor) {
+        this.name = name;
+        this.tickMillis = tickMillis;
+        this.executor = executor;
+        this.startMillis = System.currentTimeMillis();
+        for (int i = 0; i < LEVELS * WHEEL_SIZE; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Starts the wheel thread. Tasks can be scheduled before the wheel is started.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the wheel thread. Pending tasks are not run.
+     */
+    public void stop() {
+        Thread t = worker;
+        worker = null;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Schedules a task. A deadline in the past fires on the next tick.
+     *
+     * @param deadlineMillis wall-clock time (epoch millis) at which the task should run
+     * @param task           the task
+     * @return a handle to cancel the task
+     */
+    public synchronized Timeout schedule(long deadlineMillis, Runnable task) {
+        long tick = (deadlineMillis - startMillis + tickMillis - 1) / tickMillis;
+        Timeout timeout = new Timeout(Math.max(tick, currentTick + 1), task);
+        place(timeout);
+        return timeout;
+    }
+
+    /**
+     * Puts a timeout in the slot matching its tick, relative to {@link #currentTick}.
+     */
+    private void place(Timeout timeout) {
+        long tick = timeout.tick;
+        long diff = tick ^ currentTick;
+        int level = diff < WHEEL_SIZE ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / WHEEL_BITS;
+        if (level >= LEVELS) {
+            // Beyond the wheel range: park it in the last slot of the top level, it is re-placed from there
+            level = LEVELS - 1;
+            tick = currentTick + ((long) WHEEL_MASK << (WHEEL_BITS * level));
+        }
+        int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        slots.get(level * WHEEL_SIZE + slot).add(timeout);
+    }
+
+    private void run() {
+        while (worker == Thread.currentThread()) {
+            long nextTickAt;
+            synchronized (this) {
+                nextTickAt = startMillis + (currentTick + 1) * tickMillis;
+            }
+            long sleep = nextTickAt - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            List<Timeout> expired = new ArrayList<>();
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                while (startMillis + (currentTick + 1) * tickMillis <= now) {
+                    advance(expired);
+                }
+            }
+            for (Timeout timeout : expired) {
+                if (!timeout.cancelled) {
+                    try {
+                        executor.execute(timeout.task);
+                    } catch (RuntimeException e) {
+                        System.err.println("Timer wheel " + name + " could not run task: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the wheel one tick forward: cascades the higher level slots that start at the new tick,
+     * then collects the level 0 entries that are due.
+     */
+    private void advance(List<Timeout> expired) {
+        currentTick++;
+        for (int level = LEVELS - 1; level >= 1; level--) {
+            long unit = 1L << (WHEEL_BITS * level);
+            if ((currentTick & (unit - 1)) != 0) {
+                continue;
+            }
+            List<Timeout> slot = slots.get(level * WHEEL_SIZE + (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK));
+            if (slot.isEmpty()) {
+                continue;
+            }
+            List<Timeout> cascading = new ArrayList<>(slot);
+            slot.clear();
+            for (Timeout timeout : cascading) {
+                if (!timeout.cancelled) {
+                    place(timeout);
+                }
+            }
+        }
+
+        List<Timeout> due = slots.get((int) (currentTick & WHEEL_MASK));
+        if (!due.isEmpty()) {
+            List<Timeout> keep = new ArrayList<>();
+            for (Timeout timeout : due) {
+                if (timeout.tick <= currentTick) {
+                    expired.add(timeout);
+                } else if (!timeout.cancelled) {
+                    keep.add(timeout);
+                }
+            }
+            due.clear();
+            due.addAll(keep);
+        }
+    }
+}
@@ -10,11 +10,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 
+import gui.LogLevel;
 import gui.ServerMessageFrameController;
 import gui.ServerPortFrameController;
 
@@ -37,6 +38,13 @@ public class mysqlConnection {
     /** Database URL for MySQL connection. */
     private static final String DB_url = "jdbc:mysql://localhost/bpark?useSSL=false&serverTimezone=Asia/Jerusalem";
 
+    /**
+     * Database URL for pooled connections. Server-side prepared statements let MySQL keep the plan of
+     * statements that stay open in the per-connection {@link StatementCache}, and cursor fetch lets
+     * {@link #queryForEach} stream large results with a fetch size.
+     */
+    private static final String DB_POOL_url = DB_url + "&useServerPrepStmts=true&useCursorFetch=true";
+
     /** Database URL for MySQL connection. if schema doesn't exist */
     private static final String DB_URL_WITHOUT_SCHEMA = "jdbc:mysql://localhost/?useSSL=false&serverTimezone=Asia/Jerusalem";
 
@@ -46,14 +54,50 @@ public class mysqlConnection {
     /** Database password. */
     private static final String DB_Password = "Ee030620";
 
-    /** Maximum number of connections allowed in the pool. */
+    /** Default maximum number of connections in the pool (override with {@code -Dbpark.pool.maxSize}). */
     private static final int Max_Pool_size = 5;
 
-    /** Initial number of connections to create in the pool. */
+    /** Default number of idle connections kept open (override with {@code -Dbpark.pool.minIdle}). */
     private static final int Initial_Pool_size = 2;
 
-    /** Thread-safe queue holding the connection pool. */
-    private BlockingQueue<Connection> connectionPool;
+    /** Pool of connections used by client requests. */
+    private ConnectionPool connectionPool;
+
+    /**
+     * In virtual-thread mode, {@link #getConnection()} waits here, parked and without the pool's borrow timeout,
+     * for one of the pooled connections; {@code null} in fixed pool mode. Only the borrow holds a permit, so a
+     * command sending its reply to a slow client doesn't keep other commands away from the database.
+     */
+    private volatile Semaphore borrowPermits;
+
+    /** Connections borrowed with one of the {@link #borrowPermits}, which {@link #releaseConnection} gives back. */
+    private final Set<Connection> permitted = ConcurrentHashMap.newKeySet();
+
+    /** Rows fetched per round trip when streaming large results (override with {@code -Dbpark.db.fetchSize}). */
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("bpark.db.fetchSize", 100);
+
+    /** In-memory spot occupancy, loaded by {@link #loadOccupancy(Connection)} at server startup. */
+    private final SpotOccupancyEngine occupancy = new SpotOccupancyEngine();
+
+    /** In-memory reservation intervals, loaded by {@link #loadReservationIndex(Connection)} at server startup. */
+    private final ReservationIndex reservationIndex = new ReservationIndex();
+
+    /** Sorted, searchable subscriber listing, loaded by {@link #loadSubscriberDirectory(Connection)} at server startup. */
+    private final SubscriberDirectory subscriberDirectory = new SubscriberDirectory();
+
+    /** Late-pickup and forced-exit deadlines of the open parking sessions, loaded by {@link #loadParkingDeadlines(Connection)}. */
+    private final ParkingDeadlines parkingDeadlines = new ParkingDeadlines();
+
+    /** Report images already read from the database (budget {@code -Dbpark.reportCache.maxBytes}, default 32 MB). */
+    private final ReportImageCache reportImageCache = new ReportImageCache(Long.getLong("bpark.reportCache.maxBytes", 32L * 1024 * 1024));
+
+    /** Subscriber records ({SubscriberID, UserName, PhoneNumber, Email}) by SubscriberID, read by {@link #getSubscriberRecord}. */
+    private final ProfileCache<String[]> subscriberCache = new ProfileCache<>("Subscriber",
+            Integer.getInteger("bpark.profileCache.maxEntries", 10_000), Long.getLong("bpark.profileCache.ttlMs", 10 * 60 * 1000L));
+
+    /** Worker records by "WorkerID|Type", read by {@link #getWorkerID}. */
+    private final ProfileCache<String> workerCache = new ProfileCache<>("Worker",
+            Integer.getInteger("bpark.profileCache.maxEntries", 10_000), Long.getLong("bpark.profileCache.ttlMs", 10 * 60 * 1000L));
 
     /**
      * Private constructor that loads the MySQL JDBC driver and initializes the connection pool.
@@ -66,25 +110,16 @@ public class mysqlConnection {
             throw new RuntimeException("Failed to load JDBC driver");
         }
         createAllTables();
-        connectionPool = new ArrayBlockingQueue<>(Max_Pool_size);
         initializePool();
     }
 
     /**
-     * Initializes the connection pool with {@code Initial_Pool_size} connections.
+     * Initializes the connection pool with {@code Initial_Pool_size} idle connections.
      */
     private void initializePool() {
-        System.out.println("Initializing database connection pool with " + Initial_Pool_size + " connections...");
-        for (int i = 0; i < Initial_Pool_size; i++) {
-            try {
-                Connection connection = DriverManager.getConnection(DB_url, DB_USER, DB_Password);
-                connectionPool.offer(connection);
-                System.out.println(" > Connection " + (i + 1) + " created and added to pool.");
-            } catch (SQLException e) {
-                System.err.println("Error initializing connection pool: " + e.getMessage());
-            }
-        }
-        System.out.println("Database connection pool initialized. Current size: " + connectionPool.size());
+        System.out.println("Initializing database connection pool...");
+        connectionPool = ConnectionPool.fromSystemProperties(DB_POOL_url, DB_USER, DB_Password, Initial_Pool_size, Max_Pool_size);
+        System.out.println("Database connection pool initialized. " + connectionPool.getStats());
     }
 
     /**
@@ -116,46 +151,37 @@ public class mysqlConnection {
     }
 
     /**
-     * Retrieves a connection from the pool, or creates a new one if the pool is not full.
-     * If the connection is invalid, it will be replaced.
+     * Borrows a connection from the pool, waiting up to the configured borrow timeout.
+     * Every connection must be given back with {@link #releaseConnection(Connection)}.
      *
-     * @return a valid {@link Connection} to the database
-     * @throws SQLException if unable to get or create a connection
+     * @return an open {@link Connection} to the database
+     * @throws SQLException if no connection became free in time or a new one could not be opened
      * @throws InterruptedException if interrupted while waiting for a connection
      */
     public Connection getConnection() throws SQLException, InterruptedException {
-        Connection connection = connectionPool.poll(5, TimeUnit.SECONDS);
-        if (connection == null) {
-            synchronized (this) {
-                if (connectionPool.size() < Max_Pool_size) {
-                    try {
-                        System.out.println("Pool exhausted, attempting to create a new connection...");
-                        connection = DriverManager.getConnection(DB_url, DB_USER, DB_Password);
-                        System.out.println("New connection created and provided.");
-                    } catch (SQLException e) {
-                        System.err.println("Failed to create new connection: " + e.getMessage());
-                        throw new SQLException("Failed to get a connection from the pool or create a new one.", e);
-                    }
-                } else {
-                    throw new SQLException("Database connection pool exhausted. Max connections reached.");
-                }
-            }
-        } else {
-            System.out.println(" > Connection retrieved from pool. Remaining: " + connectionPool.size());
+        Semaphore permits = borrowPermits;
+        if (permits == null) {
+            return connectionPool.borrow();
         }
-
-        if (connection != null && !connection.isValid(2)) {
-            System.out.println(" > Invalid connection detected, attempting to replace it.");
-            connectionPool.remove(connection);
-            try {
-                return DriverManager.getConnection(DB_url, DB_USER, DB_Password);
-            } catch (SQLException e) {
-                System.err.println("Failed to replace invalid connection: " + e.getMessage());
-                throw new SQLException("Failed to replace invalid connection.", e);
-            }
+        permits.acquire();
+        try {
+            Connection connection = connectionPool.borrow();
+            permitted.add(connection);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
         }
+    }
 
-        return connection;
+    /**
+     * Makes {@link #getConnection()} wait for one of {@code permits} before borrowing, instead of timing out
+     * in the pool. Used in virtual-thread mode, where many more commands run at once than there are connections.
+     *
+     * @param permits a fair semaphore with one permit per pooled connection
+     */
+    public void setBorrowPermits(Semaphore permits) {
+        this.borrowPermits = permits;
     }
     /**
      * Inserts a new worker into the 'worker' table if the WorkerID doesn't already exist.
@@ -196,6 +222,9 @@ public class mysqlConnection {
      *     <li>subscriberreport</li>
      *     <li>tagreader</li>
      *     <li>worker</li>
+     *     <li>emailoutbox</li>
+     *     <li>monthlysubscriberstats</li>
+     *     <li>monthlyhourstats</li>
      * </ul>
      *
      * @param con the database connection to use for executing table creation queries
@@ -267,6 +296,16 @@ public class mysqlConnection {
     	                    )
     	                """);
 
+    	                // History pages are read by (subscriber, EntryTime, HistoryID); MySQL has no CREATE INDEX IF NOT EXISTS
+    	                try {
+    	                    stmt.executeUpdate("CREATE INDEX idx_history_subscriber_entry ON parkinghistory (subscriber, EntryTime, HistoryID)");
+    	                } catch (SQLException e) {
+    	                    // 1061 (ER_DUP_KEYNAME): already there
+    	                    if (e.getErrorCode() != 1061) {
+    	                        System.err.println(" Could not create idx_history_subscriber_entry: " + e.getMessage());
+    	                    }
+    	                }
+
     	                stmt.executeUpdate("""
     	                    CREATE TABLE IF NOT EXISTS parkingreport (
     	                        DateOfReport DATETIME,
@@ -294,6 +333,42 @@ public class mysqlConnection {
     	                    )
     	                """);
 
+    	                stmt.executeUpdate("""
+    	                    CREATE TABLE IF NOT EXISTS monthlysubscriberstats (
+    	                        Month DATE NOT NULL,
+    	                        SubscriberID VARCHAR(45) NOT NULL,
+    	                        Sessions INT DEFAULT 0,
+    	                        TotalMinutes BIGINT DEFAULT 0,
+    	                        LateCount INT DEFAULT 0,
+    	                        LateExits INT DEFAULT 0,
+    	                        Extensions INT DEFAULT 0,
+    	                        Reservations INT DEFAULT 0,
+    	                        CancelledReservations INT DEFAULT 0,
+    	                        LateFromReservation INT DEFAULT 0,
+    	                        PRIMARY KEY (Month, SubscriberID)
+    	                    )
+    	                """);
+
+    	                stmt.executeUpdate("""
+    	                    CREATE TABLE IF NOT EXISTS monthlyhourstats (
+    	                        Month DATE NOT NULL,
+    	                        Hour TINYINT NOT NULL,
+    	                        Entries INT DEFAULT 0,
+    	                        PRIMARY KEY (Month, Hour)
+    	                    )
+    	                """);
+
+    	                stmt.executeUpdate("""
+    	                    CREATE TABLE IF NOT EXISTS emailoutbox (
+    	                        MailID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    	                        Recipient VARCHAR(100),
+    	                        Subject VARCHAR(255),
+    	                        Body TEXT,
+    	                        Attempts INT DEFAULT 0,
+    	                        CreatedAt DATETIME
+    	                    )
+    	                """);
+
     	                stmt.executeUpdate("""
     	                    CREATE TABLE IF NOT EXISTS worker (
     	                        WorkerID VARCHAR(45) NOT NULL,
@@ -356,96 +431,427 @@ public class mysqlConnection {
 
 
     /**
-     * Removes expired reservations that started more than 15 minutes ago and were never used (no parkinghistory record).
-     * Inserts a missed reservation entry into the history table for each deleted reservation.
+     * Loads the in-memory {@link SpotOccupancyEngine} from the parkingspot and reservation tables.
+     * Only reservations whose 15 minute hold has not ended yet are relevant.
+     * Called once at server startup; until it succeeds the availability methods fall back to SQL.
      *
-     * @param con an active {@link Connection} to the database
-     * @return a list of reservation IDs that were deleted
+     * @param con the database connection to use
+     * @return true if the engine was loaded
      */
-    public List<String> cleanExpiredReservationsAndReturnIds(Connection con) {
-        List<String> deletedReservations = new ArrayList<>();
+    public boolean loadOccupancy(Connection con) {
+        Map<Integer, Boolean> spots = new HashMap<>();
+        Map<Integer, List<Long>> reservations = new HashMap<>();
+
+        String spotsQuery = "SELECT SpotID, InUse FROM parkingspot";
+        String reservationsQuery = """
+            SELECT SpotID, StartTime
+            FROM reservation
+            WHERE DATE_ADD(StartTime, INTERVAL 15 MINUTE) >= NOW()
+        """;
+
+        try (Statement stmt = con.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(spotsQuery)) {
+                while (rs.next()) {
+                    spots.put(rs.getInt("SpotID"), rs.getInt("InUse") == 1);
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(reservationsQuery)) {
+                while (rs.next()) {
+                    reservations.computeIfAbsent(rs.getInt("SpotID"), k -> new ArrayList<>())
+                                .add(rs.getTimestamp("StartTime").getTime());
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading spot occupancy: " + e.getMessage());
+            return false;
+        }
+
+        occupancy.rebuild(spots, reservations);
+        System.out.println("Spot occupancy loaded: " + occupancy.getTotalSpots() + " spots, "
+                + occupancy.countAvailable() + " available.");
+        return true;
+    }
+
+    /**
+     * @return the in-memory spot occupancy engine
+     */
+    public SpotOccupancyEngine getOccupancy() {
+        return occupancy;
+    }
 
-        String selectQuery = """
+    /**
+     * Loads (or reloads) the in-memory {@link ReservationIndex} from the parkingspot and reservation tables.
+     * Only reservations that have not ended yet can conflict with a new request, so older rows are skipped.
+     * Until it succeeds, {@link #reserve(String, Timestamp, Timestamp)} falls back to SQL.
+     *
+     * @param con the database connection to use
+     * @return true if the index was loaded
+     */
+    public boolean loadReservationIndex(Connection con) {
+        List<Integer> spotIds = new ArrayList<>();
+        List<ReservationIndex.Interval> reservations = new ArrayList<>();
+        int maxReservationId = 0;
+
+        String reservationsQuery = """
             SELECT ReservationID, SubscriberID, SpotID, StartTime, EndTime
             FROM reservation
-            WHERE NOW() > StartTime + INTERVAL 15 MINUTE
+            WHERE EndTime > NOW()
         """;
 
-        try (PreparedStatement selectStmt = con.prepareStatement(selectQuery);
-             ResultSet rs = selectStmt.executeQuery()) {
+        try (Statement stmt = con.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT SpotID FROM parkingspot")) {
+                while (rs.next()) {
+                    spotIds.add(rs.getInt("SpotID"));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(reservationsQuery)) {
+                while (rs.next()) {
+                    reservations.add(new ReservationIndex.Interval(
+                            rs.getInt("ReservationID"),
+                            rs.getString("SubscriberID"),
+                            rs.getInt("SpotID"),
+                            rs.getTimestamp("StartTime").getTime(),
+                            rs.getTimestamp("EndTime").getTime()));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(ReservationID), 0) FROM reservation")) {
+                if (rs.next()) {
+                    maxReservationId = rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading reservation index: " + e.getMessage());
+            return false;
+        }
+
+        reservationIndex.rebuild(spotIds, reservations, maxReservationId);
+        System.out.println("Reservation index loaded: " + reservations.size() + " upcoming reservations.");
+        return true;
+    }
 
+    /**
+     * Loads (or reloads) the in-memory {@link SubscriberDirectory} from the subscriber table.
+     * Until it succeeds, {@link #searchSubscribers} tries again on every search.
+     *
+     * @param con the database connection to use
+     * @return true if the directory was loaded
+     */
+    public boolean loadSubscriberDirectory(Connection con) {
+        List<SubscriberDirectory.Subscriber> subscribers = new ArrayList<>();
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT SubscriberID, UserName, PhoneNumber, Email FROM subscriber")) {
             while (rs.next()) {
-                String reservationId = rs.getString("ReservationID");
-                String subscriberId = rs.getString("SubscriberID");
-                String spotID = rs.getString("SpotID");
-                Timestamp startTime = rs.getTimestamp("StartTime");
-                Timestamp endTime = rs.getTimestamp("EndTime");
-
-                long minutesToPark = Duration.between(startTime.toLocalDateTime(), endTime.toLocalDateTime()).toMinutes();
-                if (minutesToPark < 0) minutesToPark = 0;
-
-                String checkQuery = "SELECT COUNT(*) FROM parkinghistory WHERE resID = ?";
-                try (PreparedStatement checkStmt = con.prepareStatement(checkQuery)) {
-                    checkStmt.setString(1, reservationId);
-                    ResultSet checkRs = checkStmt.executeQuery();
-                    checkRs.next();
-
-                    int arrived = checkRs.getInt(1);
-
-                    if (arrived == 0) {
-                        String deleteQuery = "DELETE FROM reservation WHERE ReservationID = ?";
-                        try (PreparedStatement deleteStmt = con.prepareStatement(deleteQuery)) {
-                            deleteStmt.setString(1, reservationId);
-                            int deleted = deleteStmt.executeUpdate();
-
-                            if (deleted > 0) {
-                                deletedReservations.add(reservationId);
-                                insertMissedReservationIntoHistory(con, subscriberId, spotID, reservationId, (int) minutesToPark, startTime);
-                            }
-                        }
-                    }
-                }
+                subscribers.add(new SubscriberDirectory.Subscriber(rs.getString("SubscriberID"),
+                        rs.getString("UserName"), rs.getString("PhoneNumber"), rs.getString("Email")));
             }
+        } catch (SQLException e) {
+            System.err.println("Error loading subscriber directory: " + e.getMessage());
+            return false;
+        }
 
-        } catch (Exception e) {
-            System.out.println("Error in cleanExpiredReservationsAndReturnIds: " + e.getMessage());
-            e.printStackTrace();
+        subscriberDirectory.rebuild(subscribers);
+        System.out.println("Subscriber directory loaded: " + subscribers.size() + " subscribers.");
+        return true;
+    }
+
+    /**
+     * Registers the late-pickup and forced-exit deadlines of every open parking session in {@link ParkingDeadlines}.
+     * Until it succeeds, the server keeps scanning parkinghistory periodically.
+     *
+     * @param con the database connection to use
+     * @return true if the deadlines were loaded
+     */
+    public boolean loadParkingDeadlines(Connection con) {
+        String query = """
+            SELECT HistoryID, EntryTime, TimeToPark, LateEmailSent
+            FROM parkinghistory
+            WHERE ExitTime IS NULL AND ShowedUp = 1
+        """;
+
+        int count = 0;
+        try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                parkingDeadlines.schedule(rs.getInt("HistoryID"),
+                        rs.getTimestamp("EntryTime").toLocalDateTime(),
+                        rs.getInt("TimeToPark"),
+                        rs.getBoolean("LateEmailSent"));
+                count++;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading parking deadlines: " + e.getMessage());
+            return false;
         }
 
-        return deletedReservations;
+        parkingDeadlines.markLoaded();
+        System.out.println("Parking deadlines loaded: " + count + " open parking sessions.");
+        return true;
     }
 
     /**
-     * Inserts a missed reservation into the `parkinghistory` table.
-     * This occurs when a subscriber fails to show up within the allowed window.
-     * We inserted into totalTimeParking 15 minutes, so we can know this user held this parking spot for 15 minutes
-     * ShowedUp--> 0 so technically he wasted 15 minutes we want to see this in history for records!
-     * @param con             The active database connection
-     * @param subscriberId    The ID of the subscriber who missed the reservation
-     * @param spotId          The ID of the reserved parking spot
-     * @param reservationId   The ID of the reservation (currently unused in insertion)
-     * @param minutesToPark   The intended parking duration in minutes
-     * @param startTime       The start time of the reservation
+     * @return the deadlines of the open parking sessions
      */
-    public void insertMissedReservationIntoHistory(Connection con, String subscriberId, String spotId, String reservationId, int minutesToPark, Timestamp startTime) {
-        String insertQuery = """
-            INSERT INTO parkinghistory 
+    public ParkingDeadlines getParkingDeadlines() {
+        return parkingDeadlines;
+    }
+
+    /**
+     * @return the cache of report images
+     */
+    public ReportImageCache getReportImageCache() {
+        return reportImageCache;
+    }
+
+    /**
+     * @return the cache of subscriber records
+     */
+    public ProfileCache<String[]> getSubscriberCache() {
+        return subscriberCache;
+    }
+
+    /**
+     * @return the cache of worker records
+     */
+    public ProfileCache<String> getWorkerCache() {
+        return workerCache;
+    }
+
+    /**
+     * Reads a subscriber's record from the {@link #subscriberCache} or the database.
+     * The returned array is shared with the cache and must not be modified.
+     *
+     * @param subscriberId the subscriber's ID
+     * @return {SubscriberID, UserName, PhoneNumber, Email}, or {@code null} if there is no such subscriber
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    private String[] getSubscriberRecord(String subscriberId) throws InterruptedException {
+        return subscriberCache.get(subscriberId, () -> queryForObject(
+                "SELECT SubscriberID, UserName, PhoneNumber, Email FROM subscriber WHERE SubscriberID = ?",
+                (rs, rowNum) -> new String[] {
+                        rs.getString("SubscriberID"), rs.getString("UserName"), rs.getString("PhoneNumber"), rs.getString("Email")
+                }, subscriberId));
+    }
+
+    /**
+     * Reads an open parking session with the subscriber's contact details.
+     *
+     * @param historyId the session's HistoryID
+     * @return SubscriberID, Email, UserName, EntryTime, TimeToPark, LateEmailSent ("true"/"false") and SpotID,
+     *         or {@code null} if the session is closed or an error occurs
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public Map<String, String> getOpenParkingSession(int historyId) throws InterruptedException {
+        String query = """
+            SELECT subscriber, EntryTime, TimeToPark, LateEmailSent, SpotID
+            FROM parkinghistory
+            WHERE HistoryID = ? AND ExitTime IS NULL AND ShowedUp = 1
+        """;
+
+        Map<String, String> open = queryForObject(query, (rs, rowNum) -> {
+            Map<String, String> session = new HashMap<>();
+            session.put("SubscriberID", rs.getString("subscriber"));
+            session.put("EntryTime", rs.getTimestamp("EntryTime").toLocalDateTime()
+                    .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            session.put("TimeToPark", Integer.toString(rs.getInt("TimeToPark")));
+            session.put("LateEmailSent", Boolean.toString(rs.getBoolean("LateEmailSent")));
+            session.put("SpotID", rs.getString("SpotID"));
+            return session;
+        }, historyId);
+        if (open == null) {
+            return null;
+        }
+
+        // Contact details come from the subscriber cache instead of a join
+        String[] subscriber = getSubscriberRecord(open.get("SubscriberID"));
+        if (subscriber == null) {
+            return null;
+        }
+        open.put("UserName", subscriber[1]);
+        open.put("Email", subscriber[3]);
+        return open;
+    }
+
+    /**
+     * Marks the late pickup email of an open session as sent.
+     *
+     * @param historyId the session's HistoryID
+     * @return true if this call marked it (false if it was already marked or the session is closed)
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public boolean markLateEmailSent(int historyId) throws InterruptedException {
+        return executeUpdateQuery(
+                "UPDATE parkinghistory SET LateEmailSent = TRUE WHERE HistoryID = ? AND ExitTime IS NULL AND LateEmailSent = FALSE",
+                historyId);
+    }
+
+    /**
+     * Moves a car out of its spot: closes the session as late and frees the spot.
+     *
+     * @param historyId        the session's HistoryID
+     * @param spotId           the session's SpotID
+     * @param totalTimeParking the parking time recorded for the session, in minutes
+     * @param exitTime         the exit time recorded for the session
+     * @return true if this call closed the session
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public boolean forceExitParking(int historyId, String spotId, int totalTimeParking, LocalDateTime exitTime) throws InterruptedException {
+        boolean closed = executeUpdateQuery(
+                "UPDATE parkinghistory SET ExitTime = ?, totalTimeparking = ?, Late = 1 WHERE HistoryID = ? AND ExitTime IS NULL",
+                Timestamp.valueOf(exitTime), totalTimeParking, historyId);
+        if (!closed) {
+            return false;
+        }
+        executeUpdateQuery("UPDATE parkingspot SET InUse = 0 WHERE SpotID = ?", spotId);
+        occupancy.release(Integer.parseInt(spotId.trim()));
+        addClosedSessionToStats(historyId);
+        return true;
+    }
+
+    /**
+     * Removes expired reservations that started more than 15 minutes ago and were never used (no parkinghistory record),
+     * and records each of them in the history table as a missed reservation.
+     *
+     * <p>
+     * The work is done with set-based SQL, one transaction per chunk of {@code chunkSize} reservations:
+     * the chunk is locked ({@code SELECT ... FOR UPDATE}), copied into parkinghistory with one {@code INSERT ... SELECT}
+     * and into the monthly statistics, and removed with one {@code DELETE ... WHERE NOT EXISTS}. All statements use the same cutoff time, so they
+     * see exactly the same rows. The sweep runs on a pooled connection, so the transaction never touches the
+     * auto-commit mode of the shared background connection.
+     * </p>
+     *
+     * @param chunkSize maximum number of reservations removed per transaction
+     * @return the IDs of the removed reservations
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public List<String> sweepExpiredReservations(int chunkSize) throws InterruptedException {
+        String selectChunkQuery = """
+            SELECT r.ReservationID, r.SpotID, r.StartTime
+            FROM reservation r
+            WHERE r.StartTime + INTERVAL 15 MINUTE < ?
+              AND NOT EXISTS (SELECT 1 FROM parkinghistory ph WHERE ph.resID = r.ReservationID)
+            ORDER BY r.ReservationID
+            LIMIT ?
+            FOR UPDATE
+        """;
+
+        // Missed reservation: 15 minutes held, never showed up (same values insertMissedReservation used per row)
+        String insertMissedQuery = """
+            INSERT INTO parkinghistory
             (subscriber, SpotID, EntryTime, ExitTime, Late, Extensions, totalTimeParking, ShowedUp, LateEmailSent, TimeToPark)
-            VALUES (?, ?, ?, ?, 0, 0, 15, 0, 0, ?)
+            SELECT r.SubscriberID, r.SpotID, r.StartTime, r.StartTime + INTERVAL 15 MINUTE, 0, 0, 15, 0, 0,
+                   GREATEST(TIMESTAMPDIFF(MINUTE, r.StartTime, r.EndTime), 0)
+            FROM reservation r
+            WHERE r.ReservationID <= ?
+              AND r.StartTime + INTERVAL 15 MINUTE < ?
+              AND NOT EXISTS (SELECT 1 FROM parkinghistory ph WHERE ph.resID = r.ReservationID)
+        """;
+
+        String subscriberStatsQuery = """
+            INSERT INTO monthlysubscriberstats (Month, SubscriberID, Sessions, TotalMinutes)
+            SELECT DATE_FORMAT(r.StartTime, '%Y-%m-01'), r.SubscriberID, COUNT(*), COUNT(*) * 15
+            FROM reservation r
+            WHERE r.ReservationID <= ?
+              AND r.StartTime + INTERVAL 15 MINUTE < ?
+              AND NOT EXISTS (SELECT 1 FROM parkinghistory ph WHERE ph.resID = r.ReservationID)
+            GROUP BY DATE_FORMAT(r.StartTime, '%Y-%m-01'), r.SubscriberID
+            ON DUPLICATE KEY UPDATE Sessions = Sessions + VALUES(Sessions), TotalMinutes = TotalMinutes + VALUES(TotalMinutes)
+        """;
+
+        String hourStatsQuery = """
+            INSERT INTO monthlyhourstats (Month, Hour, Entries)
+            SELECT DATE_FORMAT(r.StartTime, '%Y-%m-01'), HOUR(r.StartTime), COUNT(*)
+            FROM reservation r
+            WHERE r.ReservationID <= ?
+              AND r.StartTime + INTERVAL 15 MINUTE < ?
+              AND NOT EXISTS (SELECT 1 FROM parkinghistory ph WHERE ph.resID = r.ReservationID)
+            GROUP BY DATE_FORMAT(r.StartTime, '%Y-%m-01'), HOUR(r.StartTime)
+            ON DUPLICATE KEY UPDATE Entries = Entries + VALUES(Entries)
         """;
-        Timestamp exitTime = new Timestamp(startTime.getTime() + 15 * 60 * 1000);
-
-        try (PreparedStatement stmt = con.prepareStatement(insertQuery)) {
-            stmt.setString(1, subscriberId);
-            stmt.setString(2, spotId);
-            stmt.setTimestamp(3, startTime);
-            stmt.setTimestamp(4, exitTime);
-            stmt.setInt(5, minutesToPark);
-            stmt.executeUpdate();
+
+        String deleteQuery = """
+            DELETE FROM reservation
+            WHERE ReservationID <= ?
+              AND StartTime + INTERVAL 15 MINUTE < ?
+              AND NOT EXISTS (SELECT 1 FROM parkinghistory ph WHERE ph.resID = reservation.ReservationID)
+        """;
+
+        long sweepStart = System.nanoTime();
+        List<String> deletedReservations = new ArrayList<>();
+        int chunks = 0;
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            Timestamp cutoff;
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT NOW()")) {
+                rs.next();
+                cutoff = rs.getTimestamp(1);
+            }
+
+            conn.setAutoCommit(false);
+            while (true) {
+                List<int[]> chunk = new ArrayList<>();
+                List<Timestamp> chunkStarts = new ArrayList<>();
+                PreparedStatement select = prepareCached(conn, selectChunkQuery, false);
+                select.setTimestamp(1, cutoff);
+                select.setInt(2, chunkSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        chunk.add(new int[] { rs.getInt("ReservationID"), rs.getInt("SpotID") });
+                        chunkStarts.add(rs.getTimestamp("StartTime"));
+                    }
+                }
+                if (chunk.isEmpty()) {
+                    conn.commit();
+                    break;
+                }
+
+                int lastId = chunk.get(chunk.size() - 1)[0];
+                PreparedStatement insert = prepareCached(conn, insertMissedQuery, false);
+                insert.setInt(1, lastId);
+                insert.setTimestamp(2, cutoff);
+                insert.executeUpdate();
+
+                for (String statsQuery : new String[] { subscriberStatsQuery, hourStatsQuery }) {
+                    PreparedStatement stats = prepareCached(conn, statsQuery, false);
+                    stats.setInt(1, lastId);
+                    stats.setTimestamp(2, cutoff);
+                    stats.executeUpdate();
+                }
+
+                PreparedStatement delete = prepareCached(conn, deleteQuery, false);
+                delete.setInt(1, lastId);
+                delete.setTimestamp(2, cutoff);
+                delete.executeUpdate();
+                conn.commit();
+                chunks++;
+
+                // Only update the in-memory views once the chunk is committed
+                for (int i = 0; i < chunk.size(); i++) {
+                    int[] row = chunk.get(i);
+                    deletedReservations.add(String.valueOf(row[0]));
+                    occupancy.removeReservation(row[1], chunkStarts.get(i).getTime());
+                    reservationIndex.cancel(row[0]);
+                }
+                if (chunk.size() < chunkSize) {
+                    break;
+                }
+            }
         } catch (SQLException e) {
-            System.out.println("Error inserting missed reservation into parkinghistory: " + e.getMessage());
-            e.printStackTrace();
+            System.out.println("Error in sweepExpiredReservations: " + e.getMessage());
+            try {
+                if (conn != null) {
+                    conn.rollback();
+                }
+            } catch (SQLException rollbackError) {
+                System.out.println("Rollback failed: " + rollbackError.getMessage());
+            }
+        } finally {
+            releaseConnection(conn);
         }
+
+        long elapsedMs = (System.nanoTime() - sweepStart) / 1_000_000;
+        EchoServer.messageController.appendMessage(deletedReservations.isEmpty() ? LogLevel.DEBUG : LogLevel.INFO,
+                "Expired reservation sweep: " + deletedReservations.size() + " removed in " + chunks + " chunk(s), " + elapsedMs + " ms");
+        return deletedReservations;
     }
 
     /**
@@ -501,53 +907,58 @@ public class mysqlConnection {
     }
 
     /**
-     * Releases a database connection back to the connection pool if it's still valid.
-     * If the connection is invalid or cannot be returned to the pool, it is closed.
+     * Returns a cached {@link PreparedStatement} for a pooled connection.
+     * The statement stays open for the next call with the same SQL text, so callers must not close it
+     * (result sets still have to be closed).
+     *
+     * @param conn          a connection from {@link #getConnection()}
+     * @param query         the SQL text
+     * @param generatedKeys true if the statement should return generated keys
+     * @return a prepared statement with no parameters set
+     * @throws SQLException if the statement can't be prepared
+     */
+    private PreparedStatement prepareCached(Connection conn, String query, boolean generatedKeys) throws SQLException {
+        return connectionPool.prepare(conn, query, generatedKeys);
+    }
+
+    /**
+     * Releases a database connection back to the connection pool.
+     * Closed or expired connections are discarded; idle connections are validated in the background.
      *
      * @param connection The {@link Connection} to release
      */
     public void releaseConnection(Connection connection) {
-        if (connection != null) {
-            try {
-                if (connection.isValid(1) && connectionPool.offer(connection)) {
-                    System.out.println(" < Connection released back to pool. Current size: " + connectionPool.size());
-                } else {
-                    System.err.println(" < Connection invalid or could not be added to pool. Closing.");
-                    connection.close();
-                }
-            } catch (SQLException e) {
-                System.err.println("Error validating or closing connection: " + e.getMessage());
-            }
+        connectionPool.release(connection);
+        Semaphore permits = borrowPermits;
+        if (permits != null && connection != null && permitted.remove(connection)) {
+            permits.release();
         }
     }
 
     /**
-     * Closes all active connections currently stored in the pool.
+     * Closes all idle connections and stops the pool housekeeper.
      * This should be called during application shutdown to release resources.
      */
     public void closeAllConnections() {
-        System.out.println("Closing all connections in the pool...");
-        while (!connectionPool.isEmpty()) {
-            Connection connection = connectionPool.poll();
-            if (connection != null) {
-                try {
-                    connection.close();
-                    System.out.println(" > Connection closed.");
-                } catch (SQLException e) {
-                    System.err.println("Error closing pooled connection: " + e.getMessage());
-                }
-            }
-        }
+        System.out.println("Closing all connections in the pool... " + connectionPool.getStats());
+        connectionPool.shutdown();
         System.out.println("All pooled connections closed.");
     }
 
     /**
-     * Gets the current number of available connections in the connection pool.
+     * Gets the current number of idle connections in the connection pool.
      *
      * @return the current pool size
      */
     public int getCurrentPoolSize() {
-        return connectionPool.size();
+        return connectionPool.getIdleCount();
+    }
+
+    /**
+     * @return the connection pool, for its active/idle/waiting and wait time counters
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
     }
 
     /**
@@ -556,7 +967,7 @@ public class mysqlConnection {
      * @return the maximum pool size
      */
     public int getMaxPoolSize() {
-        return Max_Pool_size;
+        return connectionPool.getMaxSize();
     }
 
     /**
@@ -567,6 +978,11 @@ public class mysqlConnection {
      * @throws InterruptedException if thread is interrupted while waiting for a connection
      */
     public String getAvilableSpots() throws InterruptedException {
+        if (occupancy.isLoaded()) {
+            int spotId = occupancy.peekAvailableSpot();
+            return spotId < 0 ? null : String.valueOf(spotId);
+        }
+
         String mainQuery = """
             SELECT ps.SpotID
             FROM parkingspot ps
@@ -597,6 +1013,10 @@ public class mysqlConnection {
      * @throws InterruptedException if thread is interrupted while waiting for a connection
      */
     public String COUNTEmptySpot() throws InterruptedException {
+        if (occupancy.isLoaded()) {
+            return String.valueOf(occupancy.countAvailable());
+        }
+
         String mainQuery = """
             SELECT COUNT(*)
             FROM parkingspot ps
@@ -636,6 +1056,65 @@ public class mysqlConnection {
      * @throws InterruptedException if interrupted while accessing the database
      */
     public String reserve(String subscriberId, Timestamp requestedStartTime, Timestamp requestedEndTime) throws InterruptedException {
+        if (!reservationIndex.isLoaded()) {
+            return reserveWithQueries(subscriberId, requestedStartTime, requestedEndTime);
+        }
+
+        // Steps 0-3: duplicate check, 40% rule, spot pick and ReservationID, all answered by the index
+        int[] reason = new int[1];
+        ReservationIndex.Interval booked = reservationIndex.tryReserve(
+                subscriberId, requestedStartTime.getTime(), requestedEndTime.getTime(), reason);
+        if (booked == null) {
+            switch (reason[0]) {
+                case ReservationIndex.DUPLICATE_DATE:
+                    return "DUPLICATE_DATE";
+                case ReservationIndex.NO_SPOT:
+                    return "0";
+                default:
+                    return "-1";
+            }
+        }
+
+        // Step 4: Insert the new reservation
+        Connection conn = null;
+        boolean inserted = false;
+        String insertQuery = """
+            INSERT INTO reservation (ReservationID, SubscriberID, SpotID, StartTime, EndTime)
+            VALUES (?, ?, ?, ?, ?)
+        """;
+
+        try {
+            conn = getConnection();
+            try (PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
+                stmt.setInt(1, booked.getReservationId());
+                stmt.setString(2, subscriberId);
+                stmt.setInt(3, booked.getSpotId());
+                stmt.setTimestamp(4, requestedStartTime);
+                stmt.setTimestamp(5, requestedEndTime);
+                inserted = stmt.executeUpdate() > 0;
+            }
+        } catch (SQLException e) {
+            EchoServer.messageController.appendMessage("SQL error in reserve(): " + e.getMessage());
+        } finally {
+            releaseConnection(conn);
+            if (!inserted) {
+                // Give the spot and the ID back so the index keeps matching the table
+                reservationIndex.cancel(booked.getReservationId());
+            }
+        }
+
+        if (!inserted) {
+            return "-1";
+        }
+        occupancy.addReservation(booked.getSpotId(), requestedStartTime.getTime());
+        return "1 " + booked.getReservationId();
+    }
+
+    /**
+     * SQL implementation of {@link #reserve(String, Timestamp, Timestamp)}, used until the
+     * {@link ReservationIndex} has been loaded.
+     */
+    private String reserveWithQueries(String subscriberId, Timestamp requestedStartTime, Timestamp requestedEndTime) throws InterruptedException {
         Connection conn = null;
 
         try {
@@ -705,7 +1184,11 @@ public class mysqlConnection {
                 stmt.setTimestamp(5, requestedEndTime);
 
                 int affectedRows = stmt.executeUpdate();
-                return affectedRows > 0 ? "1 " + nextReservationId : "-1";
+                if (affectedRows > 0) {
+                    occupancy.addReservation(spotID, requestedStartTime.getTime());
+                    return "1 " + nextReservationId;
+                }
+                return "-1";
             }
 
         } catch (SQLException e) {
@@ -750,7 +1233,12 @@ public class mysqlConnection {
      */
     public boolean updateSubscriberPersonalData(String subscriberID, String phone, String email) throws InterruptedException {
         String query = "UPDATE subscriber SET PhoneNumber = ?, Email = ? WHERE SubscriberID = ?";
-        return executeUpdate(query, phone, email, subscriberID);
+        boolean updated = executeUpdate(query, phone, email, subscriberID);
+        subscriberCache.invalidate(subscriberID);
+        if (updated) {
+            subscriberDirectory.updateContact(subscriberID, phone, email);
+        }
+        return updated;
     }
 
     /**
@@ -762,59 +1250,95 @@ public class mysqlConnection {
      * @throws InterruptedException if interrupted while accessing the database
      */
     public String getSubscriberPersonalData(String subscriberID) throws InterruptedException {
-        String query = "SELECT SubscriberID, UserName, PhoneNumber, Email FROM subscriber WHERE SubscriberID = ?";
-        ArrayList<String> info = executeQueryAsList(query, subscriberID);
+        String[] row = getSubscriberRecord(subscriberID);
 
-        if (info == null || info.isEmpty() || info.size() < 4) {
+        if (row == null) {
             return "No subscriber data found.";
         }
 
-        return String.join(" ", info); // returns: "123456 John 050-1234567 john@email.com"
+        return String.join(" ", row); // returns: "123456 John 050-1234567 john@email.com"
     }
     
     /**
-     * Retrieves the parking history of a subscriber where the car has exited.
+     * One page of a subscriber's parking history, newest first.
+     */
+    public static final class HistoryPage {
+        /** The sessions, one per line, or a message if there are none. */
+        public final String text;
+        /** Token of the next page, or {@code null} if this is the last one. */
+        public final String next;
+
+        HistoryPage(String text, String next) {
+            this.text = text;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Retrieves one page of the parking history of a subscriber where the car has exited.
+     *
+     * <p>
+     * Pages are read with a keyset on {@code (EntryTime, HistoryID)}: the token of a page holds the key of
+     * its last session and the next page starts right after it, using the
+     * {@code idx_history_subscriber_entry} index. Every page costs the same, however long the history is
+     * and however far into it the page is.
+     * </p>
      *
      * @param subscriberID the ID of the subscriber
-     * @return a formatted string listing the parking sessions, or a message if none found
-     * @throws InterruptedException if the database query is interrupted
-     */
-    public String getHistoryBySubscriberID(String subscriberID) throws InterruptedException {
-    	 String checkQuery = "SELECT 1 FROM subscriber WHERE SubscriberID = ?";
-         String result0=executeQuery(checkQuery,subscriberID);
-             if(result0==null||result0=="")
-             {
-                     EchoServer.messageController.appendMessage("Subscriber doesn't exist: " + subscriberID);
-                     return "No Such Subscriber!";
-                 }
-             
+     * @param after        token returned with the previous page, or {@code null} for the first page
+     * @param pageSize     number of sessions on the page
+     * @return the page
+     * @throws IllegalArgumentException if the token is malformed
+     * @throws InterruptedException     if the database query is interrupted
+     */
+    public HistoryPage getHistoryPage(String subscriberID, String after, int pageSize) throws InterruptedException {
+        Timestamp afterEntry = null;
+        int afterId = 0;
+        if (after != null) {
+            String[] key = after.split("_");
+            try {
+                afterEntry = new Timestamp(Long.parseLong(key[0]));
+                afterId = Integer.parseInt(key[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid history page token: " + after);
+            }
+        } else if (getSubscriberRecord(subscriberID) == null) {
+            EchoServer.messageController.appendMessage("Subscriber doesn't exist: " + subscriberID);
+            return new HistoryPage("No Such Subscriber!", null);
+        }
+
         String query = """
-            SELECT EntryTime, ExitTime, Late, totalTimeParking, Extensions
+            SELECT HistoryID, EntryTime, ExitTime, Late, totalTimeParking, Extensions
             FROM parkinghistory
             WHERE subscriber = ? AND ExitTime IS NOT NULL
-            ORDER BY EntryTime DESC
+        """ + (after != null ? " AND (EntryTime < ? OR (EntryTime = ? AND HistoryID < ?))" : "") + """
+            ORDER BY EntryTime DESC, HistoryID DESC
+            LIMIT ?
         """;
+        Object[] params = after != null
+                ? new Object[] { subscriberID, afterEntry, afterEntry, afterId, pageSize + 1 }
+                : new Object[] { subscriberID, pageSize + 1 };
 
-        String rawResult = executeQuery(query, subscriberID);
-
-        if (rawResult == null || rawResult.isEmpty()) {
-            return "No history found for subscriber: " + subscriberID;
-        }
-
+        // One row more than the page tells whether there is a next page
         StringBuilder result = new StringBuilder();
-        String[] rows = rawResult.split("\n");
-
-        for (String row : rows) {
-            String[] columns = row.split(" ");
-            if (columns.length >= 5) {
-                result.append(String.format(
-                    "Start: %s | End: %s | Late: %s | Duration: %s min | Extensions: %s\n",
-                    columns[0], columns[1], columns[2], columns[3], columns[4]
-                ));
+        int[] rows = { 0 };
+        String[] lastKey = { null };
+        boolean ok = queryForEach(query, 0, rs -> {
+            if (++rows[0] > pageSize) {
+                return;
             }
-        }
+            result.append(String.format(
+                    "Start: %s | End: %s | Late: %s | Duration: %s min | Extensions: %s\n",
+                    rs.getString("EntryTime"), rs.getString("ExitTime"), rs.getString("Late"),
+                    rs.getString("totalTimeParking"), rs.getString("Extensions")));
+            lastKey[0] = rs.getTimestamp("EntryTime").getTime() + "_" + rs.getInt("HistoryID");
+        }, params);
 
-        return result.toString();
+        if (!ok || result.length() == 0) {
+            return new HistoryPage(after == null ? "No history found for subscriber: " + subscriberID : "", null);
+        }
+        result.setLength(result.length() - 1); // Remove the last newline
+        return new HistoryPage(result.toString(), rows[0] > pageSize ? lastKey[0] : null);
     }
 
     /**
@@ -861,6 +1385,9 @@ public class mysqlConnection {
                 return false;
             }
 
+            occupancy.release(Integer.parseInt(spotID.trim()));
+            parkingDeadlines.cancel(Integer.parseInt(parkingID.trim()));
+            addClosedSessionToStats(Integer.parseInt(parkingID.trim()));
             return true;
         } catch (InterruptedException e) {
             EchoServer.messageController.appendMessage("Error while finalizing parking for user: " + subID + "\n");
@@ -889,30 +1416,41 @@ public class mysqlConnection {
         }
 
         // Step 2: Find available spot not reserved in the next X minutes
-        String findSpotQuery = """
-            SELECT ps.SpotID
-            FROM parkingspot ps
-            WHERE ps.InUse = 0
-              AND NOT EXISTS (
-                  SELECT 1
-                  FROM reservation r
-                  WHERE r.SpotID = ps.SpotID
-                    AND NOW() BETWEEN r.StartTime AND DATE_ADD(r.StartTime, INTERVAL 15 MINUTE)
-              )
-              AND NOT EXISTS (
-                  SELECT 1
-                  FROM reservation r
-                  WHERE r.SpotID = ps.SpotID
-                    AND r.StartTime > NOW()
-                    AND TIMESTAMPDIFF(MINUTE, NOW(), r.StartTime) < ?
-              )
-            LIMIT 1;
-        """;
+        String spotID;
+        if (occupancy.isLoaded()) {
+            // Picking from the engine also marks the spot as taken, so no other terminal can get it
+            int claimed = occupancy.claimSpot(minimumMinutesBeforeNextReservation);
+            if (claimed < 0) {
+                EchoServer.messageController.appendMessage("Error while checking available spots.\n");
+                return null;
+            }
+            spotID = String.valueOf(claimed);
+        } else {
+            String findSpotQuery = """
+                SELECT ps.SpotID
+                FROM parkingspot ps
+                WHERE ps.InUse = 0
+                  AND NOT EXISTS (
+                      SELECT 1
+                      FROM reservation r
+                      WHERE r.SpotID = ps.SpotID
+                        AND NOW() BETWEEN r.StartTime AND DATE_ADD(r.StartTime, INTERVAL 15 MINUTE)
+                  )
+                  AND NOT EXISTS (
+                      SELECT 1
+                      FROM reservation r
+                      WHERE r.SpotID = ps.SpotID
+                        AND r.StartTime > NOW()
+                        AND TIMESTAMPDIFF(MINUTE, NOW(), r.StartTime) < ?
+                  )
+                LIMIT 1;
+            """;
 
-        String spotID = executeQuery(findSpotQuery, minimumMinutesBeforeNextReservation);
-        if (spotID == null || spotID.isEmpty()) {
-            EchoServer.messageController.appendMessage("Error while checking available spots.\n");
-            return null;
+            spotID = executeQuery(findSpotQuery, minimumMinutesBeforeNextReservation);
+            if (spotID == null || spotID.isEmpty()) {
+                EchoServer.messageController.appendMessage("Error while checking available spots.\n");
+                return null;
+            }
         }
 
         // Step 3: Mark the spot as in use
@@ -921,6 +1459,7 @@ public class mysqlConnection {
 
         if (!updated) {
             EchoServer.messageController.appendMessage("Failed to update spot as occupied.\n");
+            occupancy.release(Integer.parseInt(spotID.trim()));
             return null;
         }
 
@@ -938,9 +1477,11 @@ public class mysqlConnection {
             boolean updatedFailed = executeUpdateQuery(updateSpotQueryFailed, spotID);
             if(updatedFailed==true)
             { EchoServer.messageController.appendMessage("retrieved spot!");}
+            occupancy.release(Integer.parseInt(spotID.trim()));
             return null;
         }
 
+        parkingDeadlines.schedule(historyID, LocalDateTime.now(), minimumMinutesBeforeNextReservation, false);
         return String.valueOf(historyID);
     }
     
@@ -956,13 +1497,12 @@ public class mysqlConnection {
         Connection conn = null;
         try {
             conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                for (int i = 0; i < params.length; i++) {
-                    stmt.setObject(i + 1, params[i]);
-                }
-                int affectedRows = stmt.executeUpdate();
-                return affectedRows > 0;
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
             }
+            int affectedRows = stmt.executeUpdate();
+            return affectedRows > 0;
         } catch (SQLException e) {
             EchoServer.messageController.appendMessage("SQL error in executeUpdateQuery: " + e.getMessage());
             return false;
@@ -985,22 +1525,21 @@ public class mysqlConnection {
 
         try {
             conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-                for (int i = 0; i < params.length; i++) {
-                    stmt.setObject(i + 1, params[i]);
-                }
+            PreparedStatement stmt = prepareCached(conn, query, true);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
 
-                int affectedRows = stmt.executeUpdate();
-                if (affectedRows == 0) {
-                    throw new SQLException("Insert failed, no rows affected.");
-                }
+            int affectedRows = stmt.executeUpdate();
+            if (affectedRows == 0) {
+                throw new SQLException("Insert failed, no rows affected.");
+            }
 
-                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        generatedID = generatedKeys.getInt(1);
-                    } else {
-                        throw new SQLException("Insert succeeded but no ID returned.");
-                    }
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    generatedID = generatedKeys.getInt(1);
+                } else {
+                    throw new SQLException("Insert succeeded but no ID returned.");
                 }
             }
         } catch (SQLException e) {
@@ -1077,21 +1616,20 @@ public class mysqlConnection {
      * @throws InterruptedException if interrupted while accessing the database
      */
     public String getSubscriberID(String subscriberId, String subscriberName) throws InterruptedException {
-        String mainQuery = "SELECT * FROM subscriber WHERE SubscriberID = ?";
-        String info = executeQuery(mainQuery, subscriberId);
+        String[] row = getSubscriberRecord(subscriberId);
 
-        if (info == null || info.isEmpty()) {
+        if (row == null) {
             EchoServer.messageController.appendMessage("Subscriber ID not found: " + subscriberId);
             return null;
         }
 
-        String[] parts = info.split(" ");
-        if (parts.length < 2 || !parts[1].equalsIgnoreCase(subscriberName)) {
+        // Compare the name column itself, so names with spaces match too
+        if (row[1] == null || !row[1].equalsIgnoreCase(subscriberName)) {
             EchoServer.messageController.appendMessage("Subscriber name does not match for ID: " + subscriberId);
             return null;
         }
 
-        return info;
+        return String.join(" ", row);
     }
 
     /**
@@ -1104,7 +1642,10 @@ public class mysqlConnection {
      */
     public String getWorkerID(String workerId, String Type) throws InterruptedException {
         String mainQuery = "SELECT * FROM worker WHERE WorkerID = ? AND Type = ?";
-        String info = executeQuery(mainQuery, workerId, Type);
+        String info = workerCache.get(workerId + "|" + Type, () -> {
+            String row = executeQuery(mainQuery, workerId, Type);
+            return row == null || row.isEmpty() ? null : row;
+        });
 
         if (info == null || info.isEmpty()) {
             EchoServer.messageController.appendMessage(
@@ -1116,12 +1657,118 @@ public class mysqlConnection {
     }
 
     /**
-     * Fetches raw monthly parking statistics from the parkinghistory table.
+     * Adds a closed parking session to the monthly statistics tables ({@code monthlysubscriberstats} and
+     * {@code monthlyhourstats}), so the monthly reports read a few pre-aggregated rows instead of scanning
+     * parkinghistory. Must be called exactly once per session, right after its ExitTime was set.
+     *
+     * @param historyId the closed session's HistoryID
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public void addClosedSessionToStats(int historyId) throws InterruptedException {
+        executeUpdate("""
+            INSERT INTO monthlysubscriberstats
+            (Month, SubscriberID, Sessions, TotalMinutes, LateCount, LateExits, Extensions,
+             Reservations, CancelledReservations, LateFromReservation)
+            SELECT DATE_FORMAT(EntryTime, '%Y-%m-01'), subscriber, 1,
+                   TIMESTAMPDIFF(MINUTE, EntryTime, ExitTime),
+                   Late = 1, LateEmailSent = 1, Extensions = 1,
+                   resID IS NOT NULL, resID IS NOT NULL AND ShowedUp = 0, resID IS NOT NULL AND Late = 1
+            FROM parkinghistory
+            WHERE HistoryID = ? AND ExitTime IS NOT NULL
+            ON DUPLICATE KEY UPDATE
+                Sessions = Sessions + VALUES(Sessions),
+                TotalMinutes = TotalMinutes + VALUES(TotalMinutes),
+                LateCount = LateCount + VALUES(LateCount),
+                LateExits = LateExits + VALUES(LateExits),
+                Extensions = Extensions + VALUES(Extensions),
+                Reservations = Reservations + VALUES(Reservations),
+                CancelledReservations = CancelledReservations + VALUES(CancelledReservations),
+                LateFromReservation = LateFromReservation + VALUES(LateFromReservation)
+        """, historyId);
+        executeUpdate("""
+            INSERT INTO monthlyhourstats (Month, Hour, Entries)
+            SELECT DATE_FORMAT(EntryTime, '%Y-%m-01'), HOUR(EntryTime), 1
+            FROM parkinghistory
+            WHERE HistoryID = ? AND ExitTime IS NOT NULL
+            ON DUPLICATE KEY UPDATE Entries = Entries + 1
+        """, historyId);
+    }
+
+    /**
+     * Rebuilds the monthly statistics tables from the whole parkinghistory table, in one transaction.
+     * Used to fill them the first time, and to repair them if they ever drift from the history.
+     *
+     * @return true if the tables were rebuilt
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public boolean rebuildMonthlyStats() throws InterruptedException {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM monthlysubscriberstats");
+                stmt.executeUpdate("DELETE FROM monthlyhourstats");
+                stmt.executeUpdate("""
+                    INSERT INTO monthlysubscriberstats
+                    (Month, SubscriberID, Sessions, TotalMinutes, LateCount, LateExits, Extensions,
+                     Reservations, CancelledReservations, LateFromReservation)
+                    SELECT DATE_FORMAT(EntryTime, '%Y-%m-01'), subscriber, COUNT(*),
+                           SUM(TIMESTAMPDIFF(MINUTE, EntryTime, ExitTime)),
+                           SUM(Late = 1), SUM(LateEmailSent = 1), SUM(Extensions = 1),
+                           SUM(resID IS NOT NULL), SUM(resID IS NOT NULL AND ShowedUp = 0), SUM(resID IS NOT NULL AND Late = 1)
+                    FROM parkinghistory
+                    WHERE ExitTime IS NOT NULL AND subscriber IS NOT NULL
+                    GROUP BY DATE_FORMAT(EntryTime, '%Y-%m-01'), subscriber
+                """);
+                stmt.executeUpdate("""
+                    INSERT INTO monthlyhourstats (Month, Hour, Entries)
+                    SELECT DATE_FORMAT(EntryTime, '%Y-%m-01'), HOUR(EntryTime), COUNT(*)
+                    FROM parkinghistory
+                    WHERE ExitTime IS NOT NULL
+                    GROUP BY DATE_FORMAT(EntryTime, '%Y-%m-01'), HOUR(EntryTime)
+                """);
+            }
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            EchoServer.messageController.appendMessage("SQL error in rebuildMonthlyStats: " + e.getMessage());
+            try {
+                if (conn != null) {
+                    conn.rollback();
+                }
+            } catch (SQLException rollbackError) {
+                System.out.println("Rollback failed: " + rollbackError.getMessage());
+            }
+            return false;
+        } finally {
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Rebuilds the monthly statistics tables if they are empty while parkinghistory has closed sessions,
+     * i.e. the first time the server runs with them.
+     *
+     * @return true if the tables were rebuilt
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public boolean rebuildMonthlyStatsIfEmpty() throws InterruptedException {
+        // -1 (error) or any row: leave the tables alone
+        if (queryForInt("SELECT COUNT(*) FROM monthlysubscriberstats", -1) != 0) {
+            return false;
+        }
+        return queryForInt("SELECT COUNT(*) FROM parkinghistory WHERE ExitTime IS NOT NULL", 0) > 0 && rebuildMonthlyStats();
+    }
+
+    /**
+     * Fetches raw monthly parking statistics from the monthly statistics tables.
      * Includes total parking time (in minutes), number of late entries, late exits,
      * number of extensions, reservation usage, cancellations, and most frequent entry hour.
+     * Only closed sessions are counted, for the most frequent entry hour as well.
      *
-     * @param from Start date (inclusive) for filtering parking entries.
-     * @param to   End date (exclusive) for filtering parking entries.
+     * @param from Start date (inclusive), first day of a month.
+     * @param to   End date (exclusive), first day of a month.
      * @param con  Active SQL connection to use
      * @return Map with keys:
      *   "TotalMinutes", "Late", "LateExits", "Extensions", "MostRequestedHour",
@@ -1133,36 +1780,36 @@ public class mysqlConnection {
 
         String query = """
             SELECT 
-                SUM(TIMESTAMPDIFF(MINUTE, EntryTime, ExitTime)) AS TotalMinutes,
-                SUM(CASE WHEN Late = 1 THEN 1 ELSE 0 END) AS LateCount,
-                SUM(CASE WHEN LateEmailSent = 1 THEN 1 ELSE 0 END) AS LateExitCount,
-                SUM(CASE WHEN Extensions = 1 THEN 1 ELSE 0 END) AS ExtensionCount,
-                SUM(CASE WHEN resID IS NOT NULL THEN 1 ELSE 0 END) AS ReservationCount,
-                SUM(CASE WHEN resID IS NOT NULL AND ShowedUp = 0 THEN 1 ELSE 0 END) AS CancelledReservations,
-                SUM(CASE WHEN resID IS NOT NULL AND Late = 1 THEN 1 ELSE 0 END) AS LateReservationArrivals,
+                SUM(TotalMinutes) AS TotalMinutes,
+                SUM(LateCount) AS LateCount,
+                SUM(LateExits) AS LateExitCount,
+                SUM(Extensions) AS ExtensionCount,
+                SUM(Reservations) AS ReservationCount,
+                SUM(CancelledReservations) AS CancelledReservations,
+                SUM(LateFromReservation) AS LateReservationArrivals,
                 (
-                    SELECT HOUR(EntryTime)
-                    FROM parkinghistory
-                    WHERE EntryTime >= ? AND EntryTime < ?
-                    GROUP BY HOUR(EntryTime)
-                    ORDER BY COUNT(*) DESC
+                    SELECT Hour
+                    FROM monthlyhourstats
+                    WHERE Month >= ? AND Month < ?
+                    GROUP BY Hour
+                    ORDER BY SUM(Entries) DESC
                     LIMIT 1
                 ) AS MostRequestedHour
-            FROM parkinghistory
-            WHERE EntryTime >= ? AND EntryTime < ? AND ExitTime IS NOT NULL
+            FROM monthlysubscriberstats
+            WHERE Month >= ? AND Month < ?
         """;
 
         try (PreparedStatement stmt = con.prepareStatement(query)) {
-            Timestamp fromTimestamp = Timestamp.valueOf(from.atStartOfDay());
-            Timestamp toTimestamp = Timestamp.valueOf(to.atStartOfDay());
+            Date fromDate = Date.valueOf(from);
+            Date toDate = Date.valueOf(to);
 
-            stmt.setTimestamp(1, fromTimestamp);
-            stmt.setTimestamp(2, toTimestamp);
-            stmt.setTimestamp(3, fromTimestamp);
-            stmt.setTimestamp(4, toTimestamp);
+            stmt.setDate(1, fromDate);
+            stmt.setDate(2, toDate);
+            stmt.setDate(3, fromDate);
+            stmt.setDate(4, toDate);
 
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
+                if (rs.next() && rs.getString("TotalMinutes") != null) {
                     result.put("TotalMinutes", rs.getString("TotalMinutes"));
                     result.put("Late", rs.getString("LateCount"));
                     result.put("LateExits", rs.getString("LateExitCount"));
@@ -1180,9 +1827,54 @@ public class mysqlConnection {
         return result;
     }
 
+    /**
+     * Retrieves the monthly statistics of every subscriber who parked in the given range.
+     *
+     * @param from start date (inclusive), first day of a month
+     * @param to   end date (exclusive), first day of a month
+     * @param con  Active SQL connection to use
+     * @return a list of maps with keys: "SubscriberID", "TotalMinutes", "LateExits", "Extensions",
+     *         "ReservationCount", "CancelledReservations", "LateFromReservation"
+     */
+    public List<Map<String, String>> getSubscriberMonthlyStats(LocalDate from, LocalDate to, Connection con) {
+        List<Map<String, String>> results = new ArrayList<>();
+
+        String query = """
+            SELECT SubscriberID, SUM(TotalMinutes) AS TotalMinutes, SUM(LateExits) AS LateExits,
+                   SUM(Extensions) AS Extensions, SUM(Reservations) AS ReservationCount,
+                   SUM(CancelledReservations) AS CancelledReservations, SUM(LateFromReservation) AS LateFromReservation
+            FROM monthlysubscriberstats
+            WHERE Month >= ? AND Month < ?
+            GROUP BY SubscriberID
+        """;
+
+        try (PreparedStatement stmt = con.prepareStatement(query)) {
+            stmt.setDate(1, Date.valueOf(from));
+            stmt.setDate(2, Date.valueOf(to));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, String> row = new HashMap<>();
+                    row.put("SubscriberID", rs.getString("SubscriberID"));
+                    row.put("TotalMinutes", rs.getString("TotalMinutes"));
+                    row.put("LateExits", rs.getString("LateExits"));
+                    row.put("Extensions", rs.getString("Extensions"));
+                    row.put("ReservationCount", rs.getString("ReservationCount"));
+                    row.put("CancelledReservations", rs.getString("CancelledReservations"));
+                    row.put("LateFromReservation", rs.getString("LateFromReservation"));
+                    results.add(row);
+                }
+            }
+        } catch (SQLException e) {
+            EchoServer.messageController.appendMessage("SQL error in getSubscriberMonthlyStats: " + e.getMessage());
+        }
+
+        return results;
+    }
+
     
     /**
-     * Retrieves a subscriber's monthly report image from the database.
+     * Retrieves a subscriber's monthly report image, from the {@link ReportImageCache} or the database.
      * Returns the report image as a byte array (PNG format) for the specified subscriber and date.
      *
      * @param subscriberId the subscriber's ID
@@ -1190,23 +1882,38 @@ public class mysqlConnection {
      * @return byte[] containing the image, or null if not found
      */
     public byte[] getSubscriptionReport(String subscriberId, Date reportDate) throws InterruptedException {
-        String query = "SELECT Report_img FROM subscriberreport WHERE SubscriberID = ? AND DateOfReport = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        String key = ReportImageCache.subscriptionKey(subscriberId, reportDate);
+        byte[] cached = reportImageCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = reportImageCache.generation();
 
-            stmt.setString(1, subscriberId);
-            stmt.setDate(2, reportDate);
+        String query = "SELECT Report_img FROM subscriberreport WHERE SubscriberID = ? AND DateOfReport = ?";
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, subscriberId);
+                stmt.setDate(2, reportDate);
 
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getBytes("Report_img");
-            } else {
-                return null;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        byte[] image = rs.getBytes("Report_img");
+                        reportImageCache.put(key, image, generation);
+                        return image;
+                    } else {
+                        return null;
+                    }
+                }
             }
 
         } catch (SQLException e) {
             EchoServer.messageController.appendMessage("SQL error in getSubscriptionReport: " + e.getMessage());
             return null;
+        } finally {
+            // Give the connection back instead of closing it, or the pool loses a slot for good
+            releaseConnection(conn);
         }
     }
     
@@ -1224,19 +1931,18 @@ public class mysqlConnection {
 
         try {
             conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                for (int i = 0; i < params.length; i++) {
-                    stmt.setObject(i + 1, params[i]);
-                }
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    ResultSetMetaData metaData = rs.getMetaData();
-                    int columnCount = metaData.getColumnCount();
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
 
-                    if (rs.next()) {
-                        for (int i = 1; i <= columnCount; i++) {
-                            result.add(rs.getString(i));
-                        }
+                if (rs.next()) {
+                    for (int i = 1; i <= columnCount; i++) {
+                        result.add(rs.getString(i));
                     }
                 }
             }
@@ -1259,7 +1965,7 @@ public class mysqlConnection {
      */
     public String getSubscriberIdByTagReader(String tagReaderId) throws InterruptedException {
         String query = "SELECT SubscriberID FROM tagreader WHERE TagReaderID = ?";
-        String subscriberID = executeQuery(query, tagReaderId);
+        String subscriberID = queryForString(query, tagReaderId);
 
         if (subscriberID == null || subscriberID.isEmpty()) {
             EchoServer.messageController.appendMessage("TagReader ID not found: " + tagReaderId);
@@ -1351,7 +2057,7 @@ public class mysqlConnection {
      */
     public void ExitLateParkingsAfter4HOURS(Connection con, Consumer<List<Map<String, String>>> callback) {
         String query = """
-            SELECT ph.subscriber, s.Email, s.UserName, ph.EntryTime, ph.ShowedUp, ph.TimeToPark, ph.SpotID
+            SELECT ph.HistoryID, ph.subscriber, s.Email, s.UserName, ph.EntryTime, ph.ShowedUp, ph.TimeToPark, ph.SpotID
             FROM parkinghistory ph
             JOIN subscriber s ON ph.subscriber = s.SubscriberID
             WHERE ph.ExitTime IS NULL AND ph.LateEmailSent = TRUE
@@ -1410,11 +2116,14 @@ public class mysqlConnection {
                     updateStmt.setTimestamp(1, Timestamp.valueOf(now));
                     updateStmt.setInt(2, timeToPark + 240); // total time = original + 4 hours
                     updateStmt.setString(3, subscriberId);
-                    updateStmt.executeUpdate();
+                    if (updateStmt.executeUpdate() > 0) {
+                        addClosedSessionToStats(rs.getInt("HistoryID"));
+                    }
                     
                     //Update parking spot InUse status
                     updateStmt2.setString(1, spotID);
                     updateStmt2.executeUpdate(); 
+                    occupancy.release(Integer.parseInt(spotID));
 
                     EchoServer.messageController.appendMessage(
                         "Moving user (" + subscriberId + ") car out of parking spot"
@@ -1444,21 +2153,18 @@ public class mysqlConnection {
      * @throws InterruptedException If the thread is interrupted while querying.
      */
     public String SendCode(String subscriberId) throws InterruptedException {
-        String query = """
-            SELECT ph.HistoryID, s.Email, s.UserName
-            FROM parkinghistory ph
-            JOIN subscriber s ON ph.Subscriber = s.SubscriberID
-            WHERE ph.Subscriber = ? AND ph.ExitTime IS NULL
-            LIMIT 1
-        """;
-
-        String result = executeQuery(query, subscriberId);
-
-        if (result != null && !result.isBlank()) {
-            return "1 " + result.trim();
+        String query = "SELECT HistoryID FROM parkinghistory WHERE Subscriber = ? AND ExitTime IS NULL LIMIT 1";
+        String historyId = queryForString(query, subscriberId);
+        if (historyId == null) {
+            return "0"; // no active code found
         }
 
-        return "0"; // no active code found
+        // Email and name come from the subscriber cache instead of a join
+        String[] subscriber = getSubscriberRecord(subscriberId);
+        if (subscriber == null) {
+            return "0";
+        }
+        return "1 " + historyId + " " + subscriber[3] + " " + subscriber[1];
     }
 
     /**
@@ -1476,26 +2182,25 @@ public class mysqlConnection {
 
         try {
             conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                for (int i = 0; i < params.length; i++) {
-                    stmt.setObject(i + 1, params[i]);
-                }
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    ResultSetMetaData metaData = rs.getMetaData();
-                    int columnCount = metaData.getColumnCount();
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
 
-                    while (rs.next()) {
-                        for (int i = 1; i <= columnCount; i++) {
-                            result.append(rs.getString(i));
-                            if (i < columnCount) result.append(" ");
-                        }
-                        result.append("\n");
+                while (rs.next()) {
+                    for (int i = 1; i <= columnCount; i++) {
+                        result.append(rs.getString(i));
+                        if (i < columnCount) result.append(" ");
                     }
+                    result.append("\n");
+                }
 
-                    if (result.length() > 0 && result.charAt(result.length() - 1) == '\n') {
-                        result.deleteCharAt(result.length() - 1);
-                    }
+                if (result.length() > 0 && result.charAt(result.length() - 1) == '\n') {
+                    result.deleteCharAt(result.length() - 1);
                 }
             }
         } catch (SQLException e) {
@@ -1575,6 +2280,7 @@ public class mysqlConnection {
             EchoServer.messageController.appendMessage("Failed to update spot " + spotID + " as occupied.");
             return "PARKING_RESERVATION_FAILED_UPDATE_SPOTID";
         }
+        occupancy.occupy(Integer.parseInt(spotID.trim()));
 
         // Step 4: Insert parking history
         String insertHistoryQuery = """
@@ -1591,31 +2297,39 @@ public class mysqlConnection {
             return "PARKING_RESERVATION_FAILED_INSERT_HISTORY";
         }
 
+        parkingDeadlines.schedule(historyID, now, (int) minutesToPark, false);
         EchoServer.messageController.appendMessage("Reservation parking success for subscriber: " + subscriberID + ", HistoryID: " + historyID);
         return "PARKING_RESERVATION_SUCCESS " + historyID;
     }
 
     /**
-     * Retrieves all subscriber records from the database and prints them.
+     * Reads one page of the subscriber listing from the {@link SubscriberDirectory}.
      *
-     * @return A list of all subscribers.
-     * @throws InterruptedException If the thread is interrupted during the query.
+     * @param prefix   prefix of the ID, name, phone or email to match (ignoring case), or empty for all subscribers
+     * @param sortKey  one of {@link SubscriberDirectory#SORT_KEYS}
+     * @param after    token returned with the previous page, or {@code null} for the first page
+     * @param pageSize number of subscribers on the page
+     * @return the page, or {@code null} if the directory can't be loaded
+     * @throws IllegalArgumentException if the sort key or the token is invalid
+     * @throws InterruptedException     if interrupted while waiting for a connection
      */
-    public ArrayList<String> getAllSubscribers() throws InterruptedException {
-        ArrayList<String> subscribers = new ArrayList<>();
-        String mainQuery = "SELECT * FROM subscriber";
-        String rs = executeQuery(mainQuery);
-
-        if(!rs.isEmpty()) {
-        	String[] str = rs.split(" ");
-            for (String s : str) {
-                System.out.println(s);
-                subscribers.add(s);
+    public SubscriberDirectory.Page searchSubscribers(String prefix, String sortKey, String after, int pageSize)
+            throws InterruptedException {
+        if (!subscriberDirectory.isLoaded()) {
+            Connection conn = null;
+            try {
+                conn = getConnection();
+                loadSubscriberDirectory(conn);
+            } catch (SQLException e) {
+                EchoServer.messageController.appendMessage("SQL error in searchSubscribers: " + e.getMessage());
+            } finally {
+                releaseConnection(conn);
+            }
+            if (!subscriberDirectory.isLoaded()) {
+                return null;
             }
-
-            return subscribers;
         }
-        return null;
+        return subscriberDirectory.search(prefix, sortKey, after, pageSize);
     }
 
     /**
@@ -1630,14 +2344,13 @@ public class mysqlConnection {
         Connection conn = null;
         try {
             conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                for (int i = 0; i < params.length; i++) {
-                    stmt.setObject(i + 1, params[i]);
-                }
-
-                int affectedRows = stmt.executeUpdate();
-                return affectedRows > 0;
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
             }
+
+            int affectedRows = stmt.executeUpdate();
+            return affectedRows > 0;
         } catch (SQLException e) {
             EchoServer.messageController.appendMessage("SQL error in executeUpdate: " + e.getMessage());
             return false;
@@ -1694,7 +2407,10 @@ public class mysqlConnection {
             insertStmt.setString(4, message.get(2));
 
             int rowsInserted = insertStmt.executeUpdate();
+            subscriberCache.invalidate(newSubscriberId);
             if (rowsInserted > 0) {
+                subscriberDirectory.put(new SubscriberDirectory.Subscriber(
+                        newSubscriberId, message.get(0), message.get(1), message.get(2)));
                 return newSubscriberId; // return generated ID (e.g., "SUB124")
             } else {
                 return "ERROR_INSERT"; // if no row was inserted
@@ -1705,13 +2421,7 @@ public class mysqlConnection {
             return "ERROR_INSERT";
 
         } finally {
-            if (conn != null) {
-                try {
-                    connectionPool.offer(conn); // Return connection to pool
-                } catch (Exception ex) {
-                    EchoServer.messageController.appendMessage("Failed to return connection to pool: " + ex.getMessage());
-                }
-            }
+            releaseConnection(conn);
         }
     }
     /**
@@ -1791,63 +2501,12 @@ public class mysqlConnection {
             EchoServer.messageController.appendMessage("SQL error in addTagToSubscriber: " + e.getMessage());
             return "ERROR_SQL";
         } finally {
-            if (conn != null) {
-                try {
-                    connectionPool.offer(conn); // Return connection to pool
-                } catch (Exception ex) {
-                    EchoServer.messageController.appendMessage("Failed to return connection to pool: " + ex.getMessage());
-                }
-            }
+            releaseConnection(conn);
         }
     }
 
 
     
-    /**
-     * Retrieves all parking history records (with entry and exit time) for all subscribers
-     * during the given date range. Only completed records (with non-null ExitTime) are returned.
-     *
-     * @param from start date (inclusive)
-     * @param to end date (exclusive)
-     * @return a list of maps, each map includes keys: "SubscriberID", "EntryTime", "ExitTime", "Late"
-     */
-    public List<Map<String, String>> getFullHistoryForMonth(LocalDate from, LocalDate to,Connection con) throws InterruptedException {
-        List<Map<String, String>> results = new ArrayList<>();
-
-        String query = """
-        	    SELECT subscriber, EntryTime, ExitTime, Late, LateEmailSent, Extensions, resID, ShowedUp
-        	    FROM parkinghistory
-        	    WHERE EntryTime >= ? AND EntryTime < ? AND ExitTime IS NOT NULL
-        	""";
-
-
-        try (PreparedStatement stmt = con.prepareStatement(query)) {
-
-            stmt.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
-            stmt.setTimestamp(2, Timestamp.valueOf(to.atStartOfDay()));
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Map<String, String> row = new HashMap<>();
-                    row.put("SubscriberID", rs.getString("subscriber"));
-                    row.put("EntryTime", rs.getTimestamp("EntryTime").toLocalDateTime().toString());
-                    row.put("ExitTime", rs.getTimestamp("ExitTime").toLocalDateTime().toString());
-                    row.put("Late", rs.getString("Late"));
-                    row.put("LateEmailSent", rs.getString("LateEmailSent"));
-                    row.put("Extensions", rs.getString("Extensions"));
-                    row.put("resID", rs.getString("resID"));
-                    row.put("ShowedUp", rs.getString("ShowedUp"));
-
-                    results.add(row);
-                }
-            }
-        } catch (SQLException e) {
-            EchoServer.messageController.appendMessage("SQL error in getFullHistoryForMonth: " + e.getMessage());
-        }
-
-        return results;
-    }
-    
     /**
      * Saves multiple subscriber report images in a single batch insert to the database.
      *@author Amit_Regev
@@ -1877,6 +2536,12 @@ public class mysqlConnection {
         } catch (SQLException e) {
             EchoServer.messageController.appendMessage("SQL error in saveSubscriberReportsBatch: " + e.getMessage());
             return false;
+        } finally {
+            // Even a failed batch may have written some rows
+            Date sqlReportDate = java.sql.Date.valueOf(reportDate);
+            for (Map<String, Object> data : reportDataList) {
+                reportImageCache.invalidate(ReportImageCache.subscriptionKey((String) data.get("SubscriberID"), sqlReportDate));
+            }
         }
     }
 
@@ -1904,6 +2569,8 @@ public class mysqlConnection {
                 stmt.setBytes(2, imageBytes);
                 int rows = stmt.executeUpdate();
                 return rows > 0;
+            } finally {
+                reportImageCache.invalidate(ReportImageCache.parkingKey(java.sql.Date.valueOf(reportDate)));
             }
         } catch (SQLException e) {
             EchoServer.messageController.appendMessage("SQL error while saving parking report image: " + e.getMessage());
@@ -1913,13 +2580,21 @@ public class mysqlConnection {
     
     /**
      * @author Amit_Regev
-     * Retrieves the saved monthly parking report image (as a byte array) from the database.
+     * Retrieves the saved monthly parking report image (as a byte array), from the
+     * {@link ReportImageCache} or the database.
      * This report is stored as a BLOB in the 'parkingreport' table.
      * @param reportDate The date used as the primary key (e.g., 2025-06-01).
      * @return The report image as byte[], or null if not found.
      * @throws InterruptedException if database connection is interrupted.
      */
     public byte[] getParkingReportByDate(Date reportDate) throws InterruptedException {
+        String key = ReportImageCache.parkingKey(reportDate);
+        byte[] cached = reportImageCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = reportImageCache.generation();
+
         String query = "SELECT Report_data FROM parkingreport WHERE DateOfReport = ?";
         Connection conn = null;
 
@@ -1929,7 +2604,9 @@ public class mysqlConnection {
                 stmt.setDate(1, reportDate);
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
-                        return rs.getBytes("Report_data");
+                        byte[] image = rs.getBytes("Report_data");
+                        reportImageCache.put(key, image, generation);
+                        return image;
                     }
                 }
             }
@@ -1955,14 +2632,13 @@ public class mysqlConnection {
 
         try {
             conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                for (int i = 0; i < params.length; i++) {
-                    stmt.setObject(i + 1, params[i]);
-                }
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    return rs.next(); // returns true if at least one result exists
-                }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next(); // returns true if at least one result exists
             }
         } catch (SQLException e) {
             EchoServer.messageController.appendMessage("SQL error in recordExists: " + e.getMessage());
@@ -1971,6 +2647,139 @@ public class mysqlConnection {
             releaseConnection(conn);
         }
     }
+
+    /**
+     * Executes a SELECT query and maps every row with {@code mapper}.
+     * Columns are read with their real types, so values containing spaces stay intact.
+     *
+     * @param query  the SQL query to execute
+     * @param mapper maps one row to an object
+     * @param params parameters to bind to the query
+     * @return the mapped rows (empty if none), or {@code null} if an error occurs
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public <T> List<T> queryForList(String query, RowMapper<T> mapper, Object... params) throws InterruptedException {
+        List<T> rows = new ArrayList<>();
+        boolean ok = queryForEach(query, 0, rs -> rows.add(mapper.mapRow(rs, rows.size())), params);
+        return ok ? rows : null;
+    }
+
+    /**
+     * Executes a SELECT query and maps the first row with {@code mapper}.
+     *
+     * @param query  the SQL query to execute
+     * @param mapper maps the row to an object
+     * @param params parameters to bind to the query
+     * @return the mapped first row, or {@code null} if there is no row or an error occurs
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public <T> T queryForObject(String query, RowMapper<T> mapper, Object... params) throws InterruptedException {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            bindParameters(stmt, params);
+            stmt.setFetchSize(0);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapper.mapRow(rs, 0) : null;
+            }
+        } catch (SQLException e) {
+            EchoServer.messageController.appendMessage("SQL error in queryForObject: " + e.getMessage());
+            return null;
+        } finally {
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Executes a SELECT query and returns the first column of the first row as an {@code int},
+     * without going through a string.
+     *
+     * @param query        the SQL query to execute (for example a {@code COUNT(*)})
+     * @param defaultValue value returned when there is no row, the column is NULL or an error occurs
+     * @param params       parameters to bind to the query
+     * @return the value of the first column
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public int queryForInt(String query, int defaultValue, Object... params) throws InterruptedException {
+        Integer value = queryForObject(query, (rs, rowNum) -> {
+            int v = rs.getInt(1);
+            return rs.wasNull() ? null : v;
+        }, params);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Executes a SELECT query and returns the first column of the first row as a {@code long}.
+     *
+     * @param query        the SQL query to execute
+     * @param defaultValue value returned when there is no row, the column is NULL or an error occurs
+     * @param params       parameters to bind to the query
+     * @return the value of the first column
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public long queryForLong(String query, long defaultValue, Object... params) throws InterruptedException {
+        Long value = queryForObject(query, (rs, rowNum) -> {
+            long v = rs.getLong(1);
+            return rs.wasNull() ? null : v;
+        }, params);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Executes a SELECT query and returns the first column of the first row as a string.
+     *
+     * @param query  the SQL query to execute
+     * @param params parameters to bind to the query
+     * @return the value of the first column, or {@code null} if there is no row or an error occurs
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public String queryForString(String query, Object... params) throws InterruptedException {
+        return queryForObject(query, (rs, rowNum) -> rs.getString(1), params);
+    }
+
+    /**
+     * Executes a SELECT query over a forward-only, read-only cursor and hands each row to {@code handler}
+     * as it arrives. With a positive {@code fetchSize} the pooled connections ({@code useCursorFetch})
+     * read the result from MySQL in batches of that size instead of loading it all at once.
+     *
+     * @param query     the SQL query to execute
+     * @param fetchSize rows fetched per round trip, or 0 to read the whole result at once
+     * @param handler   called once per row
+     * @param params    parameters to bind to the query
+     * @return {@code true} if the query completed, {@code false} if an error occurred
+     * @throws InterruptedException if interrupted while waiting for a connection
+     */
+    public boolean queryForEach(String query, int fetchSize, RowHandler handler, Object... params) throws InterruptedException {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            // Statements from prepareStatement(String) are TYPE_FORWARD_ONLY / CONCUR_READ_ONLY
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            bindParameters(stmt, params);
+            stmt.setFetchSize(Math.max(0, fetchSize));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.processRow(rs);
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            EchoServer.messageController.appendMessage("SQL error in queryForEach: " + e.getMessage());
+            return false;
+        } finally {
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Binds {@code params} to the statement in order.
+     */
+    private static void bindParameters(PreparedStatement stmt, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
     
     
     
@@ -1988,11 +2797,10 @@ public class mysqlConnection {
 
         try {
             conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                stmt.setString(1, subscriberID);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    return rs.next();  
-                }
+            PreparedStatement stmt = prepareCached(conn, query, false);
+            stmt.setString(1, subscriberID);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
             }
         } catch (SQLException e) {
             EchoServer.messageController.appendMessage("SQL error in hasActiveParking: " + e.getMessage());
@@ -2029,7 +2837,7 @@ public class mysqlConnection {
 
             // Step 1: Retrieve active parking info
             String query = """
-                SELECT HistoryID, SpotID, Extensions
+                SELECT HistoryID, SpotID, Extensions, EntryTime, TimeToPark, LateEmailSent
                 FROM parkinghistory
                 WHERE subscriber = ? AND ExitTime IS NULL
             """;
@@ -2037,6 +2845,9 @@ public class mysqlConnection {
             int historyID = -1;
             int spotID = -1;
             int extensions = 0;
+            LocalDateTime entryTime = null;
+            int timeToPark = 0;
+            boolean lateSent = false;
 
             try (PreparedStatement stmt = conn.prepareStatement(query)) {
                 stmt.setString(1, subscriberID);
@@ -2045,6 +2856,9 @@ public class mysqlConnection {
                         historyID = rs.getInt("HistoryID");
                         spotID = rs.getInt("SpotID");
                         extensions = rs.getInt("Extensions");
+                        entryTime = rs.getTimestamp("EntryTime").toLocalDateTime();
+                        timeToPark = rs.getInt("TimeToPark");
+                        lateSent = rs.getBoolean("LateEmailSent");
                     } else {
                         return "ERROR: No active parking found (unexpected).";
                     }
@@ -2092,6 +2906,7 @@ public class mysqlConnection {
                     return "ERROR: Failed to record extension and update time.";
                 }
             }
+            parkingDeadlines.schedule(historyID, entryTime, timeToPark + totalMinutes, lateSent);
 
             // return message after successful update
             return "EXTENSION_GRANTED: Your parking is now extended by " + totalMinutes + " minutes.";